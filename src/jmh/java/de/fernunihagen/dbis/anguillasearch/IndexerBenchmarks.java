@@ -0,0 +1,78 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the construction of an index of already lemmatized pages,
+ * including the PageRank calculation, on synthetic nets of increasing size.
+ * The pages are lemmatized once in the FAST mode before the measurement.
+ * The index is built in the calling thread and with pools of 1 to 8
+ * threads, see ParallelIndexBuilder. The time with 1 thread divided by the
+ * time with n threads is the speedup of n threads, which can only show up
+ * on a machine with at least n processors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexerBenchmarks {
+    /** Number of words of the content of a page. */
+    private static final int CONTENT_WORDS = 200;
+    /** Number of pages of the net. */
+    @Param({"100", "1000", "10000"})
+    public int numPages;
+    /** Number of threads, 0 builds in the calling thread. */
+    @Param({"0", "1", "2", "4", "8"})
+    public int threads;
+    /** The lemmatized pages. */
+    private List<Page> pages;
+    /** The pool, null if the calling thread builds. */
+    private ForkJoinPool pool;
+
+    /**
+     * Generates and lemmatizes the pages.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Parser.setAnalysisMode(Parser.AnalysisMode.FAST);
+        pages = SyntheticCorpus.generatePages(numPages, CONTENT_WORDS,
+                                              SyntheticCorpus.DEFAULT_SEED);
+        pool = threads == 0 ? null : new ForkJoinPool(threads);
+    }
+    /**
+     * Shuts the pool down.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Builds the index of all pages.
+     * @return the index.
+     */
+    @Benchmark
+    public Indexer buildIndex() {
+        return new Indexer(pages, pool);
+    }
+}
@@ -0,0 +1,88 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the PageRank calculation on synthetic link graphs of increasing
+ * size, like the PageRankBenchmark, in the calling thread and with a pool
+ * of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PageRankBenchmarks {
+    /** Number of pages of the graph. */
+    @Param({"1000", "100000", "1000000"})
+    public int numPages;
+    /** Number of threads, 0 ranks in the calling thread. */
+    @Param({"0", "4"})
+    public int threads;
+    /** URLs of the pages. */
+    private String[] urls;
+    /** Source page of every link. */
+    private int[] linkSources;
+    /** Target page of every link. */
+    private int[] linkTargets;
+    /** The pool, null if the calling thread ranks. */
+    private ForkJoinPool pool;
+
+    /**
+     * Generates the link graph.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SyntheticCorpus.DEFAULT_SEED);
+        urls = new String[numPages];
+        for (int i = 0; i < numPages; i++) {
+            urls[i] = SyntheticCorpus.urlOf(i);
+        }
+        int numLinks = numPages * SyntheticCorpus.AVG_OUT_DEGREE;
+        linkSources = new int[numLinks];
+        linkTargets = new int[numLinks];
+        for (int e = 0; e < numLinks; e++) {
+            linkSources[e] = random.nextInt(numPages);
+            // squaring a uniform number skews the targets to small ids
+            double r = random.nextDouble();
+            linkTargets[e] = (int) (r * r * numPages);
+        }
+        pool = threads == 0 ? null : new ForkJoinPool(threads);
+    }
+    /**
+     * Shuts the pool down.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Ranks the pages of the graph.
+     * @return the pageranks.
+     */
+    @Benchmark
+    public double[] rank() {
+        return new PageRank(urls, linkSources, linkTargets, pool)
+                   .getPageRanks();
+    }
+}
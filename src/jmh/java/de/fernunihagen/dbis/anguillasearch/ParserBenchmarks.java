@@ -0,0 +1,101 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the analysis of a page: Parser.tokLem() on the content and
+ * Parser.parse() of the HTML, which extracts the text with jsoup or the
+ * streaming extractor and lemmatizes it.
+ * Every operation analyzes the next page of a small synthetic net.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmarks {
+    /** Number of pages, which are analyzed in turn. */
+    private static final int NUM_PAGES = 64;
+    /** Number of words of the content of a page. */
+    @Param({"50", "500"})
+    public int contentWords;
+    /** Analysis mode of the Parser. */
+    @Param({"CORENLP", "FAST"})
+    public String analysisMode;
+    /** The text of the pages. */
+    private List<PageText> texts;
+    /** The HTML of the pages. */
+    private String[] html;
+    /** Index of the next page. */
+    private int next = 0;
+
+    /**
+     * Generates the pages and loads the CoreNLP models.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Parser.setAnalysisMode(Parser.AnalysisMode.valueOf(analysisMode));
+        Parser.setLemmaTable(new LemmaTable());
+        texts = SyntheticCorpus.generate(NUM_PAGES, contentWords,
+                                         SyntheticCorpus.DEFAULT_SEED);
+        html = new String[NUM_PAGES];
+        for (int i = 0; i < NUM_PAGES; i++) {
+            html[i] = SyntheticCorpus.toHTML(texts.get(i));
+        }
+        Parser.tokLem("");
+    }
+    /**
+     * Returns the index of the next page.
+     * @return the index of the next page.
+     */
+    private int nextPage() {
+        next = (next + 1) % NUM_PAGES;
+        return next;
+    }
+
+    /**
+     * Lemmatizes the content of a page.
+     * @return the lemmas.
+     */
+    @Benchmark
+    public List<String> tokLem() {
+        return Parser.tokLem(texts.get(nextPage()).content());
+    }
+    /**
+     * Parses a page with jsoup and lemmatizes it.
+     * @return the page.
+     */
+    @Benchmark
+    public Page parseJsoup() {
+        int page = nextPage();
+        return Parser.parse(SyntheticCorpus.urlOf(page),
+                            Jsoup.parse(html[page]));
+    }
+    /**
+     * Extracts the text of a page with the streaming extractor and
+     * lemmatizes it.
+     * @return the page.
+     */
+    @Benchmark
+    public Page parseStreaming() {
+        int page = nextPage();
+        return Parser.parse(SyntheticCorpus.urlOf(page),
+                            HtmlExtractor.extract(html[page]));
+    }
+}
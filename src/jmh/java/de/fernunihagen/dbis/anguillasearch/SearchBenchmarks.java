@@ -0,0 +1,77 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures searchQuery() with every rank mode on synthetic nets of
+ * increasing size. Every operation searches the next of a few queries of
+ * frequent and rare words for the K best results. The queries are
+ * lemmatized in the FAST mode, like the pages. With the result cache the
+ * queries are only ranked once, later operations find the cached results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmarks {
+    /** Number of words of the content of a page. */
+    private static final int CONTENT_WORDS = 200;
+    /** Number of search results. */
+    private static final int K = 10;
+    /** The queries, which are searched in turn. */
+    private static final String[] QUERIES = {"cheese", "aged gouda",
+        "nutty alpine cheese", "smoked mozzarella", "creamy brie with wine",
+        "liederkranz", "traditional recipes of the village",
+        "sharp cheddar flavor"};
+    /** Number of pages of the net. */
+    @Param({"100", "1000", "10000"})
+    public int numPages;
+    /** The rank mode, see Indexer.searchQuery(). */
+    @Param({"0", "1", "2", "3"})
+    public int rankMode;
+    /** Capacity of the result cache, 0 ranks every query. */
+    @Param({"0", "1024"})
+    public int cacheCapacity;
+    /** Index of all pages. */
+    private Indexer index;
+    /** Index of the next query. */
+    private int next = 0;
+
+    /**
+     * Generates the pages and builds the index.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Parser.setAnalysisMode(Parser.AnalysisMode.FAST);
+        index = new Indexer(SyntheticCorpus.generatePages(numPages,
+                                CONTENT_WORDS, SyntheticCorpus.DEFAULT_SEED));
+        index.setResultCacheCapacity(cacheCapacity);
+    }
+
+    /**
+     * Searches the next query.
+     * @return the search results.
+     */
+    @Benchmark
+    public List<SearchResult> searchQuery() {
+        // the threads may share the counter, a lost update does not matter
+        next = (next + 1) % QUERIES.length;
+        return index.searchQuery(QUERIES[next], rankMode, K);
+    }
+}
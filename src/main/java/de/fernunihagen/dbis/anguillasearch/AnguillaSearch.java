@@ -1,6 +1,7 @@
 package de.fernunihagen.dbis.anguillasearch;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -16,6 +17,8 @@ import com.google.gson.JsonObject;
  */
 public final class AnguillaSearch {
     private static boolean color = false;
+    /** Number of results of a served search without k, if -k is not set. */
+    private static final int DEFAULT_SERVE_RESULTS = 10;
     
     private AnguillaSearch() {
     }
@@ -38,6 +41,14 @@ public final class AnguillaSearch {
         String[] seedURLs = null;
         String jsonPath = null;
         int rankMode = 2;
+        int fetchThreads = 1;
+        // 0 means the pages are lemmatized by the crawler itself.
+        int parseThreads = 0;
+        int maxResults = Integer.MAX_VALUE;
+        Path savePath = null;
+        Path loadPath = null;
+        Path updatePath = null;
+        Integer servePort = null;
 
         Map<String, String> argMap = argsParser(args);
         if(argMap.get("--help") != null) {
@@ -47,7 +58,43 @@ public final class AnguillaSearch {
         if (argMap.get("-r") != null) {
             rankMode = Integer.parseInt(argMap.get("-r"));
         }
-        if (argMap.get("seedURLs") != null) {
+        if (argMap.get("-t") != null) {
+            fetchThreads = Integer.parseInt(argMap.get("-t"));
+        }
+        if (argMap.get("-p") != null) {
+            parseThreads = Integer.parseInt(argMap.get("-p"));
+        }
+        if (argMap.get("--host-threads") != null
+            || argMap.get("--host-delay") != null) {
+            int hostThreads = Crawler.DEFAULT_HOST_THREADS;
+            long hostDelay = 0;
+            if (argMap.get("--host-threads") != null) {
+                hostThreads = Integer.parseInt(argMap.get("--host-threads"));
+            }
+            if (argMap.get("--host-delay") != null) {
+                hostDelay = Long.parseLong(argMap.get("--host-delay"));
+            }
+            Crawler.setPoliteness(hostThreads, hostDelay);
+        }
+        if (argMap.get("-k") != null) {
+            maxResults = Integer.parseInt(argMap.get("-k"));
+        }
+        if (argMap.get("--save") != null) {
+            savePath = Path.of(argMap.get("--save"));
+        }
+        if (argMap.get("--load") != null) {
+            loadPath = Path.of(argMap.get("--load"));
+        }
+        if (argMap.get("--update") != null) {
+            updatePath = Path.of(argMap.get("--update"));
+        }
+        if (argMap.get("--serve") != null) {
+            servePort = Integer.parseInt(argMap.get("--serve"));
+        }
+        if (loadPath != null) {
+            // the seed URLs are not needed, the net is not crawled.
+            seedURLs = null;
+        } else if (argMap.get("seedURLs") != null) {
             seedURLs = argMap.get("seedURLs").split(" ");
         } else if (argMap.get("jsonPath") != null) {
             jsonPath = argMap.get("jsonPath");
@@ -70,12 +117,69 @@ public final class AnguillaSearch {
                                + " seedURLs: " + String.join(", ", seedURLs));
 
         }
+        if (argMap.get("--fast") != null) {
+            try {
+                Parser.setLemmaTable(LemmaTable.load(
+                                        Path.of(argMap.get("--fast"))));
+                Parser.setAnalysisMode(Parser.AnalysisMode.FAST);
+                System.out.println("Fast lemmatizer loaded");
+            } catch (IOException e) {
+                System.out.println(e.toString());
+                System.out.println("Provided lemma table could not be loaded");
+                System.exit(1);
+            }
+        }
         if (argMap.get("--color") != null) {
             color = true;
             System.out.println("Color Outpout loaded");
         }
 
-        Indexer index = new Indexer(seedURLs);
+        Indexer index = null;
+        if (updatePath != null) {
+            try {
+                index = new Indexer(updatePath);
+                System.out.println("Index loaded from " + updatePath);
+                int changed = index.recrawl(seedURLs, fetchThreads);
+                System.out.format("%d pages added, changed or deleted%n",
+                                  changed);
+                index.save(updatePath);
+                System.out.println("Index saved to " + updatePath);
+            } catch (IOException e) {
+                System.out.println(e.toString());
+                System.out.println("Provided index could not be updated");
+                System.exit(1);
+            }
+        } else if (loadPath != null) {
+            try {
+                index = new Indexer(loadPath);
+                System.out.println("Index loaded from " + loadPath);
+            } catch (IOException e) {
+                System.out.println(e.toString());
+                System.out.println("Provided index could not be loaded");
+                System.exit(1);
+            }
+        } else if (parseThreads > 0) {
+            index = new Indexer(seedURLs, fetchThreads, parseThreads);
+        } else {
+            index = new Indexer(seedURLs, fetchThreads);
+        }
+        if (savePath != null) {
+            try {
+                index.save(savePath);
+                System.out.println("Index saved to " + savePath);
+            } catch (IOException e) {
+                System.out.println(e.toString());
+                System.out.println("Index could not be saved");
+                System.exit(1);
+            }
+        }
+        if (Parser.getAnalysisMode() == Parser.AnalysisMode.FAST) {
+            Parser.getLemmaTable().getCache().printStats();
+        }
+        if (servePort != null) {
+            serve(index, servePort, rankMode, maxResults);
+            return;
+        }
         Scanner scanner = new Scanner(System.in, "UTF-8");
         System.out.println("You can now start searching.");
         System.out.format("Pages indexed: %d%n", index.getPagesIndexed());
@@ -109,11 +213,43 @@ public final class AnguillaSearch {
             if ("exit".equals(userInput)) {
                 exit = true;
             } else {
-                printQuery(index, userInput, rankMode);
+                printQuery(index, userInput, rankMode, maxResults);
             }
         }
         scanner.close();
     }
+    /**
+     * Answers search queries over HTTP instead of reading them from stdin.
+     * The server runs until the program is stopped, then the latencies of
+     * the searches are printed.
+     * @param index the searched index
+     * @param port the port of the server
+     * @param rankMode rank mode of a search without mode
+     * @param maxResults number of results of a search without k
+     */
+    private static void serve(final Indexer index, final int port,
+                              final int rankMode, final int maxResults) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int defaultK = maxResults == Integer.MAX_VALUE ? DEFAULT_SERVE_RESULTS
+                                                       : maxResults;
+        try {
+            SearchServer server = new SearchServer(index, port, threads,
+                                                   rankMode, defaultK);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                server.printStats();
+            }));
+            System.out.format("Pages indexed: %d%n", index.getPagesIndexed());
+            System.out.format("Serving searches on http://localhost:%d"
+                              + "/search?q=query&mode=%d&k=%d with %d"
+                              + " threads%n", server.getPort(), rankMode,
+                              defaultK, threads);
+        } catch (IOException e) {
+            System.out.println(e.toString());
+            System.out.println("Search server could not be started");
+            System.exit(1);
+        }
+    }
     /**
      * Parses arguments for our main program. 
      * The support 4 patterns of arguments:
@@ -122,6 +258,22 @@ public final class AnguillaSearch {
      * -r Integer pathToJson
      * -r Integer List of SeedURLs
      * The Integer has to be 0, 1, 2 or 3 and selects the ranking method.
+     * -t Integer sets the number of pages fetched at the same time.
+     * -p Integer crawls with a pipeline which lemmatizes the pages with the
+     * given number of threads.
+     * --host-threads Integer sets the number of requests to the same host at
+     * the same time.
+     * --host-delay Integer sets the milliseconds between two requests to the
+     * same host.
+     * --fast Path lemmatizes with the lemma table in the file instead of
+     * running the POS tagger.
+     * -k Integer prints only the best k search results.
+     * --save Path crawls the net and saves the index to the file.
+     * --load Path loads the index from the file instead of crawling.
+     * --update Path loads the index from the file, crawls the net again,
+     * updates the changed pages and saves the index to the file.
+     * --serve Integer answers search queries over HTTP on the given port
+     * instead of reading them from stdin.
      * It returns a map with the possible keys: "-r", "json" "seedURLs" with
      * their corresponding List of Strings.
      * @param args arguments passed with program call
@@ -137,6 +289,16 @@ public final class AnguillaSearch {
         validArgs.put("--help", false);
         validArgs.put("-r", true);
         validArgs.put("--color", false);
+        validArgs.put("-t", true);
+        validArgs.put("-p", true);
+        validArgs.put("--host-threads", true);
+        validArgs.put("--host-delay", true);
+        validArgs.put("--fast", true);
+        validArgs.put("-k", true);
+        validArgs.put("--save", true);
+        validArgs.put("--load", true);
+        validArgs.put("--update", true);
+        validArgs.put("--serve", true);
 
         if (argCount == 0) {
             return argMap;
@@ -187,12 +349,77 @@ public final class AnguillaSearch {
                 System.exit(2);
             }
         }
+        // check if the parameter for argument -t is a positive number.
+        if (argMap.containsKey("-t")) {
+            if (!argMap.get("-t").matches("^[1-9][0-9]{0,3}$")) {
+                System.out.println("-t option only accepts a number of fetch"
+                                    + " threads between 1 and 9999.");
+                System.exit(2);
+            }
+        }
+        // check if the parameter for argument -p is a positive number.
+        if (argMap.containsKey("-p")) {
+            if (!argMap.get("-p").matches("^[1-9][0-9]{0,2}$")) {
+                System.out.println("-p option only accepts a number of parser"
+                                    + " threads between 1 and 999.");
+                System.exit(2);
+            }
+        }
+        // check if the parameter for argument --host-threads is a positive
+        // number.
+        if (argMap.containsKey("--host-threads")) {
+            if (!argMap.get("--host-threads").matches("^[1-9][0-9]{0,2}$")) {
+                System.out.println("--host-threads option only accepts a"
+                                    + " number of requests between 1 and"
+                                    + " 999.");
+                System.exit(2);
+            }
+        }
+        // check if the parameter for argument --host-delay is a number.
+        if (argMap.containsKey("--host-delay")) {
+            if (!argMap.get("--host-delay").matches("^[0-9]{1,6}$")) {
+                System.out.println("--host-delay option only accepts a delay"
+                                    + " between 0 and 999999 ms.");
+                System.exit(2);
+            }
+        }
+        // check if the parameter for argument -k is a positive number.
+        if (argMap.containsKey("-k")) {
+            if (!argMap.get("-k").matches("^[1-9][0-9]{0,5}$")) {
+                System.out.println("-k option only accepts a number of search"
+                                    + " results between 1 and 999999.");
+                System.exit(2);
+            }
+        }
+        // check if the parameter for argument --serve is a port.
+        if (argMap.containsKey("--serve")) {
+            if (!argMap.get("--serve").matches("^[0-9]{1,5}$")
+                || Integer.parseInt(argMap.get("--serve")) > 65535) {
+                System.out.println("--serve option only accepts a port"
+                                    + " between 0 and 65535.");
+                System.exit(2);
+            }
+        }
+        // a loaded index would only be saved again.
+        if (argMap.containsKey("--save") && argMap.containsKey("--load")) {
+            System.out.println("--save and --load can not be used together.");
+            System.exit(2);
+        }
+        // an updated index is saved to the file it was loaded from.
+        if (argMap.containsKey("--update")
+            && (argMap.containsKey("--save") || argMap.containsKey("--load"))) {
+            System.out.println("--update can not be used with --save or"
+                               + " --load.");
+            System.exit(2);
+        }
         return argMap;
     }
     private static void printQuery(final Indexer index, final String query, 
-                                   final int rankMode) {
-        List<SearchResult> searchResults = index.searchQuery(query, rankMode);
+                                   final int rankMode, final int maxResults) {
+        // the query is lemmatized once for the search and the highlighting
         List<String> queryLemmas = Parser.tokLem(query);
+        List<SearchResult> searchResults = index.searchLemmas(queryLemmas,
+                                                    rankMode, maxResults);
         int i = 1;
         if (searchResults.isEmpty()) {
             System.out.format("No search results found for query \"%s\"%n%n",
@@ -203,7 +430,7 @@ public final class AnguillaSearch {
             System.out.format("URL: %s%n", searchResult.url());
             String title = searchResult.page().getTitle();
             String sentenceWithQuery = getFirstQuerySentence(searchResult.
-                                                            page(), query);
+                                                    page(), queryLemmas);
             String header = searchResult.page().getHeader();
             if (color) {
                 title = highlightString(title, queryLemmas);
@@ -219,9 +446,8 @@ public final class AnguillaSearch {
         }
     }
     private static String getFirstQuerySentence(final Page p, 
-                                                final String query) {
-        // we lemmatize the query to possibly get more matches
-        List<String> queryLemmas = Parser.tokLem(query);
+                                        final List<String> queryLemmas) {
+        // the lemmas of the query possibly get more matches
         // we split the content into sentences. The punction marks get removed.
         String[] sentences = p.getContent().split("[.!?:;]");
         String firstSentence = null;
@@ -298,6 +524,37 @@ public final class AnguillaSearch {
         System.out.format("%-20s %s%n", arg, desc);
         desc = "3 - Cosine Similarity with weights ";
         System.out.format("%-20s %s%n", arg, desc);
+        arg = "-t Integer";
+        desc = "Number of pages fetched at the same time (default 1)";
+        System.out.format("%-20s %s%n", arg, desc);
+        arg = "-p Integer";
+        desc = "Lemmatize pages with this many threads while crawling";
+        System.out.format("%-20s %s%n", arg, desc);
+        arg = "--host-threads Int";
+        desc = "Requests to the same host at the same time (default "
+               + Crawler.DEFAULT_HOST_THREADS + ")";
+        System.out.format("%-20s %s%n", arg, desc);
+        arg = "--host-delay Int";
+        desc = "Milliseconds between two requests to a host (default 0)";
+        System.out.format("%-20s %s%n", arg, desc);
+        arg = "--fast Path";
+        desc = "Lemmatize with a lemma table instead of the POS tagger";
+        System.out.format("%-20s %s%n", arg, desc);
+        arg = "-k Integer";
+        desc = "Print only the best k search results (default all)";
+        System.out.format("%-20s %s%n", arg, desc);
+        arg = "--save Path";
+        desc = "Crawl the net and save the index to the file";
+        System.out.format("%-20s %s%n", arg, desc);
+        arg = "--load Path";
+        desc = "Load the index from the file instead of crawling";
+        System.out.format("%-20s %s%n", arg, desc);
+        arg = "--update Path";
+        desc = "Crawl the net again and update the index in the file";
+        System.out.format("%-20s %s%n", arg, desc);
+        arg = "--serve Port";
+        desc = "Answer searches over HTTP: /search?q=&mode=&k= and /stats";
+        System.out.format("%-20s %s%n", arg, desc);
 
     }
 }
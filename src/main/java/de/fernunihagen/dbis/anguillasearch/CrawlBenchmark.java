@@ -0,0 +1,119 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Measures the crawl throughput on a synthetic net, which is served by an
+ * IntranetServer on the loopback address, so the benchmark needs no
+ * network and every run crawls the same net.
+ * The crawler fetches the pages with fetchAll() and extracts their text and
+ * links, the pages are not lemmatized. Every host gets as many requests at
+ * the same time as the fetch threads allow, so the politeness does not
+ * limit the throughput.
+ * Prints the number of fetched pages, requests and injected failures, the
+ * time, the pages and MB per second and if every page was fetched.
+ * Usage: CrawlBenchmark [number of pages] [hosts] [latency in ms]
+ * [failure rate] [fetch threads] [path to write the net JSON to]
+ */
+public final class CrawlBenchmark {
+    /** Number of pages, if none is given. */
+    private static final int DEFAULT_PAGES = 10_000;
+    /** Number of hosts, if none are given. */
+    private static final int DEFAULT_HOSTS = 4;
+    /** Latency of a response, if none is given. */
+    private static final long DEFAULT_LATENCY_MILLIS = 5;
+    /** Number of fetch threads, if none is given. */
+    private static final int DEFAULT_FETCH_THREADS = 32;
+    /** Number of words of the content of a page. */
+    private static final int CONTENT_WORDS = 200;
+    /** Number of words the pages are made of. */
+    private static final int VOCABULARY_SIZE = 5_000;
+    /** Nanoseconds of a second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+    /** Bytes of a megabyte. */
+    private static final double MEGABYTE = 1 << 20;
+    /** Argument index of the failure rate. */
+    private static final int FAILURE_RATE_ARG = 3;
+    /** Argument index of the fetch threads. */
+    private static final int FETCH_THREADS_ARG = 4;
+    /** Argument index of the path of the net JSON. */
+    private static final int JSON_ARG = 5;
+
+    private CrawlBenchmark() {
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments
+     */
+    public static void main(final String[] args) {
+        int numPages = DEFAULT_PAGES;
+        int hosts = DEFAULT_HOSTS;
+        long latencyMillis = DEFAULT_LATENCY_MILLIS;
+        double failureRate = 0;
+        int fetchThreads = DEFAULT_FETCH_THREADS;
+        if (args.length > 0) {
+            numPages = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            hosts = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2) {
+            latencyMillis = Long.parseLong(args[2]);
+        }
+        if (args.length > FAILURE_RATE_ARG) {
+            failureRate = Double.parseDouble(args[FAILURE_RATE_ARG]);
+        }
+        if (args.length > FETCH_THREADS_ARG) {
+            fetchThreads = Integer.parseInt(args[FETCH_THREADS_ARG]);
+        }
+        SyntheticNet net = new SyntheticNet(numPages,
+                                            SyntheticCorpus.AVG_OUT_DEGREE,
+                                            VOCABULARY_SIZE, CONTENT_WORDS,
+                                            SyntheticCorpus.DEFAULT_SEED);
+        // the jitter is as large as the latency, so the hosts answer in a
+        // different order than they were asked.
+        try (IntranetServer server = new IntranetServer(net, hosts,
+                                        latencyMillis, latencyMillis,
+                                        failureRate)) {
+            if (args.length > JSON_ARG) {
+                server.writeJson(Path.of(args[JSON_ARG]));
+            }
+            run(server, numPages, hosts, fetchThreads);
+        } catch (IOException e) {
+            System.out.println(e.toString());
+            System.out.println("The synthetic net could not be served.");
+            System.exit(1);
+        }
+    }
+    /**
+     * Crawls the served net and prints the results.
+     * @param server the server of the net
+     * @param numPages number of pages of the net
+     * @param hosts number of hosts of the net
+     * @param fetchThreads number of pages which are fetched at the same time
+     */
+    private static void run(final IntranetServer server, final int numPages,
+                            final int hosts, final int fetchThreads) {
+        Crawler.setPoliteness(Math.max(Crawler.DEFAULT_HOST_THREADS,
+                              (fetchThreads + hosts - 1) / hosts), 0);
+        Crawler crawler = new Crawler(server.getSeedURLs(), Integer.MAX_VALUE,
+                                      fetchThreads);
+        long start = System.nanoTime();
+        int fetched = crawler.fetchAll((url, text) -> { });
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        System.out.format("%10s %6s %8s %10s %9s %10s %12s %10s %8s %9s%n",
+                          "Pages", "Hosts", "Threads", "Requests",
+                          "Failures", "Links", "Time (ms)", "Pages/s", "MB/s",
+                          "Complete");
+        System.out.format("%10d %6d %8d %10d %9d %10d %12.0f %10.0f %8.1f "
+                          + "%9s%n", fetched, hosts, fetchThreads,
+                          server.getNumRequests(), server.getNumFailures(),
+                          crawler.getNumLinks(), seconds * 1000,
+                          fetched / seconds,
+                          server.getBytesServed() / MEGABYTE / seconds,
+                          fetched == numPages ? "yes" : "no");
+    }
+}
@@ -0,0 +1,371 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Crawls a net in three stages, which run at the same time.
+ * The fetch stage is the crawler, which puts the fetched documents into a
+ * bounded queue. A pool of parser threads takes the documents, lemmatizes
+ * them and puts the resulting pages into a second bounded queue. The index
+ * stage takes the pages one by one and hands them to the consumer.
+ * If a stage is slower than the one before, the queue in between fills up
+ * and the stage before blocks until there is room again.
+ * If a stage fails, e.g. the consumer throws an exception, the failure is
+ * recorded and all stages stop: a blocked stage checks every POLL_MILLIS
+ * whether a stage failed. run() then throws the failure.
+ */
+public class CrawlPipeline {
+    /** Default capacity of the queues between the stages. */
+    static final int DEFAULT_QUEUE_CAPACITY = 64;
+    /** Marks the end of the document queue. */
+    private static final FetchedDoc END_OF_DOCS = new FetchedDoc(null, null);
+    /** Marks the end of the page queue. */
+    private static final Page END_OF_PAGES = new Page("", "", "", "",
+                                                new HashSet<>(), true);
+    /** Time a blocked stage waits, before it checks if a stage failed. */
+    private static final long POLL_MILLIS = 100;
+    /** The crawler, which is used as the fetch stage. */
+    private final Crawler crawler;
+    /** Number of threads which parse and lemmatize the documents. */
+    private final int parseThreads;
+    /** Capacity of the queues between the stages. */
+    private final int queueCapacity;
+    /** Receives the parsed pages, is only called by the index thread. */
+    private final Consumer<Page> indexStage;
+    /** Counter of the fetch stage. */
+    private final StageCounter fetchCounter = new StageCounter("fetch");
+    /** Counter of the parse stage. */
+    private final StageCounter parseCounter = new StageCounter("parse");
+    /** Counter of the index stage. */
+    private final StageCounter indexCounter = new StageCounter("index");
+    /** Wall clock time of the last run in nanoseconds. */
+    private long wallNanos = 0;
+    /** The first failure of a stage in the current run, null if none. */
+    private final AtomicReference<Throwable> failure =
+                                                    new AtomicReference<>();
+
+    /**
+     * Creates a pipeline with the default queue capacity.
+     * @param crawler the crawler which fetches the documents
+     * @param parseThreads number of threads which parse the documents
+     * @param indexStage receives the parsed pages one by one
+     */
+    CrawlPipeline(final Crawler crawler, final int parseThreads,
+                  final Consumer<Page> indexStage) {
+        this(crawler, parseThreads, DEFAULT_QUEUE_CAPACITY, indexStage);
+    }
+    /**
+     * Creates a pipeline.
+     * @param crawler the crawler which fetches the documents
+     * @param parseThreads number of threads which parse the documents
+     * @param queueCapacity capacity of the queues between the stages
+     * @param indexStage receives the parsed pages one by one
+     */
+    CrawlPipeline(final Crawler crawler, final int parseThreads,
+                  final int queueCapacity, final Consumer<Page> indexStage) {
+        if (parseThreads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException(
+                "parseThreads and queueCapacity have to be at least 1.");
+        }
+        this.crawler = crawler;
+        this.parseThreads = parseThreads;
+        this.queueCapacity = queueCapacity;
+        this.indexStage = indexStage;
+    }
+
+    /**
+     * Runs all stages until every reachable page is fetched, parsed and
+     * handed to the index stage.
+     * @return the number of pages handed to the index stage.
+     * @throws RuntimeException the first failure of a stage, all stages are
+     * stopped before it is thrown
+     * @throws Error the first failure of a stage, like a RuntimeException
+     */
+    public int run() {
+        long startTimestamp = System.nanoTime();
+        failure.set(null);
+        BlockingQueue<FetchedDoc> docQueue =
+                                    new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Page> pageQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        // load the CoreNLP models before the parser threads start, so the
+        // model loading is not counted as parse time.
+        Parser.tokLem("");
+
+        List<Thread> parsers = new ArrayList<>(parseThreads);
+        for (int i = 0; i < parseThreads; i++) {
+            Thread parser = new Thread(() -> parseLoop(docQueue, pageQueue),
+                                       "parser-" + i);
+            parsers.add(parser);
+            parser.start();
+        }
+        Thread indexer = new Thread(() -> indexLoop(pageQueue), "indexer");
+        indexer.start();
+
+        try {
+            try {
+                // the fetching itself happens in the threads of the crawler,
+                // so only the number of documents is counted here.
+                crawler.fetchAll((url, text) -> {
+                    fetchCounter.count(0);
+                    long waitStart = System.nanoTime();
+                    if (!put(docQueue, new FetchedDoc(url, text))) {
+                        // stops the crawler, the failure is thrown below
+                        throw new CancellationException();
+                    }
+                    fetchCounter.blocked(System.nanoTime() - waitStart);
+                });
+            } catch (CancellationException e) {
+                // another stage failed
+            } catch (RuntimeException | Error e) {
+                fail(e);
+            }
+            // every parser thread stops after taking one end marker.
+            for (int i = 0; i < parseThreads; i++) {
+                put(docQueue, END_OF_DOCS);
+            }
+            for (Thread parser : parsers) {
+                parser.join();
+            }
+            put(pageQueue, END_OF_PAGES);
+            indexer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            parsers.forEach(Thread::interrupt);
+            indexer.interrupt();
+            System.out.println("Crawl pipeline was interrupted.");
+        }
+        wallNanos = System.nanoTime() - startTimestamp;
+        System.out.println("Crawling and lemmatizing took: "
+                           + wallNanos / 1_000_000 + "ms");
+        Throwable failed = failure.get();
+        if (failed instanceof RuntimeException) {
+            throw (RuntimeException) failed;
+        }
+        if (failed instanceof Error) {
+            throw (Error) failed;
+        }
+        return (int) indexCounter.getItems();
+    }
+    /**
+     * Records the failure of a stage, only the first one is kept.
+     * @param e the failure
+     */
+    private void fail(final Throwable e) {
+        failure.compareAndSet(null, e);
+    }
+    /**
+     * Puts an item into a queue and waits while the queue is full, until a
+     * stage failed.
+     * @param queue the queue
+     * @param item the item
+     * @param <T> type of the items
+     * @return true if the item was put, false if a stage failed.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private <T> boolean put(final BlockingQueue<T> queue, final T item)
+            throws InterruptedException {
+        while (failure.get() == null) {
+            if (queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Takes an item from a queue and waits while the queue is empty, until
+     * a stage failed.
+     * @param queue the queue
+     * @param <T> type of the items
+     * @return the item, null if a stage failed.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private <T> T take(final BlockingQueue<T> queue)
+            throws InterruptedException {
+        while (failure.get() == null) {
+            T item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (item != null) {
+                return item;
+            }
+        }
+        return null;
+    }
+    /**
+     * Work loop of a parser thread. Parses documents till it takes the end
+     * marker or a stage failed. A page, which can not be parsed, is skipped,
+     * any other failure stops the pipeline.
+     * @param docQueue queue of fetched documents
+     * @param pageQueue queue of parsed pages
+     */
+    private void parseLoop(final BlockingQueue<FetchedDoc> docQueue,
+                           final BlockingQueue<Page> pageQueue) {
+        try {
+            FetchedDoc fetched = take(docQueue);
+            while (fetched != null && fetched != END_OF_DOCS) {
+                long start = System.nanoTime();
+                Page page = null;
+                try {
+                    page = Parser.parse(fetched.url(), fetched.text());
+                } catch (RuntimeException e) {
+                    System.out.println("Failed to parse: " + fetched.url());
+                }
+                parseCounter.count(System.nanoTime() - start);
+                if (page != null) {
+                    long waitStart = System.nanoTime();
+                    if (!put(pageQueue, page)) {
+                        return;
+                    }
+                    parseCounter.blocked(System.nanoTime() - waitStart);
+                }
+                fetched = take(docQueue);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e) {
+            fail(e);
+        }
+    }
+    /**
+     * Work loop of the index thread. Hands pages to the index stage till it
+     * takes the end marker or a stage failed. A failure of the index stage
+     * stops the pipeline.
+     * @param pageQueue queue of parsed pages
+     */
+    private void indexLoop(final BlockingQueue<Page> pageQueue) {
+        try {
+            Page page = take(pageQueue);
+            while (page != null && page != END_OF_PAGES) {
+                long start = System.nanoTime();
+                indexStage.accept(page);
+                indexCounter.count(System.nanoTime() - start);
+                if (indexCounter.getItems() % 100 == 0) {
+                    System.out.println("Indexed " + indexCounter.getItems()
+                                       + " pages");
+                }
+                page = take(pageQueue);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e) {
+            fail(e);
+        }
+    }
+    /**
+     * Prints the throughput of every stage of the last run. Items/s busy is
+     * the throughput of a single thread of the stage. A stage, which spends a
+     * lot of time blocked, is faster than the stage after it.
+     */
+    public void printStageReport() {
+        System.out.format("%-8s %8s %12s %12s %14s %12s%n", "Stage", "Items",
+                          "Items/s", "Busy (ms)", "Items/s busy",
+                          "Blocked (ms)");
+        fetchCounter.print(wallNanos);
+        parseCounter.print(wallNanos);
+        indexCounter.print(wallNanos);
+    }
+    /**
+     * Returns the counter of the fetch stage.
+     * @return the counter of the fetch stage.
+     */
+    protected StageCounter getFetchCounter() {
+        return fetchCounter;
+    }
+    /**
+     * Returns the counter of the parse stage.
+     * @return the counter of the parse stage.
+     */
+    protected StageCounter getParseCounter() {
+        return parseCounter;
+    }
+    /**
+     * Returns the counter of the index stage.
+     * @return the counter of the index stage.
+     */
+    protected StageCounter getIndexCounter() {
+        return indexCounter;
+    }
+
+    /**
+     * Thread-safe throughput counter of a single stage.
+     */
+    static final class StageCounter {
+        /** Name of the stage. */
+        private final String name;
+        /** Number of processed items. */
+        private final AtomicLong items = new AtomicLong();
+        /** Cumulated processing time of all threads of the stage. */
+        private final AtomicLong busyNanos = new AtomicLong();
+        /** Cumulated time the stage waited for room in the next queue. */
+        private final AtomicLong blockedNanos = new AtomicLong();
+
+        StageCounter(final String name) {
+            this.name = name;
+        }
+        /**
+         * Counts a processed item.
+         * @param nanos time it took to process the item.
+         */
+        void count(final long nanos) {
+            items.incrementAndGet();
+            busyNanos.addAndGet(nanos);
+        }
+        /**
+         * Adds time the stage was blocked by a full queue.
+         * @param nanos time the stage was blocked.
+         */
+        void blocked(final long nanos) {
+            blockedNanos.addAndGet(nanos);
+        }
+        /**
+         * Returns the number of processed items.
+         * @return the number of processed items.
+         */
+        long getItems() {
+            return items.get();
+        }
+        /**
+         * Returns the time the stage was blocked by a full queue in ms.
+         * @return the time the stage was blocked in ms.
+         */
+        long getBlockedMillis() {
+            return blockedNanos.get() / 1_000_000;
+        }
+        /**
+         * Prints a line with the counters of the stage. Busy time which was
+         * not measured is printed as "-".
+         * @param wallNanos wall clock time of the whole run.
+         */
+        void print(final long wallNanos) {
+            double perSecond = wallNanos == 0 ? 0
+                : items.get() * 1e9 / wallNanos;
+            String busyMillis = "-";
+            String busyPerSecond = "-";
+            if (busyNanos.get() > 0) {
+                busyMillis = Long.toString(busyNanos.get() / 1_000_000);
+                busyPerSecond = String.format("%.1f",
+                                    items.get() * 1e9 / busyNanos.get());
+            }
+            System.out.format("%-8s %8d %12.1f %12s %14s %12d%n", name,
+                              items.get(), perSecond, busyMillis,
+                              busyPerSecond, getBlockedMillis());
+        }
+    }
+    /**
+     * A fetched document waiting to be parsed.
+     * @param url the absolute URL of the page
+     * @param text the text extracted from the fetched document
+     */
+    private record FetchedDoc(
+        String url,
+        PageText text
+    ) { }
+}
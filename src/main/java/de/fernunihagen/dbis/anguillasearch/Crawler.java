@@ -1,15 +1,26 @@
 package de.fernunihagen.dbis.anguillasearch;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -18,19 +29,72 @@ import java.util.Queue;
  * content of the pages.
  * The net can be specified by a path to a json with the field "Seed-URLs"
  * or by providing a String array with the Seed-URLs directly.
+ * If more than one fetch thread is configured, the crawler keeps up to that
+ * many requests in flight at the same time. The frontier has a queue for
+ * every host, so a host gets no more requests at the same time and no
+ * sooner after each other than configured with setPoliteness(), while the
+ * other hosts are crawled.
+ * All crawlers share one HTTP client, which keeps the connections to the
+ * hosts open. Requests, which time out or get a 429 or 5xx status, are
+ * retried with an exponential backoff.
+ * With a FetchStore the crawler sends conditional requests for pages it
+ * fetched before. Pages, which are not modified or have the same body as
+ * before, are not parsed and lemmatized again, only their stored links are
+ * followed. Their URLs are collected as unchanged URLs.
  */
 public class Crawler {
     /** The Number of Links the crawler has found. */
     private int numLinks = 0;
-    /** The queue of URLs the crawler has still process. */
-    private Queue<String> queue = new LinkedList<>();
+    /** Default number of requests to the same host at the same time. */
+    static final int DEFAULT_HOST_THREADS = 2;
+    /** How often a page is fetched, before it is given up. */
+    static final int MAX_ATTEMPTS = 3;
+    /** Backoff before the first retry, it doubles with every retry. */
+    static final long RETRY_BACKOFF_MILLIS = 500;
+    /** Time to connect to a host. */
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    /** Time from sending a request till the response headers arrive. */
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    /** Shared by all crawlers, keeps the connections to the hosts open. */
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+                            .version(HttpClient.Version.HTTP_1_1)
+                            .connectTimeout(CONNECT_TIMEOUT)
+                            .followRedirects(HttpClient.Redirect.NORMAL)
+                            .build();
+    /** Requests to the same host at the same time of new crawlers. */
+    private static volatile int hostThreads = DEFAULT_HOST_THREADS;
+    /** Time between two requests to the same host of new crawlers. */
+    private static volatile long hostDelayMillis = 0;
+    /** The queues of URLs the crawler has still process, one per host. */
+    private HostFrontier frontier = new HostFrontier(hostThreads,
+                            TimeUnit.MILLISECONDS.toNanos(hostDelayMillis));
+    /** How often the fetch of a URL failed with a transient error. */
+    private Map<String, Integer> failedAttempts = new HashMap<>();
     /** A Set of all URLs the crawler has already encountered. */
-    private HashSet<String> knownURL = new HashSet<>();
+    private Set<String> knownURL = ConcurrentHashMap.newKeySet();
     /** The Seed-URLs, starting point for the crawling process. */
     private String[] seedURLs = {};
     /** The crawled Pages, already split in title, header and content. */
     private List<Page> crawledPages = new LinkedList<>();
     private int maxPages = 2147483647;
+    /** How many pages are fetched at the same time. 1 crawls sequentially. */
+    private int fetchThreads = 1;
+    /** Status code of a response to a conditional request, if the page did
+     * not change. */
+    private static final int HTTP_NOT_MODIFIED = 304;
+    /** Status code of a host, which gets too many requests. */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    /** First status code of a server error. */
+    private static final int HTTP_SERVER_ERROR = 500;
+    /** What is known about pages fetched before, null to fetch every page
+     * unconditionally. */
+    private FetchStore fetchStore = null;
+    /** URLs of the pages, which did not change since the last fetch. */
+    private Set<String> unchangedURLs = ConcurrentHashMap.newKeySet();
+    /** Number of unchanged pages, the server answered 304 Not Modified. */
+    private int numNotModified = 0;
+    /** Body bytes of the unchanged pages, which were not downloaded. */
+    private long bytesSaved = 0;
     /*
      * Initializes the Crawler
      * @param seedURLs seedURLs should containt the absolute URLs, where the
@@ -39,7 +103,7 @@ public class Crawler {
     Crawler(final String[] seedURLs) {
         this.seedURLs = seedURLs;
         for (String current : seedURLs) {
-            queue.add(current);
+            frontier.add(current, System.nanoTime());
             knownURL.add(current);
         }
     }
@@ -47,10 +111,26 @@ public class Crawler {
         this.seedURLs = seedURLs;
         this.maxPages = maxPages;
         for (String current : seedURLs) {
-            queue.add(current);
+            frontier.add(current, System.nanoTime());
             knownURL.add(current);
         }
     }
+    /**
+     * Initializes a crawler which fetches up to fetchThreads pages
+     * concurrently.
+     * @param seedURLs the absolute URLs, where the crawler starts crawling.
+     * @param maxPages maximum number of pages which will be crawled.
+     * @param fetchThreads number of pages which are fetched at the same time.
+     */
+    Crawler(final String[] seedURLs, final int maxPages,
+            final int fetchThreads) {
+        this(seedURLs, maxPages);
+        if (fetchThreads < 1) {
+            throw new IllegalArgumentException(
+                "fetchThreads has to be at least 1.");
+        }
+        this.fetchThreads = fetchThreads;
+    }
 
 
     /**
@@ -59,41 +139,359 @@ public class Crawler {
      * @return  the number of found sites.
      */
     protected int crawl() {
+        if (fetchThreads > 1) {
+            return crawlConcurrent();
+        }
         long startTimestamp = System.currentTimeMillis();
-        Document doc;
         String curURL;
 
         //crawl every website following links
-        while (!queue.isEmpty() && crawledPages.size() < maxPages) {
-            curURL = queue.poll();
-            try {
-                doc = Jsoup.connect(curURL).get();
-                knownURL.add(curURL);
-                Page curSite = (Parser.parse(curURL, doc));
-                crawledPages.add(curSite);
+        try {
+            while (crawledPages.size() + unchangedURLs.size() < maxPages
+                   && (curURL = nextURL()) != null) {
+                FetchResult result = fetch(curURL);
+                if (!finishFetch(result)) {
+                    continue;
+                }
+                if (result.unchanged()) {
+                    // the stored links are followed without parsing the page
+                    skipPage(result);
+                    enqueueLinks(result.links());
+                } else {
+                    knownURL.add(curURL);
+                    Page curSite = (Parser.parse(curURL, result.text()));
+                    crawledPages.add(curSite);
 
-                //add all new found links into queue
-                for (String curLink : curSite.getLinks()) {
-                //knownURL is a hashSet, knownURL.add(curLink) is only true, if
-                //curLink was added successfully, therefor is a new URL.
-                    if (knownURL.add(curLink)) {
-                     queue.add(curLink);
+                    //add all new found links into the frontier
+                    enqueueLinks(curSite.getLinks());
+                    if (crawledPages.size() % 100 == 0) {
+                        System.out.println("Crawled " + crawledPages.size()
+                                           + " pages");
                     }
-                    numLinks++;
                 }
-            } catch (IOException e) {
-                System.out.println("Failed to fetch: " + curURL);
-            }
-            if (crawledPages.size() % 100 == 0) {
-                System.out.println("Crawled " + crawledPages.size() + " pages");
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Crawling was interrupted.");
         }
-        //Document curSite = Jsoup.connect(null)
         long stopTimeStamp = System.currentTimeMillis();
         long crawlTime = stopTimeStamp - startTimestamp;
         System.out.println("Crawling and lemmatizing took: " + crawlTime + "ms");
+        printFetchReport();
+        return crawledPages.size();
+    }
+    /**
+     * Crawls the net like crawl(), but keeps up to fetchThreads requests in
+     * flight. Only the fetching happens in the worker threads, parsing and
+     * updating the frontier is done by the calling thread, so the results
+     * are the same as with a sequential crawl.
+     * @return the number of found sites.
+     */
+    private int crawlConcurrent() {
+        long startTimestamp = System.currentTimeMillis();
+        fetchAll((url, text) -> storePage(Parser.parse(url, text)));
+        long crawlTime = System.currentTimeMillis() - startTimestamp;
+        System.out.println("Crawling and lemmatizing took: " + crawlTime + "ms");
+        printFetchReport();
         return crawledPages.size();
     }
+    /**
+     * Fetches all pages reachable from the Seed-URLs with up to fetchThreads
+     * requests in flight and passes every fetched document to the handler.
+     * The links of a document are added to the queue before the handler is
+     * called, so a slow handler does not hold back the frontier. The
+     * handler is always called by the calling thread, if it blocks no new
+     * fetches are submitted.
+     * A page slot is reserved when a fetch is submitted, so no more than
+     * maxPages pages are ever fetched. A URL is only submitted, when its
+     * host may get another request.
+     * Unchanged pages are not passed to the handler, only their stored
+     * links are added to the queue.
+     * @param handler receives every successfully fetched document.
+     * @return the number of fetched pages.
+     */
+    protected int fetchAll(final DocumentHandler handler) {
+        ExecutorService pool = Executors.newFixedThreadPool(fetchThreads);
+        CompletionService<FetchResult> fetches =
+                                        new ExecutorCompletionService<>(pool);
+        int inFlight = 0;
+        int numFetched = 0;
+        boolean done = false;
+
+        try {
+            while (!done) {
+                // fill up the free fetch slots, without exceeding maxPages
+                long now = System.nanoTime();
+                String url = null;
+                while (inFlight < fetchThreads
+                       && numFetched + inFlight < maxPages
+                       && (url = frontier.poll(now)) != null) {
+                    String fetchedURL = url;
+                    fetches.submit(() -> fetch(fetchedURL));
+                    inFlight++;
+                }
+                // the hosts of the queued URLs have to wait, if a slot is
+                // free but no URL was submitted.
+                long wait = Long.MAX_VALUE;
+                if (inFlight < fetchThreads
+                    && numFetched + inFlight < maxPages) {
+                    wait = frontier.nanosUntilReady(now);
+                }
+                // nothing in flight and nothing to wait for means the
+                // frontier is empty or maxPages is reached.
+                if (inFlight == 0 && wait == Long.MAX_VALUE) {
+                    done = true;
+                } else if (inFlight == 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } else {
+                    Future<FetchResult> fetched = wait == Long.MAX_VALUE
+                        ? fetches.take()
+                        : fetches.poll(wait, TimeUnit.NANOSECONDS);
+                    if (fetched != null) {
+                        inFlight--;
+                        FetchResult result = fetched.get();
+                        if (!finishFetch(result)) {
+                            continue;
+                        }
+                        numFetched++;
+                        enqueueLinks(result.links());
+                        if (result.unchanged()) {
+                            skipPage(result);
+                        } else {
+                            handler.handle(result.url(), result.text());
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Crawling was interrupted.");
+        } catch (ExecutionException e) {
+            System.out.println("Fetching failed: " + e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return numFetched;
+    }
+    /**
+     * Takes the next URL from the frontier and waits, until its host may get
+     * the request. Is used by the sequential crawl, which has no request in
+     * flight while it waits.
+     * @return the URL, null if the frontier is empty.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private String nextURL() throws InterruptedException {
+        while (!frontier.isEmpty()) {
+            long now = System.nanoTime();
+            String url = frontier.poll(now);
+            if (url != null) {
+                return url;
+            }
+            TimeUnit.NANOSECONDS.sleep(frontier.nanosUntilReady(now));
+        }
+        return null;
+    }
+    /**
+     * Tells the frontier, that a fetch is finished. A transient failure is
+     * retried after a backoff, until the page was fetched MAX_ATTEMPTS times.
+     * @param result the result of the fetch
+     * @return true if the page was fetched or is unchanged, false if it
+     * failed or is retried.
+     */
+    private boolean finishFetch(final FetchResult result) {
+        long now = System.nanoTime();
+        if (result.retry()) {
+            int attempts = failedAttempts.merge(result.url(), 1, Integer::sum);
+            if (attempts < MAX_ATTEMPTS) {
+                long backoff = TimeUnit.MILLISECONDS.toNanos(
+                                    RETRY_BACKOFF_MILLIS << (attempts - 1));
+                frontier.retry(result.url(), backoff, now);
+                return false;
+            }
+        }
+        frontier.done(result.url(), now);
+        if (!result.unchanged() && result.text() == null) {
+            System.out.println("Failed to fetch: " + result.url());
+            return false;
+        }
+        return true;
+    }
+    /**
+     * Fetches the page of the url and extracts its links. Is executed by the
+     * fetch threads.
+     * If the page is in the fetch store, the request contains its ETag and
+     * Last-Modified headers. A page is unchanged, if the server answers 304
+     * Not Modified or the body has the same hash as before. The text of
+     * an unchanged page is not used, the links are taken from the store.
+     * The text is extracted while the body is downloaded, the body is
+     * neither kept in memory nor parsed into a document.
+     * @param url the absolute URL of the page.
+     * @return the fetched text, the text is null if the page could not be
+     * fetched or is unchanged.
+     */
+    private FetchResult fetch(final String url) {
+        FetchStore.FetchInfo known = fetchStore == null ? null
+                                                        : fetchStore.get(url);
+        HttpResponse<InputStream> response;
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(
+                                                        URI.create(url))
+                                            .timeout(REQUEST_TIMEOUT);
+            if (known != null && known.etag() != null) {
+                request.header("If-None-Match", known.etag());
+            }
+            if (known != null && known.lastModified() != null) {
+                request.header("If-Modified-Since", known.lastModified());
+            }
+            response = HTTP_CLIENT.send(request.build(),
+                                HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            // timeouts and refused or reset connections may be transient
+            return failed(url, true);
+        } catch (IllegalArgumentException e) {
+            // no valid http or https URL
+            return failed(url, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(url, false);
+        }
+        try (InputStream body = response.body()) {
+            return readBody(url, known, response, body);
+        } catch (IOException e) {
+            // the connection broke while the body was downloaded
+            return failed(url, true);
+        }
+    }
+    /**
+     * Handles the response of a fetch and extracts the text of the body.
+     * @param url the absolute URL of the page.
+     * @param known what the fetch store knows about the page, may be null
+     * @param response the response
+     * @param body the body of the response
+     * @return the fetch result.
+     * @throws IOException if the body can not be read
+     */
+    private FetchResult readBody(final String url,
+                                 final FetchStore.FetchInfo known,
+                                 final HttpResponse<InputStream> response,
+                                 final InputStream body) throws IOException {
+        int status = response.statusCode();
+        if (known != null && status == HTTP_NOT_MODIFIED) {
+            return new FetchResult(url, null, known.links(), true,
+                                   known.bodyBytes(), false);
+        }
+        if (status == HTTP_TOO_MANY_REQUESTS || status >= HTTP_SERVER_ERROR) {
+            return failed(url, true);
+        }
+        String contentType = response.headers().firstValue("Content-Type")
+                                               .orElse("text/html");
+        if (status / 100 != 2 || !isHTML(contentType)) {
+            return failed(url, false);
+        }
+        if (fetchStore == null) {
+            PageText text = HtmlExtractor.extract(body,
+                                                  charsetOf(contentType));
+            return new FetchResult(url, text, text.links(), false, 0, false);
+        }
+        FetchStore.HashingInputStream hashedBody =
+                                    new FetchStore.HashingInputStream(body);
+        PageText text = HtmlExtractor.extract(hashedBody,
+                                              charsetOf(contentType));
+        String hash = hashedBody.hash();
+        if (known != null && hash.equals(known.contentHash())) {
+            // downloaded, but not lemmatized again
+            return new FetchResult(url, null, known.links(), true, 0, false);
+        }
+        fetchStore.put(url, new FetchStore.FetchInfo(
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified")
+                                          .orElse(null),
+                        hash, hashedBody.bytes(), text.links()));
+        return new FetchResult(url, text, text.links(), false, 0, false);
+    }
+    /**
+     * Creates the result of a failed fetch.
+     * @param url the absolute URL of the page
+     * @param retry true if the failure may be transient
+     * @return the result without a text.
+     */
+    private static FetchResult failed(final String url, final boolean retry) {
+        return new FetchResult(url, null, Set.of(), false, 0, retry);
+    }
+    /**
+     * Returns whether a response with the content type can be parsed, like
+     * jsoup accepts text and XML.
+     * @param contentType the Content-Type header
+     * @return true if the body can be parsed.
+     */
+    private static boolean isHTML(final String contentType) {
+        String type = contentType.toLowerCase();
+        return type.startsWith("text/") || type.startsWith("application/xml")
+               || type.contains("+xml");
+    }
+    /**
+     * Returns the charset of the Content-Type header.
+     * @param contentType the Content-Type header
+     * @return the charset, null if it should be detected from the body.
+     */
+    private static String charsetOf(final String contentType) {
+        for (String parameter : contentType.split(";")) {
+            String[] keyValue = parameter.trim().split("=", 2);
+            if (keyValue.length == 2
+                && keyValue[0].trim().equalsIgnoreCase("charset")) {
+                return keyValue[1].trim().replace("\"", "");
+            }
+        }
+        return null;
+    }
+    /**
+     * Counts a page, which did not change since the last fetch.
+     * @param result the fetch result of the unchanged page.
+     */
+    private void skipPage(final FetchResult result) {
+        unchangedURLs.add(result.url());
+        bytesSaved += result.bytesSaved();
+        if (result.bytesSaved() > 0) {
+            numNotModified++;
+        }
+    }
+    /**
+     * Prints how many pages were unchanged and how many bytes were not
+     * downloaded, if the crawler has a fetch store.
+     */
+    protected void printFetchReport() {
+        if (fetchStore == null) {
+            return;
+        }
+        System.out.format("Skipped %d unchanged pages, %d not modified, "
+                          + "%d bytes saved%n", unchangedURLs.size(),
+                          numNotModified, bytesSaved);
+    }
+    /**
+     * Adds all links, which were not encountered before, to the frontier.
+     * @param links the outgoing links of a fetched page.
+     */
+    private void enqueueLinks(final Set<String> links) {
+        long now = System.nanoTime();
+        for (String curLink : links) {
+            //knownURL.add(curLink) is only true, if curLink was added
+            //successfully, therefor is a new URL.
+            if (knownURL.add(curLink)) {
+                frontier.add(curLink, now);
+            }
+            numLinks++;
+        }
+    }
+    /**
+     * Stores a parsed page.
+     * @param page the parsed page.
+     */
+    private void storePage(final Page page) {
+        crawledPages.add(page);
+        if (crawledPages.size() % 100 == 0) {
+            System.out.println("Crawled " + crawledPages.size() + " pages");
+        }
+    }
 
     /**
      * Returns the number of websites the crawler has found.
@@ -116,4 +514,75 @@ public class Crawler {
     protected String[] getSeedURLs() {
         return seedURLs;
     }
+    /**
+     * Sets how polite crawlers, which are created afterwards, are to every
+     * host.
+     * @param threads maximum number of requests to a host at the same time
+     * @param delayMillis minimum time between the start of two requests to
+     * a host in milliseconds
+     */
+    public static void setPoliteness(final int threads,
+                                     final long delayMillis) {
+        if (threads < 1 || delayMillis < 0) {
+            throw new IllegalArgumentException(
+                "threads has to be at least 1 and delayMillis at least 0.");
+        }
+        hostThreads = threads;
+        hostDelayMillis = delayMillis;
+    }
+    /**
+     * Sets the store, which is used to send conditional requests. The store
+     * is updated with the pages fetched by the crawler.
+     * @param fetchStore the fetch store, null to fetch every page
+     */
+    protected void setFetchStore(final FetchStore fetchStore) {
+        this.fetchStore = fetchStore;
+    }
+    /**
+     * Returns the URLs of the pages, which did not change since they were
+     * fetched before. They are not in the crawled pages.
+     * @return the URLs of the unchanged pages.
+     */
+    protected Set<String> getUnchangedURLs() {
+        return unchangedURLs;
+    }
+    /**
+     * Returns the number of body bytes, which were not downloaded, since the
+     * server answered 304 Not Modified.
+     * @return the number of bytes saved.
+     */
+    protected long getBytesSaved() {
+        return bytesSaved;
+    }
+    /**
+     * Receives the documents fetched by the crawler.
+     */
+    @FunctionalInterface
+    interface DocumentHandler {
+        /**
+         * Handles a fetched document. May block to slow the crawler down.
+         * @param url the absolute URL of the page
+         * @param text the text extracted from the fetched document
+         * @throws InterruptedException if interrupted while waiting
+         */
+        void handle(String url, PageText text) throws InterruptedException;
+    }
+    /**
+     * An URL with the text fetched from it and the outgoing links.
+     * @param url the absolute URL of the page
+     * @param text the text of the page, null if the fetch failed or the
+     * page is unchanged
+     * @param links the outgoing links of the page
+     * @param unchanged true if the page did not change since the last fetch
+     * @param bytesSaved body bytes, which were not downloaded
+     * @param retry true if the fetch failed and may succeed when retried
+     */
+    private record FetchResult(
+        String url,
+        PageText text,
+        Set<String> links,
+        boolean unchanged,
+        long bytesSaved,
+        boolean retry
+    ) { }
 }
@@ -0,0 +1,227 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.jsoup.Jsoup;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Compares the throughput of the text extraction of the crawler: the jsoup
+ * path, which parses every page into a document and takes the text from
+ * its elements, and the streaming HtmlExtractor.
+ * The pages are fetched once before the time is measured, so only the
+ * extraction from the bytes of the bodies is measured. Besides the pages
+ * and megabytes per second, the bytes allocated per page are printed, if
+ * the JVM can count them. Finally the number of pages, for which both
+ * extract the same text, is printed.
+ * Usage: ExtractionBenchmark {path to net JSON or directory of HTML files}
+ * [number of runs]
+ */
+public final class ExtractionBenchmark {
+    /** Number of extractions of all pages before the time is measured. */
+    private static final int WARMUP_RUNS = 3;
+    /** Number of measured extractions, if none is given. */
+    private static final int DEFAULT_RUNS = 20;
+    /** Bytes of a megabyte. */
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+    /** Nanoseconds of a second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+    /** Receives the checksums, so the extraction is not optimized away. */
+    private static volatile long sink;
+
+    private ExtractionBenchmark() {
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments
+     */
+    public static void main(final String[] args) {
+        String source = "intranet/cheesy1-f126d0d3.json";
+        int runs = DEFAULT_RUNS;
+        if (args.length > 0) {
+            source = args[0];
+        }
+        if (args.length > 1) {
+            runs = Integer.parseInt(args[1]);
+        }
+        List<byte[]> bodies;
+        try {
+            bodies = loadBodies(source);
+        } catch (IOException e) {
+            System.out.println(e.toString());
+            System.out.println("The pages could not be loaded from "
+                               + source);
+            System.exit(1);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long totalBytes = 0;
+        for (byte[] body : bodies) {
+            totalBytes += body.length;
+        }
+        System.out.format("Pages: %d, bytes: %d, runs: %d%n", bodies.size(),
+                          totalBytes, runs);
+        System.out.format("%-10s %12s %12s %16s%n", "Extractor", "Pages/s",
+                          "MB/s", "Allocated/page");
+        for (boolean streaming : new boolean[] {false, true}) {
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                sink += extractAll(bodies, streaming);
+            }
+            long allocatedStart = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                sink += extractAll(bodies, streaming);
+            }
+            long nanos = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocatedStart;
+            double seconds = nanos / NANOS_PER_SECOND;
+            long extracted = (long) bodies.size() * runs;
+            System.out.format("%-10s %12.0f %12.1f %16s%n",
+                              streaming ? "Streaming" : "jsoup",
+                              extracted / seconds,
+                              totalBytes * runs / MEGABYTE / seconds,
+                              allocatedStart < 0 || extracted == 0 ? "-"
+                                : Long.toString(allocated / extracted));
+        }
+        int same = 0;
+        for (byte[] body : bodies) {
+            if (extractWithJsoup(body).equals(extractStreaming(body))) {
+                same++;
+            }
+        }
+        System.out.format("Same text for %d of %d pages%n", same,
+                          bodies.size());
+    }
+    /**
+     * Extracts the text of all pages.
+     * @param bodies the bodies of the pages
+     * @param streaming true for the HtmlExtractor, false for jsoup
+     * @return a checksum of the text.
+     */
+    private static long extractAll(final List<byte[]> bodies,
+                                   final boolean streaming) {
+        long checksum = 0;
+        for (byte[] body : bodies) {
+            PageText text = streaming ? extractStreaming(body)
+                                      : extractWithJsoup(body);
+            checksum += text.content().length() + text.links().size();
+        }
+        return checksum;
+    }
+    /**
+     * Extracts the text of a page like the crawler did before: jsoup
+     * parses the page into a document.
+     * @param body the body of the page
+     * @return the text of the page.
+     */
+    private static PageText extractWithJsoup(final byte[] body) {
+        try {
+            return Parser.extract(Jsoup.parse(new ByteArrayInputStream(body),
+                                              null, ""));
+        } catch (IOException e) {
+            // a ByteArrayInputStream does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Extracts the text of a page with the HtmlExtractor.
+     * @param body the body of the page
+     * @return the text of the page.
+     */
+    static PageText extractStreaming(final byte[] body) {
+        try {
+            return HtmlExtractor.extract(new ByteArrayInputStream(body),
+                                         null);
+        } catch (IOException e) {
+            // a ByteArrayInputStream does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Returns the bytes allocated by the current thread so far.
+     * @return the allocated bytes, -1 if the JVM can not count them.
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean threads
+            && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+    /**
+     * Loads the bodies of the pages: the HTML files of a directory or
+     * all pages of a net, which are reachable from its Seed-URLs.
+     * @param source path to a net JSON or a directory of HTML files
+     * @return the bodies of the pages.
+     * @throws IOException if a file can not be read
+     * @throws InterruptedException if interrupted while fetching
+     */
+    static List<byte[]> loadBodies(final String source)
+                                throws IOException, InterruptedException {
+        List<byte[]> bodies = new ArrayList<>();
+        if (new File(source).isDirectory()) {
+            try (Stream<Path> files = Files.list(Path.of(source))) {
+                for (Path file : files.sorted().toList()) {
+                    if (file.toString().endsWith(".html")) {
+                        bodies.add(Files.readAllBytes(file));
+                    }
+                }
+            }
+            return bodies;
+        }
+        JsonObject json = Utils.parseJSONFile(source);
+        String[] seedURLs = new Gson().fromJson(json.get("Seed-URLs"),
+                                                String[].class);
+        HttpClient client = HttpClient.newBuilder()
+                            .followRedirects(HttpClient.Redirect.NORMAL)
+                            .build();
+        Set<String> knownURLs = new HashSet<>(List.of(seedURLs));
+        Queue<String> queue = new ArrayDeque<>(knownURLs);
+        while (!queue.isEmpty()) {
+            String url = queue.poll();
+            HttpResponse<byte[]> response;
+            try {
+                response = client.send(HttpRequest.newBuilder(URI.create(url))
+                                                  .build(),
+                                       HttpResponse.BodyHandlers
+                                                   .ofByteArray());
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Failed to fetch: " + url);
+                continue;
+            }
+            if (response.statusCode() / 100 != 2) {
+                continue;
+            }
+            bodies.add(response.body());
+            for (String link : extractStreaming(response.body()).links()) {
+                if (knownURLs.add(link)) {
+                    queue.add(link);
+                }
+            }
+        }
+        return bodies;
+    }
+}
@@ -0,0 +1,256 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Stores what the crawler learned about every fetched page: the ETag and
+ * Last-Modified headers, a hash of the body and the outgoing links.
+ * When the net is crawled again, the headers are sent with the request, so
+ * the server can answer with 304 Not Modified instead of sending the page.
+ * A page, whose body has the same hash as before, is unchanged as well.
+ * The links are stored, since the crawler needs them to follow an unchanged
+ * page without parsing it.
+ * The store can be saved to and loaded from a tab seperated file with the
+ * columns URL, ETag, Last-Modified, hash, body size and the links.
+ * All methods except save and load are thread-safe.
+ */
+final class FetchStore {
+    /** Extension of the store file next to the index file. */
+    static final String FILE_EXTENSION = ".fetch";
+    /** Number of columns before the links. */
+    private static final int FIXED_COLUMNS = 5;
+    /** Size of the buffer for reading the rest of a body. */
+    private static final int BUFFER_SIZE = 8192;
+    /** What is known about every fetched page by URL. */
+    private final Map<String, FetchInfo> infos = new ConcurrentHashMap<>();
+
+    /**
+     * Returns what is known about the page.
+     * @param url the absolute URL of the page
+     * @return the fetch info, null if the page was not fetched before.
+     */
+    FetchInfo get(final String url) {
+        return infos.get(url);
+    }
+    /**
+     * Stores what is known about the page, replaces the old info.
+     * @param url the absolute URL of the page
+     * @param info the fetch info of the page
+     */
+    void put(final String url, final FetchInfo info) {
+        infos.put(url, info);
+    }
+    /**
+     * Removes the info of all pages, which do not match the filter.
+     * @param filter true for the URLs which are kept
+     */
+    void retain(final Predicate<String> filter) {
+        infos.keySet().removeIf(filter.negate());
+    }
+    /**
+     * Returns the number of stored pages.
+     * @return the number of stored pages.
+     */
+    int size() {
+        return infos.size();
+    }
+    /**
+     * Returns the file the store of an index file is saved to.
+     * @param indexPath the index file
+     * @return the file next to the index file.
+     */
+    static Path pathFor(final Path indexPath) {
+        return indexPath.resolveSibling(indexPath.getFileName()
+                                        + FILE_EXTENSION);
+    }
+    /**
+     * Calculates the hash of a page body.
+     * @param body the bytes of the body
+     * @return the SHA-256 hash as hex string.
+     */
+    static String hash(final byte[] body) {
+        return HexFormat.of().formatHex(newDigest().digest(body));
+    }
+    /**
+     * Creates the digest, which calculates the hash of a page body.
+     * @return a new SHA-256 digest.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Saves the store to a tab seperated file, sorted by URL.
+     * @param path the file the store should be written to
+     * @throws IOException if the file can not be written
+     */
+    void save(final Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path,
+                                                StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, FetchInfo> entry
+                 : new TreeMap<>(infos).entrySet()) {
+                FetchInfo info = entry.getValue();
+                StringBuilder line = new StringBuilder(entry.getKey());
+                line.append('\t').append(column(info.etag()))
+                    .append('\t').append(column(info.lastModified()))
+                    .append('\t').append(info.contentHash())
+                    .append('\t').append(info.bodyBytes());
+                for (String link : info.links()) {
+                    line.append('\t').append(link);
+                }
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+    }
+    /**
+     * Loads a store, which was saved with save().
+     * @param path the file the store should be read from
+     * @return the loaded store
+     * @throws IOException if the file can not be read or has a wrong format
+     */
+    static FetchStore load(final Path path) throws IOException {
+        FetchStore store = new FetchStore();
+        try (BufferedReader reader = Files.newBufferedReader(path,
+                                                StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            while (line != null) {
+                String[] columns = line.split("\t", -1);
+                if (columns.length < FIXED_COLUMNS) {
+                    throw new IOException("Invalid fetch store line: "
+                                          + line);
+                }
+                try {
+                    store.put(columns[0], new FetchInfo(
+                        columns[1].isEmpty() ? null : columns[1],
+                        columns[2].isEmpty() ? null : columns[2],
+                        columns[3], Long.parseLong(columns[4]),
+                        new HashSet<>(Arrays.asList(columns).subList(
+                                        FIXED_COLUMNS, columns.length))));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid body size: " + line, e);
+                }
+                line = reader.readLine();
+            }
+        }
+        return store;
+    }
+    /**
+     * Returns a header value as column, tabs are replaced since they
+     * seperate the columns.
+     * @param value the header value, may be null
+     * @return the column, empty if the header was not sent.
+     */
+    private static String column(final String value) {
+        return value == null ? "" : value.replace('\t', ' ');
+    }
+
+    /**
+     * Calculates the hash and the size of a page body while it is read, so
+     * the body does not have to be kept in memory.
+     */
+    static final class HashingInputStream extends FilterInputStream {
+        /** Calculates the hash of the read bytes. */
+        private final MessageDigest digest = newDigest();
+        /** Number of read bytes. */
+        private long bytes = 0;
+
+        /**
+         * Creates a stream, which reads the body.
+         * @param body the body of the response
+         */
+        HashingInputStream(final InputStream body) {
+            super(body);
+        }
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                digest.update((byte) b);
+                bytes++;
+            }
+            return b;
+        }
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                                                        throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                digest.update(b, off, n);
+                bytes += n;
+            }
+            return n;
+        }
+        @Override
+        public long skip(final long n) throws IOException {
+            // skipped bytes have to be hashed too
+            long skipped = 0;
+            while (skipped < n && read() >= 0) {
+                skipped++;
+            }
+            return skipped;
+        }
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+        /**
+         * Reads the rest of the body and returns the hash of all bytes.
+         * @return the SHA-256 hash as hex string, like hash().
+         * @throws IOException if the body can not be read
+         */
+        String hash() throws IOException {
+            byte[] rest = new byte[BUFFER_SIZE];
+            int n = read(rest, 0, rest.length);
+            while (n >= 0) {
+                n = read(rest, 0, rest.length);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        /**
+         * Returns the number of bytes read so far.
+         * @return the number of read bytes.
+         */
+        long bytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * What is known about a fetched page.
+     * @param etag the ETag header, null if the server did not send it
+     * @param lastModified the Last-Modified header, null if the server did
+     * not send it
+     * @param contentHash hash of the body, see hash()
+     * @param bodyBytes size of the body in bytes
+     * @param links the outgoing links of the page
+     */
+    record FetchInfo(
+        String etag,
+        String lastModified,
+        String contentHash,
+        long bodyBytes,
+        Set<String> links
+    ) { }
+}
@@ -0,0 +1,173 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.Arrays;
+
+/**
+ * A built index held in arrays on the heap. The Indexer creates it after
+ * lemmatizing the pages, it can be saved with SegmentFormat and mapped again
+ * as MappedSegment.
+ */
+final class HeapSegment implements IndexSegment {
+    /** Tokens with their IDF, sorted lexicographically. */
+    private final TermDictionary terms;
+    /** Postings of every token, same order as terms. */
+    private final PostingsList[] postings;
+    /** All pages sorted by URL, the position is the document id. */
+    private final Page[] docs;
+    /** Number of tokens on every page, indexed by document id. */
+    private final int[] docLengths;
+    /** Euclidean norm of the TF-IDF vector, indexed by document id. */
+    private final double[] norms;
+    /** PageRank of every page, indexed by document id. */
+    private final double[] pageRanks;
+    /** Sum of the squared normalized TFs, indexed by document id. */
+    private final double[] tfSquareSums;
+    /** Sum of the squared normalized TFs times the IDF, indexed by document
+     * id. */
+    private final double[] tfSquareIDFSums;
+    /** Start of the term ids of every page in docTermIds and the number of
+     * postings at the end. */
+    private final int[] docTermStarts;
+    /** Term ids of the tokens of every page, page after page. */
+    private final int[] docTermIds;
+
+    /**
+     * Creates a segment of a built index. The arrays are not copied. The
+     * sums of the squared normalized TFs and the term ids of the pages are
+     * collected from the postings.
+     * @param terms tokens with their IDF
+     * @param postings postings of every token, same order as terms
+     * @param docs all pages sorted by URL
+     * @param docLengths number of tokens on every page
+     * @param norms euclidean norm of the TF-IDF vector of every page
+     * @param pageRanks PageRank of every page
+     */
+    HeapSegment(final TermDictionary terms, final PostingsList[] postings,
+                final Page[] docs, final int[] docLengths,
+                final double[] norms, final double[] pageRanks) {
+        if (terms.size() != postings.length
+            || docs.length != docLengths.length
+            || docs.length != norms.length
+            || docs.length != pageRanks.length) {
+            throw new IllegalArgumentException(
+                "Every token needs postings and every page its values.");
+        }
+        this.terms = terms;
+        this.postings = postings;
+        this.docs = docs;
+        this.docLengths = docLengths;
+        this.norms = norms;
+        this.pageRanks = pageRanks;
+        tfSquareSums = new double[docs.length];
+        tfSquareIDFSums = new double[docs.length];
+        docTermStarts = new int[docs.length + 1];
+        for (PostingsList tokenPostings : postings) {
+            for (int i = 0; i < tokenPostings.size(); i++) {
+                docTermStarts[tokenPostings.docId(i) + 1]++;
+            }
+        }
+        for (int docId = 0; docId < docs.length; docId++) {
+            docTermStarts[docId + 1] += docTermStarts[docId];
+        }
+        docTermIds = new int[docTermStarts[docs.length]];
+        // the next free position of every page, the term ids are added in
+        // ascending order
+        int[] next = Arrays.copyOf(docTermStarts, docs.length);
+        for (int termId = 0; termId < postings.length; termId++) {
+            PostingsList tokenPostings = postings[termId];
+            for (int i = 0; i < tokenPostings.size(); i++) {
+                int docId = tokenPostings.docId(i);
+                double normalizedTF = (double) tokenPostings.tf(i)
+                                      / docLengths[docId];
+                double square = normalizedTF * normalizedTF;
+                tfSquareSums[docId] += square;
+                tfSquareIDFSums[docId] += square * terms.idf(termId);
+                docTermIds[next[docId]++] = termId;
+            }
+        }
+    }
+    @Override
+    public int numDocs() {
+        return docs.length;
+    }
+    @Override
+    public int numTerms() {
+        return terms.size();
+    }
+    @Override
+    public String term(final int termId) {
+        return terms.term(termId);
+    }
+    @Override
+    public double idf(final int termId) {
+        return terms.idf(termId);
+    }
+    @Override
+    public int findTerm(final String token) {
+        return terms.findTerm(token);
+    }
+    @Override
+    public TermDictionary dictionary() {
+        return terms;
+    }
+    @Override
+    public Postings postings(final int termId) {
+        return postings[termId];
+    }
+    @Override
+    public String url(final int docId) {
+        return docs[docId].getURL();
+    }
+    /**
+     * Returns the page with the document id. The page is the one which was
+     * indexed, with its links and lemmas.
+     * @param docId id of the page
+     * @return the page.
+     */
+    @Override
+    public Page doc(final int docId) {
+        return docs[docId];
+    }
+    @Override
+    public int findDoc(final String url) {
+        int low = 0;
+        int high = docs.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = docs[mid].getURL().compareTo(url);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+    @Override
+    public int docLength(final int docId) {
+        return docLengths[docId];
+    }
+    @Override
+    public double norm(final int docId) {
+        return norms[docId];
+    }
+    @Override
+    public double tfSquareSum(final int docId) {
+        return tfSquareSums[docId];
+    }
+    @Override
+    public double tfSquareIDFSum(final int docId) {
+        return tfSquareIDFSums[docId];
+    }
+    @Override
+    public int[] docTerms(final int docId) {
+        return Arrays.copyOfRange(docTermIds, docTermStarts[docId],
+                                  docTermStarts[docId + 1]);
+    }
+    @Override
+    public double pageRank(final int docId) {
+        return pageRanks[docId];
+    }
+}
@@ -0,0 +1,214 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The frontier of the crawler with a queue of URLs for every host.
+ * A host gets at most maxPerHost requests at the same time, and a request
+ * to a host starts at the earliest delay after the request before. The
+ * hosts, which may get the next request, take turns, so one host with many
+ * pages does not hold back the others.
+ * The URLs of a host are fetched in the order they were added. A URL,
+ * whose fetch failed and is retried, is fetched first, but the host waits
+ * for the backoff before.
+ * The time is passed in by the caller as System.nanoTime(). The frontier
+ * is not thread-safe, it is only used by the thread which submits the
+ * fetches.
+ */
+final class HostFrontier {
+    /** Maximum number of requests to a host at the same time. */
+    private final int maxPerHost;
+    /** Minimum time between the start of two requests to a host. */
+    private final long delayNanos;
+    /** The queue of every host, which was seen. */
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    /** Hosts, which may get a request now, in turn. */
+    private final ArrayDeque<HostQueue> ready = new ArrayDeque<>();
+    /** Hosts, which wait for their delay or backoff, the earliest first. */
+    private final PriorityQueue<Wakeup> waiting = new PriorityQueue<>(
+                                Comparator.comparingLong(Wakeup::nanos));
+    /** Number of queued URLs of all hosts. */
+    private int size = 0;
+
+    /**
+     * Creates an empty frontier.
+     * @param maxPerHost maximum number of requests to a host at the same
+     * time
+     * @param delayNanos minimum time between the start of two requests to
+     * a host
+     */
+    HostFrontier(final int maxPerHost, final long delayNanos) {
+        if (maxPerHost < 1 || delayNanos < 0) {
+            throw new IllegalArgumentException(
+                "maxPerHost has to be at least 1 and delay at least 0.");
+        }
+        this.maxPerHost = maxPerHost;
+        this.delayNanos = delayNanos;
+    }
+    /**
+     * Adds a URL to the queue of its host.
+     * @param url the absolute URL
+     * @param now the current time
+     */
+    void add(final String url, final long now) {
+        HostQueue host = hosts.computeIfAbsent(hostOf(url), HostQueue::new);
+        host.urls.addLast(url);
+        size++;
+        schedule(host, now);
+    }
+    /**
+     * Takes the next URL, which may be fetched now. The fetch has to be
+     * finished with done() or retry().
+     * @param now the current time
+     * @return the URL, null if every host with queued URLs has to wait.
+     */
+    String poll(final long now) {
+        while (!waiting.isEmpty() && waiting.peek().nanos() <= now) {
+            ready.addLast(waiting.poll().host());
+        }
+        HostQueue host = ready.pollFirst();
+        while (host != null && host.nextStart > now) {
+            // the backoff of a retry started after the host was ready
+            waiting.add(new Wakeup(host, host.nextStart));
+            host = ready.pollFirst();
+        }
+        if (host == null) {
+            return null;
+        }
+        host.scheduled = false;
+        host.inFlight++;
+        host.nextStart = now + delayNanos;
+        size--;
+        String url = host.urls.pollFirst();
+        schedule(host, now);
+        return url;
+    }
+    /**
+     * Finishes the fetch of a URL, which was taken with poll().
+     * @param url the fetched URL
+     * @param now the current time
+     */
+    void done(final String url, final long now) {
+        HostQueue host = hosts.get(hostOf(url));
+        host.inFlight--;
+        schedule(host, now);
+    }
+    /**
+     * Finishes the fetch of a URL, which failed and is fetched again. The
+     * host gets no request before the backoff is over.
+     * @param url the URL, which is fetched again
+     * @param backoffNanos time the host has to wait
+     * @param now the current time
+     */
+    void retry(final String url, final long backoffNanos, final long now) {
+        HostQueue host = hosts.get(hostOf(url));
+        host.urls.addFirst(url);
+        size++;
+        host.nextStart = Math.max(host.nextStart, now + backoffNanos);
+        done(url, now);
+    }
+    /**
+     * Returns whether there are no queued URLs. URLs, which are fetched,
+     * are not queued.
+     * @return true if no URL is queued.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+    /**
+     * Returns the number of queued URLs.
+     * @return the number of queued URLs.
+     */
+    int size() {
+        return size;
+    }
+    /**
+     * Returns how long it takes until poll() returns a URL, if no fetch is
+     * finished before.
+     * @param now the current time
+     * @return the time in nanoseconds, 0 if a URL may be fetched now, and
+     * Long.MAX_VALUE if every host with queued URLs has to wait for a fetch.
+     */
+    long nanosUntilReady(final long now) {
+        long until = Long.MAX_VALUE;
+        // a ready host, whose backoff started later, may still wait
+        for (HostQueue host : ready) {
+            until = Math.min(until, Math.max(0, host.nextStart - now));
+        }
+        if (!waiting.isEmpty()) {
+            until = Math.min(until, Math.max(0, waiting.peek().nanos() - now));
+        }
+        return until;
+    }
+    /**
+     * Returns the host of a URL with its port. URLs, which can not be
+     * parsed, share one queue.
+     * @param url the absolute URL
+     * @return the host and port of the URL.
+     */
+    static String hostOf(final String url) {
+        try {
+            String authority = new URI(url).getRawAuthority();
+            return authority == null ? "" : authority;
+        } catch (URISyntaxException e) {
+            return "";
+        }
+    }
+    /**
+     * Puts a host into the ready or waiting hosts, if it has queued URLs and
+     * may get another request.
+     * @param host the host
+     * @param now the current time
+     */
+    private void schedule(final HostQueue host, final long now) {
+        if (host.scheduled || host.urls.isEmpty()
+            || host.inFlight >= maxPerHost) {
+            return;
+        }
+        host.scheduled = true;
+        if (host.nextStart <= now) {
+            ready.addLast(host);
+        } else {
+            waiting.add(new Wakeup(host, host.nextStart));
+        }
+    }
+
+    /**
+     * The queued URLs of a host.
+     */
+    private static final class HostQueue {
+        /** The host and port. */
+        private final String name;
+        /** The queued URLs. */
+        private final ArrayDeque<String> urls = new ArrayDeque<>();
+        /** Number of requests to the host, which are not finished. */
+        private int inFlight = 0;
+        /** Earliest start of the next request. */
+        private long nextStart = Long.MIN_VALUE;
+        /** True if the host is in the ready or waiting hosts. */
+        private boolean scheduled = false;
+
+        HostQueue(final String name) {
+            this.name = name;
+        }
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+    /**
+     * A host, which waits until the time.
+     * @param host the host
+     * @param nanos the time the host may get the next request
+     */
+    private record Wakeup(
+        HostQueue host,
+        long nanos
+    ) { }
+}
@@ -0,0 +1,675 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts the text of a HTML page in a single pass over its characters,
+ * without building a DOM: the title, the text of the header elements, the
+ * text of the main elements without the links and the targets of all links.
+ * The text is the same as the text jsoup returns for the elements: white
+ * space is collapsed to one space, and block elements are seperated by a
+ * space. The contents of script and style elements and comments are
+ * skipped.
+ * Besides the text, the extractor only keeps a read buffer and the name and
+ * href value of the current tag, so its memory does not depend on the size
+ * of the page. Tags are not balanced like by a HTML parser, a header or
+ * main element ends at its end tag. Named character references are only
+ * decoded for the common entities in ENTITIES, numeric ones always.
+ */
+final class HtmlExtractor {
+    /** Bytes at the start of a body, which are searched for a charset. */
+    private static final int CHARSET_PREFIX = 1024;
+    /** Size of the read buffer in chars. */
+    private static final int BUFFER_SIZE = 8192;
+    /** Longest tag or attribute name, longer names are cut. */
+    private static final int MAX_NAME = 32;
+    /** Longest href value, longer values are cut. */
+    private static final int MAX_VALUE = 8192;
+    /** Longest name of a character reference. */
+    private static final int MAX_ENTITY = 32;
+    /** Elements, whose start and end seperate the text, like in jsoup. */
+    private static final Set<String> BLOCK_TAGS = Set.of("html", "head",
+        "body", "frameset", "script", "noscript", "style", "meta", "link",
+        "title", "frame", "noframes", "section", "nav", "aside", "hgroup",
+        "header", "footer", "p", "h1", "h2", "h3", "h4", "h5", "h6", "ul",
+        "ol", "pre", "div", "blockquote", "hr", "address", "figure",
+        "figcaption", "form", "fieldset", "ins", "del", "dl", "dt", "dd",
+        "li", "table", "caption", "thead", "tfoot", "tbody", "colgroup",
+        "col", "tr", "th", "td", "video", "audio", "canvas", "details",
+        "menu", "plaintext", "template", "article", "main", "svg", "math",
+        "center", "dir", "applet", "marquee", "listing", "br");
+    /** Elements, whose content is not text. */
+    private static final Set<String> SKIPPED_TAGS = Set.of("script",
+                                                           "style");
+    /** Elements, whose content is text without tags. */
+    private static final Set<String> RAW_TEXT_TAGS = Set.of("xmp", "iframe",
+                                                    "noembed", "noframes");
+    /** The decoded named character references. */
+    private static final Map<String, Character> ENTITIES = Map.ofEntries(
+        Map.entry("amp", '&'), Map.entry("lt", '<'), Map.entry("gt", '>'),
+        Map.entry("quot", '"'), Map.entry("apos", '\''),
+        Map.entry("nbsp", ' '), Map.entry("shy", '­'),
+        Map.entry("copy", '©'), Map.entry("reg", '®'),
+        Map.entry("trade", '™'), Map.entry("euro", '€'),
+        Map.entry("pound", '£'), Map.entry("cent", '¢'),
+        Map.entry("yen", '¥'), Map.entry("sect", '§'),
+        Map.entry("para", '¶'), Map.entry("deg", '°'),
+        Map.entry("plusmn", '±'), Map.entry("times", '×'),
+        Map.entry("divide", '÷'), Map.entry("middot", '·'),
+        Map.entry("bull", '•'), Map.entry("hellip", '…'),
+        Map.entry("ndash", '–'), Map.entry("mdash", '—'),
+        Map.entry("lsquo", '‘'), Map.entry("rsquo", '’'),
+        Map.entry("sbquo", '‚'), Map.entry("ldquo", '“'),
+        Map.entry("rdquo", '”'), Map.entry("bdquo", '„'),
+        Map.entry("laquo", '«'), Map.entry("raquo", '»'),
+        Map.entry("iexcl", '¡'), Map.entry("iquest", '¿'),
+        Map.entry("auml", 'ä'), Map.entry("ouml", 'ö'),
+        Map.entry("uuml", 'ü'), Map.entry("Auml", 'Ä'),
+        Map.entry("Ouml", 'Ö'), Map.entry("Uuml", 'Ü'),
+        Map.entry("szlig", 'ß'), Map.entry("aacute", 'á'),
+        Map.entry("agrave", 'à'), Map.entry("acirc", 'â'),
+        Map.entry("eacute", 'é'), Map.entry("egrave", 'è'),
+        Map.entry("ecirc", 'ê'), Map.entry("iacute", 'í'),
+        Map.entry("oacute", 'ó'), Map.entry("uacute", 'ú'),
+        Map.entry("ccedil", 'ç'), Map.entry("ntilde", 'ñ'));
+    /** Replaces invalid numeric character references. */
+    private static final int REPLACEMENT_CHAR = 0xfffd;
+
+    /** The page. */
+    private final Reader in;
+    /** Read buffer, the chars from pos to limit are not read yet. */
+    private final char[] buffer = new char[BUFFER_SIZE];
+    /** Position of the next char in the buffer. */
+    private int pos = 0;
+    /** End of the read chars in the buffer. */
+    private int limit = 0;
+    /** Text of the first title element, null before it is read. */
+    private TextSink title = null;
+    /** Text of the header elements. */
+    private final TextSink header = new TextSink();
+    /** Text of the main elements without links. */
+    private final TextSink content = new TextSink();
+    /** Targets of the links. */
+    private final Set<String> links = new HashSet<>();
+    /** Number of open header elements. */
+    private int headerDepth = 0;
+    /** Number of open main elements. */
+    private int mainDepth = 0;
+    /** True inside of a link. */
+    private boolean inLink = false;
+
+    private HtmlExtractor(final Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Extracts the text of a page.
+     * @param html the page
+     * @return the text of the page.
+     */
+    static PageText extract(final String html) {
+        try {
+            return new HtmlExtractor(new StringReader(html)).extract();
+        } catch (IOException e) {
+            // a StringReader does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Extracts the text of a page while it is read from the stream. If no
+     * charset is given, it is taken from a byte order mark or a meta
+     * element at the start of the page, UTF-8 otherwise.
+     * @param body the body of the response, is not closed
+     * @param charset the charset of the Content-Type header, may be null
+     * @return the text of the page.
+     * @throws IOException if the stream can not be read
+     */
+    static PageText extract(final InputStream body, final String charset)
+                                                        throws IOException {
+        BufferedInputStream bufferedBody = new BufferedInputStream(body,
+                                                                BUFFER_SIZE);
+        Charset decoded = charset == null ? null : charsetOf(charset);
+        if (decoded == null) {
+            decoded = detectCharset(bufferedBody);
+        }
+        return new HtmlExtractor(new InputStreamReader(bufferedBody,
+                                                       decoded)).extract();
+    }
+    /**
+     * Reads the page and extracts its text.
+     * @return the text of the page.
+     * @throws IOException if the page can not be read
+     */
+    private PageText extract() throws IOException {
+        int c = read();
+        while (c >= 0) {
+            if (c == '<') {
+                markup();
+            } else if (c == '&') {
+                int decoded = entity();
+                text(decoded < 0 ? '&' : decoded);
+            } else {
+                text(c);
+            }
+            c = read();
+        }
+        return new PageText(title == null ? "" : title.toString(),
+                            header.toString(), content.toString(), links);
+    }
+    /**
+     * Reads a tag, a comment or a doctype after a '<'. A '<' which starts
+     * none of them is text.
+     * @throws IOException if the page can not be read
+     */
+    private void markup() throws IOException {
+        int c = peek(0);
+        if (c == '!') {
+            pos++;
+            if (peek(0) == '-' && peek(1) == '-') {
+                pos += 2;
+                skipPast("-->");
+            } else {
+                skipPast(">");
+            }
+        } else if (c == '?') {
+            skipPast(">");
+        } else if (c == '/') {
+            pos++;
+            if (isLetter(peek(0))) {
+                String name = name();
+                skipPast(">");
+                endTag(name);
+            } else {
+                skipPast(">");
+            }
+        } else if (isLetter(c)) {
+            String name = name();
+            startTag(name, attributes(name.equals("a")));
+        } else {
+            text('<');
+        }
+    }
+    /**
+     * Handles a start tag.
+     * @param name the lower case tag name
+     * @param href the href attribute, null if it has none
+     * @throws IOException if the page can not be read
+     */
+    private void startTag(final String name, final String href)
+                                                        throws IOException {
+        switch (name) {
+            case "a":
+                // links are not nested, a link ends the link before
+                inLink = true;
+                links.add(href == null ? "" : href);
+                break;
+            case "header":
+                headerDepth++;
+                break;
+            case "main":
+                mainDepth++;
+                break;
+            default:
+                break;
+        }
+        if (BLOCK_TAGS.contains(name)) {
+            boundary();
+        }
+        if (name.equals("title")) {
+            TextSink titleText = title == null ? new TextSink() : null;
+            readUntilEndTag(name, true, titleText);
+            if (title == null) {
+                title = titleText;
+            }
+        } else if (name.equals("textarea")) {
+            readUntilEndTag(name, true, null);
+        } else if (RAW_TEXT_TAGS.contains(name)) {
+            readUntilEndTag(name, false, null);
+        } else if (SKIPPED_TAGS.contains(name)) {
+            skipUntilEndTag(name);
+        }
+    }
+    /**
+     * Handles an end tag.
+     * @param name the lower case tag name
+     */
+    private void endTag(final String name) {
+        if (BLOCK_TAGS.contains(name)) {
+            boundary();
+        }
+        switch (name) {
+            case "a":
+                inLink = false;
+                break;
+            case "header":
+                headerDepth = Math.max(0, headerDepth - 1);
+                break;
+            case "main":
+                mainDepth = Math.max(0, mainDepth - 1);
+                inLink = false;
+                break;
+            case "body":
+            case "html":
+                inLink = false;
+                break;
+            default:
+                break;
+        }
+    }
+    /**
+     * Adds a char to the text of the open elements.
+     * @param c the char as code point
+     */
+    private void text(final int c) {
+        if (headerDepth > 0) {
+            header.append(c);
+        }
+        if (mainDepth > 0 && !inLink) {
+            content.append(c);
+        }
+    }
+    /**
+     * Seperates the text of the open elements by a space.
+     */
+    private void boundary() {
+        if (headerDepth > 0) {
+            header.boundary();
+        }
+        if (mainDepth > 0 && !inLink) {
+            content.boundary();
+        }
+    }
+    /**
+     * Reads the name of a tag, the first char is a letter.
+     * @return the lower case name.
+     * @throws IOException if the page can not be read
+     */
+    private String name() throws IOException {
+        StringBuilder name = new StringBuilder();
+        int c = peek(0);
+        while (c >= 0 && !isWhitespace(c) && c != '/' && c != '>') {
+            if (name.length() < MAX_NAME) {
+                name.append(Character.toLowerCase((char) c));
+            }
+            pos++;
+            c = peek(0);
+        }
+        return name.toString();
+    }
+    /**
+     * Reads the attributes of a start tag until the end of the tag.
+     * @param keepHref true if the href attribute should be returned
+     * @return the first href attribute, null if there is none or it is
+     * not kept.
+     * @throws IOException if the page can not be read
+     */
+    private String attributes(final boolean keepHref) throws IOException {
+        String href = null;
+        int c = read();
+        while (c >= 0 && c != '>') {
+            if (!isWhitespace(c) && c != '/') {
+                StringBuilder name = new StringBuilder();
+                name.append((char) c);
+                c = peek(0);
+                while (c >= 0 && !isWhitespace(c) && c != '=' && c != '>'
+                       && c != '/') {
+                    if (name.length() < MAX_NAME) {
+                        name.append((char) c);
+                    }
+                    pos++;
+                    c = peek(0);
+                }
+                skipWhitespace();
+                boolean isHref = keepHref && href == null
+                                 && name.toString().equalsIgnoreCase("href");
+                String value = "";
+                if (peek(0) == '=') {
+                    pos++;
+                    skipWhitespace();
+                    value = attributeValue(isHref);
+                }
+                if (isHref) {
+                    href = value;
+                }
+            }
+            c = read();
+        }
+        return href;
+    }
+    /**
+     * Reads a quoted or unquoted attribute value.
+     * @param keep true if the value should be returned
+     * @return the decoded value, null if it is not kept.
+     * @throws IOException if the page can not be read
+     */
+    private String attributeValue(final boolean keep) throws IOException {
+        StringBuilder value = keep ? new StringBuilder() : null;
+        int quote = peek(0);
+        if (quote == '"' || quote == '\'') {
+            pos++;
+        } else {
+            quote = -1;
+        }
+        int c = peek(0);
+        while (c >= 0 && (quote >= 0 ? c != quote
+                                     : !isWhitespace(c) && c != '>')) {
+            pos++;
+            if (c == '&') {
+                c = entity();
+                if (c < 0) {
+                    c = '&';
+                }
+            }
+            if (keep && value.length() < MAX_VALUE) {
+                value.appendCodePoint(c);
+            }
+            c = peek(0);
+        }
+        if (quote >= 0 && c == quote) {
+            pos++;
+        }
+        return keep ? value.toString() : null;
+    }
+    /**
+     * Reads a character reference after a '&'. Nothing is read if it is no
+     * known reference.
+     * @return the code point, -1 if it is no character reference.
+     * @throws IOException if the page can not be read
+     */
+    private int entity() throws IOException {
+        if (peek(0) == '#') {
+            int radix = 10;
+            int start = 1;
+            if (peek(1) == 'x' || peek(1) == 'X') {
+                radix = 16;
+                start = 2;
+            }
+            int end = start;
+            long codePoint = 0;
+            while (end - start < MAX_ENTITY
+                   && Character.digit(peek(end), radix) >= 0) {
+                codePoint = Math.min(Integer.MAX_VALUE, codePoint * radix
+                                     + Character.digit(peek(end), radix));
+                end++;
+            }
+            if (end == start) {
+                return -1;
+            }
+            pos += peek(end) == ';' ? end + 1 : end;
+            if (codePoint == 0 || codePoint > Character.MAX_CODE_POINT
+                || Character.isSurrogate((char) codePoint)
+                   && codePoint <= Character.MAX_VALUE) {
+                return REPLACEMENT_CHAR;
+            }
+            return (int) codePoint;
+        }
+        int end = 0;
+        while (end < MAX_ENTITY && isLetterOrDigit(peek(end))) {
+            end++;
+        }
+        if (end == 0 || peek(end) != ';') {
+            return -1;
+        }
+        Character decoded = ENTITIES.get(new String(buffer, pos, end));
+        if (decoded == null) {
+            return -1;
+        }
+        pos += end + 1;
+        return decoded;
+    }
+    /**
+     * Reads the text of an element without tags, like title or textarea,
+     * until its end tag.
+     * @param name the lower case tag name
+     * @param decode true if character references are decoded
+     * @param titleText receives the text too, may be null
+     * @throws IOException if the page can not be read
+     */
+    private void readUntilEndTag(final String name, final boolean decode,
+                                 final TextSink titleText)
+                                                        throws IOException {
+        int c = read();
+        while (c >= 0 && !(c == '<' && endTagFollows(name))) {
+            if (decode && c == '&') {
+                int decoded = entity();
+                c = decoded < 0 ? '&' : decoded;
+            }
+            if (titleText != null) {
+                titleText.append(c);
+            }
+            text(c);
+            c = read();
+        }
+        if (c >= 0) {
+            skipPast(">");
+            endTag(name);
+        }
+    }
+    /**
+     * Skips the content of an element, which is no text, until its end tag.
+     * @param name the lower case tag name
+     * @throws IOException if the page can not be read
+     */
+    private void skipUntilEndTag(final String name) throws IOException {
+        int c = read();
+        while (c >= 0 && !(c == '<' && endTagFollows(name))) {
+            c = read();
+        }
+        if (c >= 0) {
+            skipPast(">");
+            endTag(name);
+        }
+    }
+    /**
+     * Returns whether the end tag of the element follows a '<'.
+     * @param name the lower case tag name
+     * @return true if the end tag follows.
+     * @throws IOException if the page can not be read
+     */
+    private boolean endTagFollows(final String name) throws IOException {
+        if (peek(0) != '/') {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            int c = peek(i + 1);
+            if (c < 0 || Character.toLowerCase((char) c) != name.charAt(i)) {
+                return false;
+            }
+        }
+        int after = peek(name.length() + 1);
+        return after < 0 || isWhitespace(after) || after == '/'
+               || after == '>';
+    }
+    /**
+     * Reads past the next occurrence of the string or to the end of the
+     * page.
+     * @param end the string
+     * @throws IOException if the page can not be read
+     */
+    private void skipPast(final String end) throws IOException {
+        int c = read();
+        while (c >= 0) {
+            boolean found = c == end.charAt(0);
+            for (int i = 1; found && i < end.length(); i++) {
+                found = peek(i - 1) == end.charAt(i);
+            }
+            if (found) {
+                pos += end.length() - 1;
+                return;
+            }
+            c = read();
+        }
+    }
+    /**
+     * Skips white space.
+     * @throws IOException if the page can not be read
+     */
+    private void skipWhitespace() throws IOException {
+        while (isWhitespace(peek(0))) {
+            pos++;
+        }
+    }
+    /**
+     * Reads the next char.
+     * @return the char, -1 at the end of the page.
+     * @throws IOException if the page can not be read
+     */
+    private int read() throws IOException {
+        int c = peek(0);
+        if (c >= 0) {
+            pos++;
+        }
+        return c;
+    }
+    /**
+     * Returns a char ahead without reading it.
+     * @param offset position of the char after the next one
+     * @return the char, -1 if the page ends before.
+     * @throws IOException if the page can not be read
+     */
+    private int peek(final int offset) throws IOException {
+        if (pos + offset >= limit) {
+            // move the unread chars to the start and fill the buffer
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+            int n = 0;
+            while (limit <= offset && n >= 0) {
+                n = in.read(buffer, limit, buffer.length - limit);
+                if (n > 0) {
+                    limit += n;
+                }
+            }
+            if (limit <= offset) {
+                return -1;
+            }
+        }
+        return buffer[pos + offset];
+    }
+    /**
+     * Detects the charset of a body by a byte order mark or a charset
+     * in the first bytes, like in a meta element.
+     * @param body the body, which is reset to its start
+     * @return the charset, UTF-8 if none is found.
+     * @throws IOException if the body can not be read
+     */
+    private static Charset detectCharset(final BufferedInputStream body)
+                                                        throws IOException {
+        body.mark(CHARSET_PREFIX);
+        byte[] prefix = body.readNBytes(CHARSET_PREFIX);
+        body.reset();
+        if (prefix.length >= 2 && (prefix[0] & 0xff) == 0xfe
+            && (prefix[1] & 0xff) == 0xff) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (prefix.length >= 2 && (prefix[0] & 0xff) == 0xff
+            && (prefix[1] & 0xff) == 0xfe) {
+            return StandardCharsets.UTF_16LE;
+        }
+        String start = new String(prefix, StandardCharsets.ISO_8859_1)
+                                                .toLowerCase(Locale.ROOT);
+        int at = start.indexOf("charset=");
+        if (at >= 0) {
+            int from = at + "charset=".length();
+            while (from < start.length() && (start.charAt(from) == '"'
+                                             || start.charAt(from) == '\'')) {
+                from++;
+            }
+            int to = from;
+            while (to < start.length() && (isLetterOrDigit(start.charAt(to))
+                   || "-_.:".indexOf(start.charAt(to)) >= 0)) {
+                to++;
+            }
+            Charset charset = charsetOf(start.substring(from, to));
+            if (charset != null) {
+                return charset;
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+    /**
+     * Returns the charset with the name.
+     * @param name the name of the charset
+     * @return the charset, null if it is not supported.
+     */
+    private static Charset charsetOf(final String name) {
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    /**
+     * Returns whether the char is white space in HTML text, like in jsoup
+     * a no-break space is white space too.
+     * @param c the char
+     * @return true if the char is white space.
+     */
+    private static boolean isWhitespace(final int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r'
+               || c == ' ';
+    }
+    /**
+     * Returns whether the char is an ASCII letter.
+     * @param c the char
+     * @return true if the char is an ASCII letter.
+     */
+    private static boolean isLetter(final int c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+    /**
+     * Returns whether the char is an ASCII letter or digit.
+     * @param c the char
+     * @return true if the char is an ASCII letter or digit.
+     */
+    private static boolean isLetterOrDigit(final int c) {
+        return isLetter(c) || c >= '0' && c <= '9';
+    }
+
+    /**
+     * Collects the text of elements with collapsed white space.
+     */
+    private static final class TextSink {
+        /** The text. */
+        private final StringBuilder text = new StringBuilder();
+        /** True if a space is added before the next char. */
+        private boolean space = false;
+
+        /**
+         * Appends a char, white space is collapsed.
+         * @param c the char as code point
+         */
+        void append(final int c) {
+            if (isWhitespace(c)) {
+                space = true;
+                return;
+            }
+            if (space && text.length() > 0) {
+                text.append(' ');
+            }
+            space = false;
+            text.appendCodePoint(c);
+        }
+        /**
+         * Seperates the text before from the next char by a space.
+         */
+        void boundary() {
+            space = true;
+        }
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+/**
+ * Read access to a built index: the term dictionary, the postings and the
+ * document table. The tokens are sorted lexicographically and the pages by
+ * URL, the position of a token is its term id and the position of a page
+ * its document id.
+ * A segment is either held on the heap or mapped from a file saved with
+ * SegmentFormat. Segments are not changed after they were created, so
+ * they can be searched by several threads at the same time.
+ */
+interface IndexSegment {
+    /**
+     * Returns the number of indexed pages.
+     * @return the number of documents.
+     */
+    int numDocs();
+    /**
+     * Returns the number of indexed tokens.
+     * @return the number of terms.
+     */
+    int numTerms();
+    /**
+     * Returns the token with the term id.
+     * @param termId id of the token
+     * @return the token.
+     */
+    String term(int termId);
+    /**
+     * Returns the IDF (Inverse Document Frequency) of the token.
+     * @param termId id of the token
+     * @return the IDF value of the token.
+     */
+    double idf(int termId);
+    /**
+     * Returns the term id of the token.
+     * @param token the token
+     * @return the term id, a negative number if the token is not indexed.
+     */
+    int findTerm(String token);
+    /**
+     * Returns the term dictionary, e.g. to enumerate the tokens with a
+     * prefix.
+     * @return the term dictionary.
+     */
+    TermDictionary dictionary();
+    /**
+     * Returns the postings of the token.
+     * @param termId id of the token
+     * @return the postings of the token.
+     */
+    Postings postings(int termId);
+    /**
+     * Returns the URL of the page.
+     * @param docId id of the page
+     * @return the URL of the page.
+     */
+    String url(int docId);
+    /**
+     * Returns the page with the document id.
+     * @param docId id of the page
+     * @return the page, without links.
+     */
+    Page doc(int docId);
+    /**
+     * Returns the document id of the page with the URL.
+     * @param url the URL of the page
+     * @return the document id, a negative number if the page is not indexed.
+     */
+    int findDoc(String url);
+    /**
+     * Returns the number of tokens on the page.
+     * @param docId id of the page
+     * @return the length of the document.
+     */
+    int docLength(int docId);
+    /**
+     * Returns the euclidean norm of the TF-IDF vector of the page.
+     * @param docId id of the page
+     * @return the norm of the document.
+     */
+    double norm(int docId);
+    /**
+     * Returns the sum of the squared normalized term frequencies of the
+     * tokens on the page. With tfSquareIDFSum and the norm it gives the norm
+     * of the page for IDF values, which differ from those of the segment,
+     * see SegmentedIndex.norm.
+     * @param docId id of the page
+     * @return the sum of the squared normalized TFs.
+     */
+    double tfSquareSum(int docId);
+    /**
+     * Returns the sum of the squared normalized term frequencies of the
+     * tokens on the page, each times the IDF of the token.
+     * @param docId id of the page
+     * @return the sum of the squared normalized TFs times the IDF.
+     */
+    double tfSquareIDFSum(int docId);
+    /**
+     * Returns the term ids of the tokens on the page.
+     * @param docId id of the page
+     * @return the term ids, sorted.
+     */
+    int[] docTerms(int docId);
+    /**
+     * Returns the PageRank of the page.
+     * @param docId id of the page
+     * @return the PageRank of the page.
+     */
+    double pageRank(int docId);
+}
@@ -1,15 +1,22 @@
 package de.fernunihagen.dbis.anguillasearch;
 
-import de.fernunihagen.dbis.records.TokenIDF;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.OptionalDouble;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 
 
 
@@ -18,22 +25,43 @@ import java.util.TreeSet;
  * 
  * Uses the Crawler Class to crawl the specified net. Uses a forward index and
  * a reverse index to provide various functions.
+ * A built index can be saved to a file and loaded again without crawling.
+ * Pages can be added, replaced and deleted without building the index
+ * again, see addPages and update.
  * 
  */
 public class Indexer { 
     /** The Crawler provides us with a list of fetched pages.*/
     private Crawler crawler;
+    /** What the crawler knows about the indexed pages, so they are only
+     * fetched and lemmatized again when crawling again if they changed. */
+    private FetchStore fetchStore = new FetchStore();
     /** A list of pages which is used as data source.*/
     private List<Page> pageList;
     /** Forward index, which stores TFIDF values for every page stored. */
     private VecFwdIndex fwdIndex = new VecFwdIndex();
     /** Reverse Index. */
     private RevIndex revIndex = new RevIndex();
-    /** Not initialized, because the size is unknown at this point. 
-     * Pair of (token, IDF).
-     * Is sorted lexicographically by token attribute.
+    /** All tokens of the index with their IDF, sorted lexicographically.
+     * Not initialized, because the tokens are unknown at this point.
      */
-    private TokenIDF[] tokenIDFVector;
+    private TermDictionary terms;
+    /** Number of segments with added pages, which are kept before they
+     * are merged into one. */
+    static final int MAX_ADDED_SEGMENTS = 8;
+    /** The built or mapped index and the segments of the pages added
+     * since, which are searched. Replaced by every update, so a search
+     * uses the same segments from start to end.
+     */
+    private volatile SegmentedIndex segments;
+    /** Score accumulator of every thread, which searches the index. */
+    private final ThreadLocal<ScoreAccumulator> accumulators =
+                                                        new ThreadLocal<>();
+    /** Block buffer of every thread, which searches the index. */
+    private final ThreadLocal<PostingsBlock> postingsBlocks =
+                                ThreadLocal.withInitial(PostingsBlock::new);
+    /** Results of recent searches, null if the results are not cached. */
+    private volatile ResultCache resultCache = new ResultCache();
     /** Defines which method should be used to rank the search results.
      * 0 = TF-IDF.
      * 1 = Cosine similarity (default).
@@ -48,9 +76,46 @@ public class Indexer {
      */
     Indexer(final String[] seedURLs) {
         crawler = new Crawler(seedURLs);
+        crawler.setFetchStore(fetchStore);
+        crawler.crawl();
+        this.pageList = crawler.getCrawledPages();
+        init(ForkJoinPool.commonPool());
+    }
+    /**
+     * Crawls all pages starting from the seed URLs with fetchThreads
+     * concurrent fetches.
+     * Initializes the forward and backward index.
+     * @param seedURLs   seed URLs the crawler should start from
+     * @param fetchThreads number of pages the crawler fetches at the same time
+     */
+    Indexer(final String[] seedURLs, final int fetchThreads) {
+        crawler = new Crawler(seedURLs, Integer.MAX_VALUE, fetchThreads);
+        crawler.setFetchStore(fetchStore);
         crawler.crawl();
         this.pageList = crawler.getCrawledPages();
-        init();
+        init(ForkJoinPool.commonPool());
+    }
+    /**
+     * Crawls all pages starting from the seed URLs with a CrawlPipeline.
+     * The pages are added to the reverse index while the crawl is still
+     * running, the vectors are built after the crawl since they need the
+     * IDF values of all tokens.
+     * @param seedURLs   seed URLs the crawler should start from
+     * @param fetchThreads number of pages the crawler fetches at the same time
+     * @param parseThreads number of threads which lemmatize the pages
+     */
+    Indexer(final String[] seedURLs, final int fetchThreads,
+            final int parseThreads) {
+        crawler = new Crawler(seedURLs, Integer.MAX_VALUE, fetchThreads);
+        crawler.setFetchStore(fetchStore);
+        this.pageList = new ArrayList<>();
+        CrawlPipeline pipeline = new CrawlPipeline(crawler, parseThreads,
+                                                   this::indexPage);
+        pipeline.run();
+        pipeline.printStageReport();
+        buildTokenVector();
+        buildForwardIndex();
+        buildSegment();
     }
     /**
      * Sets the data source for the index to the provided list of pages.
@@ -58,8 +123,208 @@ public class Indexer {
      * @param pageList a list of pages which provides the data for the index
      */
     Indexer(final List<Page> pageList) {
+        this(pageList, ForkJoinPool.commonPool());
+    }
+    /**
+     * Sets the data source for the index to the provided list of pages and
+     * builds the index with the threads of the pool, see
+     * ParallelIndexBuilder. The index is the same for every pool.
+     * @param pageList a list of pages which provides the data for the index
+     * @param pool the pool which builds the index, null to build the
+     * forward and reverse index in the calling thread
+     */
+    Indexer(final List<Page> pageList, final ForkJoinPool pool) {
         this.pageList = pageList;
-        init();
+        init(pool);
+    }
+    /**
+     * Loads an index, which was saved with save(). The net is not crawled
+     * and the pages are not lemmatized again. The file is mapped into
+     * memory, so the index is not copied to the heap and loading takes about
+     * the same time for every size.
+     * The fetch store is loaded from the file next to the index file, if
+     * it exists.
+     * @param segmentPath the file the index was saved to
+     * @throws IOException if the file can not be read or is no index.
+     */
+    Indexer(final Path segmentPath) throws IOException {
+        segments = new SegmentedIndex(SegmentFormat.map(segmentPath));
+        Path fetchPath = FetchStore.pathFor(segmentPath);
+        if (Files.exists(fetchPath)) {
+            fetchStore = FetchStore.load(fetchPath);
+        }
+    }
+    /**
+     * Saves the index to a file, so it can be loaded without crawling the
+     * net again. Contains the tokens with their IDF, the postings and the
+     * pages with their links, length, norm and PageRank.
+     * Added pages are merged into one segment with the others before.
+     * The fetch store is saved to a file next to the index file, see
+     * FetchStore.pathFor.
+     * @param segmentPath the file the index is saved to
+     * @throws IOException if the file can not be written.
+     */
+    public synchronized void save(final Path segmentPath) throws IOException {
+        merge();
+        SegmentFormat.write(segments.segment(0), segmentPath);
+        fetchStore.save(FetchStore.pathFor(segmentPath));
+    }
+    /**
+     * Adds the pages to the index. Indexed pages with the same URL are
+     * replaced. The pages are put into a new segment on the heap, the
+     * postings of the other segments are not changed, so the work only
+     * depends on the number and the length of the added pages. If there are
+     * more than MAX_ADDED_SEGMENTS segments of added pages, they are merged
+     * into one.
+     * PageRank is calculated again when all segments are merged, see
+     * merge. Until then a replaced page keeps its PageRank and a new page
+     * gets the PageRank of a page without inbound links.
+     * @param pages the pages, which should be added
+     */
+    public synchronized void addPages(final Collection<Page> pages) {
+        if (pages.isEmpty()) {
+            return;
+        }
+        // the last page with a URL is added
+        Map<String, Page> pagesByURL = new TreeMap<>();
+        for (Page page : pages) {
+            pagesByURL.put(page.getURL(), page);
+        }
+        List<Page> added = new ArrayList<>(pagesByURL.values());
+        SegmentedIndex replaced = segments;
+        SegmentedIndex updated = replaced.delete(pagesByURL.keySet());
+        double newPageRank = (1 - PageRank.DAMPING_FACTOR)
+                             / (updated.numDocs() + added.size());
+        double[] pageRanks = new double[added.size()];
+        for (int i = 0; i < pageRanks.length; i++) {
+            int docId = replaced.findDoc(added.get(i).getURL());
+            pageRanks[i] = docId >= 0 ? replaced.pageRank(docId)
+                                      : newPageRank;
+        }
+        updated = updated.add(SegmentMerger.build(updated, added,
+                                                  pageRanks));
+        if (updated.numSegments() - 1 > MAX_ADDED_SEGMENTS) {
+            updated = updated.replace(1, SegmentMerger.merge(updated, 1));
+        }
+        segments = updated;
+    }
+    /**
+     * Deletes the pages from the index. The pages are only marked as
+     * deleted until their segment is merged. URLs, which are not indexed,
+     * are ignored.
+     * @param urls the URLs of the pages, which should be deleted
+     */
+    public synchronized void deletePages(final Collection<String> urls) {
+        segments = segments.delete(urls);
+    }
+    /**
+     * Updates the index to a new crawl of the net. New pages are added,
+     * pages with a changed title, headings, content or links are replaced
+     * and pages, which were not crawled again, are deleted. Unchanged pages
+     * keep their postings, so the index work only depends on the changed
+     * pages.
+     * @param crawledPages all pages of the new crawl
+     * @return the number of added, replaced and deleted pages.
+     */
+    public synchronized int update(final Collection<Page> crawledPages) {
+        return update(crawledPages, Set.of());
+    }
+    /**
+     * Updates the index to a new crawl of the net like update(crawledPages),
+     * the unchanged pages were crawled again but not parsed. They are kept
+     * like crawled pages with the same text.
+     * @param crawledPages the pages of the new crawl, which may have changed
+     * @param unchangedURLs URLs of the indexed pages, which did not change
+     * @return the number of added, replaced and deleted pages.
+     */
+    public synchronized int update(final Collection<Page> crawledPages,
+                                   final Collection<String> unchangedURLs) {
+        SegmentedIndex snapshot = segments;
+        Set<String> crawledURLs = new HashSet<>(unchangedURLs);
+        List<Page> changed = new ArrayList<>();
+        for (Page page : crawledPages) {
+            crawledURLs.add(page.getURL());
+            int docId = snapshot.findDoc(page.getURL());
+            if (docId < 0 || !samePage(snapshot.doc(docId), page)) {
+                changed.add(page);
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (int docId = 0; docId < snapshot.maxDoc(); docId++) {
+            if (!snapshot.isDeleted(docId)
+                && !crawledURLs.contains(snapshot.url(docId))) {
+                removed.add(snapshot.url(docId));
+            }
+        }
+        deletePages(removed);
+        addPages(changed);
+        return changed.size() + removed.size();
+    }
+    /**
+     * Crawls the net again starting from the seed URLs and updates the index
+     * to the crawled pages, see update.
+     * The crawler sends conditional requests with the fetch store, so pages
+     * which did not change are neither downloaded nor lemmatized again.
+     * @param seedURLs   seed URLs the crawler should start from
+     * @param fetchThreads number of pages the crawler fetches at the same time
+     * @return the number of added, replaced and deleted pages.
+     */
+    public int recrawl(final String[] seedURLs, final int fetchThreads) {
+        // an unchanged page is kept, so it has to be indexed
+        SegmentedIndex snapshot = segments;
+        fetchStore.retain(url -> snapshot.findDoc(url) >= 0);
+        Crawler recrawler = new Crawler(seedURLs, Integer.MAX_VALUE,
+                                        fetchThreads);
+        recrawler.setFetchStore(fetchStore);
+        recrawler.crawl();
+        return update(recrawler.getCrawledPages(),
+                      recrawler.getUnchangedURLs());
+    }
+    /**
+     * Merges all segments into one and drops the deleted pages. The norms
+     * and weights of all pages are calculated again with the current IDF
+     * values and the PageRank from the links of the pages.
+     */
+    public synchronized void merge() {
+        SegmentedIndex snapshot = segments;
+        if (snapshot.numSegments() > 1
+            || snapshot.numDocs() < snapshot.maxDoc()) {
+            segments = snapshot.replace(0, SegmentMerger.merge(snapshot, 0));
+        }
+    }
+    /**
+     * Returns whether two versions of a page have the same indexed text and
+     * links.
+     * @param indexed the indexed page
+     * @param crawled the crawled page
+     * @return true if title, headings, content and links are the same.
+     */
+    private static boolean samePage(final Page indexed, final Page crawled) {
+        return Objects.equals(indexed.getTitle(), crawled.getTitle())
+               && Objects.equals(indexed.getHeader(), crawled.getHeader())
+               && Objects.equals(indexed.getContent(), crawled.getContent())
+               && Objects.equals(indexed.getLinks(), crawled.getLinks());
+    }
+    /**
+     * Builds the segment, which is searched, of all pages in the page list.
+     * With a pool every thread builds a partial index of a slice of the
+     * pages, which are merged, see ParallelIndexBuilder. Without a pool the
+     * reverse and forward index are built one page after the other.
+     * @param pool the pool which builds the index, null to build it in the
+     * calling thread
+     */
+    private void init(final ForkJoinPool pool) {
+        if (pool == null) {
+            buildrevIndex();
+            buildTokenVector();
+            buildForwardIndex();
+            buildSegment();
+            return;
+        }
+        Page[] docs = pageList.toArray(new Page[0]);
+        Arrays.sort(docs);
+        segments = new SegmentedIndex(ParallelIndexBuilder.build(docs,
+                                                calcPageRanks(), pool));
     }
     /**
      * Builds a forward index of all the pages in the provided list.
@@ -69,17 +334,75 @@ public class Indexer {
      * page1 : ["discover", "world", "of", "divine"]
      * page2 : ["explore", "world", "cheese", "manchego"]
      */
-    private void init() {
-        buildrevIndex();
-        buildTokenVector();
-        buildForwardIndex();
-    }
     private void buildForwardIndex() {
         for (Page crawledPage : pageList) {
             fwdIndex.put(crawledPage, crawledPage.getFilteredLemmaList(),
-            tokenIDFVector);
+            terms);
         }
     }
+    /**
+     * Builds the postings of all tokens and the segment, which is searched.
+     * The pages are sorted by URL and numbered, so the postings of every
+     * token are sorted by document id.
+     * The term frequency and the normalized TF-IDF weight of every posting
+     * are stored, so a search only has to add them up.
+     * The postings look like this:
+     * "manchego" : [(doc1, tf 2, 0.31), (doc5, tf 1, 0.12)]
+     */
+    private void buildSegment() {
+        Page[] docs = pageList.toArray(new Page[0]);
+        Arrays.sort(docs);
+        int[] docLengths = new int[docs.length];
+        double[] docNorms = new double[docs.length];
+        PostingsList[] postings = new PostingsList[terms.size()];
+        for (int i = 0; i < postings.length; i++) {
+            postings[i] = new PostingsList();
+        }
+        for (int docId = 0; docId < docs.length; docId++) {
+            List<String> lemmaList = docs[docId].getFilteredLemmaList();
+            docLengths[docId] = lemmaList.size();
+            // count every token in a single pass
+            Map<String, Integer> tokenCounts = new TreeMap<>();
+            for (String token : lemmaList) {
+                tokenCounts.merge(token, 1, Integer::sum);
+            }
+            /* every token of the page is in the term dictionary, so the
+             * TFIDF vector has an entry for every counted token. Both are
+             * sorted lexicographically by token.
+             */
+            SparseVector tfidfVector = fwdIndex.getTFIDFVector(docs[docId]);
+            int i = 0;
+            double quadSum = 0;
+            for (int count : tokenCounts.values()) {
+                int termId = tfidfVector.idAt(i);
+                postings[termId].add(docId, count, lemmaList.size(),
+                                     tfidfVector.weightAt(i));
+                double tfidf = (double) count / lemmaList.size()
+                               * terms.idf(termId);
+                quadSum += tfidf * tfidf;
+                i++;
+            }
+            docNorms[docId] = Math.sqrt(quadSum);
+        }
+        for (PostingsList tokenPostings : postings) {
+            tokenPostings.trim();
+        }
+        segments = new SegmentedIndex(new HeapSegment(terms, postings, docs,
+                                  docLengths, docNorms, calcPageRanks()));
+    }
+    /**
+     * Calculates the PageRank of all pages. The PageRank only depends on the
+     * links between the pages, so it is calculated once when the index is
+     * built and not for every search. It has to be calculated again, if the
+     * pages of the index change.
+     * @return the PageRank of every page, indexed by document id.
+     */
+    private double[] calcPageRanks() {
+        // PageRank numbers the pages by URL too, so the ids are the
+        // document ids.
+        return new PageRank(pageList, ForkJoinPool.commonPool())
+                                                        .getPageRanks();
+    }
     /**
      * Builds a reverse index of all the pages in the provided list.
      * The values are maps of a url and page which contain the token.
@@ -90,35 +413,55 @@ public class Indexer {
     private void buildrevIndex() {
         // run through all crawled Pages
         for (Page crawledPage : pageList) {
-            // run through all token in crawledPage and add them to revIndex.
-            for (String token : crawledPage.getFilteredLemmaList()) {
-                // get the the page list for current token, null if already in
-                // map
-                Map<String, Page> curPageList = revIndex.get(token);
-                if (curPageList == null) {
-                    /* there is no entry for the current token in the reverse
-                       index. We need to create a new value.
-                    */
-                    Map<String, Page> newMap = new TreeMap<>();
-                    newMap.put(crawledPage.getURL(), crawledPage);
-                    revIndex.put(token, newMap);
-                } else {
-                    curPageList.put(crawledPage.getURL(), crawledPage);
-                }
+            addToRevIndex(crawledPage);
+        }
+    }
+    /**
+     * Index stage of the CrawlPipeline. Adds the page to the page list and
+     * the reverse index.
+     * @param crawledPage the page which should be indexed
+     */
+    private void indexPage(final Page crawledPage) {
+        pageList.add(crawledPage);
+        addToRevIndex(crawledPage);
+    }
+    /**
+     * Adds all tokens of the page to the reverse index.
+     * @param crawledPage the page which should be added
+     */
+    private void addToRevIndex(final Page crawledPage) {
+        // run through all token in crawledPage and add them to revIndex.
+        for (String token : crawledPage.getFilteredLemmaList()) {
+            // get the the page list for current token, null if already in
+            // map
+            Map<String, Page> curPageList = revIndex.get(token);
+            if (curPageList == null) {
+                /* there is no entry for the current token in the reverse
+                   index. We need to create a new value.
+                */
+                Map<String, Page> newMap = new TreeMap<>();
+                newMap.put(crawledPage.getURL(), crawledPage);
+                revIndex.put(token, newMap);
+            } else {
+                curPageList.put(crawledPage.getURL(), crawledPage);
             }
         }
     }
     /**
-     * Builds the vector IDF (Inverse Document Frequency) vector of all 
-     * tokens. Normalizes all vector to length 1.
+     * Builds the term dictionary with the IDF (Inverse Document Frequency)
+     * of all tokens. The reverse index is sorted lexicographically, so the
+     * tokens are sorted like the dictionary needs them.
      */
     private void buildTokenVector() {
-        tokenIDFVector = new TokenIDF[revIndex.size()];
-        int i = 0;
-        for (String token : revIndex.keySet()) {
-            tokenIDFVector[i] = new TokenIDF(token, calcIDF(token));
-            i++;
+        List<String> tokens = new ArrayList<>(revIndex.keySet());
+        double[] idfs = new double[tokens.size()];
+        double n = pageList.size();
+        for (int i = 0; i < idfs.length; i++) {
+            // IDF(t) = ln( N / df(t) ), see calcIDF
+            double dft = revIndex.get(tokens.get(i)).size();
+            idfs[i] = Math.log(n / dft);
         }
+        terms = TermDictionary.build(tokens, idfs);
     }    
     /**
      * Return a map of <String url, Page p> which of pages which contain the
@@ -129,14 +472,40 @@ public class Indexer {
      * not on any page
      */
     public Map<String, Page> getReverseIndexValues(final String key) {
-        return revIndex.get(key);
+        SegmentedIndex snapshot = segments;
+        Map<String, Page> pages = new TreeMap<>();
+        for (int s = 0; s < snapshot.numSegments(); s++) {
+            IndexSegment segment = snapshot.segment(s);
+            int termId = segment.findTerm(key);
+            if (termId < 0) {
+                continue;
+            }
+            Postings tokenPostings = segment.postings(termId);
+            for (int i = 0; i < tokenPostings.size(); i++) {
+                int docId = snapshot.docBase(s) + tokenPostings.docId(i);
+                if (!snapshot.isDeleted(docId)) {
+                    Page page = snapshot.doc(docId);
+                    pages.put(page.getURL(), page);
+                }
+            }
+        }
+        return pages.isEmpty() ? null : pages;
+    }
+    /**
+     * Returns the first segment, which is searched. Pages added after the
+     * index was built or loaded are in further segments until merge() is
+     * called.
+     * @return the built or mapped index.
+     */
+    IndexSegment getSegment() {
+        return segments.segment(0);
     }
     /**
      * Returns the number of pages indexed.
      * @return the number of pages indexed.
      */
     public int getPagesIndexed() {
-        return fwdIndex.size();
+        return segments.numDocs();
     }
     /**
      * Print the amount of keys in the forward and revese index.
@@ -148,8 +517,11 @@ public class Indexer {
             LOGGER.info("Reverse Index has {} key-value mappings.", 
                         revIndex.size());
         }*/
-        System.out.format("Forward Index has %d key-value mappings.%n", fwdIndex.size());
-        System.out.format("Reverse Index has %d key-value mappings.", revIndex.size());
+        SegmentedIndex snapshot = segments;
+        System.out.format("Forward Index has %d key-value mappings.%n",
+                          snapshot.numDocs());
+        System.out.format("Reverse Index has %d key-value mappings.",
+                          snapshot.numTerms());
     }
     /**
      * Logs the search results with their corresponding score for debug purposes
@@ -170,14 +542,9 @@ public class Indexer {
      * @return the calculated IDF value
      */
     public double calcIDF(final String t) {
-        double n = pageList.size();
-        //document frequency df(t)
-        if (revIndex.get(t) != null) {
-            double dft = revIndex.get(t).size();
-            return Math.log(n / dft);
-        } else {
-            return 0.0;
-        }
+        // the IDF is calculated from the postings of all segments, so it
+        // includes the added and deleted pages.
+        return segments.idf(t);
     }
     /**
      * Calculates the TF (Term Frequency).
@@ -205,15 +572,34 @@ public class Indexer {
      * @return the calculated TF-IDF value
      */
     public double calcTFIDF(final String t, final Page p) {
-        return calcTF(t, p) * calcIDF(t);
+        SegmentedIndex snapshot = segments;
+        int docId = snapshot.findDoc(p.getURL());
+        if (docId < 0) {
+            // the page is not indexed, so there are no postings for it.
+            return calcTF(t, p) * snapshot.idf(t);
+        }
+        int s = snapshot.segmentOf(docId);
+        IndexSegment segment = snapshot.segment(s);
+        int localDocId = docId - snapshot.docBase(s);
+        int termId = segment.findTerm(t);
+        if (termId < 0) {
+            return 0.0;
+        }
+        Postings tokenPostings = segment.postings(termId);
+        int i = tokenPostings.find(localDocId);
+        if (i < 0) {
+            return 0.0;
+        }
+        double tf = (double) tokenPostings.tf(i)
+                    / segment.docLength(localDocId);
+        return tf * snapshot.idf(t);
     }
     /**
      * Executes a search for the provided query.
      * Removes the stop words tokenizes and lemmatizes the query.
-     * Builds a list of all Pages containing a least one of the tokens.
-     * Then it calculates the TF-IDF value for all tokens for a specific page
-     * and cumulates them. Does this for every page.
-     * Sorts the url of the pages by the cumulated TF-IDF value ascending.
+     * Walks the postings of every token once and cumulates the score of
+     * every page containing at least one of the tokens.
+     * Sorts the url of the pages by the cumulated score descending.
      * @param searchString the searchterms seperated by spaces
      * @param explRankMode specifies which ranking method should be used. 
      * 0 TFIDF, 1 cosine similarity.
@@ -221,25 +607,91 @@ public class Indexer {
      */
     public List<SearchResult> searchQuery(final String searchString,
                                          final int explRankMode) {
-        // TreeSet eliminates duplicates and sorts our Token
-        TreeSet<String> searchTokenSet = new TreeSet<>(
-                                                Parser.tokLem(searchString));
-        Set<Page> pageSet = new TreeSet<>();
-
-        // Build a list of all Pages which contains at least one of the search
-        // token.
-        for (String searchToken : searchTokenSet) {
-            if (revIndex.get(searchToken) != null) {
-                pageSet.addAll(revIndex.get(searchToken).values());
-            }
+        return searchQuery(searchString, explRankMode, Integer.MAX_VALUE);
+    }
+    /**
+     * Executes a search for the provided query and returns only the k best
+     * search results.
+     * For TF-IDF and cosine similarity the postings are walked by the
+     * MaxScore method: once no page, which was not seen yet, can reach the
+     * score of the k-th best page, only the scores of the pages already seen
+     * are completed. Pages which can not reach the k best anymore are
+     * dropped.
+     * Results with the same score are sorted by URL ascending.
+     * @param searchString the searchterms seperated by spaces
+     * @param explRankMode specifies which ranking method should be used. 
+     * 0 TFIDF, 1 cosine similarity, 2 combination of cosine similarity and
+     * PageRank, 3 cosine similarity with weights.
+     * @param k maximum number of search results, at least 1
+     * @return a list of the k best search results sorted by the score value.
+     */
+    public List<SearchResult> searchQuery(final String searchString,
+                                          final int explRankMode,
+                                          final int k) {
+        return searchLemmas(Parser.tokLem(searchString), explRankMode, k);
+    }
+    /**
+     * Executes a search for a query, which was already lemmatized by
+     * Parser.tokLem(), and returns only the k best search results. Like
+     * searchQuery(), but the caller can reuse the lemmas of the query, e.g.
+     * to highlight them.
+     * The results of recent searches are cached, until the index is
+     * updated, see setResultCacheCapacity(). The returned list can not be
+     * modified, if the results are cached.
+     * @param searchTokenList the lemmas of the query
+     * @param explRankMode specifies which ranking method should be used.
+     * 0 TFIDF, 1 cosine similarity, 2 combination of cosine similarity and
+     * PageRank, 3 cosine similarity with weights.
+     * @param k maximum number of search results, at least 1
+     * @return a list of the k best search results sorted by the score value.
+     */
+    public List<SearchResult> searchLemmas(final List<String> searchTokenList,
+                                           final int explRankMode,
+                                           final int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException(
+                "At least one search result has to be requested.");
+        }
+        // the whole search uses the same segments, even if the index is
+        // updated meanwhile
+        SegmentedIndex snapshot = segments;
+        ResultCache cache = resultCache;
+        if (cache == null) {
+            return rank(snapshot, searchTokenList, explRankMode, k);
         }
+        ResultCache.Key key = ResultCache.Key.of(searchTokenList,
+                                                 explRankMode, k);
+        List<SearchResult> cached = cache.get(key, snapshot.version());
+        if (cached != null) {
+            return cached;
+        }
+        return cache.put(key, snapshot.version(),
+                         rank(snapshot, searchTokenList, explRankMode, k));
+    }
+    /**
+     * Ranks the pages of a snapshot of the index for a lemmatized query.
+     * @param snapshot the segments, which are searched
+     * @param searchTokenList the lemmas of the query
+     * @param explRankMode specifies which ranking method should be used
+     * @param k maximum number of search results
+     * @return a list of the k best search results sorted by the score value.
+     */
+    private List<SearchResult> rank(final SegmentedIndex snapshot,
+                                    final List<String> searchTokenList,
+                                    final int explRankMode, final int k) {
+        // TreeSet eliminates duplicates and sorts our Token
+        TreeSet<String> searchTokenSet = new TreeSet<>(searchTokenList);
         switch (explRankMode) {
             case 0:
-                return rankTFIDF(pageSet, searchTokenSet);
+                return rankTFIDF(snapshot, searchTokenSet, k);
             case 1:
-                return rankCosineSimilarity(pageSet, searchTokenSet);
+                return rankCosineSimilarity(snapshot, searchTokenSet, k);
             case 2:
-                return rankCombCosSimPageRank(pageSet, searchTokenSet);
+                // the combined score depends on the averages of all results
+                return rankCombCosSimPageRank(snapshot,
+                    rankCosineSimilarity(snapshot, searchTokenSet,
+                                         Integer.MAX_VALUE),
+                    k);
             case 3:
                 /*
                  * ranking by cosine similarity with weights, for every time
@@ -248,7 +700,6 @@ public class Indexer {
                 double[] weights = new double[searchTokenSet.size()];
                 Arrays.fill(weights, 0.0);
 
-                List<String> searchTokenList = Parser.tokLem(searchString);
                 Iterator<String> iter = searchTokenSet.iterator();
                 int i = 0;
                 while (iter.hasNext()) {
@@ -260,10 +711,31 @@ public class Indexer {
                     }
                     i++;
                 }
-                return rankCosineSimilarity(pageSet, searchTokenSet, weights);
+                return rankCosineSimilarity(snapshot, searchTokenSet,
+                                            weights, k);
             default:
-                return rankTFIDF(pageSet, searchTokenSet);
+                return rankTFIDF(snapshot, searchTokenSet, k);
+        }
+    }
+    /**
+     * Sets how many searches the result cache holds. The cached results
+     * are dropped.
+     * @param capacity maximum number of cached searches, 0 to not cache
+     * the results
+     */
+    public void setResultCacheCapacity(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException(
+                "The capacity has to be at least 0.");
         }
+        resultCache = capacity == 0 ? null : new ResultCache(capacity);
+    }
+    /**
+     * Returns the cache of the search results.
+     * @return the cache, null if the results are not cached.
+     */
+    ResultCache getResultCache() {
+        return resultCache;
     }
     /**
      * @param searchString
@@ -272,95 +744,299 @@ public class Indexer {
     public List<SearchResult> searchQuery(final String searchString) {
         return searchQuery(searchString, this.defRankMode);
     }
-    private List<SearchResult> rankTFIDF(final Set<Page> pageSet, 
-                                        final Set<String> searchTokenList) {
-        List<SearchResult> searchResults = new ArrayList<>(pageSet.size());
-        // Iterate over all Pages, which have searchresults and calulate TF-IDF
-        // sum.
-        Iterator<Page> iter = pageSet.iterator();
-        while (iter.hasNext()) {
-            double tfidfSum = 0;
-            Page p = iter.next();
-            // Iterate over the searchtokens for current page and cumulate
-            // TF-IDF
-            for (String searchToken : searchTokenList) {
-                tfidfSum += calcTFIDF(searchToken, p);
+    /**
+     * Ranks all pages containing at least one search token by the cumulated
+     * TF-IDF value of the search tokens. The IDF is the one of all segments.
+     * @param snapshot the segments, which are searched
+     * @param searchTokenList set of search tokens
+     * @param k maximum number of search results
+     * @return ranked and sorted (descending by score) SearchResult list.
+     */
+    private List<SearchResult> rankTFIDF(final SegmentedIndex snapshot,
+                                         final Set<String> searchTokenList,
+                                         final int k) {
+        List<QueryToken> queryTokens = new ArrayList<>();
+        for (String searchToken : searchTokenList) {
+            double idf = snapshot.idf(searchToken);
+            for (int s = 0; s < snapshot.numSegments(); s++) {
+                IndexSegment segment = snapshot.segment(s);
+                int termId = segment.findTerm(searchToken);
+                if (termId >= 0) {
+                    Postings tokenPostings = segment.postings(termId);
+                    queryTokens.add(new QueryToken(tokenPostings, s, idf,
+                                    idf * tokenPostings.maxNormalizedTF(),
+                                    false));
+                }
             }
-            searchResults.add(new SearchResult(p.getURL(), p, tfidfSum));
         }
-
-        // In the tokenList.sort line no checkstyle error, 
-        //here WhiteSpaceAround!?
-        searchResults.sort((a, b) ->  (b.score() < a.score() ? -1 : 1));
-        return searchResults;
+        return rankTermAtATime(snapshot, queryTokens, false, k);
     }
     /**
-     * Ranks pageSet by cosine similarity to the list of search tokens, with no weights.
-     * @param pageSet set of pages, which should be ranked
+     * Ranks all pages containing at least one search token by cosine
+     * similarity to the list of search tokens, with no weights.
+     * @param snapshot the segments, which are searched
      * @param searchTokenList list of search tokens
+     * @param k maximum number of search results
      * @return ranked and sorted (descending by score) SearchResult list.
      */
-    private List<SearchResult> rankCosineSimilarity(final Set<Page> pageSet, 
-    final TreeSet<String> searchTokenList) {
-        double[] weights = new double[revIndex.size()];
+    private List<SearchResult> rankCosineSimilarity(
+                                    final SegmentedIndex snapshot,
+                                    final TreeSet<String> searchTokenList,
+                                    final int k) {
+        double[] weights = new double[searchTokenList.size()];
         Arrays.fill(weights, 1.0);
-        return rankCosineSimilarity(pageSet, searchTokenList, weights);
+        return rankCosineSimilarity(snapshot, searchTokenList, weights, k);
     }
-
-    private List<SearchResult> rankCosineSimilarity(final Set<Page> pageSet, 
-                                    final TreeSet<String> searchTokenList, double[] weights) {
-        List<SearchResult> searchResults = new ArrayList<>(pageSet.size());
-        int vecL = tokenIDFVector.length;
-
-        // build search vector 
-        double[] searchV = new double[vecL];
-        Arrays.fill(searchV, 0.0);
-        /* We can use the fact that both searchTokenList and tokenIDFVector are
-        *  lexicographically sorted. i is used as an index for tokenIDFVector.
-        *  Could optimize further using binary search but not a priority right
-        *  now.
-        */
-        int i = 0;
-        // the index for our weight
-        int iWeight = 0;
-        Iterator<String> stIter = searchTokenList.iterator();
-        while (stIter.hasNext() && i < vecL) {
-            String curSearchToken = stIter.next();
-            // while our current search token is lexicographically greater, we 
-            // move forward in the tokenIDFVector
-            while (curSearchToken.compareTo(tokenIDFVector[i].token()) > 0 
-                   &&  i < vecL) {
-                i++;
-            }
-            if (curSearchToken.equals(tokenIDFVector[i].token())) {
-                searchV[i] = 1 * weights[iWeight];
-                iWeight++;
-                
+    /**
+     * Ranks all pages containing at least one search token by cosine
+     * similarity to the weighted list of search tokens.
+     * The weights in the postings use the IDF of the time their segment was
+     * built. They are only used if the index is a single segment without
+     * deleted pages. Otherwise the weights are calculated from the term
+     * frequency, the IDF of all segments and the norm of the page with that
+     * IDF, see SegmentedIndex.norm, so the scores are the same as in an
+     * index built of all pages.
+     * @param snapshot the segments, which are searched
+     * @param searchTokenList list of search tokens
+     * @param weights the weight of every search token, weights[i] belongs to
+     * the i-th token of searchTokenList
+     * @param k maximum number of search results
+     * @return ranked and sorted (descending by score) SearchResult list.
+     */
+    private List<SearchResult> rankCosineSimilarity(
+                                    final SegmentedIndex snapshot,
+                                    final TreeSet<String> searchTokenList,
+                                    final double[] weights, final int k) {
+        // build sparse search vector of the indexed tokens. The id of a
+        // token is its position in searchTokenList, so the ids are sorted.
+        String[] searchTokens = searchTokenList.toArray(new String[0]);
+        int[] ids = new int[searchTokens.length];
+        float[] searchWeights = new float[searchTokens.length];
+        int size = 0;
+        for (int iWeight = 0; iWeight < searchTokens.length; iWeight++) {
+            if (snapshot.docFreq(searchTokens[iWeight]) > 0) {
+                ids[size] = iWeight;
+                searchWeights[size] = (float) weights[iWeight];
+                size++;
             }
         }
 
         /* we normalize the searchvector to a length of 1 so we can skip the
         * calulation of the euclidian norm. The divisor is 1 times 1 then. */
-        searchV = normalizeVector(searchV);
-        // iterate through pages and rank then using cosine similarity.
-        Iterator<Page> pIter = pageSet.iterator();
-        while (pIter.hasNext()) {
-            Page curPage = pIter.next();
-            double curScore = -1; // debug value
-
-            /* curScore = cosineSimilarity(searchV, 
-                                        fwdIndex.getTFIDFVector(curPage)); */
-            /* because the searchV and all the TFIDF vector saved in the  
-             * are normalized to a length of 1, we can skip the divisor and
-             * just use the dotproduct.
-            */
-            curScore = dotProduct(searchV, fwdIndex.getTFIDFVector(curPage));
-            searchResults.add(new SearchResult(curPage.getURL(), 
-                              curPage, curScore));
+        SparseVector searchV = new SparseVector(Arrays.copyOf(ids, size),
+                                    Arrays.copyOf(searchWeights, size))
+                                    .normalize();
+        /* because the searchV and all the weights saved in the postings
+         * are normalized to a length of 1, we can skip the divisor and
+         * just use the dotproduct. Only the dimensions of the search
+         * tokens are not 0, so we walk their postings and cumulate the
+         * products for every page.
+        */
+        List<QueryToken> queryTokens = new ArrayList<>(searchV.size());
+        boolean storedWeights = snapshot.hasCurrentWeights();
+        for (int j = 0; j < searchV.size(); j++) {
+            String searchToken = searchTokens[searchV.idAt(j)];
+            double searchWeight = searchV.weightAt(j);
+            double idf = storedWeights ? 0.0 : snapshot.idf(searchToken);
+            for (int s = 0; s < snapshot.numSegments(); s++) {
+                IndexSegment segment = snapshot.segment(s);
+                int termId = segment.findTerm(searchToken);
+                if (termId < 0) {
+                    continue;
+                }
+                Postings tokenPostings = segment.postings(termId);
+                if (storedWeights) {
+                    queryTokens.add(new QueryToken(tokenPostings, s,
+                            searchWeight,
+                            searchWeight * tokenPostings.maxWeight(), true));
+                } else if (idf == 0) {
+                    // the token is on every page, its pages score 0
+                    queryTokens.add(new QueryToken(tokenPostings, s, 0.0,
+                                                   0.0, false));
+                } else {
+                    // the norm of a page is at least the TF-IDF value of
+                    // the token, so a posting adds at most the weight of
+                    // the search token
+                    queryTokens.add(new QueryToken(tokenPostings, s,
+                            searchWeight * idf, searchWeight, false));
+                }
+            }
+        }
+        return rankTermAtATime(snapshot, queryTokens, true, k);
+    }
+    /**
+     * Cumulates the scores of the pages term at a time and returns the k
+     * best pages.
+     * The tokens are walked by their maximum score descending. After every
+     * token the k-th best score so far is a lower bound of the k-th best
+     * final score, since no score decreases. If the sum of the maximum
+     * scores of the remaining tokens is below it, no new page can get into
+     * the k best and the remaining postings are only used for the pages
+     * already seen. Those are looked up by binary search, if that is cheaper
+     * than walking the whole postings. Pages already seen are dropped, if
+     * their score plus the maximum scores of the remaining tokens is below
+     * it.
+     * Every search token has postings in every segment, which contains it.
+     * A page is only in one segment, so the maximum scores of all postings
+     * still add up to an upper bound of the score. Deleted pages are
+     * skipped.
+     * @param snapshot the segments, which are searched
+     * @param queryTokens the search tokens with their postings
+     * @param cosine true if the score is the weight in the postings, false if
+     * it is the TF-IDF value
+     * @param k maximum number of search results
+     * @return the k best search results sorted by the score value.
+     */
+    private List<SearchResult> rankTermAtATime(
+                                        final SegmentedIndex snapshot,
+                                        final List<QueryToken> queryTokens,
+                                        final boolean cosine, final int k) {
+        queryTokens.sort(Comparator.comparingDouble(QueryToken::maxScore)
+                                   .reversed());
+        ScoreAccumulator acc = accumulator(snapshot);
+        try {
+            boolean acceptNewPages = true;
+            for (int j = 0; j < queryTokens.size(); j++) {
+                QueryToken queryToken = queryTokens.get(j);
+                Postings tokenPostings = queryToken.postings();
+                IndexSegment segment = snapshot.segment(queryToken.segment());
+                int docBase = snapshot.docBase(queryToken.segment());
+                boolean skipDeleted = snapshot.hasDeletions(
+                                                    queryToken.segment());
+                int searchSteps = 32 - Integer.numberOfLeadingZeros(
+                                                        tokenPostings.size());
+                if (!acceptNewPages
+                    && acc.size() * searchSteps < tokenPostings.size()) {
+                    // look up the few pages already seen, deleted pages
+                    // were never added
+                    for (int p = 0; p < acc.size(); p++) {
+                        int docId = acc.docAt(p);
+                        int localDocId = docId - docBase;
+                        if (localDocId < 0
+                            || localDocId >= segment.numDocs()) {
+                            continue;
+                        }
+                        int i = tokenPostings.find(localDocId);
+                        if (i >= 0) {
+                            acc.add(docId, postingScore(snapshot, queryToken,
+                                                i, localDocId,
+                                                tokenPostings.tf(i), cosine));
+                        }
+                    }
+                } else {
+                    // compressed postings are decoded a block at a time
+                    PostingsBlock block = postingsBlock();
+                    for (int b = 0; b < tokenPostings.numBlocks(); b++) {
+                        block.read(tokenPostings, b);
+                        for (int i = 0; i < block.size(); i++) {
+                            int localDocId = block.docId(i);
+                            int docId = docBase + localDocId;
+                            if (skipDeleted && snapshot.isDeleted(docId)) {
+                                continue;
+                            }
+                            if (acceptNewPages || acc.isTouched(docId)) {
+                                acc.add(docId, postingScore(snapshot,
+                                                queryToken, block.first() + i,
+                                                localDocId, block.tf(i),
+                                                cosine));
+                            }
+                        }
+                    }
+                }
+                if (j + 1 < queryTokens.size() && acc.size() >= k) {
+                    double threshold = acc.kthLargestScore(k);
+                    int next = j + 1;
+                    // ties with the threshold are kept, since the URL
+                    // decides then.
+                    if (maxFinalScore(0.0, queryTokens, next) < threshold) {
+                        acceptNewPages = false;
+                    }
+                    if (!acceptNewPages) {
+                        acc.retain(score -> maxFinalScore(score, queryTokens,
+                                                          next) >= threshold);
+                    }
+                }
+            }
+            TopKResults topK = new TopKResults(k);
+            for (int i = 0; i < acc.size(); i++) {
+                int docId = acc.docAt(i);
+                topK.offer(new SearchResult(snapshot.url(docId),
+                                            snapshot.doc(docId),
+                                            acc.score(docId)));
+            }
+            return topK.toList();
+        } finally {
+            acc.clear();
         }
-        // sort the search results by score descending.
-        searchResults.sort((a, b) ->  (b.score() < a.score() ? -1 : 1));
-        return searchResults;
+    }
+    /**
+     * Returns the score the posting adds to the page.
+     * @param snapshot the segments, which are searched
+     * @param queryToken the search token of the postings
+     * @param i index of the posting
+     * @param localDocId the document id of the posting in the segment
+     * @param tf the term frequency of the posting
+     * @param cosine true for the weight, false for the TF-IDF value
+     * @return the score of the posting.
+     */
+    private static double postingScore(final SegmentedIndex snapshot,
+                                       final QueryToken queryToken,
+                                       final int i, final int localDocId,
+                                       final int tf, final boolean cosine) {
+        if (cosine && queryToken.storedWeights()) {
+            return queryToken.factor() * queryToken.postings().weight(i);
+        }
+        IndexSegment segment = snapshot.segment(queryToken.segment());
+        double normalizedTF = (double) tf / segment.docLength(localDocId);
+        if (cosine) {
+            // the page contains the token with an IDF above 0, so its norm
+            // is above 0. Rounding of the norm must not push the score over
+            // the maximum score.
+            return Math.min(queryToken.factor() * normalizedTF
+                            / snapshot.norm(queryToken.segment(),
+                                            localDocId),
+                            queryToken.maxScore());
+        }
+        return normalizedTF * queryToken.factor();
+    }
+    /**
+     * Returns the highest score a page can reach. The maximum scores are
+     * added in the same order as the scores, so rounding can not make the
+     * bound smaller than the final score.
+     * @param score the score of the page so far
+     * @param queryTokens the search tokens
+     * @param next the first search token, which was not walked yet
+     * @return an upper bound of the final score of the page.
+     */
+    private static double maxFinalScore(final double score,
+                                        final List<QueryToken> queryTokens,
+                                        final int next) {
+        double maxScore = score;
+        for (int j = next; j < queryTokens.size(); j++) {
+            maxScore += queryTokens.get(j).maxScore();
+        }
+        return maxScore;
+    }
+    /**
+     * Returns the score accumulator of the current thread. A new one is
+     * created if the thread has none yet or the index has grown.
+     * @param snapshot the segments, which are searched
+     * @return an empty score accumulator for all documents of the index.
+     */
+    private ScoreAccumulator accumulator(final SegmentedIndex snapshot) {
+        ScoreAccumulator acc = accumulators.get();
+        if (acc == null || acc.capacity() < snapshot.maxDoc()) {
+            acc = new ScoreAccumulator(snapshot.maxDoc());
+            accumulators.set(acc);
+        }
+        return acc;
+    }
+    /**
+     * Returns the block buffer of the current thread.
+     * @return the block buffer for walking postings.
+     */
+    private PostingsBlock postingsBlock() {
+        return postingsBlocks.get();
     }
     /**
      * Ranks search results based on a combination of the cosine similarity and
@@ -375,32 +1051,54 @@ public class Indexer {
      * After normalizing the scores to the averages our has a 1.5 cosine
      * similarity score and a 0.5 pagerank score.
      * The combined score is 1.5 * 0.75 + 0.5 * 0.25 = 1.25.
-     * @param searchResultSet set of pages which should be ranked
-     * @param searchTokenList tokens of the searchquery
+     * @param cosineResults the pages which should be ranked with their
+     * cosine similarity as score
+     * @param k maximum number of search results
      * @return sorted list of search results, descencing order by their score.
      */
-    public List<SearchResult> rankCombCosSimPageRank(final Set<Page> searchResultSet,
-                                final TreeSet<String> searchTokenList) {
-        List<SearchResult> searchResults = new ArrayList<>(searchResultSet.size());
-        // Check if our searchResultSet is empty if it is return empty 
+    public List<SearchResult> rankCombCosSimPageRank(
+                                final List<SearchResult> cosineResults,
+                                final int k) {
+        return rankCombCosSimPageRank(segments, cosineResults, k);
+    }
+    /**
+     * Ranks search results based on a combination of the cosine similarity
+     * and pagerank, see rankCombCosSimPageRank.
+     * @param snapshot the segments, which were searched
+     * @param cosineResults the pages which should be ranked with their
+     * cosine similarity as score
+     * @param k maximum number of search results
+     * @return sorted list of search results, descencing order by their score.
+     */
+    private List<SearchResult> rankCombCosSimPageRank(
+                                final SegmentedIndex snapshot,
+                                final List<SearchResult> cosineResults,
+                                final int k) {
+        // Check if our cosineResults is empty if it is return empty 
         // SearchResult list.
-        if (searchResultSet.size() == 0) {
-            return searchResults;
+        if (cosineResults.size() == 0) {
+            return new ArrayList<>();
         }
+        TopKResults topK = new TopKResults(k);
 
         /** How much the normalized cosine scores weigh in contrast to 
          * the corresponding pagerank score */
         final double cosWeight = 0.75;
 
         // getting data
-        List<SearchResult> cosineResults = rankCosineSimilarity(searchResultSet, searchTokenList);
-        PageRank pageRank = new PageRank(pageList);
-        // pageRankMap contains the pagerank for ALL pages crawled
-        Map<String, Double> allPageRankMap = pageRank.getPageRankMap();
-        Map<String, Double> pageRankMap = new TreeMap<>();
-        // add ONLY pages to pageRankMap, which show up in our searchresults
-        cosineResults.forEach(sr -> pageRankMap.put(sr.url(),
-                            allPageRankMap.get(sr.url())));
+        // pageRanks contains the pagerank for ALL pages crawled, we use ONLY
+        // the pages, which show up in our searchresults.
+        int[] resultDocIds = new int[cosineResults.size()];
+        for (int i = 0; i < resultDocIds.length; i++) {
+            resultDocIds[i] = snapshot.findDoc(cosineResults.get(i).url());
+        }
+        // the average is cumulated in the order of the URLs
+        int[] sortedDocIds = resultDocIds.clone();
+        Arrays.sort(sortedDocIds);
+        double[] resultPageRanks = new double[sortedDocIds.length];
+        for (int i = 0; i < sortedDocIds.length; i++) {
+            resultPageRanks[i] = snapshot.pageRank(sortedDocIds[i]);
+        }
 
         /* Since the average Pagerank score in our implementation is highly
         *  dependant on the total amount of pages crawled (it should be around
@@ -416,34 +1114,34 @@ public class Indexer {
             throw new IllegalArgumentException(
                 "cosineResults has uninitialized score values.");
         }
-        OptionalDouble avgPageRankScore = pageRankMap.values()
-                    .stream()
-                    .mapToDouble(Double::doubleValue)
+        OptionalDouble avgPageRankScore = Arrays.stream(resultPageRanks)
                     .average();
         if (!avgPageRankScore.isPresent()) {
             throw new IllegalArgumentException(
-                "PageRankMap has uninitialized score values.");
+                "pageRanks has uninitialized score values.");
         }
 
         //LOGGER.debug("Avg Cosine Score is: {} \tAvg Pagerank Score: {}", avgCosineScore, avgPageRankScore);
-        for (SearchResult cosRes : cosineResults) {
+        for (int i = 0; i < cosineResults.size(); i++) {
+            SearchResult cosRes = cosineResults.get(i);
             double cosineScore = cosRes.score();
-            double pageRankScore = pageRankMap.get(cosRes.url());
+            double pageRankScore = snapshot.pageRank(resultDocIds[i]);
             // absolute valules
             // System.out.format("URL: %-40s\tCos Score: %f\tPagerank: %f%n", cosRes.url(), cosineScore, pageRankScore);
             // convert scores to percent scores of average
-            cosineScore =  cosineScore / avgCosineScore.getAsDouble();
+            // all scores are 0 if the tokens are on every page
+            cosineScore = avgCosineScore.getAsDouble() > 0
+                          ? cosineScore / avgCosineScore.getAsDouble() : 0.0;
             pageRankScore = pageRankScore / avgPageRankScore.getAsDouble();
 
             // relative values
             //System.out.format("URL: %-40s\tCos Score: %-3.0f%%\tPagerank: %-3.0f%%%n", cosRes.url(), cosineScore*100, pageRankScore*100);
             double newScore =   cosWeight * cosineScore +
                                 (1- cosWeight) * pageRankScore;
-            searchResults.add(new SearchResult(cosRes.url(), cosRes.page() , newScore));
+            topK.offer(new SearchResult(cosRes.url(), cosRes.page() , newScore));
         }
         // Sort the resuls by score.
-        searchResults.sort( (a,b) -> (b.score() < a.score() ? -1 : 1));
-        return searchResults;        
+        return topK.toList();
     }
     /**
      * Executes a search for provided query.
@@ -476,17 +1174,18 @@ public class Indexer {
         return urlList;
     }
     /**
-     * Analyzes the reverse index to build a list of the most common tokens.
+     * Analyzes the postings to build a list of the most common tokens.
      * Useful to build a stopword list.
      */
     public void printMostCommonTokens() {
-        // Represents the amount of tokens the reverse index contains */
-        int size = revIndex.size();
+        // the number of pages of every token in all segments
+        Map<String, Integer> docFreqs = segments.docFreqs();
         // How many results we want to print  */
         final int resToPrint = 25;
-        List<TokenCount> tokenList = new ArrayList<>(size);
-        for (String key : revIndex.keySet()) {
-            tokenList.add(new TokenCount(key));
+        List<TokenCount> tokenList = new ArrayList<>(docFreqs.size());
+        for (Map.Entry<String, Integer> docFreq : docFreqs.entrySet()) {
+            tokenList.add(new TokenCount(docFreq.getKey(),
+                                         docFreq.getValue()));
         }
         // In Line 221
         tokenList.sort((a, b) ->  b.count-a.count);
@@ -513,9 +1212,9 @@ public class Indexer {
         /** How often the token was counted. */
         private int count;
 
-        TokenCount(final String token) {
+        TokenCount(final String token, final int count) {
             this.token = token;
-            count = revIndex.get(token).size();
+            this.count = count;
         }
     }
     /**
@@ -581,5 +1280,24 @@ public class Indexer {
         //System.out.println("Normalized length is: " + calcEuclidianNorm(normalizedVector));
         return normalizedVector;
     }
+    /**
+     * A search token with its postings in one segment.
+     * @param postings the postings of the token
+     * @param segment index of the segment of the postings
+     * @param factor the postings are multiplied with it, the IDF for TF-IDF
+     * and the weight of the token in the search vector for cosine similarity,
+     * times the IDF if the weights are calculated
+     * @param maxScore the highest score a posting of the token can add
+     * @param storedWeights for cosine similarity true if the weights stored
+     * in the postings are used, false if they are calculated from the term
+     * frequency and the current norm of the page
+     */
+    private record QueryToken(
+        Postings postings,
+        int segment,
+        double factor,
+        double maxScore,
+        boolean storedWeights
+    ) { }
 
 }
@@ -0,0 +1,265 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a SyntheticNet over HTTP on the loopback address, so crawls can be
+ * benchmarked offline and repeated with the same net.
+ * Every host of the net is a HttpServer on its own port, the crawler
+ * treats every port as a host. Page i is served by the host i % hosts at
+ * the path /page{i}.
+ * Every response is delayed by latencyMillis plus up to jitterMillis. A
+ * request fails with 503 Service Unavailable with the probability
+ * failureRate. If a request fails depends only on the seed of the net, the
+ * page and how often the page was requested before, so the same crawl
+ * sees the same failures.
+ */
+final class IntranetServer implements AutoCloseable {
+    /** Status code of a served page. */
+    private static final int HTTP_OK = 200;
+    /** Status code of an unknown page. */
+    private static final int HTTP_NOT_FOUND = 404;
+    /** Status code of an injected failure. */
+    private static final int HTTP_UNAVAILABLE = 503;
+    /** Path of a page without its id. */
+    private static final String PAGE_PATH = "/page";
+    /** Mixes the page and the attempt into the seed of a failure. */
+    private static final long SEED_MULTIPLIER = 1_000_003;
+    /** The served net. */
+    private final SyntheticNet net;
+    /** The servers, one per host. */
+    private final HttpServer[] servers;
+    /** The URL of every host without a trailing slash. */
+    private final String[] hostURLs;
+    /** Handles the requests of all hosts. */
+    private final ExecutorService executor;
+    /** Minimum delay of a response. */
+    private final long latencyMillis;
+    /** Maximum additional random delay of a response. */
+    private final long jitterMillis;
+    /** Probability, that a request fails. */
+    private final double failureRate;
+    /** How often every page was requested. */
+    private final AtomicIntegerArray requestsPerPage;
+    /** Number of requests. */
+    private final LongAdder numRequests = new LongAdder();
+    /** Number of injected failures. */
+    private final LongAdder numFailures = new LongAdder();
+    /** Number of served body bytes. */
+    private final LongAdder bytesServed = new LongAdder();
+
+    static {
+        // the HttpServer writes the headers and the body of a response
+        // separately, without TCP_NODELAY every response waits for the
+        // delayed acknowledgement of the headers.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * Starts serving a net.
+     * @param net the net
+     * @param hosts number of hosts, every host gets its own port
+     * @param latencyMillis minimum delay of a response in milliseconds
+     * @param jitterMillis maximum additional random delay of a response in
+     * milliseconds
+     * @param failureRate probability, that a request fails with 503
+     * @throws IOException if a port could not be bound.
+     */
+    IntranetServer(final SyntheticNet net, final int hosts,
+                   final long latencyMillis, final long jitterMillis,
+                   final double failureRate) throws IOException {
+        if (hosts < 1 || latencyMillis < 0 || jitterMillis < 0
+            || failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("hosts has to be at least 1, "
+                + "the delays at least 0 and failureRate between 0 and 1.");
+        }
+        this.net = net;
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.failureRate = failureRate;
+        this.requestsPerPage = new AtomicIntegerArray(net.getNumPages());
+        // the requests sleep for the latency, so the pool has to grow with
+        // the requests in flight.
+        this.executor = Executors.newCachedThreadPool();
+        this.servers = new HttpServer[hosts];
+        this.hostURLs = new String[hosts];
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try {
+            for (int h = 0; h < hosts; h++) {
+                servers[h] = HttpServer.create(
+                                 new InetSocketAddress(loopback, 0), 0);
+                servers[h].createContext("/", this::handle);
+                servers[h].setExecutor(executor);
+                servers[h].start();
+                hostURLs[h] = "http://" + loopback.getHostAddress() + ":"
+                              + servers[h].getAddress().getPort();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the URL of a page.
+     * @param id the id of the page
+     * @return the URL of the page.
+     */
+    String urlOf(final int id) {
+        return hostURLs[id % hostURLs.length] + PAGE_PATH + id;
+    }
+    /**
+     * Returns the Seed-URLs of the net.
+     * @return the Seed-URLs.
+     */
+    String[] getSeedURLs() {
+        int[] seeds = net.getSeeds();
+        String[] seedURLs = new String[seeds.length];
+        for (int s = 0; s < seeds.length; s++) {
+            seedURLs[s] = urlOf(seeds[s]);
+        }
+        return seedURLs;
+    }
+    /**
+     * Writes the description of the served net like the JSON files in the
+     * intranet folder, so it can be crawled like them.
+     * @param file the file
+     * @throws IOException if the file could not be written.
+     */
+    void writeJson(final Path file) throws IOException {
+        String name = "synthetic-" + net.getNumPages() + "-" + net.getSeed();
+        Files.writeString(file, new GsonBuilder().setPrettyPrinting()
+                                    .create()
+                                    .toJson(net.toJson(name, this::urlOf)));
+    }
+    /**
+     * Returns the number of requests.
+     * @return the number of requests.
+     */
+    long getNumRequests() {
+        return numRequests.sum();
+    }
+    /**
+     * Returns the number of injected failures.
+     * @return the number of failures.
+     */
+    long getNumFailures() {
+        return numFailures.sum();
+    }
+    /**
+     * Returns the number of served body bytes.
+     * @return the number of bytes.
+     */
+    long getBytesServed() {
+        return bytesServed.sum();
+    }
+    /**
+     * Returns the id of the requested page.
+     * @param path the path of the request
+     * @return the id of the page, -1 if the net has no such page.
+     */
+    private int pageOf(final String path) {
+        if (!path.startsWith(PAGE_PATH)) {
+            return -1;
+        }
+        try {
+            int id = Integer.parseInt(path.substring(PAGE_PATH.length()));
+            return id >= 0 && id < net.getNumPages() ? id : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    /**
+     * Returns if a request of a page fails.
+     * @param id the id of the page
+     * @param attempt how often the page was requested before
+     * @return true if the request fails.
+     */
+    private boolean fails(final int id, final int attempt) {
+        if (failureRate == 0) {
+            return false;
+        }
+        long failureSeed = (net.getSeed() * SEED_MULTIPLIER + id)
+                           * SEED_MULTIPLIER + attempt;
+        return new SplittableRandom(failureSeed).nextDouble() < failureRate;
+    }
+    /**
+     * Answers a request.
+     * @param exchange the request and its response
+     * @throws IOException if the response could not be sent.
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        numRequests.increment();
+        try (exchange) {
+            int id = pageOf(exchange.getRequestURI().getPath());
+            // a page is only served by its own host
+            if (id < 0 || exchange.getLocalAddress().getPort()
+                          != servers[id % servers.length].getAddress()
+                                                         .getPort()) {
+                exchange.sendResponseHeaders(HTTP_NOT_FOUND, -1);
+                return;
+            }
+            delay();
+            if (fails(id, requestsPerPage.getAndIncrement(id))) {
+                numFailures.increment();
+                exchange.sendResponseHeaders(HTTP_UNAVAILABLE, -1);
+                return;
+            }
+            byte[] body = net.toHTML(id, this::urlOf)
+                             .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type",
+                                              "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(HTTP_OK, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            bytesServed.add(body.length);
+        }
+    }
+    /**
+     * Sleeps for the latency and the jitter.
+     */
+    private void delay() {
+        long millis = latencyMillis;
+        if (jitterMillis > 0) {
+            millis += ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+        }
+        if (millis == 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * Stops all hosts immediately.
+     */
+    @Override
+    public void close() {
+        for (HttpServer server : servers) {
+            if (server != null) {
+                server.stop(0);
+            }
+        }
+        executor.shutdownNow();
+    }
+}
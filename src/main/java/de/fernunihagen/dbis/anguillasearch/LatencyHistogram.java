@@ -0,0 +1,116 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Counts latencies in buckets, so percentiles can be reported without
+ * keeping every latency. Many threads can record at the same time without
+ * locking.
+ * Latencies are counted in microseconds. Below SUB_BUCKETS microseconds
+ * every value has its own bucket, above the range of every power of two is
+ * split into SUB_BUCKETS buckets, so a percentile is at most 1/SUB_BUCKETS
+ * larger than the exact one.
+ */
+final class LatencyHistogram {
+    /** Bits of the number of buckets per power of two. */
+    private static final int SUB_BUCKET_BITS = 4;
+    /** Number of buckets per power of two. */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Largest counted latency, about 9 minutes, longer ones count as it. */
+    private static final long MAX_MICROS = (1L << 29) - 1;
+    /** Microseconds of a millisecond. */
+    private static final double MICROS_PER_MILLI = 1000;
+    /** Number of latencies of every bucket. */
+    private final AtomicLongArray counts =
+                            new AtomicLongArray(bucketOf(MAX_MICROS) + 1);
+    /** Largest recorded latency in microseconds. */
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max,
+                                                                  0);
+
+    /**
+     * Returns the bucket of a latency.
+     * @param micros the latency in microseconds
+     * @return the index of the bucket.
+     */
+    private static int bucketOf(final long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - SUB_BUCKET_BITS;
+        // the leading bit is always set, the next bits select the bucket
+        return (shift + 1) * SUB_BUCKETS
+               + (int) ((micros >>> shift) & (SUB_BUCKETS - 1));
+    }
+    /**
+     * Returns the largest latency of a bucket.
+     * @param bucket the index of the bucket
+     * @return the largest latency in microseconds.
+     */
+    private static long maxOf(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long first = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return first + (1L << shift) - 1;
+    }
+    /**
+     * Counts a latency.
+     * @param nanos the latency in nanoseconds
+     */
+    void record(final long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        micros = Math.min(MAX_MICROS, micros);
+        counts.incrementAndGet(bucketOf(micros));
+        maxMicros.accumulate(micros);
+    }
+    /**
+     * Returns the number of counted latencies.
+     * @return the number of latencies.
+     */
+    long count() {
+        long count = 0;
+        for (int b = 0; b < counts.length(); b++) {
+            count += counts.get(b);
+        }
+        return count;
+    }
+    /**
+     * Returns a percentile of the counted latencies. Latencies counted
+     * meanwhile may or may not be included.
+     * @param percent the percentile between 0 and 100, e.g. 99 for the
+     * latency 99 % of the latencies are not larger than
+     * @return the percentile in milliseconds, 0 if nothing was counted.
+     */
+    double percentileMillis(final double percent) {
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+        for (int b = 0; b < snapshot.length; b++) {
+            snapshot[b] = counts.get(b);
+            count += snapshot[b];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+        long seen = 0;
+        for (int b = 0; b < snapshot.length; b++) {
+            seen += snapshot[b];
+            if (seen >= rank) {
+                // the bucket bound may exceed the largest latency
+                return Math.min(maxOf(b), maxMicros.get()) / MICROS_PER_MILLI;
+            }
+        }
+        return maxMicros.get() / MICROS_PER_MILLI;
+    }
+    /**
+     * Returns the largest counted latency.
+     * @return the largest latency in milliseconds.
+     */
+    double maxMillis() {
+        return maxMicros.get() / MICROS_PER_MILLI;
+    }
+}
@@ -0,0 +1,135 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded cache of the lemmas of words, so a word, which appears on many
+ * pages, is only lemmatized once.
+ * The words are kept in two generations: new words are put into the young
+ * generation. When it is full, it becomes the old generation and the words
+ * of the old generation before are dropped. A word found in the old
+ * generation is moved to the young one, so the words used often stay in the
+ * cache. The cache holds at most twice the size of a generation.
+ * The cache counts how often a lemma was found and how often it had to be
+ * computed.
+ * All methods are thread-safe.
+ */
+final class LemmaCache {
+    /** Number of words of a generation, if none is given. */
+    static final int DEFAULT_GENERATION_SIZE = 1 << 15;
+    /** Number of words of a generation. */
+    private final int generationSize;
+    /** The words added or used since the last rotation. */
+    private volatile Map<String, String> young = new ConcurrentHashMap<>();
+    /** The words of the generation before. */
+    private volatile Map<String, String> old = new ConcurrentHashMap<>();
+    /** Number of lemmas found in the cache. */
+    private final LongAdder hits = new LongAdder();
+    /** Number of lemmas, which had to be computed. */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a cache with the default size.
+     */
+    LemmaCache() {
+        this(DEFAULT_GENERATION_SIZE);
+    }
+    /**
+     * Creates a cache.
+     * @param generationSize number of words of a generation, at least 1
+     */
+    LemmaCache(final int generationSize) {
+        if (generationSize < 1) {
+            throw new IllegalArgumentException(
+                "The generation size has to be at least 1.");
+        }
+        this.generationSize = generationSize;
+    }
+
+    /**
+     * Returns the lemma of the word, which is computed if it is not cached.
+     * @param word the word
+     * @param lemmatizer computes the lemma of a word, which is not cached
+     * @return the lemma of the word.
+     */
+    String lemma(final String word, final UnaryOperator<String> lemmatizer) {
+        String lemma = young.get(word);
+        if (lemma != null) {
+            hits.increment();
+            return lemma;
+        }
+        lemma = old.get(word);
+        if (lemma != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            lemma = lemmatizer.apply(word);
+        }
+        put(word, lemma);
+        return lemma;
+    }
+    /**
+     * Removes the word, since its lemma may have changed.
+     * @param word the word
+     */
+    void invalidate(final String word) {
+        young.remove(word);
+        old.remove(word);
+    }
+    /**
+     * Returns how often a lemma was found in the cache.
+     * @return the number of hits.
+     */
+    long hits() {
+        return hits.sum();
+    }
+    /**
+     * Returns how often a lemma was not found in the cache.
+     * @return the number of misses.
+     */
+    long misses() {
+        return misses.sum();
+    }
+    /**
+     * Returns the number of cached words, a word may be counted twice while
+     * it is moved to the young generation.
+     * @return the number of cached words.
+     */
+    int size() {
+        return young.size() + old.size();
+    }
+    /**
+     * Prints the number of hits and misses and the hit rate.
+     */
+    void printStats() {
+        long numHits = hits();
+        long lookups = numHits + misses();
+        System.out.format("Lemma cache: %d hits, %d misses, %.1f%% hit rate,"
+                          + " %d words%n", numHits, lookups - numHits,
+                          lookups == 0 ? 0.0 : 100.0 * numHits / lookups,
+                          size());
+    }
+    /**
+     * Puts the word into the young generation, which becomes the old one if
+     * it is full.
+     * @param word the word
+     * @param lemma the lemma of the word
+     */
+    private void put(final String word, final String lemma) {
+        Map<String, String> generation = young;
+        if (generation.size() >= generationSize) {
+            synchronized (this) {
+                // another thread may have rotated meanwhile
+                if (young.size() >= generationSize) {
+                    old = young;
+                    young = new ConcurrentHashMap<>();
+                }
+                generation = young;
+            }
+        }
+        generation.put(word, lemma);
+    }
+}
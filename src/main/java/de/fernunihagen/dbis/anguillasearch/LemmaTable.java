@@ -0,0 +1,169 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.stanford.nlp.process.Morphology;
+
+/**
+ * Table of the lemmas CoreNLP assigned to a word.
+ * The table is filled while CoreNLP lemmatizes and is used by the fast
+ * analysis mode of the Parser, which does not run the POS tagger.
+ * Since the lemma of a word can depend on the POS tag, the table counts how
+ * often every lemma was assigned and returns the most frequent one.
+ * Words, which are not in the table, are lemmatized by the rules of the
+ * CoreNLP Morphology class with a POS tag guessed by the word ending.
+ * The lemmas returned by lemma() are cached, a word is removed from the
+ * cache when it is recorded again. A lemma, which is looked up while the
+ * word is recorded, may be cached before the new count.
+ * The table can be saved to and loaded from a tab seperated file with the
+ * columns word, lemma and count.
+ * All methods are thread-safe.
+ */
+public class LemmaTable {
+    /** Maps a word to its lemmas and how often they were assigned. */
+    private final Map<String, Map<String, Integer>> lemmaCounts =
+                                                new ConcurrentHashMap<>();
+    /** The lemmas returned by lemma(). */
+    private final LemmaCache cache = new LemmaCache();
+
+    /**
+     * Records that CoreNLP assigned the lemma to the word.
+     * @param word the word as it appeared in the text
+     * @param lemma the lemma CoreNLP assigned
+     */
+    public void record(final String word, final String lemma) {
+        lemmaCounts.computeIfAbsent(word, k -> new ConcurrentHashMap<>())
+                   .merge(lemma, 1, Integer::sum);
+        cache.invalidate(word);
+    }
+    /**
+     * Returns the lemma of the word. That is the lemma, which CoreNLP
+     * assigned most often to the word. If the word was never recorded, the
+     * lemma is guessed by rules.
+     * @param word the word which should be lemmatized
+     * @return the lemma of the word.
+     */
+    public String lemma(final String word) {
+        return cache.lemma(word, this::mostFrequentLemma);
+    }
+    /**
+     * Returns the lemma, which was assigned most often to the word, or the
+     * lemma guessed by rules, if the word was never recorded.
+     * @param word the word which should be lemmatized
+     * @return the lemma of the word.
+     */
+    private String mostFrequentLemma(final String word) {
+        Map<String, Integer> counts = lemmaCounts.get(word);
+        if (counts == null) {
+            return ruleLemma(word);
+        }
+        String best = null;
+        int bestCount = 0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            // ties are broken lexicographically, so the result does not
+            // depend on the map order.
+            if (entry.getValue() > bestCount || (entry.getValue() == bestCount
+                && entry.getKey().compareTo(best) < 0)) {
+                best = entry.getKey();
+                bestCount = entry.getValue();
+            }
+        }
+        return best;
+    }
+    /**
+     * Returns if the word was recorded.
+     * @param word the word
+     * @return true if the word was recorded.
+     */
+    public boolean contains(final String word) {
+        return lemmaCounts.containsKey(word);
+    }
+    /**
+     * Returns the cache of the lemmas returned by lemma().
+     * @return the lemma cache.
+     */
+    LemmaCache getCache() {
+        return cache;
+    }
+    /**
+     * Returns the number of words in the table.
+     * @return the number of words in the table.
+     */
+    public int size() {
+        return lemmaCounts.size();
+    }
+    /**
+     * Lemmatizes the word with the rules of the CoreNLP Morphology. The POS
+     * tag, which the rules need, is guessed by the ending of the word.
+     * @param word the word which should be lemmatized
+     * @return the lemma of the word.
+     */
+    static String ruleLemma(final String word) {
+        String tag = "NN";
+        if (word.endsWith("ing")) {
+            tag = "VBG";
+        } else if (word.endsWith("ed")) {
+            tag = "VBD";
+        } else if (word.endsWith("s") && !word.endsWith("ss")) {
+            tag = "NNS";
+        }
+        return Morphology.lemmaStatic(word, tag, true);
+    }
+    /**
+     * Saves the table to a tab seperated file, sorted by word.
+     * @param path the file the table should be written to
+     * @throws IOException if the file can not be written
+     */
+    public void save(final Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path,
+                                                StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Map<String, Integer>> word
+                 : new TreeMap<>(lemmaCounts).entrySet()) {
+                for (Map.Entry<String, Integer> lemma
+                     : new TreeMap<>(word.getValue()).entrySet()) {
+                    writer.write(word.getKey() + "\t" + lemma.getKey() + "\t"
+                                 + lemma.getValue());
+                    writer.newLine();
+                }
+            }
+        }
+    }
+    /**
+     * Loads a table, which was saved with save().
+     * @param path the file the table should be read from
+     * @return the loaded table
+     * @throws IOException if the file can not be read or has a wrong format
+     */
+    public static LemmaTable load(final Path path) throws IOException {
+        LemmaTable table = new LemmaTable();
+        try (BufferedReader reader = Files.newBufferedReader(path,
+                                                StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            while (line != null) {
+                String[] columns = line.split("\t");
+                if (columns.length != 3) {
+                    throw new IOException("Invalid lemma table line: " + line);
+                }
+                try {
+                    table.lemmaCounts
+                         .computeIfAbsent(columns[0],
+                                          k -> new ConcurrentHashMap<>())
+                         .merge(columns[1], Integer.parseInt(columns[2]),
+                                Integer::sum);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid lemma count: " + line, e);
+                }
+                line = reader.readLine();
+            }
+        }
+        return table;
+    }
+}
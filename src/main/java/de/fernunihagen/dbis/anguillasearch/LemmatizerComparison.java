@@ -0,0 +1,187 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Compares the FAST analysis mode of the Parser with the CORENLP mode.
+ * Lemmatizes the title, header and content of every page with CoreNLP,
+ * which fills the lemma table, and then with the FAST mode, once with the
+ * filled table and once with an empty table, so only the rules are used.
+ * Prints the throughput of every mode and how many tokens got the same
+ * lemma as with CoreNLP.
+ * Usage: LemmatizerComparison {path to net JSON or page directory}
+ * [path the lemma table should be saved to]
+ * A page directory contains JSON files with the fields "title", "headings"
+ * and "paragraphs", like src/test/resources/tf-idf/pages.
+ */
+public final class LemmatizerComparison {
+    /** Number of runs over the corpus before the time is measured. */
+    private static final int WARMUP_RUNS = 1;
+
+    private LemmatizerComparison() {
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments
+     */
+    public static void main(final String[] args) {
+        String source = "intranet/cheesy1-f126d0d3.json";
+        if (args.length > 0) {
+            source = args[0];
+        }
+        List<String> corpus;
+        try {
+            corpus = loadCorpus(source);
+        } catch (IOException e) {
+            System.out.println(e.toString());
+            System.out.println("Corpus could not be loaded from " + source);
+            System.exit(1);
+            return;
+        }
+        System.out.format("Corpus: %d strings from %s%n", corpus.size(),
+                          source);
+
+        Parser.setAnalysisMode(Parser.AnalysisMode.CORENLP);
+        Parser.setLemmaTable(new LemmaTable());
+        Parser.setRecordLemmas(true);
+        ModeResult coreNLP = run("CoreNLP", corpus, null);
+        Parser.setRecordLemmas(false);
+        LemmaTable learnedTable = Parser.getLemmaTable();
+
+        Parser.setAnalysisMode(Parser.AnalysisMode.FAST);
+        ModeResult fastTable = run("Fast (table)", corpus, coreNLP.lemmas());
+        Parser.setLemmaTable(new LemmaTable());
+        ModeResult fastRules = run("Fast (rules)", corpus, coreNLP.lemmas());
+        Parser.setLemmaTable(learnedTable);
+        Parser.setAnalysisMode(Parser.AnalysisMode.CORENLP);
+
+        System.out.format("%-14s %10s %14s %10s%n", "Mode", "Time (ms)",
+                          "Tokens/s", "Agreement");
+        coreNLP.print();
+        fastTable.print();
+        fastRules.print();
+        System.out.format("Lemma table contains %d words.%n",
+                          learnedTable.size());
+        // the cache of the table was only used by the fast run
+        learnedTable.getCache().printStats();
+
+        if (args.length > 1) {
+            try {
+                learnedTable.save(Path.of(args[1]));
+                System.out.println("Lemma table saved to " + args[1]);
+            } catch (IOException e) {
+                System.out.println(e.toString());
+                System.out.println("Lemma table could not be saved.");
+            }
+        }
+    }
+    /**
+     * Loads the strings which are lemmatized. These are the title, header
+     * and content of every page.
+     * @param source a net JSON with "Seed-URLs" or a page directory
+     * @return the strings of all pages.
+     * @throws IOException if the JSON files can not be read.
+     */
+    private static List<String> loadCorpus(final String source)
+                                                    throws IOException {
+        List<String> corpus = new ArrayList<>();
+        if (new File(source).isDirectory()) {
+            for (JsonObject page
+                 : Utils.parseAllJSONFiles(Optional.of(source))) {
+                corpus.add(page.get("title").getAsString());
+                corpus.add(page.get("headings").getAsString());
+                corpus.add(page.get("paragraphs").getAsString());
+            }
+        } else {
+            JsonObject json = Utils.parseJSONFile(source);
+            String[] seedURLs = new Gson().fromJson(json.get("Seed-URLs"),
+                                                    String[].class);
+            Crawler crawler = new Crawler(seedURLs);
+            crawler.crawl();
+            for (Page page : crawler.getCrawledPages()) {
+                corpus.add(page.getTitle());
+                corpus.add(page.getHeader());
+                corpus.add(page.getContent());
+            }
+        }
+        return corpus;
+    }
+    /**
+     * Lemmatizes the corpus with the selected analysis mode.
+     * @param name name of the mode, which is printed
+     * @param corpus the strings which are lemmatized
+     * @param reference the lemmas of CoreNLP, null if the agreement should
+     * not be calculated
+     * @return the lemmas, time and agreement of the run.
+     */
+    private static ModeResult run(final String name, final List<String> corpus,
+                                  final List<List<String>> reference) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            for (String string : corpus) {
+                Parser.tokLem(string);
+            }
+        }
+        List<List<String>> lemmas = new ArrayList<>(corpus.size());
+        long start = System.nanoTime();
+        for (String string : corpus) {
+            lemmas.add(Parser.tokLem(string));
+        }
+        long nanos = System.nanoTime() - start;
+
+        long tokens = 0;
+        long agreeing = 0;
+        for (int i = 0; i < lemmas.size(); i++) {
+            List<String> cur = lemmas.get(i);
+            tokens += cur.size();
+            if (reference != null) {
+                // both modes use the same tokenizer, so the lists have the
+                // same length.
+                List<String> ref = reference.get(i);
+                for (int j = 0; j < cur.size() && j < ref.size(); j++) {
+                    if (cur.get(j).equals(ref.get(j))) {
+                        agreeing++;
+                    }
+                }
+            } else {
+                agreeing += cur.size();
+            }
+        }
+        double agreement = tokens == 0 ? 1.0 : (double) agreeing / tokens;
+        return new ModeResult(name, lemmas, nanos, tokens, agreement);
+    }
+    /**
+     * Result of lemmatizing the corpus with one mode.
+     * @param name name of the mode
+     * @param lemmas the lemmas of every string of the corpus
+     * @param nanos time it took to lemmatize the corpus
+     * @param tokens number of tokens of the corpus
+     * @param agreement fraction of tokens with the same lemma as CoreNLP
+     */
+    private record ModeResult(
+        String name,
+        List<List<String>> lemmas,
+        long nanos,
+        long tokens,
+        double agreement
+    ) {
+        /**
+         * Prints a line with time, throughput and agreement.
+         */
+        void print() {
+            double tokensPerSecond = nanos == 0 ? 0 : tokens * 1e9 / nanos;
+            System.out.format("%-14s %10d %14.0f %9.2f%%%n", name,
+                              nanos / 1_000_000, tokensPerSecond,
+                              agreement * 100);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A segment file mapped into memory, see SegmentFormat for the layout.
+ * Nothing is copied to the heap when the segment is opened, the values are
+ * read from the mapping by their position. The operating system loads the
+ * pages of the file when they are searched and keeps them in its page cache,
+ * so the heap only holds the search results.
+ * Only absolute reads are used, which do not change the buffer, so the
+ * segment can be searched by several threads at the same time.
+ */
+final class MappedSegment implements IndexSegment {
+    /** The mapped segment file. */
+    private final ByteBuffer buffer;
+    /** Number of indexed pages. */
+    private final int numDocs;
+    /** Number of indexed tokens. */
+    private final int numTerms;
+    /** The term dictionary, read from the mapping. */
+    private final TermDictionary dictionary;
+    /** Position of the norm of every doc. */
+    private final int normsAt;
+    /** Position of the PageRank of every doc. */
+    private final int pageRanksAt;
+    /** Position of the sum of the squared normalized TFs of every doc. */
+    private final int tfSquareSumsAt;
+    /** Position of the sum of the squared normalized TFs times the IDF of
+     * every doc. */
+    private final int tfSquareIDFSumsAt;
+    /** Position of the largest normalized TF of every term. */
+    private final int maxNormalizedTFsAt;
+    /** Position of the length of every doc. */
+    private final int docLengthsAt;
+    /** Position of the start of every doc string. */
+    private final int docStartsAt;
+    /** Position of the first posting of every term. */
+    private final int postingStartsAt;
+    /** Position of the start of the compressed postings of every term. */
+    private final int postingOffsetsAt;
+    /** Position of the largest weight of every term. */
+    private final int maxWeightsAt;
+    /** Position of the weights of all postings. */
+    private final int weightsAt;
+    /** Position of the start of the term ids of every doc. */
+    private final int docTermStartsAt;
+    /** Position of the term ids of all docs. */
+    private final int docTermIdsAt;
+    /** Position of the doc strings. */
+    private final int docBytesAt;
+    /** Position of the compressed postings. */
+    private final int postingBytesAt;
+
+    /**
+     * Creates a segment of a mapped segment file. Only the header and the
+     * ends of the start arrays and the term dictionary are checked, so
+     * opening a segment takes the same time for every size.
+     * @param buffer the mapped file, starting with the magic and version
+     * @param path the file, for error messages
+     * @throws IOException if the file does not match its header.
+     */
+    MappedSegment(final ByteBuffer buffer, final Path path)
+                                                    throws IOException {
+        this.buffer = buffer;
+        int pos = 2 * Integer.BYTES;
+        numDocs = buffer.getInt(pos);
+        numTerms = buffer.getInt(pos + Integer.BYTES);
+        long numPostings = buffer.getLong(pos + 2 * Integer.BYTES);
+        long docBytes = buffer.getLong(pos + 2 * Integer.BYTES + Long.BYTES);
+        long dictBytes = buffer.getLong(pos + 2 * Integer.BYTES
+                                        + 2 * Long.BYTES);
+        long postingBytes = buffer.getLong(pos + 2 * Integer.BYTES
+                                           + 3 * Long.BYTES);
+        if (numDocs < 0 || numTerms < 0 || numPostings < 0 || docBytes < 0
+            || dictBytes < 0 || postingBytes < 0
+            || numPostings > Integer.MAX_VALUE
+            || docBytes > Integer.MAX_VALUE || dictBytes > Integer.MAX_VALUE
+            || postingBytes > Integer.MAX_VALUE) {
+            throw new IOException("Invalid header in index segment " + path);
+        }
+        long size = SegmentFormat.fileSize(numDocs, numTerms, numPostings,
+                                           docBytes, dictBytes, postingBytes);
+        if (size > buffer.capacity()) {
+            throw new IOException(path + " is truncated.");
+        }
+        if (size < buffer.capacity()) {
+            throw new IOException(path + " does not match its header.");
+        }
+        int postings = (int) numPostings;
+        try {
+            dictionary = new TermDictionary(buffer, SegmentFormat.HEADER_SIZE,
+                                            numTerms, (int) dictBytes);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(path + " does not match its header.", e);
+        }
+        normsAt = SegmentFormat.HEADER_SIZE + (int) dictBytes;
+        pageRanksAt = normsAt + numDocs * Double.BYTES;
+        tfSquareSumsAt = pageRanksAt + numDocs * Double.BYTES;
+        tfSquareIDFSumsAt = tfSquareSumsAt + numDocs * Double.BYTES;
+        maxNormalizedTFsAt = tfSquareIDFSumsAt + numDocs * Double.BYTES;
+        docLengthsAt = maxNormalizedTFsAt + numTerms * Double.BYTES;
+        docStartsAt = docLengthsAt + numDocs * Integer.BYTES;
+        postingStartsAt = docStartsAt
+                          + (numDocs * SegmentFormat.STRINGS_PER_DOC + 1)
+                            * Integer.BYTES;
+        postingOffsetsAt = postingStartsAt + (numTerms + 1) * Integer.BYTES;
+        maxWeightsAt = postingOffsetsAt + (numTerms + 1) * Integer.BYTES;
+        weightsAt = maxWeightsAt + numTerms * Float.BYTES;
+        docTermStartsAt = weightsAt + postings * Float.BYTES;
+        docTermIdsAt = docTermStartsAt + (numDocs + 1) * Integer.BYTES;
+        docBytesAt = docTermIdsAt + postings * Integer.BYTES;
+        postingBytesAt = docBytesAt + (int) docBytes;
+        if (intAt(docStartsAt, numDocs * SegmentFormat.STRINGS_PER_DOC)
+                != docBytes
+            || intAt(postingStartsAt, numTerms) != numPostings
+            || intAt(postingOffsetsAt, numTerms) != postingBytes
+            || intAt(docTermStartsAt, numDocs) != numPostings) {
+            throw new IOException(path + " does not match its header.");
+        }
+    }
+    @Override
+    public int numDocs() {
+        return numDocs;
+    }
+    @Override
+    public int numTerms() {
+        return numTerms;
+    }
+    @Override
+    public String term(final int termId) {
+        return dictionary.term(termId);
+    }
+    @Override
+    public double idf(final int termId) {
+        return dictionary.idf(termId);
+    }
+    @Override
+    public int findTerm(final String token) {
+        return dictionary.findTerm(token);
+    }
+    @Override
+    public TermDictionary dictionary() {
+        return dictionary;
+    }
+    @Override
+    public Postings postings(final int termId) {
+        int start = intAt(postingStartsAt, termId);
+        int end = intAt(postingStartsAt, termId + 1);
+        return new MappedPostings(postingBytesAt
+                                  + intAt(postingOffsetsAt, termId),
+                                  start, end - start,
+                buffer.getDouble(maxNormalizedTFsAt + termId * Double.BYTES),
+                buffer.getFloat(maxWeightsAt + termId * Float.BYTES));
+    }
+    @Override
+    public String url(final int docId) {
+        return string(docStartsAt, docBytesAt,
+                      docId * SegmentFormat.STRINGS_PER_DOC);
+    }
+    /**
+     * Returns the page with the document id. The page is read from the
+     * mapping every time, it is not lemmatized again.
+     * @param docId id of the page
+     * @return the page with its links.
+     */
+    @Override
+    public Page doc(final int docId) {
+        int i = docId * SegmentFormat.STRINGS_PER_DOC;
+        return new Page(string(docStartsAt, docBytesAt, i),
+                        string(docStartsAt, docBytesAt, i + 1),
+                        string(docStartsAt, docBytesAt, i + 2),
+                        string(docStartsAt, docBytesAt, i + 3),
+                        links(string(docStartsAt, docBytesAt, i + 4)), true);
+    }
+    @Override
+    public int findDoc(final String url) {
+        int low = 0;
+        int high = numDocs - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = url(mid).compareTo(url);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+    @Override
+    public int docLength(final int docId) {
+        return intAt(docLengthsAt, docId);
+    }
+    @Override
+    public double norm(final int docId) {
+        return buffer.getDouble(normsAt + docId * Double.BYTES);
+    }
+    @Override
+    public double tfSquareSum(final int docId) {
+        return buffer.getDouble(tfSquareSumsAt + docId * Double.BYTES);
+    }
+    @Override
+    public double tfSquareIDFSum(final int docId) {
+        return buffer.getDouble(tfSquareIDFSumsAt + docId * Double.BYTES);
+    }
+    @Override
+    public int[] docTerms(final int docId) {
+        int start = intAt(docTermStartsAt, docId);
+        int[] termIds = new int[intAt(docTermStartsAt, docId + 1) - start];
+        for (int i = 0; i < termIds.length; i++) {
+            termIds[i] = intAt(docTermIdsAt, start + i);
+        }
+        return termIds;
+    }
+    @Override
+    public double pageRank(final int docId) {
+        return buffer.getDouble(pageRanksAt + docId * Double.BYTES);
+    }
+    /**
+     * Splits the stored links of a page.
+     * @param joined the links separated by SegmentFormat.LINK_SEPARATOR
+     * @return the links.
+     */
+    private static Set<String> links(final String joined) {
+        Set<String> links = new HashSet<>();
+        if (!joined.isEmpty()) {
+            links.addAll(Arrays.asList(
+                joined.split(SegmentFormat.LINK_SEPARATOR)));
+        }
+        return links;
+    }
+    /**
+     * Returns an element of an int array of the mapping.
+     * @param arrayAt position of the array
+     * @param i index of the element
+     * @return the element.
+     */
+    private int intAt(final int arrayAt, final int i) {
+        return buffer.getInt(arrayAt + i * Integer.BYTES);
+    }
+    /**
+     * Decodes a string of the mapping.
+     * @param startsAt position of the start array of the strings
+     * @param bytesAt position of the strings
+     * @param i index of the string
+     * @return the string.
+     */
+    private String string(final int startsAt, final int bytesAt,
+                          final int i) {
+        int start = intAt(startsAt, i);
+        byte[] bytes = new byte[intAt(startsAt, i + 1) - start];
+        buffer.get(bytesAt + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The postings of one token, read from the mapping. The doc ids and term
+     * frequencies are decoded by PostingsCodec.
+     */
+    private final class MappedPostings implements Postings {
+        /** Position of the compressed postings. */
+        private final int at;
+        /** Index of the first posting in the weight array. */
+        private final int start;
+        /** Number of postings. */
+        private final int size;
+        /** Largest term frequency divided by the document length. */
+        private final double maxNormalizedTF;
+        /** Largest normalized TF-IDF weight. */
+        private final float maxWeight;
+
+        MappedPostings(final int at, final int start, final int size,
+                       final double maxNormalizedTF, final float maxWeight) {
+            this.at = at;
+            this.start = start;
+            this.size = size;
+            this.maxNormalizedTF = maxNormalizedTF;
+            this.maxWeight = maxWeight;
+        }
+        @Override
+        public int size() {
+            return size;
+        }
+        @Override
+        public int docId(final int i) {
+            return PostingsCodec.docId(buffer, at, size, i);
+        }
+        @Override
+        public int tf(final int i) {
+            return PostingsCodec.tf(buffer, at, size, i);
+        }
+        @Override
+        public float weight(final int i) {
+            return buffer.getFloat(weightsAt + (start + i) * Float.BYTES);
+        }
+        @Override
+        public double maxNormalizedTF() {
+            return maxNormalizedTF;
+        }
+        @Override
+        public float maxWeight() {
+            return maxWeight;
+        }
+        @Override
+        public int find(final int docId) {
+            return PostingsCodec.find(buffer, at, size, docId);
+        }
+        @Override
+        public int readBlock(final int block, final int[] docIds,
+                             final int[] tfs) {
+            return PostingsCodec.readBlock(buffer, at, size, block, docIds,
+                                           tfs);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the normalization of the text before it is tokenized: the
+ * regular expressions the Parser used before, which are compiled again for
+ * every call, and the single pass of the TextNormalizer.
+ * Every page is a document of its title, header and content, which are
+ * normalized one after another like by tokLemBatch(). The documents per
+ * second, megabytes per second and the bytes allocated per document are
+ * printed, the latter if the JVM can count them. Finally the number of
+ * documents, for which both return the same text, is printed.
+ * Usage: NormalizationBenchmark {path to net JSON or directory of HTML
+ * files} [number of runs]
+ */
+public final class NormalizationBenchmark {
+    /** Number of normalizations of all pages before the time is measured. */
+    private static final int WARMUP_RUNS = 5;
+    /** Number of measured normalizations, if none is given. */
+    private static final int DEFAULT_RUNS = 50;
+    /** Bytes of a megabyte. */
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+    /** Nanoseconds of a second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+    /** Receives the checksums, so the normalization is not optimized away. */
+    private static volatile long sink;
+
+    private NormalizationBenchmark() {
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments
+     */
+    public static void main(final String[] args) {
+        String source = "intranet/cheesy1-f126d0d3.json";
+        int runs = DEFAULT_RUNS;
+        if (args.length > 0) {
+            source = args[0];
+        }
+        if (args.length > 1) {
+            runs = Integer.parseInt(args[1]);
+        }
+        List<String[]> documents = new ArrayList<>();
+        long totalChars = 0;
+        try {
+            for (byte[] body : ExtractionBenchmark.loadBodies(source)) {
+                PageText text = ExtractionBenchmark.extractStreaming(body);
+                documents.add(new String[] {text.title(), text.header(),
+                                            text.content()});
+                totalChars += text.title().length() + text.header().length()
+                              + text.content().length();
+            }
+        } catch (IOException e) {
+            System.out.println(e.toString());
+            System.out.println("The pages could not be loaded from "
+                               + source);
+            System.exit(1);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        System.out.format("Documents: %d, chars: %d, runs: %d%n",
+                          documents.size(), totalChars, runs);
+        System.out.format("%-12s %12s %12s %16s%n", "Normalizer", "Docs/s",
+                          "MB/s", "Allocated/doc");
+        for (boolean singlePass : new boolean[] {false, true}) {
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                sink += normalizeAll(documents, singlePass);
+            }
+            long allocatedStart = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                sink += normalizeAll(documents, singlePass);
+            }
+            long nanos = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocatedStart;
+            double seconds = nanos / NANOS_PER_SECOND;
+            long normalized = (long) documents.size() * runs;
+            System.out.format("%-12s %12.0f %12.1f %16s%n",
+                              singlePass ? "Single pass" : "Regex",
+                              normalized / seconds,
+                              totalChars * Character.BYTES * runs / MEGABYTE
+                              / seconds,
+                              allocatedStart < 0 || normalized == 0 ? "-"
+                                : Long.toString(allocated / normalized));
+        }
+        int same = 0;
+        for (String[] document : documents) {
+            boolean equal = true;
+            for (String field : document) {
+                equal &= normalizeWithRegex(field).equals(
+                                            TextNormalizer.normalize(field));
+            }
+            if (equal) {
+                same++;
+            }
+        }
+        System.out.format("Same text for %d of %d documents%n", same,
+                          documents.size());
+    }
+    /**
+     * Normalizes all fields of all documents.
+     * @param documents title, header and content of every page
+     * @param singlePass true for the TextNormalizer, false for the regular
+     * expressions
+     * @return a checksum of the text.
+     */
+    private static long normalizeAll(final List<String[]> documents,
+                                     final boolean singlePass) {
+        long checksum = 0;
+        for (String[] document : documents) {
+            for (String field : document) {
+                checksum += (singlePass ? TextNormalizer.normalize(field)
+                                        : normalizeWithRegex(field)).length();
+            }
+        }
+        return checksum;
+    }
+    /**
+     * Normalizes the text with the regular expressions the Parser used
+     * before.
+     * @param input the text
+     * @return the normalized text.
+     */
+    private static String normalizeWithRegex(final String input) {
+        String workString = Normalizer.normalize(input, Normalizer.Form.NFD);
+        workString = workString.replaceAll("[\\\\|.!,:\\-?\\&]\'", "");
+        workString = workString.toLowerCase();
+        return workString.replaceAll("\\b(a|an|the|of|at|on|upon|in|to|from"
+            + "|out|as|so|such|or|and|those|this|these|that|for|is|was|am|are"
+            + "|'s|been|were)\\b", "");
+    }
+    /**
+     * Returns the bytes allocated by the current thread so far.
+     * @return the allocated bytes, -1 if the JVM can not count them.
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean threads
+            && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
@@ -29,10 +29,9 @@ public class Page implements Comparable<Page> {
         this.content = content;
         this.linkSet = linkSet;
 
-        //tanks performance
-        filteredLemmaList.addAll(Parser.tokLem(title));
-        filteredLemmaList.addAll(Parser.tokLem(header));
-        filteredLemmaList.addAll(Parser.tokLem(content));
+        //tanks performance, a single batch saves the overhead of two
+        //annotate calls
+        addLemmas(title, header, content);
     }
     // Constructor without lemmatizing, a lot faster, useful for running tests
     // that do not need lemmatization.
@@ -45,11 +44,23 @@ public class Page implements Comparable<Page> {
             this.linkSet = linkSet;
             
             if (!noLemma) {
-                filteredLemmaList.addAll(Parser.tokLem(title));
-                filteredLemmaList.addAll(Parser.tokLem(header));
-                filteredLemmaList.addAll(Parser.tokLem(content));
+                addLemmas(title, header, content);
             }
     }
+    /**
+     * Lemmatizes title, header and content and adds the lemmas to the lemma
+     * list in that order.
+     * @param title the title of the page
+     * @param header the headings of the page
+     * @param content the content of the page
+     */
+    private void addLemmas(final String title, final String header,
+                           final String content) {
+        for (List<String> lemmas
+             : Parser.tokLemBatch(List.of(title, header, content))) {
+            filteredLemmaList.addAll(lemmas);
+        }
+    }
 
     /**
      * Returns a list of links found on the Website.
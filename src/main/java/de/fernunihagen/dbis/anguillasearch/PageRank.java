@@ -1,117 +1,254 @@
 package de.fernunihagen.dbis.anguillasearch;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 public class PageRank {
+    /** The URLs of the pages, the position of a URL is the id of the page. */
+    private final String[] urls;
     /**
-     * Inbound link list. URL is used as a key. The value is a set of pages
-     * link to the page specified in the key. We use a set, so we treat 
-     * multiple outbound links of a page to another as one.
+     * Inbound link graph in compressed sparse row format. The ids of the
+     * pages linking to page v are inLinks[inStart[v]] to
+     * inLinks[inStart[v + 1] - 1], sorted ascending. We treat multiple
+     * links of a page to another as one.
      */
-    private Map<String, LinkMapElem> linkMap = new TreeMap<>();
-    /** Map of Pageranks, the key is the url and the value the pagerankrating. */
-    private Map<String, Double> pageRankMap = new TreeMap<>();
+    private int[] inStart;
+    /** Ids of the pages linking to a page, see inStart. */
+    private int[] inLinks;
+    /** Number of pages every page links to, indexed by id. */
+    private int[] outDegree;
+    /** Pagerank of every page, indexed by id. */
+    private double[] ranks;
+    /** Number of iterations until the pageranks converged. */
+    private int iterations;
+    /** Map of Pageranks, created when it is requested the first time. */
+    private Map<String, Double> pageRankMap;
+    /** Maps a URL to the id of the page, created when needed. */
+    private Map<String, Integer> urlIds;
     /** Damping factor of weight between pagerankrating and ranksource values. */
     static final double DAMPING_FACTOR = 0.85;
     /** How much small the difference between pagerank iterations has to be. */
     static final double EPSILON = 0.0001;
     /** Maximum pagerank iterations to prevent a neverending loop. */
     static final int MAXPAGERANKIT = 10000;
-    
+    /** Number of pages, which are ranked together by one thread. */
+    static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Calculates the Pagerank of all pages. The ids of the pages follow
+     * the order of their URLs.
+     * Links to pages, which are not in the collection, are ignored.
+     * @param pageList the pages which should be ranked
+     */
     PageRank(final Collection<Page> pageList) {
-        buildInbLinkList(pageList);
-        rankPages();
+        this(pageList, null);
     }
     /**
-     * Builds the map for inbound links.
-     * @param pageList the list of pages of which the map for inbound links
-     * should be created.
+     * Calculates the Pagerank of all pages in parallel. The ids of the pages
+     * follow the order of their URLs.
+     * Links to pages, which are not in the collection, are ignored.
+     * The results are the same as without a pool.
+     * @param pageList the pages which should be ranked
+     * @param pool the pool which calculates the pageranks, e.g.
+     * ForkJoinPool.commonPool(). null to calculate them in the calling thread
      */
-    private void buildInbLinkList(final Collection<Page> pageList) {
-        // create a map entry with empty set for every page
-        // and the outgoing link count
-        for (Page curPage : pageList) {
-            LinkMapElem insert = new LinkMapElem(new HashSet<>(),
-                                                curPage.getLinks().size());
-            linkMap.put(curPage.getURL(), insert);
+    PageRank(final Collection<Page> pageList, final ForkJoinPool pool) {
+        Page[] pages = pageList.toArray(new Page[0]);
+        Arrays.sort(pages);
+        urls = new String[pages.length];
+        urlIds = new HashMap<>();
+        int numLinks = 0;
+        for (int i = 0; i < pages.length; i++) {
+            urls[i] = pages[i].getURL();
+            urlIds.put(urls[i], i);
+            numLinks += pages[i].getLinks().size();
         }
-
-        // iterate through all pages again, Seed URLs will contain empty set, 
-        // since no other site links to them.
-        for (final Page curPage : pageList) {
-            for (String outLink : curPage.getLinks()) {
-                /* curSet can't be null, since the crawler did crawl every
-                   every outgoing link. In the loop above we created a set
-                   for every page. */
-                Set<String> curSet = linkMap.get(outLink).inBoundLinkSet();
-                // curPage links to the page outlink. curSet represents all
-                // inbound links to outlink.
-                curSet.add(curPage.getURL());
+        int[] linkSources = new int[numLinks];
+        int[] linkTargets = new int[numLinks];
+        int e = 0;
+        for (int i = 0; i < pages.length; i++) {
+            for (String outLink : pages[i].getLinks()) {
+                Integer target = urlIds.get(outLink);
+                if (target != null) {
+                    linkSources[e] = i;
+                    linkTargets[e] = target;
+                    e++;
+                }
             }
         }
+        buildInbLinkList(linkSources, linkTargets, e);
+        rankPages(pool);
     }
     /**
-     * ranks all pages with the Pagerank algorithm. 
+     * Calculates the Pagerank of a link graph, which is given as a list of
+     * links. Used for graphs without Page objects.
+     * @param urls the URLs of the pages, the position is the id of the page
+     * @param linkSources the id of the linking page of every link
+     * @param linkTargets the id of the linked page of every link
+     * @param pool the pool which calculates the pageranks, null to calculate
+     * them in the calling thread
+     */
+    PageRank(final String[] urls, final int[] linkSources,
+             final int[] linkTargets, final ForkJoinPool pool) {
+        if (linkSources.length != linkTargets.length) {
+            throw new IllegalArgumentException(
+                "Every link needs a source and a target.");
+        }
+        this.urls = urls;
+        buildInbLinkList(linkSources, linkTargets, linkSources.length);
+        rankPages(pool);
+    }
+    /**
+     * Builds the compressed inbound link graph and the number of outbound
+     * links of every page.
+     * @param linkSources the id of the linking page of every link
+     * @param linkTargets the id of the linked page of every link
+     * @param numLinks number of links in the arrays
+     */
+    private void buildInbLinkList(final int[] linkSources,
+                                  final int[] linkTargets,
+                                  final int numLinks) {
+        int n = urls.length;
+        // count the inbound links of every page, inStart[v + 1] is the
+        // count of page v and becomes the start of page v + 1.
+        int[] start = new int[n + 1];
+        for (int e = 0; e < numLinks; e++) {
+            start[linkTargets[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            start[v + 1] += start[v];
+        }
+        int[] links = new int[numLinks];
+        int[] fill = Arrays.copyOf(start, n);
+        for (int e = 0; e < numLinks; e++) {
+            links[fill[linkTargets[e]]] = linkSources[e];
+            fill[linkTargets[e]]++;
+        }
+        // sort the inbound links of every page and remove duplicates.
+        inStart = new int[n + 1];
+        outDegree = new int[n];
+        int size = 0;
+        for (int v = 0; v < n; v++) {
+            Arrays.sort(links, start[v], start[v + 1]);
+            inStart[v] = size;
+            for (int i = start[v]; i < start[v + 1]; i++) {
+                if (i == start[v] || links[i] != links[i - 1]) {
+                    links[size] = links[i];
+                    outDegree[links[i]]++;
+                    size++;
+                }
+            }
+        }
+        inStart[n] = size;
+        inLinks = Arrays.copyOf(links, size);
+    }
+    /**
+     * ranks all pages with the Pagerank algorithm.
      * The inbound linkList has to be build before.
+     * The pages are split into chunks of CHUNK_SIZE pages. The new pagerank
+     * of a page only depends on the old pageranks, so the chunks can be
+     * calculated in parallel. Every chunk cumulates its own delta and the
+     * deltas are added in the order of the chunks. The chunks do not depend
+     * on the number of threads, so neither do the results.
+     * @param pool the pool which calculates the chunks, null to calculate
+     * them in the calling thread
      */
-    private void rankPages() {
+    private void rankPages(final ForkJoinPool pool) {
+        int numPages = urls.length;
         // initialize all pages with the pagerank of 1/N, where N is the number
         // of total sites. Also functions as our ranksource value.
-        double n = 1.0 / linkMap.size();
-        for (String key : linkMap.keySet()) {
-            pageRankMap.put(key, n);
-        }
+        double n = 1.0 / numPages;
+        double rankSource = (1 - DAMPING_FACTOR) * n;
+        double[] oldRanks = new double[numPages];
+        double[] newRanks = new double[numPages];
+        Arrays.fill(oldRanks, n);
+        // share of the pagerank a page passes to every page it links to
+        double[] contributions = new double[numPages];
+        int numChunks = (numPages + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        double[] chunkDeltas = new double[numChunks];
         int iterationCount = 0;
         double delta = 0;
-        // Calculate new PageRanks till the cumulated absolute 
+        // Calculate new PageRanks till the cumulated absolute
         // delta is smaller than EPSILON
         do {
-            Map<String, Double> newPageRankMap = new TreeMap<>();
-            delta = 0;
+            double[] curRanks = oldRanks;
+            double[] nextRanks = newRanks;
+            forEachChunk(pool, numChunks, chunk -> {
+                int end = Math.min(numPages, (chunk + 1) * CHUNK_SIZE);
+                for (int j = chunk * CHUNK_SIZE; j < end; j++) {
+                    if (outDegree[j] > 0) {
+                        contributions[j] = DAMPING_FACTOR
+                                           * (curRanks[j] / outDegree[j]);
+                    }
+                }
+            });
             // iterate through all pages.
-            for (Map.Entry<String, Double> prEntry : pageRankMap.entrySet()) {
-                double oldPageR = prEntry.getValue();
-                double newPageR = 0;
-                // calculate the Pagerank for current page.
-                // get a Set of all pages linking to pURL
-                Set<String> linksToCurPageSet = linkMap.get(prEntry.getKey())
-                                                            .inBoundLinkSet();
-                // iterate through every page to links tu curPage and cumulate
-                // the new Pagerank value
-                for (String linksToCurPage : linksToCurPageSet) {
-                    double prj = pageRankMap.get(linksToCurPage);
-                    int cj = linkMap.get(linksToCurPage).outBoundLinks();
-                    newPageR += DAMPING_FACTOR * (prj / cj);
+            forEachChunk(pool, numChunks, chunk -> {
+                int end = Math.min(numPages, (chunk + 1) * CHUNK_SIZE);
+                double chunkDelta = 0;
+                for (int v = chunk * CHUNK_SIZE; v < end; v++) {
+                    double newPageR = 0;
+                    // iterate through every page which links to page v and
+                    // cumulate the new Pagerank value
+                    for (int i = inStart[v]; i < inStart[v + 1]; i++) {
+                        newPageR += contributions[inLinks[i]];
+                    }
+                    // add Ranksource
+                    newPageR += rankSource;
+                    chunkDelta += Math.abs(curRanks[v] - newPageR);
+                    nextRanks[v] = newPageR;
                 }
-                // add Ranksource
-                newPageR += (1 - DAMPING_FACTOR) * n;
-                delta += Math.abs(oldPageR - newPageR);
-                // save new PageRank to out new map
-                newPageRankMap.put(prEntry.getKey(), newPageR);
-                
+                chunkDeltas[chunk] = chunkDelta;
+            });
+            delta = 0;
+            for (double chunkDelta : chunkDeltas) {
+                delta += chunkDelta;
             }
             // switch old pageRanks with new pageRanks
-            pageRankMap = newPageRankMap;
+            oldRanks = nextRanks;
+            newRanks = curRanks;
             iterationCount++;
         } while (delta > EPSILON && iterationCount < MAXPAGERANKIT);
+        ranks = oldRanks;
+        iterations = iterationCount;
+    }
+    /**
+     * Runs the action for every chunk.
+     * @param pool the pool which runs the actions, null to run them in the
+     * calling thread
+     * @param numChunks number of chunks
+     * @param chunkAction the action, which gets the number of the chunk
+     */
+    private static void forEachChunk(final ForkJoinPool pool,
+                                     final int numChunks,
+                                     final IntConsumer chunkAction) {
+        if (pool == null || numChunks <= 1) {
+            for (int chunk = 0; chunk < numChunks; chunk++) {
+                chunkAction.accept(chunk);
+            }
+        } else {
+            pool.invoke(new ChunkTask(0, numChunks, chunkAction));
+        }
+    }
+    /**
+     * Returns the number of iterations until the pageranks converged.
+     * @return the number of iterations.
+     */
+    protected int getIterations() {
+        return iterations;
     }
     /**
      * Returns the total amount of inbound links.
      * @return the total amound of inbound links.
      */
     protected int getTotalInBoundLinks() {
-        int countInBound = 0;
-        for (LinkMapElem curElem : linkMap.values()) {
-            // curElem.inBoundLinkSet() is the Set of all inbound links for
-            // current map element. size() is the count of inbound links to
-            // that element.
-            countInBound += curElem.inBoundLinkSet().size();
-        }   
-        return countInBound;
+        return inLinks.length;
     }
     /**
      * Returns the number of inbound links to the specified site. Returns -1 if
@@ -121,11 +258,11 @@ public class PageRank {
      * was not found
      */
     protected int getNumInboundLinks(final String url) {
-        Set<String> curSet = linkMap.get(url).inBoundLinkSet();
-        if (curSet == null) {
+        int id = findURL(url);
+        if (id < 0) {
             return -1;
         } else {
-            return curSet.size();
+            return inStart[id + 1] - inStart[id];
         }
     }
     /**
@@ -134,11 +271,70 @@ public class PageRank {
      * @return a map of the pageranks.
      */
     protected Map<String, Double> getPageRankMap() {
+        if (pageRankMap == null) {
+            Map<String, Double> map = new TreeMap<>();
+            for (int i = 0; i < urls.length; i++) {
+                map.put(urls[i], ranks[i]);
+            }
+            pageRankMap = map;
+        }
         return pageRankMap;
     }
-    private record LinkMapElem (
-        Set<String> inBoundLinkSet,
-        int outBoundLinks
-    ) { }
+    /**
+     * Returns the pageranks of all pages, indexed by the id of the page.
+     * If the pages were given as a collection, the ids follow the order of
+     * the URLs.
+     * @return the pageranks of all pages.
+     */
+    protected double[] getPageRanks() {
+        return ranks.clone();
+    }
+    /**
+     * Returns the id of the page with the URL.
+     * @param url the URL of the page
+     * @return the id of the page, -1 if there is no page with the URL.
+     */
+    private int findURL(final String url) {
+        if (urlIds == null) {
+            Map<String, Integer> ids = new HashMap<>();
+            for (int i = 0; i < urls.length; i++) {
+                ids.put(urls[i], i);
+            }
+            urlIds = ids;
+        }
+        Integer id = urlIds.get(url);
+        return id == null ? -1 : id;
+    }
+    /**
+     * Splits a range of chunks in halves until a single chunk is left,
+     * which is then calculated.
+     */
+    private static final class ChunkTask extends RecursiveAction {
+        /** Version of the serialized form. */
+        private static final long serialVersionUID = 1L;
+        /** First chunk of the range. */
+        private final int from;
+        /** Chunk after the last chunk of the range. */
+        private final int to;
+        /** The action, which gets the number of the chunk. */
+        private final IntConsumer chunkAction;
+
+        ChunkTask(final int from, final int to,
+                  final IntConsumer chunkAction) {
+            this.from = from;
+            this.to = to;
+            this.chunkAction = chunkAction;
+        }
 
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                chunkAction.accept(from);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ChunkTask(from, mid, chunkAction),
+                          new ChunkTask(mid, to, chunkAction));
+            }
+        }
+    }
 }
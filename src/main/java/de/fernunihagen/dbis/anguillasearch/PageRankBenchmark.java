@@ -0,0 +1,133 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures the PageRank calculation on synthetic link graphs.
+ * Every page links to a random number of pages, on average
+ * AVG_OUT_DEGREE. The targets are skewed towards pages with small ids, so
+ * some pages have many inbound links like on a real net.
+ * Every graph is ranked in the calling thread and then in parallel with
+ * 1, 2, 4, ... threads up to the number of processors. Prints the time to
+ * build the link graph and rank the pages, the number of iterations, the
+ * links processed per second, the speedup over the calling thread and if
+ * the pageranks are the same.
+ * Usage: PageRankBenchmark [number of pages ...]
+ */
+public final class PageRankBenchmark {
+    /** Average number of links of a page. */
+    private static final int AVG_OUT_DEGREE = 8;
+    /** Seed of the random graphs, so every run uses the same graphs. */
+    private static final long SEED = 42;
+    /** Graph sizes, if none are given. */
+    private static final int[] DEFAULT_SIZES = {100_000, 1_000_000};
+
+    private PageRankBenchmark() {
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments
+     */
+    public static void main(final String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.format("%10s %11s %8s %10s %6s %14s %8s %5s%n", "Pages",
+                          "Links", "Threads", "Time (ms)", "Iter.",
+                          "Links/s", "Speedup", "Same");
+        for (int numPages : sizes) {
+            run(numPages);
+        }
+    }
+    /**
+     * Generates a graph and ranks its pages with different numbers of
+     * threads.
+     * @param numPages number of pages of the graph
+     */
+    private static void run(final int numPages) {
+        Random random = new Random(SEED);
+        String[] urls = new String[numPages];
+        for (int i = 0; i < numPages; i++) {
+            urls[i] = "http://page" + i + ".synthetic";
+        }
+        int numLinks = numPages * AVG_OUT_DEGREE;
+        int[] linkSources = new int[numLinks];
+        int[] linkTargets = new int[numLinks];
+        for (int e = 0; e < numLinks; e++) {
+            linkSources[e] = random.nextInt(numPages);
+            // squaring a uniform number skews the targets to small ids
+            double r = random.nextDouble();
+            linkTargets[e] = (int) (r * r * numPages);
+        }
+        // warm up, so the first measurement does not include the JIT
+        new PageRank(urls, linkSources, linkTargets, null);
+
+        long start = System.nanoTime();
+        PageRank sequential = new PageRank(urls, linkSources, linkTargets,
+                                           null);
+        long sequentialNanos = Math.max(1, System.nanoTime() - start);
+        double[] expected = sequential.getPageRanks();
+        print(numPages, "-", sequential, sequentialNanos, sequentialNanos,
+              true);
+
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads;
+             threads = nextThreadCount(threads, maxThreads)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                start = System.nanoTime();
+                PageRank parallel = new PageRank(urls, linkSources,
+                                                 linkTargets, pool);
+                long nanos = Math.max(1, System.nanoTime() - start);
+                print(numPages, Integer.toString(threads), parallel, nanos,
+                      sequentialNanos,
+                      Arrays.equals(expected, parallel.getPageRanks()));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+    /**
+     * Doubles the number of threads, the last step is the maximum.
+     * @param threads the current number of threads
+     * @param maxThreads the maximum number of threads
+     * @return the next number of threads, larger than maxThreads after the
+     * maximum.
+     */
+    private static int nextThreadCount(final int threads,
+                                       final int maxThreads) {
+        if (threads == maxThreads) {
+            return maxThreads + 1;
+        }
+        return Math.min(threads * 2, maxThreads);
+    }
+    /**
+     * Prints a line of the results.
+     * @param numPages number of pages of the graph
+     * @param threads number of threads, "-" for the calling thread
+     * @param pageRank the result
+     * @param nanos time the calculation took
+     * @param sequentialNanos time the calculation in the calling thread took
+     * @param same true if the pageranks are the same as in the calling thread
+     */
+    private static void print(final int numPages, final String threads,
+                              final PageRank pageRank, final long nanos,
+                              final long sequentialNanos,
+                              final boolean same) {
+        double linksPerSecond = (double) pageRank.getTotalInBoundLinks()
+                                * pageRank.getIterations() * 1e9 / nanos;
+        System.out.format("%10d %11d %8s %10d %6d %14.0f %7.2fx %5s%n",
+                          numPages, pageRank.getTotalInBoundLinks(), threads,
+                          nanos / 1_000_000, pageRank.getIterations(),
+                          linksPerSecond, (double) sequentialNanos / nanos,
+                          same ? "yes" : "no");
+    }
+}
@@ -0,0 +1,17 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.Set;
+
+/**
+ * The text of a fetched page, which is indexed, before it is lemmatized.
+ * @param title the title of the page
+ * @param header the text of the header elements
+ * @param content the text of the main elements without the links
+ * @param links the targets of all links of the page
+ */
+record PageText(
+    String title,
+    String header,
+    String content,
+    Set<String> links
+) { }
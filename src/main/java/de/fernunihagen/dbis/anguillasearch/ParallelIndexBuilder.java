@@ -0,0 +1,504 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+
+/**
+ * Builds the segment of an index of lemmatized pages with several threads.
+ * The pages are split into one slice of consecutive document ids per
+ * thread and the tokens into ranges, the build runs in four phases:
+ * <ol>
+ * <li>Every slice counts the tokens of its pages and builds a partial
+ * index: its own sorted dictionary and the tokens of every page with their
+ * term frequency.</li>
+ * <li>The partial dictionaries are merged with a k-way merge into the term
+ * dictionary, every range of tokens is merged by its own thread. The
+ * document frequencies of the partial dictionaries are added up to the
+ * IDF.</li>
+ * <li>Every slice calculates the norms of its pages and the weights of
+ * their tokens and turns its pages into partial postings.</li>
+ * <li>The partial postings of every token are appended in the order of
+ * the slices, every range of tokens by its own thread.</li>
+ * </ol>
+ * The slices are in the order of the document ids, so the appended postings
+ * are sorted by document id. The norm and the weights of a page are added
+ * up in the order of its tokens, like in the single-threaded build of the
+ * Indexer, so the segment is the same, byte for byte, as the one of the
+ * single-threaded build for any number of threads.
+ */
+final class ParallelIndexBuilder {
+    /** Smallest number of pages of a slice, smaller nets use fewer
+     * threads. */
+    private static final int MIN_SLICE_DOCS = 64;
+    /** Ranges of tokens per thread, so a thread with frequent tokens does
+     * not keep the others waiting. */
+    private static final int RANGES_PER_THREAD = 4;
+    /** Smallest capacity of a growing array of a slice. */
+    private static final int MIN_CAPACITY = 16;
+    /** Initial capacity of the merged tokens of a range. */
+    private static final int INITIAL_RANGE_TERMS = 64;
+    /** Tokens of every slice, which are sampled to split the ranges. */
+    private static final int SAMPLES_PER_RANGE = 16;
+
+    /** The pages sorted by URL, the position is the document id. */
+    private final Page[] docs;
+    /** The pool which builds the slices and ranges, null to build them in
+     * the calling thread. */
+    private final ForkJoinPool pool;
+    /** The partial indexes of the slices, in the order of the ids. */
+    private final Slice[] slices;
+    /** Number of tokens of every page. */
+    private final int[] docLengths;
+    /** Euclidian norm of the TF-IDF vector of every page. */
+    private final double[] docNorms;
+    /** The first tokens of the ranges but the first. */
+    private String[] splitters;
+    /** Position of the first token of every range in the term dictionary
+     * and the number of tokens at the end. */
+    private int[] rangeStarts;
+    /** All tokens, sorted lexicographically. */
+    private String[] tokens;
+    /** IDF of every token, same order as tokens. */
+    private double[] idfs;
+
+    /**
+     * Creates a builder of the pages.
+     * @param docs the pages sorted by URL without duplicates
+     * @param pool the pool which builds the index, null to build it in the
+     * calling thread
+     */
+    private ParallelIndexBuilder(final Page[] docs, final ForkJoinPool pool) {
+        this.docs = docs;
+        this.pool = pool;
+        int threads = pool == null ? 1 : pool.getParallelism();
+        int numSlices = Math.max(1, Math.min(threads,
+                                             docs.length / MIN_SLICE_DOCS));
+        this.slices = new Slice[numSlices];
+        for (int s = 0; s < numSlices; s++) {
+            slices[s] = new Slice((int) ((long) docs.length * s / numSlices),
+                                  (int) ((long) docs.length * (s + 1)
+                                         / numSlices));
+        }
+        this.docLengths = new int[docs.length];
+        this.docNorms = new double[docs.length];
+    }
+
+    /**
+     * Builds the segment of the pages.
+     * @param docs the pages sorted by URL without duplicates, the position
+     * is the document id
+     * @param pageRanks the PageRank of every page, same order as docs
+     * @param pool the pool which builds the index, null to build it in the
+     * calling thread
+     * @return the segment of the pages.
+     */
+    static HeapSegment build(final Page[] docs, final double[] pageRanks,
+                             final ForkJoinPool pool) {
+        ParallelIndexBuilder builder = new ParallelIndexBuilder(docs, pool);
+        builder.forEach(builder.slices.length,
+                        s -> builder.slices[s].index());
+        builder.splitRanges();
+        int numRanges = builder.splitters.length + 1;
+        int[][] rangeDocFreqs = new int[numRanges][];
+        String[][] rangeTokens = new String[numRanges][];
+        builder.forEach(numRanges, r -> builder.mergeTerms(r, rangeTokens,
+                                                           rangeDocFreqs));
+        builder.collectTerms(rangeTokens, rangeDocFreqs);
+        builder.forEach(builder.slices.length,
+                        s -> builder.slices[s].weigh());
+        PostingsList[] postings = new PostingsList[builder.tokens.length];
+        builder.forEach(numRanges, r -> builder.appendPostings(r,
+                                                               postings));
+        return new HeapSegment(TermDictionary.build(
+                                   Arrays.asList(builder.tokens),
+                                   builder.idfs),
+                               postings, docs, builder.docLengths,
+                               builder.docNorms, pageRanks);
+    }
+    /**
+     * Runs the action for every part, in parallel if there is a pool.
+     * @param numParts number of parts
+     * @param partAction the action, which gets the number of the part
+     */
+    private void forEach(final int numParts, final IntConsumer partAction) {
+        if (pool == null || numParts <= 1) {
+            for (int part = 0; part < numParts; part++) {
+                partAction.accept(part);
+            }
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(numParts);
+        for (int part = 0; part < numParts; part++) {
+            int p = part;
+            tasks.add(pool.submit(() -> partAction.accept(p)));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+    /**
+     * Splits the tokens into ranges of about the same number of tokens. The
+     * splitters are sampled from the dictionaries of all slices.
+     */
+    private void splitRanges() {
+        int numRanges = pool == null ? 1
+                        : pool.getParallelism() * RANGES_PER_THREAD;
+        List<String> samples = new ArrayList<>();
+        for (Slice slice : slices) {
+            int step = Math.max(1, slice.tokens.length
+                                   / (numRanges * SAMPLES_PER_RANGE));
+            for (int i = 0; i < slice.tokens.length; i += step) {
+                samples.add(slice.tokens[i]);
+            }
+        }
+        samples.sort(Comparator.naturalOrder());
+        List<String> chosen = new ArrayList<>();
+        for (int r = 1; r < numRanges; r++) {
+            String splitter = samples.isEmpty() ? null
+                              : samples.get(samples.size() * r / numRanges);
+            if (splitter != null && (chosen.isEmpty()
+                || splitter.compareTo(chosen.get(chosen.size() - 1)) > 0)) {
+                chosen.add(splitter);
+            }
+        }
+        splitters = chosen.toArray(new String[0]);
+        for (Slice slice : slices) {
+            slice.rangeStarts = new int[splitters.length + 2];
+            for (int r = 0; r < splitters.length; r++) {
+                int i = Arrays.binarySearch(slice.tokens, splitters[r]);
+                slice.rangeStarts[r + 1] = i >= 0 ? i : -(i + 1);
+            }
+            slice.rangeStarts[splitters.length + 1] = slice.tokens.length;
+        }
+    }
+    /**
+     * Merges the tokens of a range of all slices. Every slice stores the
+     * position of its tokens in the range, collectTerms turns them into
+     * term ids.
+     * @param range the range
+     * @param rangeTokens the merged tokens of every range
+     * @param rangeDocFreqs the document frequency of the merged tokens of
+     * every range
+     */
+    private void mergeTerms(final int range, final String[][] rangeTokens,
+                            final int[][] rangeDocFreqs) {
+        PriorityQueue<TermCursor> cursors = new PriorityQueue<>(
+                                Comparator.comparing(TermCursor::term));
+        for (Slice slice : slices) {
+            TermCursor cursor = new TermCursor(slice,
+                                               slice.rangeStarts[range],
+                                               slice.rangeStarts[range + 1]);
+            if (cursor.hasTerm()) {
+                cursors.add(cursor);
+            }
+        }
+        List<String> merged = new ArrayList<>();
+        int[] docFreqs = new int[INITIAL_RANGE_TERMS];
+        while (!cursors.isEmpty()) {
+            String token = cursors.peek().term();
+            int docFreq = 0;
+            while (!cursors.isEmpty() && cursors.peek().term().equals(token)) {
+                TermCursor cursor = cursors.poll();
+                cursor.slice.termIds[cursor.position] = merged.size();
+                docFreq += cursor.slice.docFreqs[cursor.position];
+                cursor.position++;
+                if (cursor.hasTerm()) {
+                    cursors.add(cursor);
+                }
+            }
+            if (merged.size() == docFreqs.length) {
+                docFreqs = Arrays.copyOf(docFreqs, docFreqs.length * 2);
+            }
+            docFreqs[merged.size()] = docFreq;
+            merged.add(token);
+        }
+        rangeTokens[range] = merged.toArray(new String[0]);
+        rangeDocFreqs[range] = docFreqs;
+    }
+    /**
+     * Concatenates the tokens of the ranges to the term dictionary,
+     * calculates their IDF and turns the positions of the tokens of the
+     * slices in their range into term ids.
+     * @param rangeTokens the merged tokens of every range
+     * @param rangeDocFreqs the document frequency of the merged tokens of
+     * every range
+     */
+    private void collectTerms(final String[][] rangeTokens,
+                              final int[][] rangeDocFreqs) {
+        rangeStarts = new int[rangeTokens.length + 1];
+        for (int r = 0; r < rangeTokens.length; r++) {
+            rangeStarts[r + 1] = rangeStarts[r] + rangeTokens[r].length;
+        }
+        tokens = new String[rangeStarts[rangeTokens.length]];
+        idfs = new double[tokens.length];
+        double n = docs.length;
+        for (int r = 0; r < rangeTokens.length; r++) {
+            System.arraycopy(rangeTokens[r], 0, tokens, rangeStarts[r],
+                             rangeTokens[r].length);
+            for (int i = 0; i < rangeTokens[r].length; i++) {
+                // IDF(t) = ln( N / df(t) ), like Indexer.buildTokenVector
+                double dft = rangeDocFreqs[r][i];
+                idfs[rangeStarts[r] + i] = Math.log(n / dft);
+            }
+        }
+        for (Slice slice : slices) {
+            for (int r = 0; r < rangeTokens.length; r++) {
+                for (int i = slice.rangeStarts[r];
+                     i < slice.rangeStarts[r + 1]; i++) {
+                    slice.termIds[i] += rangeStarts[r];
+                }
+            }
+        }
+    }
+    /**
+     * Appends the partial postings of the slices for every token of a
+     * range.
+     * @param range the range
+     * @param postings the postings of every token
+     */
+    private void appendPostings(final int range,
+                                final PostingsList[] postings) {
+        int[] positions = new int[slices.length];
+        for (int s = 0; s < slices.length; s++) {
+            positions[s] = slices[s].rangeStarts[range];
+        }
+        for (int termId = rangeStarts[range];
+             termId < rangeStarts[range + 1]; termId++) {
+            PostingsList tokenPostings = new PostingsList();
+            for (int s = 0; s < slices.length; s++) {
+                Slice slice = slices[s];
+                int i = positions[s];
+                if (i < slice.rangeStarts[range + 1]
+                    && slice.termIds[i] == termId) {
+                    for (int p = slice.termStarts[i];
+                         p < slice.termStarts[i + 1]; p++) {
+                        int docId = slice.postingDocIds[p];
+                        tokenPostings.add(docId, slice.postingTfs[p],
+                                          docLengths[docId],
+                                          slice.postingWeights[p]);
+                    }
+                    positions[s]++;
+                }
+            }
+            tokenPostings.trim();
+            postings[termId] = tokenPostings;
+        }
+    }
+
+    /**
+     * The partial index of a slice of consecutive document ids. Its tokens
+     * are numbered in their lexicographical order, the tokens of a page are
+     * sorted like that.
+     */
+    private final class Slice {
+        /** First document id of the slice. */
+        private final int from;
+        /** Document id after the last one of the slice. */
+        private final int to;
+        /** The tokens of the pages of the slice, sorted
+         * lexicographically. */
+        private String[] tokens;
+        /** Number of pages of the slice with every token. */
+        private int[] docFreqs;
+        /** Term id of every token, set when the dictionaries are
+         * merged. */
+        private int[] termIds;
+        /** Position of the first token of every range in tokens and the
+         * number of tokens at the end. */
+        private int[] rangeStarts;
+        /** Position of the first token of every page in docTerms and the
+         * number of tokens of the pages at the end. */
+        private int[] docStarts;
+        /** Position in tokens of the tokens of every page, sorted for every
+         * page. */
+        private int[] docTerms;
+        /** How often every token is on the page, same order as
+         * docTerms. */
+        private int[] docTfs;
+        /** Position of the first posting of every token in the postings
+         * and the number of postings at the end. */
+        private int[] termStarts;
+        /** Document id of every posting, sorted for every token. */
+        private int[] postingDocIds;
+        /** Term frequency of every posting. */
+        private int[] postingTfs;
+        /** Normalized TF-IDF weight of every posting. */
+        private float[] postingWeights;
+
+        Slice(final int from, final int to) {
+            this.from = from;
+            this.to = to;
+        }
+        /**
+         * Counts the tokens of every page of the slice and builds its
+         * dictionary. The tokens are numbered in the order they are found
+         * first and renumbered in lexicographical order at the end, so
+         * every page is only read once.
+         */
+        void index() {
+            Map<String, Integer> foundIds = new HashMap<>();
+            List<String> found = new ArrayList<>();
+            int[] counts = new int[0];
+            int[] pageTerms = new int[0];
+            docStarts = new int[to - from + 1];
+            docTerms = new int[0];
+            docTfs = new int[0];
+            int size = 0;
+            for (int docId = from; docId < to; docId++) {
+                List<String> lemmaList = docs[docId].getFilteredLemmaList();
+                docLengths[docId] = lemmaList.size();
+                int numPageTerms = 0;
+                for (String token : lemmaList) {
+                    Integer id = foundIds.get(token);
+                    if (id == null) {
+                        id = found.size();
+                        foundIds.put(token, id);
+                        found.add(token);
+                        if (id == counts.length) {
+                            counts = Arrays.copyOf(counts,
+                                        Math.max(MIN_CAPACITY, id * 2));
+                        }
+                    }
+                    if (counts[id]++ == 0) {
+                        if (numPageTerms == pageTerms.length) {
+                            pageTerms = Arrays.copyOf(pageTerms,
+                                Math.max(MIN_CAPACITY, numPageTerms * 2));
+                        }
+                        pageTerms[numPageTerms++] = id;
+                    }
+                }
+                if (size + numPageTerms > docTerms.length) {
+                    int capacity = Math.max(size + numPageTerms,
+                                            docTerms.length * 2);
+                    docTerms = Arrays.copyOf(docTerms, capacity);
+                    docTfs = Arrays.copyOf(docTfs, capacity);
+                }
+                for (int i = 0; i < numPageTerms; i++) {
+                    docTerms[size] = pageTerms[i];
+                    docTfs[size] = counts[pageTerms[i]];
+                    counts[pageTerms[i]] = 0;
+                    size++;
+                }
+                docStarts[docId - from + 1] = size;
+            }
+            tokens = found.toArray(new String[0]);
+            Arrays.sort(tokens);
+            int[] positions = new int[tokens.length];
+            for (int i = 0; i < tokens.length; i++) {
+                positions[foundIds.get(tokens[i])] = i;
+            }
+            docFreqs = new int[tokens.length];
+            termIds = new int[tokens.length];
+            // the tokens of a page in the order of the dictionary, the
+            // position in the high and the term frequency in the low bits
+            long[] sorted = new long[0];
+            for (int d = 0; d < to - from; d++) {
+                int start = docStarts[d];
+                int length = docStarts[d + 1] - start;
+                if (length > sorted.length) {
+                    sorted = new long[length];
+                }
+                for (int i = 0; i < length; i++) {
+                    sorted[i] = (long) positions[docTerms[start + i]]
+                                << Integer.SIZE | docTfs[start + i];
+                }
+                Arrays.sort(sorted, 0, length);
+                for (int i = 0; i < length; i++) {
+                    int position = (int) (sorted[i] >>> Integer.SIZE);
+                    docTerms[start + i] = position;
+                    docTfs[start + i] = (int) sorted[i];
+                    docFreqs[position]++;
+                }
+            }
+        }
+        /**
+         * Calculates the norm of every page of the slice and the weights of
+         * its tokens, like the VecFwdIndex and Indexer.buildSegment: the
+         * weights are the TF-IDF values as float, divided by the norm of
+         * the float vector. The postings of the tokens are filled in the
+         * order of the pages.
+         */
+        void weigh() {
+            termStarts = new int[tokens.length + 1];
+            for (int i = 0; i < tokens.length; i++) {
+                termStarts[i + 1] = termStarts[i] + docFreqs[i];
+            }
+            int numPostings = termStarts[tokens.length];
+            postingDocIds = new int[numPostings];
+            postingTfs = new int[numPostings];
+            postingWeights = new float[numPostings];
+            int[] fill = Arrays.copyOf(termStarts, tokens.length);
+            float[] weights = new float[0];
+            for (int docId = from; docId < to; docId++) {
+                int start = docStarts[docId - from];
+                int length = docStarts[docId - from + 1] - start;
+                if (length > weights.length) {
+                    weights = new float[length];
+                }
+                double quadSum = 0;
+                double vectorQuadSum = 0;
+                for (int i = 0; i < length; i++) {
+                    double tfidf = (double) docTfs[start + i]
+                                   / docLengths[docId]
+                                   * idfs[termIds[docTerms[start + i]]];
+                    quadSum += tfidf * tfidf;
+                    weights[i] = (float) tfidf;
+                    vectorQuadSum += (double) weights[i] * weights[i];
+                }
+                docNorms[docId] = Math.sqrt(quadSum);
+                double vectorNorm = Math.sqrt(vectorQuadSum);
+                for (int i = 0; i < length; i++) {
+                    int p = fill[docTerms[start + i]]++;
+                    postingDocIds[p] = docId;
+                    postingTfs[p] = docTfs[start + i];
+                    postingWeights[p] = vectorNorm == 0 ? weights[i]
+                                        : (float) (weights[i] / vectorNorm);
+                }
+            }
+            // only the postings are needed to append them
+            docStarts = null;
+            docTerms = null;
+            docTfs = null;
+        }
+    }
+
+    /**
+     * Walks the tokens of a range of a slice in lexicographical order.
+     */
+    private static final class TermCursor {
+        /** The slice. */
+        private final Slice slice;
+        /** Position after the last token of the range. */
+        private final int end;
+        /** Position of the current token. */
+        private int position;
+
+        TermCursor(final Slice slice, final int start, final int end) {
+            this.slice = slice;
+            this.position = start;
+            this.end = end;
+        }
+        /**
+         * Returns whether there is a current token.
+         * @return false if all tokens of the range were walked.
+         */
+        boolean hasTerm() {
+            return position < end;
+        }
+        /**
+         * Returns the current token.
+         * @return the token.
+         */
+        String term() {
+            return slice.tokens[position];
+        }
+    }
+}
@@ -1,11 +1,8 @@
 package de.fernunihagen.dbis.anguillasearch;
 
-import java.text.Normalizer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Properties;
 import java.util.Set;
 
 import org.jsoup.nodes.Document;
@@ -14,17 +11,28 @@ import org.jsoup.select.Elements;
 
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.CoreDocument;
-import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 
 /**
  * Parser Class which provides several functions.
+ * All functions are thread-safe.
  */
 public abstract class Parser {
-    /** variable to save the Regex for Stopword Removal, so we
-     *  have to build it only once */
-    private static String stopWordRegex = null;
-    /** Pipeline for tokenizing and lemmatizing. */
-    private static StanfordCoreNLP pipeline = null;
+    /** Pipelines for tokenizing and lemmatizing. */
+    private static final PipelinePool FULL_PIPELINES =
+                            new PipelinePool("tokenize,ssplit,pos,lemma");
+    /** Pipelines for tokenizing only, used by the FAST analysis mode. */
+    private static final PipelinePool TOKENIZE_PIPELINES =
+                            new PipelinePool("tokenize,ssplit");
+    /** How tokLem() lemmatizes. */
+    private static volatile AnalysisMode analysisMode = AnalysisMode.CORENLP;
+    /** Lemmas CoreNLP assigned while recording, used by the FAST analysis
+     * mode. */
+    private static volatile LemmaTable lemmaTable = new LemmaTable();
+    /** Whether the lemmas CoreNLP assigns are recorded in the lemma
+     * table. */
+    private static volatile boolean recordLemmas = false;
+    /** Separates the strings of a batch, an empty line ends a sentence. */
+    private static final String BATCH_SEPARATOR = "\n\n";
 
      /**
      * Parses the already fetched page and create a Page-Object, which contains
@@ -34,53 +42,61 @@ public abstract class Parser {
      * @return the page as a Page-Class Object. 
      */
     public static Page parse(final String url, final Document page) {
+        return parse(url, extract(page));
+    }
+    /**
+     * Creates a Page-Object of the text extracted from a fetched page.
+     * @param url the absolute URL of the page.
+     * @param text the text of the page, e.g. from the HtmlExtractor.
+     * @return the page as a Page-Class Object.
+     */
+    static Page parse(final String url, final PageText text) {
+        return new Page(url, text.title(), text.header(), text.content(),
+                        text.links());
+    }
+    /**
+     * Extracts the text of a page from its document: the title, the text of
+     * the header elements, the text of the main elements without the links
+     * and the link targets. Changes the document, since the links of the
+     * main elements are removed.
+     * @param page the Document-Object of which the text should be extracted.
+     * @return the text of the page.
+     */
+    static PageText extract(final Document page) {
 
         String title = page.title();
         String header = page.getElementsByTag("header").text(); 
+        Set<String> linkSet = extractLinks(page);
 
+        Elements docContent = page.getElementsByTag("main");
+        docContent.select("a").remove();
+        String content = docContent.text();
+
+        return new PageText(title, header, content, linkSet);
+    }
+    /**
+     * Extracts the targets of all links of the document.
+     * Does not change the document.
+     * @param page the Document-Object of which the links should be extracted.
+     * @return a set of all link targets.
+     */
+    public static Set<String> extractLinks(final Document page) {
         Elements links = page.getElementsByTag("a");
         Set<String> linkSet = new HashSet<>();
         for (Element curLink : links) {
             linkSet.add(curLink.attr("href"));
         }
-
-        Elements docContent = page.getElementsByTag("main");
-        docContent.select("a").remove();
-        String content = docContent.text();
-
-        return new Page(url, title, header, content, linkSet);
+        return linkSet;
     }
 
     /**
-     * Removes stopwords of the supplied string. Reads stopwords.txt and
-     * expects stopwords to be seperated by \n
+     * Removes stopwords of the supplied string. The stop words are looked up
+     * in a hash set by the TextNormalizer.
      * @param inputString the string of which the stopwords should be removed from
      * @return the inputString, but without stopwords.
     */
     public static String rmStopWords(final String inputString) {
-        String workString = inputString;
-        if (stopWordRegex == null) {
-                // Stop word list source is CoreNLP
-                // https://github.com/stanfordnlp/CoreNLP/blob/main/src/edu/ \
-                // stanford/nlp/coref/data/WordLists.java
-                String stopWordString = "a an the of at on upon in to from out"
-                                        +" as so such or and those this these"
-                                        +" that for is was am are 's been were";
-                
-                List<String> stopWords = Arrays.asList(stopWordString.split(" "));
-                //create Regex
-                StringBuilder strB = new StringBuilder();
-                strB.append("\\b(");
-                for (String stopword : stopWords) {
-                    strB.append(stopword + "|");
-                }
-                //remove replace last | by )
-                strB.setCharAt(strB.length() - 1, ')');
-                strB.append("\\b");
-                stopWordRegex = strB.toString();
-        }
-        workString = workString.replaceAll(stopWordRegex, "");
-        return workString;
+        return TextNormalizer.removeStopWords(inputString);
     }
     /**
      * Tokenizes and lemmatizes the input String.
@@ -90,39 +106,168 @@ public abstract class Parser {
      * ["welcome", "to", "we", "exquisite", "selection", "of",
      * "artisanal", "cheese", "explore", "the", "rich", "flavor", "and",
      * "unique", "texture"]
+     * Can be called by several threads at the same time.
      * @param inputString   The String which should be tokenized
      * @return  an ArrayList<String> of the token of content.
      */
     public static List<String> tokLem(final String inputString) {
         ArrayList<String> outputList = new ArrayList<>();
-        String workString = inputString;
-
-        // remove \, |, and punctiation marks.
-        // – U+2013 : EN DASH not removed
-        workString = Normalizer.normalize(workString, Normalizer.Form.NFD);
-        workString = workString.replaceAll("[\\\\|.!,:\\-?\\&]\'", "");
-        workString = workString.toLowerCase();
-
-        //remove StopWords
-        workString = rmStopWords(workString);
-
-        //create out StanfordCoreNLP Pipeline with the right annotators
-        if (pipeline == null) {
-            Properties props = new Properties();
-            props.setProperty("annotators", "tokenize,ssplit,pos,lemma");
-            pipeline = new StanfordCoreNLP(props);
-        }
 
         //process our workstring
-        CoreDocument coreDoc = new CoreDocument(workString);
-        pipeline.annotate(coreDoc);
+        CoreDocument coreDoc = new CoreDocument(normalize(inputString));
+        annotate(coreDoc);
 
         //create list of lemmas.
         List<CoreLabel> tokenList = coreDoc.tokens();
         for (CoreLabel token : tokenList) {
-            outputList.add(token.lemma());
+            outputList.add(lemmaOf(token));
         }
 
         return outputList;
     }
+    /**
+     * Tokenizes and lemmatizes all input Strings with a single annotate call.
+     * The strings are joined with an empty line in between, which always
+     * ends a sentence, so every string is lemmatized the same way as by
+     * tokLem(). The tokens are assigned to their string by their position.
+     * Can be called by several threads at the same time.
+     * @param inputStrings the Strings which should be tokenized
+     * @return a list of the lemmas of every input String, in the same order
+     * as the input.
+     */
+    public static List<List<String>> tokLemBatch(
+                                        final List<String> inputStrings) {
+        List<List<String>> outputLists = new ArrayList<>(inputStrings.size());
+        // start offset of every string in the joined text.
+        int[] startOffsets = new int[inputStrings.size()];
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < inputStrings.size(); i++) {
+            if (i > 0) {
+                joined.append(BATCH_SEPARATOR);
+            }
+            startOffsets[i] = joined.length();
+            joined.append(normalize(inputStrings.get(i)));
+            outputLists.add(new ArrayList<>());
+        }
+
+        CoreDocument coreDoc = new CoreDocument(joined.toString());
+        annotate(coreDoc);
+
+        // tokens are in text order, so the string index only moves forward
+        int curString = 0;
+        for (CoreLabel token : coreDoc.tokens()) {
+            while (curString + 1 < startOffsets.length
+                   && token.beginPosition() >= startOffsets[curString + 1]) {
+                curString++;
+            }
+            outputLists.get(curString).add(lemmaOf(token));
+        }
+        return outputLists;
+    }
+    /**
+     * Sets the maximum number of CoreNLP pipelines, which may be used at the
+     * same time. The default is the number of available processors.
+     * Pipelines, which were already created, are kept.
+     * @param size the maximum number of pipelines.
+     */
+    public static void setPipelinePoolSize(final int size) {
+        FULL_PIPELINES.setMaxSize(size);
+        TOKENIZE_PIPELINES.setMaxSize(size);
+    }
+    /**
+     * Selects how tokLem() and tokLemBatch() lemmatize.
+     * @param mode the analysis mode which should be used.
+     */
+    public static void setAnalysisMode(final AnalysisMode mode) {
+        analysisMode = mode;
+    }
+    /**
+     * Returns the selected analysis mode.
+     * @return the selected analysis mode.
+     */
+    public static AnalysisMode getAnalysisMode() {
+        return analysisMode;
+    }
+    /**
+     * Selects whether the lemmas CoreNLP assigns in CORENLP mode are recorded
+     * in the lemma table. Off by default, since the table grows with every
+     * new word and every token would update it. Only runs, which build a
+     * table for the FAST mode, e.g. LemmatizerComparison, record.
+     * @param record true to record the lemmas
+     */
+    public static void setRecordLemmas(final boolean record) {
+        recordLemmas = record;
+    }
+    /**
+     * Returns whether the lemmas CoreNLP assigns are recorded.
+     * @return true if the lemmas are recorded.
+     */
+    public static boolean isRecordingLemmas() {
+        return recordLemmas;
+    }
+    /**
+     * Replaces the lemma table, which is filled in CORENLP mode while
+     * recording and used in FAST mode.
+     * @param table the new lemma table.
+     */
+    public static void setLemmaTable(final LemmaTable table) {
+        lemmaTable = table;
+    }
+    /**
+     * Returns the lemma table, which is filled in CORENLP mode while
+     * recording and used in FAST mode.
+     * @return the lemma table.
+     */
+    public static LemmaTable getLemmaTable() {
+        return lemmaTable;
+    }
+    /**
+     * Removes \, |, and punctiation marks followed by an apostrophe, converts
+     * the string to lower case and removes the stop words.
+     * @param inputString the String which should be normalized
+     * @return the normalized String
+     */
+    private static String normalize(final String inputString) {
+        return TextNormalizer.normalize(inputString);
+    }
+    /**
+     * Annotates the document with a pipeline of the selected analysis mode.
+     * @param coreDoc the document which should be annotated
+     */
+    private static void annotate(final CoreDocument coreDoc) {
+        if (analysisMode == AnalysisMode.FAST) {
+            TOKENIZE_PIPELINES.annotate(coreDoc);
+        } else {
+            FULL_PIPELINES.annotate(coreDoc);
+        }
+    }
+    /**
+     * Returns the lemma of an annotated token. In CORENLP mode the lemma is
+     * recorded in the lemma table if recording is on, in FAST mode it is
+     * looked up.
+     * @param token a token annotated by annotate()
+     * @return the lemma of the token
+     */
+    private static String lemmaOf(final CoreLabel token) {
+        LemmaTable table = lemmaTable;
+        if (analysisMode == AnalysisMode.FAST) {
+            return table.lemma(token.word());
+        }
+        if (recordLemmas) {
+            table.record(token.word(), token.lemma());
+        }
+        return token.lemma();
+    }
+    /**
+     * The ways the Parser can lemmatize.
+     */
+    public enum AnalysisMode {
+        /** Tokenizes, POS tags and lemmatizes with CoreNLP. */
+        CORENLP,
+        /**
+         * Only tokenizes with CoreNLP and looks up the lemmas in the lemma
+         * table. Skips the expensive POS tagging.
+         */
+        FAST
+    }
 }
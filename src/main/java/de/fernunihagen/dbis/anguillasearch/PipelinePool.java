@@ -0,0 +1,94 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.stanford.nlp.pipeline.CoreDocument;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+
+/**
+ * Thread-safe pool of StanfordCoreNLP pipelines with the same annotators.
+ * A pipeline is only used by one thread at a time. If all pipelines are in
+ * use, a new one is created until the pool is full, then the thread waits
+ * for a pipeline to be returned.
+ * CoreNLP caches the annotators of a pipeline, so the models are only
+ * loaded by the first pipeline and are shared by all others.
+ */
+class PipelinePool {
+    /** Pipelines which are not in use. */
+    private final BlockingQueue<StanfordCoreNLP> idlePipelines =
+                                                new LinkedBlockingQueue<>();
+    /** Number of pipelines created so far. */
+    private final AtomicInteger createdPipelines = new AtomicInteger();
+    /** The annotators of the pipelines, e.g. "tokenize,ssplit". */
+    private final String annotators;
+    /** Maximum number of pipelines in the pool. */
+    private volatile int maxPipelines =
+                                Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Creates an empty pool, the pipelines are created when needed.
+     * @param annotators the annotators of the pipelines
+     */
+    PipelinePool(final String annotators) {
+        this.annotators = annotators;
+    }
+
+    /**
+     * Sets the maximum number of pipelines, which may be used at the same
+     * time. Pipelines, which were already created, are kept.
+     * @param size the maximum number of pipelines.
+     */
+    void setMaxSize(final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException(
+                "The pipeline pool needs at least one pipeline.");
+        }
+        maxPipelines = size;
+    }
+    /**
+     * Annotates the document with a pipeline from the pool.
+     * @param coreDoc the document which should be annotated
+     */
+    void annotate(final CoreDocument coreDoc) {
+        StanfordCoreNLP pipeline = idlePipelines.poll();
+        try {
+            if (pipeline == null) {
+                pipeline = createOrWaitForPipeline();
+            }
+            pipeline.annotate(coreDoc);
+        } finally {
+            if (pipeline != null) {
+                idlePipelines.offer(pipeline);
+            }
+        }
+    }
+    /**
+     * Creates a new pipeline if the pool is not full yet, else waits for a
+     * pipeline to be returned to the pool.
+     * @return a pipeline, which is not used by another thread.
+     */
+    private StanfordCoreNLP createOrWaitForPipeline() {
+        int created = createdPipelines.get();
+        while (created < maxPipelines) {
+            if (createdPipelines.compareAndSet(created, created + 1)) {
+                Properties props = new Properties();
+                props.setProperty("annotators", annotators);
+                // an empty line always ends a sentence, see
+                // Parser.tokLemBatch().
+                props.setProperty("ssplit.newlineIsSentenceBreak", "two");
+                return new StanfordCoreNLP(props);
+            }
+            created = createdPipelines.get();
+        }
+        try {
+            return idlePipelines.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Interrupted while waiting for a CoreNLP pipeline.", e);
+        }
+    }
+}
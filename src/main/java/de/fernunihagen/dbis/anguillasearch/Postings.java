@@ -0,0 +1,73 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+/**
+ * Read access to the postings of one token. The postings are sorted by
+ * document id ascending. Every posting has the term frequency of the token
+ * in the document and the normalized TF-IDF weight of the token in the
+ * document.
+ * The postings are split into blocks of BLOCK_SIZE postings. Compressed
+ * postings have to decode a part of a block for docId(i) and tf(i), so all
+ * postings should be walked block by block with readBlock.
+ */
+interface Postings {
+    /** Number of postings in a block, only the last block can be smaller. */
+    int BLOCK_SIZE = 128;
+    /**
+     * Returns the number of documents containing the token.
+     * @return the number of postings.
+     */
+    int size();
+    /**
+     * Returns the document id of the i-th posting.
+     * @param i index of the posting
+     * @return the document id.
+     */
+    int docId(int i);
+    /**
+     * Returns the term frequency of the i-th posting.
+     * @param i index of the posting
+     * @return how often the token is in the document.
+     */
+    int tf(int i);
+    /**
+     * Returns the normalized TF-IDF weight of the i-th posting.
+     * @param i index of the posting
+     * @return the weight of the token in the document.
+     */
+    float weight(int i);
+    /**
+     * Returns the largest term frequency divided by the length of the
+     * document. No posting has a larger TF value, so multiplied with the IDF
+     * it is an upper bound of the TF-IDF value of the token.
+     * @return the largest TF value of all postings.
+     */
+    double maxNormalizedTF();
+    /**
+     * Returns the largest normalized TF-IDF weight of all postings.
+     * @return the largest weight of all postings.
+     */
+    float maxWeight();
+    /**
+     * Returns the index of the posting of the document.
+     * @param docId id of the document
+     * @return the index of the posting, a negative number if the document
+     * does not contain the token.
+     */
+    int find(int docId);
+    /**
+     * Returns the number of blocks.
+     * @return the number of blocks.
+     */
+    default int numBlocks() {
+        return (size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+    /**
+     * Copies the doc ids and term frequencies of a block into the arrays.
+     * The block starts with the posting block * BLOCK_SIZE.
+     * @param block index of the block
+     * @param docIds receives the doc ids, at least BLOCK_SIZE long
+     * @param tfs receives the term frequencies, at least BLOCK_SIZE long
+     * @return the number of postings in the block.
+     */
+    int readBlock(int block, int[] docIds, int[] tfs);
+}
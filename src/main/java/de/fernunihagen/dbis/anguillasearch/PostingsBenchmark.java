@@ -0,0 +1,183 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares the size and the decode throughput of three postings formats:
+ * the map of maps of the reverse index (token to URL to page), the arrays
+ * of PostingsList on the heap and the compressed postings of a mapped
+ * segment file.
+ * The size of the map of maps is estimated from the objects a TreeMap
+ * needs with compressed references, the pages and URLs are not counted
+ * since all formats need them. The size of the arrays and the compressed
+ * postings does not include the weights, which are stored as floats by
+ * both.
+ * The throughput is the number of postings walked per second, every format
+ * walks all postings of all tokens several times.
+ * Usage: PostingsBenchmark {path to net JSON or page directory}
+ * [number of runs]
+ */
+public final class PostingsBenchmark {
+    /** Number of walks over all postings before the time is measured. */
+    private static final int WARMUP_RUNS = 3;
+    /** Number of measured walks, if none is given. */
+    private static final int DEFAULT_RUNS = 20;
+    /** Estimated size of a TreeMap object. */
+    private static final int TREE_MAP_BYTES = 48;
+    /** Estimated size of a TreeMap entry. */
+    private static final int TREE_MAP_ENTRY_BYTES = 40;
+    /** Size of the header of an array. */
+    private static final int ARRAY_HEADER_BYTES = 16;
+    /** Receives the checksums, so the walks are not optimized away. */
+    private static volatile long sink;
+
+    private PostingsBenchmark() {
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments
+     */
+    public static void main(final String[] args) {
+        String source = "intranet/cheesy1-f126d0d3.json";
+        int runs = DEFAULT_RUNS;
+        if (args.length > 0) {
+            source = args[0];
+        }
+        if (args.length > 1) {
+            runs = Integer.parseInt(args[1]);
+        }
+        List<Page> pageList;
+        IndexSegment heapSegment;
+        IndexSegment mappedSegment;
+        try {
+            pageList = SearchLatencyBenchmark.loadPages(source);
+            heapSegment = new Indexer(pageList).getSegment();
+            Path segmentPath = Files.createTempFile("anguilla", ".idx");
+            segmentPath.toFile().deleteOnExit();
+            SegmentFormat.write(heapSegment, segmentPath);
+            mappedSegment = SegmentFormat.map(segmentPath);
+        } catch (IOException e) {
+            System.out.println(e.toString());
+            System.out.println("The index could not be built from " + source);
+            System.exit(1);
+            return;
+        }
+        // the map of maps the Indexer used before the postings
+        Map<String, Map<String, Page>> mapOfMaps = new TreeMap<>();
+        for (Page page : pageList) {
+            for (String token : page.getFilteredLemmaList()) {
+                mapOfMaps.computeIfAbsent(token, t -> new TreeMap<>())
+                         .put(page.getURL(), page);
+            }
+        }
+
+        long numPostings = 0;
+        long arrayBytes = 0;
+        long compressedBytes = 0;
+        for (int termId = 0; termId < heapSegment.numTerms(); termId++) {
+            Postings postings = heapSegment.postings(termId);
+            numPostings += postings.size();
+            arrayBytes += 2 * (ARRAY_HEADER_BYTES
+                               + (long) postings.size() * Integer.BYTES);
+            compressedBytes += PostingsCodec.encode(postings).length;
+        }
+        long mapBytes = (long) mapOfMaps.size()
+                        * (TREE_MAP_BYTES + TREE_MAP_ENTRY_BYTES)
+                        + numPostings * TREE_MAP_ENTRY_BYTES;
+
+        System.out.format("Pages: %d, tokens: %d, postings: %d, runs: %d%n",
+                          heapSegment.numDocs(), heapSegment.numTerms(),
+                          numPostings, runs);
+        System.out.format("%-12s %12s %14s %16s%n", "Format", "Bytes",
+                          "Bytes/posting", "Postings/s");
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            sink += walkMapOfMaps(mapOfMaps);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            sink += walkMapOfMaps(mapOfMaps);
+        }
+        print("Map of maps", mapBytes, numPostings, runs,
+              System.nanoTime() - start);
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            sink += walkBlocks(heapSegment);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            sink += walkBlocks(heapSegment);
+        }
+        print("Arrays", arrayBytes, numPostings, runs,
+              System.nanoTime() - start);
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            sink += walkBlocks(mappedSegment);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            sink += walkBlocks(mappedSegment);
+        }
+        print("Compressed", compressedBytes, numPostings, runs,
+              System.nanoTime() - start);
+    }
+    /**
+     * Walks all postings of the map of maps.
+     * @param mapOfMaps token to URL to page
+     * @return a checksum of the postings.
+     */
+    private static long walkMapOfMaps(
+                        final Map<String, Map<String, Page>> mapOfMaps) {
+        long checksum = 0;
+        for (Map<String, Page> pages : mapOfMaps.values()) {
+            for (String url : pages.keySet()) {
+                checksum += url.length();
+            }
+        }
+        return checksum;
+    }
+    /**
+     * Walks all postings of the segment block by block.
+     * @param segment the segment
+     * @return a checksum of the postings.
+     */
+    private static long walkBlocks(final IndexSegment segment) {
+        PostingsBlock block = new PostingsBlock();
+        long checksum = 0;
+        for (int termId = 0; termId < segment.numTerms(); termId++) {
+            Postings postings = segment.postings(termId);
+            for (int b = 0; b < postings.numBlocks(); b++) {
+                block.read(postings, b);
+                for (int j = 0; j < block.size(); j++) {
+                    checksum += block.docId(j) + block.tf(j);
+                }
+            }
+        }
+        return checksum;
+    }
+    /**
+     * Prints a line of the results.
+     * @param format name of the postings format
+     * @param bytes size of the postings
+     * @param numPostings number of postings
+     * @param runs number of walks over all postings
+     * @param nanos time all walks took
+     */
+    private static void print(final String format, final long bytes,
+                              final long numPostings, final int runs,
+                              final long nanos) {
+        double perPosting = numPostings == 0 ? 0
+                            : (double) bytes / numPostings;
+        double postingsPerSecond = (double) numPostings * runs * 1e9
+                                   / Math.max(1, nanos);
+        System.out.format("%-12s %12d %14.2f %16.0f%n", format, bytes,
+                          perPosting, postingsPerSecond);
+    }
+}
@@ -0,0 +1,58 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+/**
+ * Buffer for the doc ids and term frequencies of one block of postings.
+ * The same buffer is used for every block, so walking postings block by
+ * block allocates nothing.
+ * Not thread-safe, every thread has to use its own buffer.
+ */
+final class PostingsBlock {
+    /** Doc ids of the block. */
+    private final int[] docIds = new int[Postings.BLOCK_SIZE];
+    /** Term frequencies of the block, same order as docIds. */
+    private final int[] tfs = new int[Postings.BLOCK_SIZE];
+    /** Number of postings in the block. */
+    private int size;
+    /** Index of the first posting of the block in the postings. */
+    private int first;
+
+    /**
+     * Reads a block of the postings into the buffer.
+     * @param postings the postings
+     * @param block index of the block
+     */
+    void read(final Postings postings, final int block) {
+        size = postings.readBlock(block, docIds, tfs);
+        first = block * Postings.BLOCK_SIZE;
+    }
+    /**
+     * Returns the number of postings in the block.
+     * @return the number of postings.
+     */
+    int size() {
+        return size;
+    }
+    /**
+     * Returns the index of the first posting of the block in the postings.
+     * @return the index of the first posting.
+     */
+    int first() {
+        return first;
+    }
+    /**
+     * Returns the doc id of the j-th posting of the block.
+     * @param j index of the posting in the block
+     * @return the document id.
+     */
+    int docId(final int j) {
+        return docIds[j];
+    }
+    /**
+     * Returns the term frequency of the j-th posting of the block.
+     * @param j index of the posting in the block
+     * @return how often the token is in the document.
+     */
+    int tf(final int j) {
+        return tfs[j];
+    }
+}
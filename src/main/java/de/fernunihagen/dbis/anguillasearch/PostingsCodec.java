@@ -0,0 +1,294 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Compressed format of the doc ids and term frequencies of the postings of
+ * one token in a segment file.
+ * Every block of Postings.BLOCK_SIZE postings stores pairs of the gap to the
+ * doc id before and the term frequency as variable-byte numbers: 7 bits per
+ * byte, low bits first, the highest bit is set if another byte follows. The
+ * gap of the first posting of a block is taken to the last doc id of the
+ * block before, in the first block to 0. Most gaps and term frequencies fit
+ * into one byte instead of four.
+ * If there is more than one block, a skip table is stored in front of the
+ * blocks: for every block the last doc id and the end of the block relative
+ * to the first block, as 4-byte ints. So a block can be decoded without
+ * decoding the blocks before and a doc id is found by a binary search over
+ * the blocks and a scan of one block.
+ * The decoders only use absolute reads of the buffer and the arrays of the
+ * caller, they allocate nothing.
+ */
+final class PostingsCodec {
+    /** Size of an entry of the skip table. */
+    private static final int SKIP_ENTRY_SIZE = 2 * Integer.BYTES;
+    /** Bits of a number stored in one byte. */
+    private static final int VBYTE_BITS = 7;
+    /** Mask of the bits of a number in a byte. */
+    private static final int VBYTE_MASK = 0x7F;
+    /** Bit which is set if another byte follows. */
+    private static final int VBYTE_MORE = 0x80;
+
+    private PostingsCodec() {
+    }
+
+    /**
+     * Encodes the doc ids and term frequencies of the postings.
+     * @param postings the postings
+     * @return the compressed postings.
+     */
+    static byte[] encode(final Postings postings) {
+        int numBlocks = postings.numBlocks();
+        int[] docIds = new int[Postings.BLOCK_SIZE];
+        int[] tfs = new int[Postings.BLOCK_SIZE];
+        int[] lastDocIds = new int[numBlocks];
+        int[] blockEnds = new int[numBlocks];
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        int lastDocId = 0;
+        for (int block = 0; block < numBlocks; block++) {
+            int length = postings.readBlock(block, docIds, tfs);
+            for (int j = 0; j < length; j++) {
+                writeVByte(blocks, docIds[j] - lastDocId);
+                writeVByte(blocks, tfs[j]);
+                lastDocId = docIds[j];
+            }
+            lastDocIds[block] = lastDocId;
+            blockEnds[block] = blocks.size();
+        }
+        if (numBlocks <= 1) {
+            return blocks.toByteArray();
+        }
+        ByteBuffer out = ByteBuffer.allocate(numBlocks * SKIP_ENTRY_SIZE
+                                             + blocks.size());
+        for (int block = 0; block < numBlocks; block++) {
+            out.putInt(lastDocIds[block]);
+            out.putInt(blockEnds[block]);
+        }
+        out.put(blocks.toByteArray());
+        return out.array();
+    }
+    /**
+     * Decodes the doc ids and term frequencies of a block.
+     * @param buffer the buffer containing the compressed postings
+     * @param at position of the compressed postings
+     * @param size number of postings
+     * @param block index of the block
+     * @param docIds receives the doc ids, at least BLOCK_SIZE long
+     * @param tfs receives the term frequencies, at least BLOCK_SIZE long
+     * @return the number of postings in the block.
+     */
+    static int readBlock(final ByteBuffer buffer, final int at,
+                         final int size, final int block, final int[] docIds,
+                         final int[] tfs) {
+        int length = Math.min(Postings.BLOCK_SIZE,
+                              size - block * Postings.BLOCK_SIZE);
+        int pos = blockStart(buffer, at, size, block);
+        int docId = blockBase(buffer, at, block);
+        for (int j = 0; j < length; j++) {
+            int b = buffer.get(pos++);
+            int value = b & VBYTE_MASK;
+            for (int shift = VBYTE_BITS; (b & VBYTE_MORE) != 0;
+                 shift += VBYTE_BITS) {
+                b = buffer.get(pos++);
+                value |= (b & VBYTE_MASK) << shift;
+            }
+            docId += value;
+            docIds[j] = docId;
+            b = buffer.get(pos++);
+            value = b & VBYTE_MASK;
+            for (int shift = VBYTE_BITS; (b & VBYTE_MORE) != 0;
+                 shift += VBYTE_BITS) {
+                b = buffer.get(pos++);
+                value |= (b & VBYTE_MASK) << shift;
+            }
+            tfs[j] = value;
+        }
+        return length;
+    }
+    /**
+     * Returns the index of the posting of the document. The block which can
+     * contain the document is found with the skip table and scanned until
+     * the doc id is reached.
+     * @param buffer the buffer containing the compressed postings
+     * @param at position of the compressed postings
+     * @param size number of postings
+     * @param docId id of the document
+     * @return the index of the posting, a negative number if the document
+     * does not contain the token.
+     */
+    static int find(final ByteBuffer buffer, final int at, final int size,
+                    final int docId) {
+        int numBlocks = numBlocks(size);
+        int block = 0;
+        if (numBlocks > 1) {
+            // first block with a last doc id not below docId
+            int low = 0;
+            int high = numBlocks - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (buffer.getInt(at + mid * SKIP_ENTRY_SIZE) < docId) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            block = low;
+        }
+        int first = block * Postings.BLOCK_SIZE;
+        int length = Math.min(Postings.BLOCK_SIZE, size - first);
+        int pos = blockStart(buffer, at, size, block);
+        int current = blockBase(buffer, at, block);
+        for (int j = 0; j < length; j++) {
+            int b = buffer.get(pos++);
+            int value = b & VBYTE_MASK;
+            for (int shift = VBYTE_BITS; (b & VBYTE_MORE) != 0;
+                 shift += VBYTE_BITS) {
+                b = buffer.get(pos++);
+                value |= (b & VBYTE_MASK) << shift;
+            }
+            current += value;
+            if (current == docId) {
+                return first + j;
+            }
+            if (current > docId) {
+                return -(first + j + 1);
+            }
+            pos = skipVByte(buffer, pos);
+        }
+        return -(first + length + 1);
+    }
+    /**
+     * Decodes the doc id of the i-th posting.
+     * @param buffer the buffer containing the compressed postings
+     * @param at position of the compressed postings
+     * @param size number of postings
+     * @param i index of the posting
+     * @return the doc id.
+     */
+    static int docId(final ByteBuffer buffer, final int at, final int size,
+                     final int i) {
+        return decode(buffer, at, size, i, false);
+    }
+    /**
+     * Decodes the term frequency of the i-th posting.
+     * @param buffer the buffer containing the compressed postings
+     * @param at position of the compressed postings
+     * @param size number of postings
+     * @param i index of the posting
+     * @return how often the token is in the document.
+     */
+    static int tf(final ByteBuffer buffer, final int at, final int size,
+                  final int i) {
+        return decode(buffer, at, size, i, true);
+    }
+    /**
+     * Returns the number of blocks of the postings.
+     * @param size number of postings
+     * @return the number of blocks.
+     */
+    static int numBlocks(final int size) {
+        return (size + Postings.BLOCK_SIZE - 1) / Postings.BLOCK_SIZE;
+    }
+    /**
+     * Scans the block of the i-th posting up to the posting.
+     * @param buffer the buffer containing the compressed postings
+     * @param at position of the compressed postings
+     * @param size number of postings
+     * @param i index of the posting
+     * @param tf true for the term frequency, false for the doc id
+     * @return the doc id or the term frequency of the posting.
+     */
+    private static int decode(final ByteBuffer buffer, final int at,
+                              final int size, final int i, final boolean tf) {
+        int block = i / Postings.BLOCK_SIZE;
+        int pos = blockStart(buffer, at, size, block);
+        int docId = blockBase(buffer, at, block);
+        for (int j = block * Postings.BLOCK_SIZE; ; j++) {
+            int b = buffer.get(pos++);
+            int value = b & VBYTE_MASK;
+            for (int shift = VBYTE_BITS; (b & VBYTE_MORE) != 0;
+                 shift += VBYTE_BITS) {
+                b = buffer.get(pos++);
+                value |= (b & VBYTE_MASK) << shift;
+            }
+            docId += value;
+            if (j == i) {
+                if (!tf) {
+                    return docId;
+                }
+                b = buffer.get(pos++);
+                value = b & VBYTE_MASK;
+                for (int shift = VBYTE_BITS; (b & VBYTE_MORE) != 0;
+                     shift += VBYTE_BITS) {
+                    b = buffer.get(pos++);
+                    value |= (b & VBYTE_MASK) << shift;
+                }
+                return value;
+            }
+            pos = skipVByte(buffer, pos);
+        }
+    }
+    /**
+     * Returns the position of the first byte of a block.
+     * @param buffer the buffer containing the compressed postings
+     * @param at position of the compressed postings
+     * @param size number of postings
+     * @param block index of the block
+     * @return the position of the block.
+     */
+    private static int blockStart(final ByteBuffer buffer, final int at,
+                                  final int size, final int block) {
+        int numBlocks = numBlocks(size);
+        if (numBlocks <= 1) {
+            return at;
+        }
+        int blocksAt = at + numBlocks * SKIP_ENTRY_SIZE;
+        if (block == 0) {
+            return blocksAt;
+        }
+        return blocksAt + buffer.getInt(at + (block - 1) * SKIP_ENTRY_SIZE
+                                        + Integer.BYTES);
+    }
+    /**
+     * Returns the doc id the first gap of a block is taken to.
+     * @param buffer the buffer containing the compressed postings
+     * @param at position of the compressed postings
+     * @param block index of the block
+     * @return the last doc id of the block before, 0 for the first block.
+     */
+    private static int blockBase(final ByteBuffer buffer, final int at,
+                                 final int block) {
+        if (block == 0) {
+            return 0;
+        }
+        return buffer.getInt(at + (block - 1) * SKIP_ENTRY_SIZE);
+    }
+    /**
+     * Skips a variable-byte number.
+     * @param buffer the buffer containing the number
+     * @param pos position of the number
+     * @return the position after the number.
+     */
+    private static int skipVByte(final ByteBuffer buffer, final int pos) {
+        int next = pos;
+        while ((buffer.get(next++) & VBYTE_MORE) != 0) {
+            // the last byte has the highest bit cleared
+        }
+        return next;
+    }
+    /**
+     * Writes a variable-byte number.
+     * @param out the stream the number is written to
+     * @param value the number, not negative
+     */
+    private static void writeVByte(final ByteArrayOutputStream out,
+                                   final int value) {
+        int rest = value;
+        while (rest >= VBYTE_MORE) {
+            out.write((rest & VBYTE_MASK) | VBYTE_MORE);
+            rest >>>= VBYTE_BITS;
+        }
+        out.write(rest);
+    }
+}
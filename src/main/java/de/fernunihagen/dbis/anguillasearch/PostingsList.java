@@ -0,0 +1,165 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.Arrays;
+
+/**
+ * Postings of one token on the heap. Stores the ids of the documents
+ * containing the token, sorted ascending, together with the term frequency
+ * of the token in the document and the normalized TF-IDF weight of the token
+ * in the document.
+ * e.g. the token is 2 times in document 3 and once in document 7:
+ * docIds: [3, 7] tfs: [2, 1] weights: [0.31, 0.12]
+ * The postings are appended while the index is built, so the documents have
+ * to be added in ascending order.
+ */
+final class PostingsList implements Postings {
+    /** Initial capacity of the arrays, most tokens are on few pages. */
+    private static final int INITIAL_CAPACITY = 4;
+    /** Ids of the documents containing the token, sorted ascending. */
+    private int[] docIds = new int[INITIAL_CAPACITY];
+    /** How often the token is in the document, same order as docIds. */
+    private int[] tfs = new int[INITIAL_CAPACITY];
+    /** Normalized TF-IDF weight of the token, same order as docIds. */
+    private float[] weights = new float[INITIAL_CAPACITY];
+    /** Number of stored postings. */
+    private int size;
+    /** Largest term frequency divided by the document length. */
+    private double maxNormalizedTF;
+    /** Largest normalized TF-IDF weight. */
+    private float maxWeight;
+
+    /**
+     * Creates empty postings, which are filled with add.
+     */
+    PostingsList() {
+    }
+    /**
+     * Creates postings from stored arrays, e.g. of an index segment. The
+     * arrays are not copied.
+     * @param docIds ids of the documents, sorted ascending
+     * @param tfs how often the token is in the documents
+     * @param weights the normalized TF-IDF weights of the token
+     * @param maxNormalizedTF the largest term frequency divided by the
+     * document length
+     * @param maxWeight the largest weight
+     */
+    PostingsList(final int[] docIds, final int[] tfs, final float[] weights,
+                 final double maxNormalizedTF, final float maxWeight) {
+        if (docIds.length != tfs.length || docIds.length != weights.length) {
+            throw new IllegalArgumentException(
+                "Every posting needs a doc id, a tf and a weight.");
+        }
+        this.docIds = docIds;
+        this.tfs = tfs;
+        this.weights = weights;
+        this.size = docIds.length;
+        this.maxNormalizedTF = maxNormalizedTF;
+        this.maxWeight = maxWeight;
+    }
+    /**
+     * Appends a posting.
+     * @param docId id of the document, greater than all ids added before
+     * @param tf how often the token is in the document
+     * @param docLength number of tokens in the document
+     * @param weight the normalized TF-IDF weight of the token in the document
+     */
+    void add(final int docId, final int tf, final int docLength,
+             final float weight) {
+        if (size > 0 && docIds[size - 1] >= docId) {
+            throw new IllegalArgumentException(
+                "Postings have to be added in ascending order of doc ids.");
+        }
+        if (size == docIds.length) {
+            int capacity = size * 2;
+            docIds = Arrays.copyOf(docIds, capacity);
+            tfs = Arrays.copyOf(tfs, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+        }
+        docIds[size] = docId;
+        tfs[size] = tf;
+        weights[size] = weight;
+        size++;
+        maxNormalizedTF = Math.max(maxNormalizedTF, (double) tf / docLength);
+        maxWeight = Math.max(maxWeight, weight);
+    }
+    /**
+     * Shrinks the arrays to the number of stored postings.
+     */
+    void trim() {
+        docIds = Arrays.copyOf(docIds, size);
+        tfs = Arrays.copyOf(tfs, size);
+        weights = Arrays.copyOf(weights, size);
+    }
+    /**
+     * Returns the number of documents containing the token.
+     * @return the number of postings.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+    /**
+     * Returns the document id of the i-th posting.
+     * @param i index of the posting
+     * @return the document id.
+     */
+    @Override
+    public int docId(final int i) {
+        return docIds[i];
+    }
+    /**
+     * Returns the term frequency of the i-th posting.
+     * @param i index of the posting
+     * @return how often the token is in the document.
+     */
+    @Override
+    public int tf(final int i) {
+        return tfs[i];
+    }
+    /**
+     * Returns the normalized TF-IDF weight of the i-th posting.
+     * @param i index of the posting
+     * @return the weight of the token in the document.
+     */
+    @Override
+    public float weight(final int i) {
+        return weights[i];
+    }
+    /**
+     * Returns the largest term frequency divided by the length of the
+     * document. No posting has a larger TF value, so multiplied with the IDF
+     * it is an upper bound of the TF-IDF value of the token.
+     * @return the largest TF value of all postings.
+     */
+    @Override
+    public double maxNormalizedTF() {
+        return maxNormalizedTF;
+    }
+    /**
+     * Returns the largest normalized TF-IDF weight of all postings.
+     * @return the largest weight of all postings.
+     */
+    @Override
+    public float maxWeight() {
+        return maxWeight;
+    }
+    /**
+     * Returns the index of the posting of the document.
+     * @param docId id of the document
+     * @return the index of the posting, a negative number if the document
+     * does not contain the token.
+     */
+    @Override
+    public int find(final int docId) {
+        return Arrays.binarySearch(docIds, 0, size, docId);
+    }
+    @Override
+    public int readBlock(final int block, final int[] blockDocIds,
+                         final int[] blockTfs) {
+        int first = block * BLOCK_SIZE;
+        int length = Math.min(BLOCK_SIZE, size - first);
+        System.arraycopy(docIds, first, blockDocIds, 0, length);
+        System.arraycopy(tfs, first, blockTfs, 0, length);
+        return length;
+    }
+}
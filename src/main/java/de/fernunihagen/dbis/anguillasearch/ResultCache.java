@@ -0,0 +1,372 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of search results, so queries, which are searched again
+ * and again, are only ranked once per version of the index.
+ * The key is the sorted list of the lemmas of the query with duplicates,
+ * the rank mode and k, so queries, which differ only in case, stop words
+ * or the order of the words, share their results. The results are only
+ * valid for the version of the SegmentedIndex they were ranked on, when
+ * results of a newer version are put, all cached results are dropped.
+ * The results are kept in the order they were used last. A full cache
+ * evicts the least recently used results, but only if the new results were
+ * asked for more often than them, like the admission of TinyLFU. How often
+ * a key was asked for is estimated by a count-min sketch of counters up to
+ * 15, which are halved after every 10 * capacity requests, so old queries
+ * are forgotten. A query, which is asked for only once, can not evict a
+ * popular one.
+ * The cache estimates the memory used by the keys and results. The pages
+ * of the results are not counted, they belong to the index. Besides the
+ * number of searches, the estimated bytes are limited: results, which use
+ * more than a sixteenth of the limit, e.g. all pages of a large index for
+ * an unlimited k, are not cached, and results are evicted until the new
+ * ones fit.
+ * All methods are thread-safe, the cache is locked only for the lookup.
+ */
+final class ResultCache {
+    /** Number of cached searches, if none is given. */
+    static final int DEFAULT_CAPACITY = 1024;
+    /** Maximum estimated bytes of the cached searches, if none is given. */
+    static final long DEFAULT_MAX_BYTES = 16L << 20;
+    /** Results, which use more than this share of the maximum bytes, are
+     * not cached. */
+    private static final int MAX_ENTRY_SHARE = 16;
+    /** Load factor of the map of the results. */
+    private static final float LOAD_FACTOR = 0.75f;
+    /** Number of rows of the frequency sketch. */
+    private static final int SKETCH_ROWS = 4;
+    /** Largest value of a counter of the sketch. */
+    private static final int MAX_COUNT = 15;
+    /** Counters of the sketch per cached search. */
+    private static final int COUNTERS_PER_ENTRY = 4;
+    /** Requests per cached search, after which the counters are halved. */
+    private static final int SAMPLES_PER_ENTRY = 10;
+    /** Seeds of the hash functions of the rows of the sketch. */
+    private static final int[] ROW_SEEDS = {0x9E3779B9, 0x85EBCA6B,
+                                            0xC2B2AE35, 0x27D4EB2F};
+    /** Estimated bytes of a cached entry without its lemmas and results:
+     * the map entry, the key and the list objects. */
+    private static final long ENTRY_BYTES = 136;
+    /** Estimated bytes of a lemma of a key without its characters. */
+    private static final long LEMMA_BYTES = 48;
+    /** Estimated bytes of a result and its reference in the list. */
+    private static final long RESULT_BYTES = 40;
+    /** Maximum number of cached searches. */
+    private final int capacity;
+    /** Maximum estimated bytes of the keys and results. */
+    private final long maxBytes;
+    /** The cached results, the least recently used first. */
+    private final LinkedHashMap<Key, List<SearchResult>> results;
+    /** The counters of the frequency sketch. */
+    private final byte[][] sketch;
+    /** Mask of a counter index of the sketch. */
+    private final int sketchMask;
+    /** Requests since the counters were halved. */
+    private int samples = 0;
+    /** Version of the index the cached results were ranked on. */
+    private long version = -1;
+    /** Estimated bytes of the keys and results. */
+    private long bytes = 0;
+    /** Number of results found in the cache. */
+    private long hits = 0;
+    /** Number of searches, whose results were not cached. */
+    private long misses = 0;
+    /** Number of results evicted to make room for others. */
+    private long evictions = 0;
+    /** Number of results not cached, since they were asked for less often
+     * than the results they would have evicted or were too large. */
+    private long rejections = 0;
+    /** Number of results dropped, since the index changed. */
+    private long invalidations = 0;
+
+    /**
+     * The key of cached results.
+     * @param lemmas the sorted lemmas of the query with duplicates
+     * @param rankMode the rank mode
+     * @param k maximum number of results
+     */
+    record Key(List<String> lemmas, int rankMode, int k) {
+        /**
+         * Creates the key of a search.
+         * @param queryLemmas the lemmas of the query in any order
+         * @param rankMode the rank mode
+         * @param k maximum number of results
+         * @return the key.
+         */
+        static Key of(final List<String> queryLemmas, final int rankMode,
+                      final int k) {
+            List<String> sorted = new ArrayList<>(queryLemmas);
+            Collections.sort(sorted);
+            return new Key(List.copyOf(sorted), rankMode, k);
+        }
+        /**
+         * Estimates the bytes of the key.
+         * @return the estimated bytes.
+         */
+        long estimatedBytes() {
+            long keyBytes = 0;
+            for (String lemma : lemmas) {
+                keyBytes += LEMMA_BYTES + lemma.length();
+            }
+            return keyBytes;
+        }
+    }
+
+    /**
+     * Creates a cache with the default capacity.
+     */
+    ResultCache() {
+        this(DEFAULT_CAPACITY);
+    }
+    /**
+     * Creates a cache with the default maximum bytes.
+     * @param capacity maximum number of cached searches, at least 1
+     */
+    ResultCache(final int capacity) {
+        this(capacity, DEFAULT_MAX_BYTES);
+    }
+    /**
+     * Creates a cache.
+     * @param capacity maximum number of cached searches, at least 1
+     * @param maxBytes maximum estimated bytes of the keys and results
+     */
+    ResultCache(final int capacity, final long maxBytes) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                "The capacity has to be at least 1.");
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException(
+                "The maximum bytes have to be at least 1.");
+        }
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+        // in access order, so the eldest entry is the least recently used
+        this.results = new LinkedHashMap<>(capacity, LOAD_FACTOR, true);
+        int width = Integer.highestOneBit(
+                        Math.max(1, capacity * COUNTERS_PER_ENTRY - 1)) << 1;
+        this.sketch = new byte[SKETCH_ROWS][width];
+        this.sketchMask = width - 1;
+    }
+
+    /**
+     * Returns the cached results of a search.
+     * @param key the key of the search
+     * @param indexVersion the version of the index, which is searched
+     * @return the results, null if they are not cached for the version.
+     */
+    synchronized List<SearchResult> get(final Key key,
+                                        final long indexVersion) {
+        increment(key);
+        List<SearchResult> cached = version == indexVersion
+                                    ? results.get(key) : null;
+        if (cached == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return cached;
+    }
+    /**
+     * Caches the results of a search. Results ranked on an older version of
+     * the index than the cached ones are ignored. The least recently used
+     * results are evicted, until the number of searches and the estimated
+     * bytes are within the limits. If one of them was asked for as often as
+     * the new results, nothing is evicted and the new results are not
+     * cached.
+     * @param key the key of the search
+     * @param indexVersion the version of the index, which was searched
+     * @param ranked the results
+     * @return the results as unmodifiable list, which is cached.
+     */
+    synchronized List<SearchResult> put(final Key key,
+                                        final long indexVersion,
+                                        final List<SearchResult> ranked) {
+        List<SearchResult> cached = List.copyOf(ranked);
+        if (indexVersion < version) {
+            return cached;
+        }
+        if (indexVersion > version) {
+            invalidations += results.size();
+            results.clear();
+            bytes = 0;
+            version = indexVersion;
+        }
+        if (results.containsKey(key)) {
+            return results.get(key);
+        }
+        long entryBytes = estimatedBytes(key, cached);
+        if (entryBytes > maxBytes / MAX_ENTRY_SHARE) {
+            rejections++;
+            return cached;
+        }
+        // find the victims first, so nothing is evicted if one of them is
+        // asked for as often
+        int frequency = frequency(key);
+        int victims = 0;
+        long freed = 0;
+        Iterator<Map.Entry<Key, List<SearchResult>>> eldest =
+                                            results.entrySet().iterator();
+        while (results.size() - victims >= capacity
+               || bytes - freed + entryBytes > maxBytes) {
+            Map.Entry<Key, List<SearchResult>> victim = eldest.next();
+            if (frequency <= frequency(victim.getKey())) {
+                rejections++;
+                return cached;
+            }
+            freed += estimatedBytes(victim.getKey(), victim.getValue());
+            victims++;
+        }
+        eldest = results.entrySet().iterator();
+        for (int i = 0; i < victims; i++) {
+            eldest.next();
+            eldest.remove();
+        }
+        evictions += victims;
+        bytes -= freed;
+        results.put(key, cached);
+        bytes += entryBytes;
+        return cached;
+    }
+    /**
+     * Drops all cached results.
+     */
+    synchronized void clear() {
+        invalidations += results.size();
+        results.clear();
+        bytes = 0;
+    }
+    /**
+     * Estimates the bytes of a cached entry.
+     * @param key the key
+     * @param cached the results
+     * @return the estimated bytes.
+     */
+    private static long estimatedBytes(final Key key,
+                                       final List<SearchResult> cached) {
+        return ENTRY_BYTES + key.estimatedBytes()
+               + RESULT_BYTES * cached.size();
+    }
+    /**
+     * Returns the index of the counter of a key in a row of the sketch.
+     * @param key the key
+     * @param row the row
+     * @return the index of the counter.
+     */
+    private int counterIndex(final Key key, final int row) {
+        int hash = key.hashCode() * ROW_SEEDS[row];
+        return (hash ^ (hash >>> Short.SIZE)) & sketchMask;
+    }
+    /**
+     * Counts a request of a key and halves all counters every
+     * SAMPLES_PER_ENTRY * capacity requests.
+     * @param key the key
+     */
+    private void increment(final Key key) {
+        for (int row = 0; row < SKETCH_ROWS; row++) {
+            int i = counterIndex(key, row);
+            if (sketch[row][i] < MAX_COUNT) {
+                sketch[row][i]++;
+            }
+        }
+        samples++;
+        if (samples >= SAMPLES_PER_ENTRY * capacity) {
+            for (byte[] counters : sketch) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+            }
+            samples /= 2;
+        }
+    }
+    /**
+     * Estimates how often a key was requested recently, the smallest
+     * counter of the key is the closest estimate.
+     * @param key the key
+     * @return the estimated number of requests.
+     */
+    private int frequency(final Key key) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SKETCH_ROWS; row++) {
+            frequency = Math.min(frequency,
+                                 sketch[row][counterIndex(key, row)]);
+        }
+        return frequency;
+    }
+    /**
+     * Returns how often results were found in the cache.
+     * @return the number of hits.
+     */
+    synchronized long hits() {
+        return hits;
+    }
+    /**
+     * Returns how often results were not found in the cache.
+     * @return the number of misses.
+     */
+    synchronized long misses() {
+        return misses;
+    }
+    /**
+     * Returns the share of the searches, whose results were cached.
+     * @return the hit ratio between 0 and 1, 0 before the first search.
+     */
+    synchronized double hitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+    /**
+     * Returns how many results were evicted to make room for others.
+     * @return the number of evictions.
+     */
+    synchronized long evictions() {
+        return evictions;
+    }
+    /**
+     * Returns how many results were not cached, since they were asked for
+     * less often than the results they would have evicted or were too
+     * large.
+     * @return the number of rejections.
+     */
+    synchronized long rejections() {
+        return rejections;
+    }
+    /**
+     * Returns how many results were dropped, since the index changed.
+     * @return the number of invalidations.
+     */
+    synchronized long invalidations() {
+        return invalidations;
+    }
+    /**
+     * Returns the number of cached searches.
+     * @return the number of cached searches.
+     */
+    synchronized int size() {
+        return results.size();
+    }
+    /**
+     * Returns the estimated memory used by the keys and results.
+     * @return the estimated bytes.
+     */
+    synchronized long estimatedBytes() {
+        return bytes;
+    }
+    /**
+     * Prints the hits, misses, hit ratio, evictions and memory use.
+     */
+    synchronized void printStats() {
+        System.out.format("Result cache: %d hits, %d misses, %.1f%% hit "
+                          + "rate, %d evicted, %d rejected, %d invalidated,"
+                          + " %d searches, ~%d KB%n", hits, misses,
+                          100 * hitRatio(), evictions, rejections,
+                          invalidations, results.size(), bytes >> 10);
+    }
+}
@@ -0,0 +1,170 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.Arrays;
+import java.util.function.DoublePredicate;
+
+/**
+ * Accumulates the scores of the documents while the postings of the search
+ * tokens are walked one token at a time.
+ * Remembers which documents were touched, so only those have to be
+ * collected and reset. The cost of a query depends on the number of
+ * postings touched and not on the number of documents in the index.
+ * Not thread-safe, every thread has to use its own accumulator.
+ */
+final class ScoreAccumulator {
+    /** Accumulated score of every document. */
+    private final double[] scores;
+    /** True if the document was touched by a posting. */
+    private final boolean[] touched;
+    /** Ids of the touched documents, in the order they were touched. */
+    private final int[] touchedDocs;
+    /** Number of touched documents. */
+    private int numTouched;
+
+    /**
+     * Creates an accumulator for document ids from 0 to capacity - 1.
+     * @param capacity number of documents in the index
+     */
+    ScoreAccumulator(final int capacity) {
+        scores = new double[capacity];
+        touched = new boolean[capacity];
+        touchedDocs = new int[capacity];
+    }
+
+    /**
+     * Returns the number of documents the accumulator can hold.
+     * @return the number of documents the accumulator can hold.
+     */
+    int capacity() {
+        return scores.length;
+    }
+    /**
+     * Adds the value to the score of the document. The document counts as
+     * touched, even if the value is 0.
+     * @param docId id of the document
+     * @param value the value which is added
+     */
+    void add(final int docId, final double value) {
+        if (!touched[docId]) {
+            touched[docId] = true;
+            touchedDocs[numTouched] = docId;
+            numTouched++;
+        }
+        scores[docId] += value;
+    }
+    /**
+     * Returns the number of touched documents.
+     * @return the number of touched documents.
+     */
+    int size() {
+        return numTouched;
+    }
+    /**
+     * Returns the id of the i-th touched document.
+     * @param i index of the touched document
+     * @return the document id.
+     */
+    int docAt(final int i) {
+        return touchedDocs[i];
+    }
+    /**
+     * Returns if the document was touched by a posting.
+     * @param docId id of the document
+     * @return true if the document was touched.
+     */
+    boolean isTouched(final int docId) {
+        return touched[docId];
+    }
+    /**
+     * Returns the accumulated score of the document.
+     * @param docId id of the document
+     * @return the accumulated score.
+     */
+    double score(final int docId) {
+        return scores[docId];
+    }
+    /**
+     * Returns the k-th largest score of the touched documents. Keeps the k
+     * largest scores in a min-heap, so only O(size * log k) steps are
+     * needed.
+     * @param k rank of the score, at most the number of touched documents
+     * @return the k-th largest score.
+     */
+    double kthLargestScore(final int k) {
+        if (k < 1 || k > numTouched) {
+            throw new IllegalArgumentException(
+                "k has to be between 1 and the number of touched documents.");
+        }
+        double[] heap = new double[k];
+        for (int i = 0; i < k; i++) {
+            heap[i] = scores[touchedDocs[i]];
+        }
+        for (int i = k / 2 - 1; i >= 0; i--) {
+            siftDown(heap, i);
+        }
+        for (int i = k; i < numTouched; i++) {
+            double score = scores[touchedDocs[i]];
+            if (score > heap[0]) {
+                heap[0] = score;
+                siftDown(heap, 0);
+            }
+        }
+        return heap[0];
+    }
+    /**
+     * Restores the min-heap property below position i.
+     * @param heap the heap
+     * @param i position of the element, which may be too large
+     */
+    private static void siftDown(final double[] heap, final int i) {
+        int parent = i;
+        while (2 * parent + 1 < heap.length) {
+            int child = 2 * parent + 1;
+            if (child + 1 < heap.length && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[parent] <= heap[child]) {
+                return;
+            }
+            double tmp = heap[parent];
+            heap[parent] = heap[child];
+            heap[child] = tmp;
+            parent = child;
+        }
+    }
+    /**
+     * Removes all touched documents, whose score does not match the
+     * predicate. Their scores are reset.
+     * @param keep returns true for the scores, which should be kept
+     */
+    void retain(final DoublePredicate keep) {
+        int kept = 0;
+        for (int i = 0; i < numTouched; i++) {
+            int docId = touchedDocs[i];
+            if (keep.test(scores[docId])) {
+                touchedDocs[kept] = docId;
+                kept++;
+            } else {
+                scores[docId] = 0;
+                touched[docId] = false;
+            }
+        }
+        numTouched = kept;
+    }
+    /**
+     * Sorts the touched documents by their id.
+     */
+    void sortByDocId() {
+        Arrays.sort(touchedDocs, 0, numTouched);
+    }
+    /**
+     * Resets the scores of all touched documents.
+     */
+    void clear() {
+        for (int i = 0; i < numTouched; i++) {
+            scores[touchedDocs[i]] = 0;
+            touched[touchedDocs[i]] = false;
+        }
+        numTouched = 0;
+    }
+}
@@ -0,0 +1,190 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Measures the latency of searches in all ranking modes.
+ * Builds the index once and searches the title of every page as query,
+ * several times in every mode. Prints the mean, median and 99th percentile
+ * of the search latency per mode. Since the PageRank is calculated when the
+ * index is built, the combination of cosine similarity and PageRank should
+ * take about as long as cosine similarity.
+ * The index is then saved to a temporary file and the searches are measured
+ * again on the mapped file, to compare it with the index on the heap.
+ * These searches are ranked every time, the result cache is only used in
+ * the last measurement on the heap, which mostly finds cached results.
+ * Usage: SearchLatencyBenchmark {path to net JSON or page directory}
+ * [number of runs]
+ * A page directory contains JSON files with the fields "url", "title",
+ * "headings", "paragraphs" and optionally "outgoingLinks", like
+ * src/test/resources/tf-idf/pages.
+ */
+public final class SearchLatencyBenchmark {
+    /** Number of runs over all queries before the time is measured. */
+    private static final int WARMUP_RUNS = 3;
+    /** Number of measured runs over all queries, if none is given. */
+    private static final int DEFAULT_RUNS = 20;
+    /** Maximum number of queries. */
+    private static final int MAX_QUERIES = 50;
+
+    private SearchLatencyBenchmark() {
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args Command line arguments
+     */
+    public static void main(final String[] args) {
+        String source = "intranet/cheesy1-f126d0d3.json";
+        int runs = DEFAULT_RUNS;
+        if (args.length > 0) {
+            source = args[0];
+        }
+        if (args.length > 1) {
+            runs = Integer.parseInt(args[1]);
+        }
+        List<Page> pageList;
+        try {
+            pageList = loadPages(source);
+        } catch (IOException e) {
+            System.out.println(e.toString());
+            System.out.println("Pages could not be loaded from " + source);
+            System.exit(1);
+            return;
+        }
+        Indexer heapIndex = new Indexer(pageList);
+        Indexer mappedIndex;
+        try {
+            Path segmentPath = Files.createTempFile("anguilla", ".idx");
+            segmentPath.toFile().deleteOnExit();
+            heapIndex.save(segmentPath);
+            mappedIndex = new Indexer(segmentPath);
+        } catch (IOException e) {
+            System.out.println(e.toString());
+            System.out.println("The index could not be saved and mapped.");
+            System.exit(1);
+            return;
+        }
+        heapIndex.setResultCacheCapacity(0);
+        mappedIndex.setResultCacheCapacity(0);
+        // every title is searched once per run
+        Set<String> titles = new LinkedHashSet<>();
+        for (Page page : pageList) {
+            if (titles.size() < MAX_QUERIES) {
+                titles.add(page.getTitle());
+            }
+        }
+        List<String> queries = new ArrayList<>(titles);
+        System.out.format("Pages indexed: %d, queries: %d, runs: %d%n",
+                          heapIndex.getPagesIndexed(), queries.size(), runs);
+
+        System.out.println("Index on the heap");
+        measure(heapIndex, queries, runs);
+        System.out.println("Index mapped from a file");
+        measure(mappedIndex, queries, runs);
+        System.out.println("Index on the heap with the result cache");
+        heapIndex.setResultCacheCapacity(ResultCache.DEFAULT_CAPACITY);
+        measure(heapIndex, queries, runs);
+        heapIndex.getResultCache().printStats();
+    }
+    /**
+     * Measures the searches of all queries in every ranking mode and prints
+     * a line per mode.
+     * @param index the index, which is searched
+     * @param queries the queries
+     * @param runs number of measured runs over all queries
+     */
+    private static void measure(final Indexer index,
+                                final List<String> queries, final int runs) {
+        System.out.format("%-6s %10s %12s %12s %12s%n", "Mode", "Searches",
+                          "Mean (us)", "Median (us)", "p99 (us)");
+        for (int mode = 0; mode <= 3; mode++) {
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                for (String query : queries) {
+                    index.searchQuery(query, mode);
+                }
+            }
+            long[] latencies = new long[runs * queries.size()];
+            int n = 0;
+            for (int i = 0; i < runs; i++) {
+                for (String query : queries) {
+                    long start = System.nanoTime();
+                    index.searchQuery(query, mode);
+                    latencies[n] = System.nanoTime() - start;
+                    n++;
+                }
+            }
+            printLatencies(Integer.toString(mode), latencies);
+        }
+    }
+    /**
+     * Loads the pages, which are indexed.
+     * @param source a net JSON with "Seed-URLs", which is crawled, or a page
+     * directory
+     * @return the pages.
+     * @throws IOException if the JSON files can not be read.
+     */
+    static List<Page> loadPages(final String source)
+                                                    throws IOException {
+        if (!new File(source).isDirectory()) {
+            JsonObject json = Utils.parseJSONFile(source);
+            String[] seedURLs = new Gson().fromJson(json.get("Seed-URLs"),
+                                                    String[].class);
+            Crawler crawler = new Crawler(seedURLs);
+            crawler.crawl();
+            return crawler.getCrawledPages();
+        }
+        List<Page> pageList = new ArrayList<>();
+        for (JsonObject page : Utils.parseAllJSONFiles(Optional.of(source))) {
+            Set<String> links = new HashSet<>();
+            if (page.has("outgoingLinks")) {
+                for (JsonElement link
+                     : page.get("outgoingLinks").getAsJsonArray()) {
+                    links.add(link.getAsString());
+                }
+            }
+            pageList.add(new Page(page.get("url").getAsString(),
+                                  page.get("title").getAsString(),
+                                  page.get("headings").getAsString(),
+                                  page.get("paragraphs").getAsString(),
+                                  links));
+        }
+        return pageList;
+    }
+    /**
+     * Prints a line with the number of searches and their latencies.
+     * @param mode the ranking mode
+     * @param latencies the latency of every search in nanoseconds
+     */
+    private static void printLatencies(final String mode,
+                                       final long[] latencies) {
+        if (latencies.length == 0) {
+            System.out.format("%-6s %10d %12s %12s %12s%n", mode, 0, "-", "-",
+                              "-");
+            return;
+        }
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().getAsDouble();
+        long median = sorted[sorted.length / 2];
+        long p99 = sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+        System.out.format("%-6s %10d %12.1f %12.1f %12.1f%n", mode,
+                          sorted.length, mean / 1000, median / 1000.0,
+                          p99 / 1000.0);
+    }
+}
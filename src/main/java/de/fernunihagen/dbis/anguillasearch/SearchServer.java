@@ -0,0 +1,335 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Answers search queries over HTTP, so many clients can search the same
+ * index at the same time.
+ * GET /search?q=query&amp;mode=0..3&amp;k=number searches the index like
+ * Indexer.searchQuery() and answers with the k best results as JSON. The
+ * mode and k are optional, the defaults are given when the server is
+ * started. GET /stats answers with the number of searches, percentiles
+ * of their latency and the statistics of the result cache of the index.
+ * Every request is handled by one of the threads of a fixed pool. A search
+ * only reads the segments the index had when it started, so the index can
+ * be searched by all threads and updated at the same time.
+ */
+final class SearchServer implements AutoCloseable {
+    /** Status code of an answered request. */
+    private static final int HTTP_OK = 200;
+    /** Status code of a request with invalid parameters. */
+    private static final int HTTP_BAD_REQUEST = 400;
+    /** Status code of a request with another method than GET. */
+    private static final int HTTP_BAD_METHOD = 405;
+    /** Status code of a search, which failed. */
+    private static final int HTTP_SERVER_ERROR = 500;
+    /** Time the requests, which are handled, get to be answered, when the
+     * server is closed. */
+    private static final int STOP_DELAY_SECONDS = 1;
+    /** Highest rank mode, see Indexer.searchQuery(). */
+    private static final int MAX_RANK_MODE = 3;
+    /** Percentiles of the latency, which are reported. */
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    /** Converts the answers to JSON. */
+    private static final Gson GSON = new Gson();
+    /** The searched index. */
+    private final Indexer index;
+    /** Rank mode of a search without mode. */
+    private final int defaultMode;
+    /** Number of results of a search without k. */
+    private final int defaultK;
+    /** The HTTP server. */
+    private final HttpServer server;
+    /** Handles the requests. */
+    private final ExecutorService executor;
+    /** Latency of the searches from the request to the answer. */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    static {
+        // like in the IntranetServer, without TCP_NODELAY the clients wait
+        // for the delayed acknowledgement of the response headers.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * Starts answering search queries.
+     * @param index the searched index
+     * @param port the port, 0 for any free port
+     * @param threads number of requests which are handled at the same time
+     * @param defaultMode rank mode of a search without mode
+     * @param defaultK number of results of a search without k
+     * @throws IOException if the port could not be bound.
+     */
+    SearchServer(final Indexer index, final int port, final int threads,
+                 final int defaultMode, final int defaultK)
+            throws IOException {
+        if (threads < 1 || defaultMode < 0 || defaultMode > MAX_RANK_MODE
+            || defaultK < 1) {
+            throw new IllegalArgumentException("threads and defaultK have to "
+                + "be at least 1 and defaultMode between 0 and 3.");
+        }
+        this.index = index;
+        this.defaultMode = defaultMode;
+        this.defaultK = defaultK;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/search", this::handleSearch);
+        server.createContext("/stats", this::handleStats);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     * @return the port.
+     */
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+    /**
+     * Returns the latencies of the searches.
+     * @return the latencies.
+     */
+    LatencyHistogram getLatencies() {
+        return latencies;
+    }
+    /**
+     * Answers a search query. Only the latency of answered searches is
+     * recorded, rejected requests would skew the percentiles.
+     * @param exchange the request and its response
+     * @throws IOException if the response could not be sent.
+     */
+    private void handleSearch(final HttpExchange exchange)
+            throws IOException {
+        long start = System.nanoTime();
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(HTTP_BAD_METHOD, -1);
+                return;
+            }
+            Map<String, String> params = parseQuery(
+                                    exchange.getRequestURI().getRawQuery());
+            String query = params.get("q");
+            int mode;
+            int k;
+            try {
+                mode = parseParam(params, "mode", defaultMode, 0,
+                                  MAX_RANK_MODE);
+                k = parseParam(params, "k", defaultK, 1, Integer.MAX_VALUE);
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, HTTP_BAD_REQUEST, e.getMessage());
+                return;
+            }
+            if (query == null || query.isBlank()) {
+                sendError(exchange, HTTP_BAD_REQUEST,
+                          "The query q is missing.");
+                return;
+            }
+            JsonObject answer;
+            try {
+                answer = search(query, mode, k);
+            } catch (RuntimeException e) {
+                System.out.println("Search for \"" + query + "\" failed: "
+                                   + e);
+                sendError(exchange, HTTP_SERVER_ERROR, "The search failed.");
+                return;
+            }
+            send(exchange, HTTP_OK, answer);
+            latencies.record(System.nanoTime() - start);
+        }
+    }
+    /**
+     * Searches the index and returns the answer.
+     * @param query the query
+     * @param mode the rank mode
+     * @param k maximum number of results
+     * @return the query, mode, k and the results as JSON.
+     */
+    private JsonObject search(final String query, final int mode,
+                              final int k) {
+        List<SearchResult> results = index.searchQuery(query, mode, k);
+        JsonObject answer = new JsonObject();
+        answer.addProperty("query", query);
+        answer.addProperty("mode", mode);
+        answer.addProperty("k", k);
+        JsonArray resultArray = new JsonArray();
+        for (SearchResult result : results) {
+            JsonObject resultObject = new JsonObject();
+            resultObject.addProperty("url", result.url());
+            resultObject.addProperty("title", result.page().getTitle());
+            resultObject.addProperty("score", result.score());
+            resultArray.add(resultObject);
+        }
+        answer.add("results", resultArray);
+        return answer;
+    }
+    /**
+     * Answers with the number of searches and the percentiles of their
+     * latency in milliseconds.
+     * @param exchange the request and its response
+     * @throws IOException if the response could not be sent.
+     */
+    private void handleStats(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JsonObject answer = new JsonObject();
+            answer.addProperty("searches", latencies.count());
+            for (double percentile : PERCENTILES) {
+                answer.addProperty("p" + formatPercentile(percentile)
+                                   + "Millis",
+                                   latencies.percentileMillis(percentile));
+            }
+            answer.addProperty("maxMillis", latencies.maxMillis());
+            ResultCache cache = index.getResultCache();
+            if (cache != null) {
+                JsonObject cacheStats = new JsonObject();
+                cacheStats.addProperty("hits", cache.hits());
+                cacheStats.addProperty("misses", cache.misses());
+                cacheStats.addProperty("hitRatio", cache.hitRatio());
+                cacheStats.addProperty("evictions", cache.evictions());
+                cacheStats.addProperty("rejections", cache.rejections());
+                cacheStats.addProperty("invalidations",
+                                       cache.invalidations());
+                cacheStats.addProperty("searches", cache.size());
+                cacheStats.addProperty("estimatedBytes",
+                                       cache.estimatedBytes());
+                answer.add("resultCache", cacheStats);
+            }
+            send(exchange, HTTP_OK, answer);
+        }
+    }
+    /**
+     * Prints the number of searches, the percentiles of their latency and
+     * the statistics of the result cache.
+     */
+    void printStats() {
+        StringBuilder line = new StringBuilder();
+        line.append(String.format("Searches: %d, latency",
+                                  latencies.count()));
+        for (double percentile : PERCENTILES) {
+            line.append(String.format(" p%s %.2f ms,",
+                        formatPercentile(percentile),
+                        latencies.percentileMillis(percentile)));
+        }
+        line.append(String.format(" max %.2f ms", latencies.maxMillis()));
+        System.out.println(line);
+        ResultCache cache = index.getResultCache();
+        if (cache != null) {
+            cache.printStats();
+        }
+    }
+    /**
+     * Formats a percentile without a trailing .0, e.g. 99 or 99.9.
+     * @param percentile the percentile
+     * @return the formatted percentile.
+     */
+    private static String formatPercentile(final double percentile) {
+        return percentile == Math.rint(percentile)
+               ? Long.toString((long) percentile)
+               : Double.toString(percentile);
+    }
+    /**
+     * Splits the query of an URL into its decoded parameters.
+     * @param rawQuery the encoded query, may be null
+     * @return the parameters, the first value of a parameter wins.
+     */
+    static Map<String, String> parseQuery(final String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String param : rawQuery.split("&")) {
+            int eq = param.indexOf('=');
+            String name = eq < 0 ? param : param.substring(0, eq);
+            String value = eq < 0 ? "" : param.substring(eq + 1);
+            params.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                               URLDecoder.decode(value,
+                                                 StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+    /**
+     * Returns a number parameter.
+     * @param params the parameters
+     * @param name the name of the parameter
+     * @param defaultValue the value, if the parameter is missing
+     * @param min the smallest valid value
+     * @param max the largest valid value
+     * @return the value of the parameter.
+     * @throws IllegalArgumentException if the parameter is not a number
+     * between min and max.
+     */
+    private static int parseParam(final Map<String, String> params,
+                                  final String name, final int defaultValue,
+                                  final int min, final int max) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= min && number <= max) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below like a number out of range
+        }
+        throw new IllegalArgumentException(name + " has to be a number "
+                                           + "between " + min + " and "
+                                           + max + ".");
+    }
+    /**
+     * Answers a request, which could not be answered with results.
+     * @param exchange the request and its response
+     * @param status the status code
+     * @param message describes what went wrong
+     * @throws IOException if the response could not be sent.
+     */
+    private static void sendError(final HttpExchange exchange,
+                                  final int status, final String message)
+            throws IOException {
+        JsonObject answer = new JsonObject();
+        answer.addProperty("error", message);
+        send(exchange, status, answer);
+    }
+    /**
+     * Sends a JSON answer.
+     * @param exchange the request and its response
+     * @param status the status code
+     * @param answer the answer
+     * @throws IOException if the response could not be sent.
+     */
+    private static void send(final HttpExchange exchange, final int status,
+                             final JsonObject answer) throws IOException {
+        byte[] body = GSON.toJson(answer).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                                          "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    /**
+     * Stops answering, requests which are handled get up to
+     * STOP_DELAY_SECONDS to be answered.
+     */
+    @Override
+    public void close() {
+        server.stop(STOP_DELAY_SECONDS);
+        executor.shutdown();
+    }
+}
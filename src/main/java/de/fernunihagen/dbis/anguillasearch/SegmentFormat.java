@@ -0,0 +1,256 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeSet;
+
+/**
+ * A built index stored in one binary file, so AnguillaSearch can start
+ * without crawling and lemmatizing the net again.
+ * The file is not read into the heap but mapped, every value is read from
+ * the mapping when it is needed. So the position of every value can be
+ * calculated from the header. All values are big-endian, the arrays are
+ * stored one after another:
+ * <pre>
+ * header   magic "ANGS", version, number of docs, terms and postings,
+ *          byte length of the doc strings, the term dictionary and the
+ *          compressed postings
+ * terms    the term dictionary with the IDF of every term, see
+ *          TermDictionary, padded to a multiple of 8 bytes
+ * double   norm, PageRank, sum of the squared normalized TFs and that sum
+ *          times the IDF of every doc, largest normalized TF of every term
+ * int      length of every doc, start of every doc string, first posting
+ *          of every term, start of the compressed postings of every term,
+ *          largest weight of every term, weights of all postings, term
+ *          after term, start of the term ids of every doc, term ids of the
+ *          tokens of every doc, doc after doc
+ * byte     URL, title, headings, content and links of every doc as UTF-8,
+ *          the links sorted and separated by line breaks, doc ids and term
+ *          frequencies of the postings of every term, compressed with
+ *          PostingsCodec
+ * </pre>
+ * The arrays are ordered by the size of their values, so every value is
+ * aligned to its size. The start arrays have an extra element with the end
+ * of the last element, the first posting array one with the number of
+ * postings. The weights are not compressed, so the weight of a posting can
+ * be read without decoding its block.
+ */
+final class SegmentFormat {
+    /** First bytes of every segment file, "ANGS". */
+    static final int MAGIC = 0x414E4753;
+    /** Version of the file format. */
+    static final int VERSION = 6;
+    /** Size of the header in bytes. */
+    static final int HEADER_SIZE = 48;
+    /** Number of strings stored for every page. */
+    static final int STRINGS_PER_DOC = 5;
+    /** Separates the links of a page. */
+    static final String LINK_SEPARATOR = "\n";
+    /** Size of the buffer of the file stream. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private SegmentFormat() {
+    }
+
+    /**
+     * Writes the segment to the file. The file is written next to the target
+     * and then moved, so an existing segment is only replaced by a complete
+     * one.
+     * @param segment the segment, which is written
+     * @param path the file the segment is written to
+     * @throws IOException if the file can not be written or the segment is
+     * too large to be mapped.
+     */
+    static void write(final IndexSegment segment, final Path path)
+                                                    throws IOException {
+        int numDocs = segment.numDocs();
+        int numTerms = segment.numTerms();
+        byte[][] docStrings = new byte[numDocs * STRINGS_PER_DOC][];
+        long docBytes = 0;
+        for (int docId = 0; docId < numDocs; docId++) {
+            Page doc = segment.doc(docId);
+            int i = docId * STRINGS_PER_DOC;
+            docStrings[i] = utf8(doc.getURL());
+            docStrings[i + 1] = utf8(doc.getTitle());
+            docStrings[i + 2] = utf8(doc.getHeader());
+            docStrings[i + 3] = utf8(doc.getContent());
+            docStrings[i + 4] = utf8(String.join(LINK_SEPARATOR,
+                                             new TreeSet<>(doc.getLinks())));
+            for (int j = i; j < i + STRINGS_PER_DOC; j++) {
+                docBytes += docStrings[j].length;
+            }
+        }
+        TermDictionary dictionary = segment.dictionary();
+        long dictBytes = dictionary.sizeInBytes();
+        byte[][] compressedPostings = new byte[numTerms][];
+        long postingBytes = 0;
+        long numPostings = 0;
+        for (int termId = 0; termId < numTerms; termId++) {
+            Postings postings = segment.postings(termId);
+            compressedPostings[termId] = PostingsCodec.encode(postings);
+            postingBytes += compressedPostings[termId].length;
+            numPostings += postings.size();
+        }
+        if (fileSize(numDocs, numTerms, numPostings, docBytes, dictBytes,
+                     postingBytes) > Integer.MAX_VALUE) {
+            throw new IOException("The index is too large to be mapped.");
+        }
+
+        Path absolute = path.toAbsolutePath();
+        Path tmp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(
+                             new BufferedOutputStream(file, BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numDocs);
+            out.writeInt(numTerms);
+            out.writeLong(numPostings);
+            out.writeLong(docBytes);
+            out.writeLong(dictBytes);
+            out.writeLong(postingBytes);
+            dictionary.writeTo(out);
+
+            for (int docId = 0; docId < numDocs; docId++) {
+                out.writeDouble(segment.norm(docId));
+            }
+            for (int docId = 0; docId < numDocs; docId++) {
+                out.writeDouble(segment.pageRank(docId));
+            }
+            for (int docId = 0; docId < numDocs; docId++) {
+                out.writeDouble(segment.tfSquareSum(docId));
+            }
+            for (int docId = 0; docId < numDocs; docId++) {
+                out.writeDouble(segment.tfSquareIDFSum(docId));
+            }
+            for (int termId = 0; termId < numTerms; termId++) {
+                out.writeDouble(segment.postings(termId).maxNormalizedTF());
+            }
+
+            for (int docId = 0; docId < numDocs; docId++) {
+                out.writeInt(segment.docLength(docId));
+            }
+            writeStarts(out, docStrings);
+            int start = 0;
+            for (int termId = 0; termId < numTerms; termId++) {
+                out.writeInt(start);
+                start += segment.postings(termId).size();
+            }
+            out.writeInt(start);
+            writeStarts(out, compressedPostings);
+            for (int termId = 0; termId < numTerms; termId++) {
+                out.writeFloat(segment.postings(termId).maxWeight());
+            }
+            for (int termId = 0; termId < numTerms; termId++) {
+                Postings postings = segment.postings(termId);
+                for (int i = 0; i < postings.size(); i++) {
+                    out.writeFloat(postings.weight(i));
+                }
+            }
+            start = 0;
+            for (int docId = 0; docId < numDocs; docId++) {
+                out.writeInt(start);
+                start += segment.docTerms(docId).length;
+            }
+            out.writeInt(start);
+            for (int docId = 0; docId < numDocs; docId++) {
+                for (int termId : segment.docTerms(docId)) {
+                    out.writeInt(termId);
+                }
+            }
+
+            for (byte[] s : docStrings) {
+                out.write(s);
+            }
+            for (byte[] compressed : compressedPostings) {
+                out.write(compressed);
+            }
+        }
+        Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING);
+    }
+    /**
+     * Maps a segment file read-only. Only the header is read, the rest of
+     * the file is read by the operating system when it is searched and stays
+     * in the page cache instead of the heap.
+     * @param path the file of the segment
+     * @return the mapped segment.
+     * @throws IOException if the file can not be mapped or is no segment.
+     */
+    static MappedSegment map(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                                                    StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException(path + " is no index segment.");
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to be mapped.");
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                  0, size);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException(path + " is no index segment.");
+            }
+            int version = buffer.getInt(Integer.BYTES);
+            if (version != VERSION) {
+                throw new IOException("Index segment version " + version
+                                      + " is not supported.");
+            }
+            return new MappedSegment(buffer, path);
+        }
+    }
+    /**
+     * Returns the size of a segment file.
+     * @param numDocs number of docs
+     * @param numTerms number of terms
+     * @param numPostings number of postings of all terms
+     * @param docBytes byte length of the doc strings
+     * @param dictBytes byte length of the term dictionary
+     * @param postingBytes byte length of the compressed postings
+     * @return the size of the file in bytes.
+     */
+    static long fileSize(final long numDocs, final long numTerms,
+                         final long numPostings, final long docBytes,
+                         final long dictBytes, final long postingBytes) {
+        long doubles = 4 * numDocs + numTerms;
+        long ints = numDocs + (numDocs * STRINGS_PER_DOC + 1)
+                    + 2 * (numTerms + 1) + numTerms + numPostings
+                    + (numDocs + 1) + numPostings;
+        return HEADER_SIZE + dictBytes + doubles * Double.BYTES
+               + ints * Integer.BYTES + docBytes + postingBytes;
+    }
+    /**
+     * Writes the start of every byte array and the end of the last one.
+     * @param out the stream the starts are written to
+     * @param arrays the byte arrays, e.g. strings as UTF-8
+     * @throws IOException if the starts can not be written.
+     */
+    private static void writeStarts(final DataOutputStream out,
+                                    final byte[][] arrays)
+                                                    throws IOException {
+        int start = 0;
+        for (byte[] s : arrays) {
+            out.writeInt(start);
+            start += s.length;
+        }
+        out.writeInt(start);
+    }
+    /**
+     * Encodes the string as UTF-8.
+     * @param s the string
+     * @return the bytes of the string.
+     */
+    private static byte[] utf8(final String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,269 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Builds the segments of a SegmentedIndex: a segment of added pages and a
+ * segment merged of several segments.
+ * Both use the IDF of the whole index to calculate the norms of the pages
+ * and the weights of the postings, so a small segment has the same weights
+ * as if it was built with all pages of the index.
+ * A merge does not lemmatize the pages again, it renumbers the postings of
+ * the merged segments. So segments mapped from a file can be merged, too.
+ */
+final class SegmentMerger {
+
+    private SegmentMerger() {
+    }
+
+    /**
+     * Builds a segment of added pages. Besides lemmatizing the pages, the
+     * document frequency of every token of the pages is looked up in every
+     * segment of the index. In a segment with deleted pages this walks the
+     * postings of the token, so adding pages to an index with many deleted
+     * pages takes longer, until its segments are merged.
+     * @param index the index the pages are added to, without the pages
+     * @param pages the added pages, sorted by URL without duplicates
+     * @param pageRanks the PageRank of every page, same order as pages
+     * @return the segment of the pages.
+     */
+    static HeapSegment build(final SegmentedIndex index,
+                             final List<Page> pages,
+                             final double[] pageRanks) {
+        Page[] docs = pages.toArray(new Page[0]);
+        int[] docLengths = new int[docs.length];
+        Map<String, PostingsList> postingsByToken = new TreeMap<>();
+        for (int docId = 0; docId < docs.length; docId++) {
+            List<String> lemmaList = docs[docId].getFilteredLemmaList();
+            docLengths[docId] = lemmaList.size();
+            // count every token in a single pass
+            Map<String, Integer> tokenCounts = new TreeMap<>();
+            for (String token : lemmaList) {
+                tokenCounts.merge(token, 1, Integer::sum);
+            }
+            for (Map.Entry<String, Integer> tokenCount
+                 : tokenCounts.entrySet()) {
+                postingsByToken.computeIfAbsent(tokenCount.getKey(),
+                                                t -> new PostingsList())
+                               .add(docId, tokenCount.getValue(),
+                                    lemmaList.size(), 0f);
+            }
+        }
+        List<String> tokens = new ArrayList<>(postingsByToken.keySet());
+        List<PostingsList> postings = new ArrayList<>(
+                                            postingsByToken.values());
+        // the IDF of the index with the added pages
+        double numDocs = index.numDocs() + docs.length;
+        double[] idfs = new double[tokens.size()];
+        for (int termId = 0; termId < idfs.length; termId++) {
+            double docFreq = index.docFreq(tokens.get(termId))
+                             + postings.get(termId).size();
+            idfs[termId] = Math.log(numDocs / docFreq);
+        }
+        return weigh(tokens, postings, idfs, docs, docLengths, pageRanks);
+    }
+    /**
+     * Merges the segments from the first merged one to the last segment of
+     * the index into one segment. The deleted pages are dropped.
+     * If all segments are merged, the PageRank is calculated again from the
+     * links of the pages, otherwise the pages keep their PageRank.
+     * @param index the index
+     * @param from index of the first merged segment
+     * @return the merged segment.
+     */
+    static HeapSegment merge(final SegmentedIndex index, final int from) {
+        int to = index.numSegments();
+        // the pages, which are not deleted, sorted by URL
+        List<Integer> liveDocIds = new ArrayList<>();
+        for (int docId = index.docBase(from); docId < index.maxDoc();
+             docId++) {
+            if (!index.isDeleted(docId)) {
+                liveDocIds.add(docId);
+            }
+        }
+        String[] urls = new String[index.maxDoc() - index.docBase(from)];
+        for (int docId : liveDocIds) {
+            urls[docId - index.docBase(from)] = index.url(docId);
+        }
+        liveDocIds.sort(Comparator.comparing(
+                            docId -> urls[docId - index.docBase(from)]));
+        int[] newDocIds = new int[urls.length];
+        Arrays.fill(newDocIds, -1);
+        Page[] docs = new Page[liveDocIds.size()];
+        int[] docLengths = new int[docs.length];
+        double[] pageRanks = new double[docs.length];
+        for (int newDocId = 0; newDocId < docs.length; newDocId++) {
+            int docId = liveDocIds.get(newDocId);
+            newDocIds[docId - index.docBase(from)] = newDocId;
+            docs[newDocId] = index.doc(docId);
+            docLengths[newDocId] = index.docLength(docId);
+            pageRanks[newDocId] = index.pageRank(docId);
+        }
+        if (from == 0) {
+            // PageRank numbers the pages by URL too, so the ids are the
+            // document ids.
+            pageRanks = new PageRank(Arrays.asList(docs),
+                                     ForkJoinPool.commonPool())
+                                                        .getPageRanks();
+        }
+
+        // walk the tokens of all merged segments in lexicographical order
+        PriorityQueue<TermCursor> cursors = new PriorityQueue<>(
+                                Comparator.comparing(TermCursor::term));
+        for (int s = from; s < to; s++) {
+            TermCursor cursor = new TermCursor(index.segment(s), s);
+            if (cursor.next()) {
+                cursors.add(cursor);
+            }
+        }
+        List<String> tokens = new ArrayList<>();
+        List<PostingsList> postings = new ArrayList<>();
+        PostingsBlock block = new PostingsBlock();
+        while (!cursors.isEmpty()) {
+            String token = cursors.peek().term();
+            // doc id in the high and term frequency in the low bits
+            long[] merged = new long[0];
+            int size = 0;
+            while (!cursors.isEmpty() && cursors.peek().term().equals(token)) {
+                TermCursor cursor = cursors.poll();
+                Postings segmentPostings = cursor.postings();
+                int base = index.docBase(cursor.segmentIndex)
+                           - index.docBase(from);
+                merged = Arrays.copyOf(merged,
+                                       size + segmentPostings.size());
+                for (int b = 0; b < segmentPostings.numBlocks(); b++) {
+                    block.read(segmentPostings, b);
+                    for (int j = 0; j < block.size(); j++) {
+                        int newDocId = newDocIds[base + block.docId(j)];
+                        if (newDocId >= 0) {
+                            merged[size++] = (long) newDocId << Integer.SIZE
+                                             | block.tf(j);
+                        }
+                    }
+                }
+                if (cursor.next()) {
+                    cursors.add(cursor);
+                }
+            }
+            if (size == 0) {
+                // the token is only on deleted pages
+                continue;
+            }
+            Arrays.sort(merged, 0, size);
+            PostingsList tokenPostings = new PostingsList();
+            for (int i = 0; i < size; i++) {
+                int newDocId = (int) (merged[i] >>> Integer.SIZE);
+                tokenPostings.add(newDocId, (int) merged[i],
+                                  docLengths[newDocId], 0f);
+            }
+            tokens.add(token);
+            postings.add(tokenPostings);
+        }
+        // the IDF of the index, the merge does not change it
+        double[] idfs = new double[tokens.size()];
+        for (int termId = 0; termId < idfs.length; termId++) {
+            idfs[termId] = index.idf(tokens.get(termId));
+        }
+        return weigh(tokens, postings, idfs, docs, docLengths, pageRanks);
+    }
+    /**
+     * Calculates the norms of the pages and the weights of the postings and
+     * creates the segment.
+     * @param tokens the tokens, sorted lexicographically
+     * @param postings postings of every token with the term frequencies,
+     * same order as tokens
+     * @param idfs IDF of every token, same order as tokens
+     * @param docs the pages sorted by URL
+     * @param docLengths number of tokens on every page
+     * @param pageRanks PageRank of every page
+     * @return the segment.
+     */
+    private static HeapSegment weigh(final List<String> tokens,
+                                     final List<PostingsList> postings,
+                                     final double[] idfs, final Page[] docs,
+                                     final int[] docLengths,
+                                     final double[] pageRanks) {
+        double[] docNorms = new double[docs.length];
+        for (int termId = 0; termId < idfs.length; termId++) {
+            PostingsList tokenPostings = postings.get(termId);
+            for (int i = 0; i < tokenPostings.size(); i++) {
+                int docId = tokenPostings.docId(i);
+                double tfidf = (double) tokenPostings.tf(i)
+                               / docLengths[docId] * idfs[termId];
+                docNorms[docId] += tfidf * tfidf;
+            }
+        }
+        for (int docId = 0; docId < docs.length; docId++) {
+            docNorms[docId] = Math.sqrt(docNorms[docId]);
+        }
+        PostingsList[] weighted = new PostingsList[idfs.length];
+        for (int termId = 0; termId < idfs.length; termId++) {
+            PostingsList tokenPostings = postings.get(termId);
+            weighted[termId] = new PostingsList();
+            for (int i = 0; i < tokenPostings.size(); i++) {
+                int docId = tokenPostings.docId(i);
+                double tfidf = (double) tokenPostings.tf(i)
+                               / docLengths[docId] * idfs[termId];
+                float weight = docNorms[docId] == 0 ? 0f
+                               : (float) (tfidf / docNorms[docId]);
+                weighted[termId].add(docId, tokenPostings.tf(i),
+                                     docLengths[docId], weight);
+            }
+            weighted[termId].trim();
+        }
+        return new HeapSegment(TermDictionary.build(tokens, idfs), weighted,
+                               docs, docLengths, docNorms, pageRanks);
+    }
+
+    /**
+     * Walks the tokens of a segment in lexicographical order.
+     */
+    private static final class TermCursor {
+        /** The segment. */
+        private final IndexSegment segment;
+        /** Index of the segment in the index. */
+        private final int segmentIndex;
+        /** Id of the current token. */
+        private int termId = -1;
+        /** The current token. */
+        private String term;
+
+        TermCursor(final IndexSegment segment, final int segmentIndex) {
+            this.segment = segment;
+            this.segmentIndex = segmentIndex;
+        }
+        /**
+         * Moves to the next token.
+         * @return false if there is no next token.
+         */
+        boolean next() {
+            termId++;
+            if (termId >= segment.numTerms()) {
+                return false;
+            }
+            term = segment.term(termId);
+            return true;
+        }
+        /**
+         * Returns the current token.
+         * @return the token.
+         */
+        String term() {
+            return term;
+        }
+        /**
+         * Returns the postings of the current token.
+         * @return the postings.
+         */
+        Postings postings() {
+            return segment.postings(termId);
+        }
+    }
+}
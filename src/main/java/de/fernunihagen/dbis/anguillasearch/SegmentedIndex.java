@@ -0,0 +1,494 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The segments of an index, which is updated page by page. The first
+ * segment is the built or loaded index, every update adds a small segment
+ * on the heap with the added pages. Deleted pages stay in their segment
+ * and are only marked as deleted, until their segment is merged.
+ * The documents of all segments are numbered one after another: the
+ * document id of a page is the document id in its segment plus the number
+ * of documents of the segments before. The pages are only sorted by URL in
+ * their segment.
+ * The IDF of a token is calculated when the index is searched, from the
+ * postings of all segments without the deleted pages. So the postings of
+ * a segment do not change when pages are added to or deleted from other
+ * segments. The norms and the weights of the postings use the IDF of the
+ * time the segment was built and are calculated again when it is merged.
+ * Until then the norms of the pages with the current IDF are calculated
+ * from sums stored per page in the segments and sums, which every update
+ * changes for the tokens of the added or deleted pages, see norm.
+ * A SegmentedIndex is not changed, every update creates a new one. So it
+ * can be searched by several threads while the index is updated. Every new
+ * SegmentedIndex gets a higher version, so results of searches can be
+ * cached per version.
+ */
+final class SegmentedIndex {
+    /** The last version given to a SegmentedIndex. */
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    /** Number of deltas per page, see norm. */
+    private static final int NORM_DELTAS = 3;
+    /** Version of this index, higher than those of older indexes. */
+    private final long version = VERSIONS.incrementAndGet();
+    /** The segments, the built or loaded index first. */
+    private final IndexSegment[] segments;
+    /** First document id of every segment and the number of all documents
+     * at the end. */
+    private final int[] docBases;
+    /** Document ids of the deleted pages. Not changed after creation. */
+    private final BitSet deleted;
+    /** Number of pages, which are not deleted. */
+    private final int numLiveDocs;
+    /** Number of pages, which were not deleted, when every segment was
+     * added. The IDF of the segment was calculated with it. */
+    private final int[] builtNumDocs;
+    /** Difference of the logarithm of the number of pages, which are not
+     * deleted, now and when every segment was added. */
+    private final double[] idfShifts;
+    /** Sums of the deltas of the IDF of the tokens of every page of every
+     * segment, see norm, NORM_DELTAS per page. Null for a segment, if the
+     * document frequency of none of its tokens changed. */
+    private final double[][] normDeltas;
+
+    /**
+     * Creates an index of one segment without deleted pages.
+     * @param segment the built or loaded index
+     */
+    SegmentedIndex(final IndexSegment segment) {
+        this(new IndexSegment[] {segment}, new BitSet(),
+             new int[] {segment.numDocs()}, new double[1][]);
+    }
+    /**
+     * Creates an index of the segments.
+     * @param segments the segments
+     * @param deleted document ids of the deleted pages, not copied
+     * @param builtNumDocs number of pages, which were not deleted, when
+     * every segment was added, not copied
+     * @param normDeltas the sums of the deltas of every segment, see norm,
+     * not copied
+     */
+    private SegmentedIndex(final IndexSegment[] segments,
+                           final BitSet deleted, final int[] builtNumDocs,
+                           final double[][] normDeltas) {
+        this.segments = segments;
+        this.deleted = deleted;
+        this.builtNumDocs = builtNumDocs;
+        this.normDeltas = normDeltas;
+        docBases = new int[segments.length + 1];
+        for (int s = 0; s < segments.length; s++) {
+            docBases[s + 1] = docBases[s] + segments[s].numDocs();
+        }
+        numLiveDocs = docBases[segments.length] - deleted.cardinality();
+        idfShifts = new double[segments.length];
+        for (int s = 0; s < segments.length; s++) {
+            if (numLiveDocs > 0 && builtNumDocs[s] > 0) {
+                idfShifts[s] = Math.log((double) numLiveDocs
+                                        / builtNumDocs[s]);
+            }
+        }
+    }
+    /**
+     * Returns the version of this index.
+     * @return the version, higher than the versions of older indexes.
+     */
+    long version() {
+        return version;
+    }
+    /**
+     * Returns a copy of this index with an added segment.
+     * @param segment the segment with the added pages
+     * @return the index with the segment.
+     */
+    SegmentedIndex add(final IndexSegment segment) {
+        IndexSegment[] added = Arrays.copyOf(segments, segments.length + 1);
+        added[segments.length] = segment;
+        int[] addedNumDocs = Arrays.copyOf(builtNumDocs, added.length);
+        addedNumDocs[segments.length] = numLiveDocs + segment.numDocs();
+        SegmentedIndex index = new SegmentedIndex(added, deleted,
+                addedNumDocs, Arrays.copyOf(normDeltas, added.length));
+        List<String> tokens = new ArrayList<>(segment.numTerms());
+        for (int termId = 0; termId < segment.numTerms(); termId++) {
+            tokens.add(segment.term(termId));
+        }
+        index.reweigh(this, tokens);
+        return index;
+    }
+    /**
+     * Returns a copy of this index, in which the pages are deleted. URLs,
+     * which are not indexed, are ignored.
+     * @param urls the URLs of the deleted pages
+     * @return the index without the pages.
+     */
+    SegmentedIndex delete(final Collection<String> urls) {
+        BitSet deletedCopy = (BitSet) deleted.clone();
+        Set<String> tokens = new HashSet<>();
+        for (String url : urls) {
+            int docId = findDoc(url);
+            if (docId >= 0 && !deletedCopy.get(docId)) {
+                deletedCopy.set(docId);
+                int s = segmentOf(docId);
+                for (int termId : segments[s].docTerms(docId - docBases[s])) {
+                    tokens.add(segments[s].term(termId));
+                }
+            }
+        }
+        SegmentedIndex index = new SegmentedIndex(segments, deletedCopy,
+                builtNumDocs, normDeltas.clone());
+        index.reweigh(this, tokens);
+        return index;
+    }
+    /**
+     * Returns a copy of this index, in which the segments from the first
+     * merged one on are replaced by the merged segment.
+     * @param from index of the first merged segment
+     * @param merged the merged segment without deleted pages
+     * @return the index with the merged segment.
+     */
+    SegmentedIndex replace(final int from, final IndexSegment merged) {
+        IndexSegment[] replaced = Arrays.copyOf(segments, from + 1);
+        replaced[from] = merged;
+        // the merged segment is weighed with the current IDF
+        int[] replacedNumDocs = Arrays.copyOf(builtNumDocs, from + 1);
+        replacedNumDocs[from] = numLiveDocs;
+        double[][] replacedDeltas = Arrays.copyOf(normDeltas, from + 1);
+        replacedDeltas[from] = null;
+        return new SegmentedIndex(replaced, deleted.get(0, docBases[from]),
+                                  replacedNumDocs, replacedDeltas);
+    }
+    /**
+     * Returns the number of segments.
+     * @return the number of segments.
+     */
+    int numSegments() {
+        return segments.length;
+    }
+    /**
+     * Returns a segment.
+     * @param s index of the segment
+     * @return the segment.
+     */
+    IndexSegment segment(final int s) {
+        return segments[s];
+    }
+    /**
+     * Returns the first document id of a segment.
+     * @param s index of the segment
+     * @return the document id of the first page of the segment.
+     */
+    int docBase(final int s) {
+        return docBases[s];
+    }
+    /**
+     * Returns the number of document ids, including the deleted pages.
+     * @return the largest document id plus one.
+     */
+    int maxDoc() {
+        return docBases[segments.length];
+    }
+    /**
+     * Returns the number of pages, which are not deleted.
+     * @return the number of indexed pages.
+     */
+    int numDocs() {
+        return numLiveDocs;
+    }
+    /**
+     * Returns whether the page is deleted.
+     * @param docId id of the page
+     * @return true if the page is deleted.
+     */
+    boolean isDeleted(final int docId) {
+        return deleted.get(docId);
+    }
+    /**
+     * Returns whether pages of the segment are deleted.
+     * @param s index of the segment
+     * @return true if the segment contains deleted pages.
+     */
+    boolean hasDeletions(final int s) {
+        int next = deleted.nextSetBit(docBases[s]);
+        return next >= 0 && next < docBases[s + 1];
+    }
+    /**
+     * Returns the index of the segment, which contains the document.
+     * @param docId id of the page
+     * @return the index of the segment.
+     */
+    int segmentOf(final int docId) {
+        int s = Arrays.binarySearch(docBases, 0, segments.length, docId);
+        if (s < 0) {
+            return -(s + 1) - 1;
+        }
+        // skip empty segments, which start at the same document id
+        while (docBases[s + 1] == docId) {
+            s++;
+        }
+        return s;
+    }
+    /**
+     * Returns the URL of the page.
+     * @param docId id of the page
+     * @return the URL of the page.
+     */
+    String url(final int docId) {
+        int s = segmentOf(docId);
+        return segments[s].url(docId - docBases[s]);
+    }
+    /**
+     * Returns the page with the document id.
+     * @param docId id of the page
+     * @return the page.
+     */
+    Page doc(final int docId) {
+        int s = segmentOf(docId);
+        return segments[s].doc(docId - docBases[s]);
+    }
+    /**
+     * Returns the number of tokens on the page.
+     * @param docId id of the page
+     * @return the length of the document.
+     */
+    int docLength(final int docId) {
+        int s = segmentOf(docId);
+        return segments[s].docLength(docId - docBases[s]);
+    }
+    /**
+     * Returns the PageRank of the page.
+     * @param docId id of the page
+     * @return the PageRank of the page.
+     */
+    double pageRank(final int docId) {
+        int s = segmentOf(docId);
+        return segments[s].pageRank(docId - docBases[s]);
+    }
+    /**
+     * Returns the document id of the page with the URL. A URL is only in
+     * one segment without being deleted.
+     * @param url the URL of the page
+     * @return the document id, a negative number if the page is not indexed.
+     */
+    int findDoc(final String url) {
+        // updated pages are in the newest segments
+        for (int s = segments.length - 1; s >= 0; s--) {
+            int local = segments[s].findDoc(url);
+            if (local >= 0 && !deleted.get(docBases[s] + local)) {
+                return docBases[s] + local;
+            }
+        }
+        return -1;
+    }
+    /**
+     * Returns the number of pages, which contain the token and are not
+     * deleted.
+     * @param token the token
+     * @return the document frequency of the token.
+     */
+    int docFreq(final String token) {
+        int docFreq = 0;
+        for (int s = 0; s < segments.length; s++) {
+            int termId = segments[s].findTerm(token);
+            if (termId >= 0) {
+                docFreq += liveDocFreq(s, segments[s].postings(termId));
+            }
+        }
+        return docFreq;
+    }
+    /**
+     * Returns the IDF (Inverse Document Frequency) of the token over all
+     * segments. The formula is: IDF(t) = ln( N / df(t) ), N and df(t)
+     * without the deleted pages.
+     * @param token the token
+     * @return the IDF value of the token, 0 if it is on no page.
+     */
+    double idf(final String token) {
+        int docFreq = docFreq(token);
+        if (docFreq == 0) {
+            return 0.0;
+        }
+        return Math.log((double) numLiveDocs / docFreq);
+    }
+    /**
+     * Returns the number of postings of a segment, which belong to pages
+     * that are not deleted. The deleted pages are looked up in the
+     * postings, if that is cheaper than walking the postings.
+     * @param s index of the segment
+     * @param postings postings of the segment
+     * @return the number of postings of pages, which are not deleted.
+     */
+    int liveDocFreq(final int s, final Postings postings) {
+        int base = docBases[s];
+        int end = docBases[s + 1];
+        int live = postings.size();
+        if (!hasDeletions(s)) {
+            return live;
+        }
+        int numDeleted = deleted.get(base, end).cardinality();
+        int searchSteps = 32 - Integer.numberOfLeadingZeros(live);
+        if (numDeleted * searchSteps < live) {
+            for (int d = deleted.nextSetBit(base); d >= 0 && d < end;
+                 d = deleted.nextSetBit(d + 1)) {
+                if (postings.find(d - base) >= 0) {
+                    live--;
+                }
+            }
+        } else {
+            PostingsBlock block = new PostingsBlock();
+            for (int b = 0; b < postings.numBlocks(); b++) {
+                block.read(postings, b);
+                for (int j = 0; j < block.size(); j++) {
+                    if (deleted.get(base + block.docId(j))) {
+                        live--;
+                    }
+                }
+            }
+        }
+        return live;
+    }
+    /**
+     * Returns whether the norms and the weights stored in the segments use
+     * the current IDF, which is only sure for a single segment without
+     * deleted pages.
+     * @return true if the stored norms and weights are current.
+     */
+    boolean hasCurrentWeights() {
+        return segments.length == 1 && deleted.isEmpty();
+    }
+    /**
+     * Returns the euclidean norm of the TF-IDF vector of the page with the
+     * current IDF. With w the normalized TF and idf the IDF of a token in
+     * the segment, the current IDF is idf + shift + delta: shift is the
+     * same for every token, ln( N / N' ) with the number of pages N' when
+     * the segment was added, delta only differs from 0 for tokens whose
+     * document frequency changed since then. So the square of the norm is
+     * the stored one plus
+     * 2 shift sum(w^2 idf) + shift^2 sum(w^2), from the sums stored in the
+     * segment, plus
+     * 2 sum(w^2 idf delta) + 2 shift sum(w^2 delta) + sum(w^2 delta^2),
+     * from the sums kept by this index, see reweigh.
+     * @param s index of the segment
+     * @param docId the document id of the page in the segment
+     * @return the norm of the page.
+     */
+    double norm(final int s, final int docId) {
+        IndexSegment segment = segments[s];
+        double norm = segment.norm(docId);
+        double shift = idfShifts[s];
+        double square = norm * norm
+                        + shift * (2 * segment.tfSquareIDFSum(docId)
+                                   + shift * segment.tfSquareSum(docId));
+        double[] deltas = normDeltas[s];
+        if (deltas != null) {
+            int i = docId * NORM_DELTAS;
+            square += 2 * (deltas[i + 2] + shift * deltas[i])
+                      + deltas[i + 1];
+        }
+        // the sums cancel out for a page of tokens on almost every page,
+        // rounding must not make the square negative
+        return Math.sqrt(Math.max(square, 0.0));
+    }
+    /**
+     * Updates the sums of the deltas of the pages, see norm, for the tokens
+     * whose document frequency differs from the one in the index before.
+     * Only the postings of those tokens are walked, so the work depends on
+     * the tokens of the added or deleted pages and not on the size of the
+     * index. The sums of a segment are copied before they are changed, the
+     * index before keeps its own.
+     * Called once, before this index is searched.
+     * @param before the index before the pages were added or deleted, its
+     * segments are the first segments of this index
+     * @param tokens the tokens of the added or deleted pages
+     */
+    private void reweigh(final SegmentedIndex before,
+                         final Collection<String> tokens) {
+        boolean[] copied = new boolean[before.segments.length];
+        PostingsBlock block = new PostingsBlock();
+        for (String token : tokens) {
+            int beforeDocFreq = before.docFreq(token);
+            int docFreq = docFreq(token);
+            // a token, which was or is only on deleted pages, is on no page
+            // of the segments before, which is not deleted
+            if (beforeDocFreq == docFreq || beforeDocFreq == 0
+                || docFreq == 0) {
+                continue;
+            }
+            for (int s = 0; s < before.segments.length; s++) {
+                IndexSegment segment = segments[s];
+                int termId = segment.findTerm(token);
+                if (termId < 0) {
+                    continue;
+                }
+                if (!copied[s]) {
+                    normDeltas[s] = normDeltas[s] == null
+                        ? new double[segment.numDocs() * NORM_DELTAS]
+                        : normDeltas[s].clone();
+                    copied[s] = true;
+                }
+                double[] deltas = normDeltas[s];
+                double idf = segment.idf(termId);
+                double beforeDelta = Math.log((double) builtNumDocs[s]
+                                              / beforeDocFreq) - idf;
+                double delta = Math.log((double) builtNumDocs[s] / docFreq)
+                               - idf;
+                Postings postings = segment.postings(termId);
+                for (int b = 0; b < postings.numBlocks(); b++) {
+                    block.read(postings, b);
+                    for (int j = 0; j < block.size(); j++) {
+                        int docId = block.docId(j);
+                        if (deleted.get(docBases[s] + docId)) {
+                            continue;
+                        }
+                        double normalizedTF = (double) block.tf(j)
+                                              / segment.docLength(docId);
+                        double square = normalizedTF * normalizedTF;
+                        int i = docId * NORM_DELTAS;
+                        deltas[i] += square * (delta - beforeDelta);
+                        deltas[i + 1] += square * (delta * delta
+                                                 - beforeDelta * beforeDelta);
+                        deltas[i + 2] += square * idf * (delta - beforeDelta);
+                    }
+                }
+            }
+        }
+    }
+    /**
+     * Returns the number of tokens, which are on pages that are not
+     * deleted.
+     * @return the number of tokens.
+     */
+    int numTerms() {
+        if (segments.length == 1 && deleted.isEmpty()) {
+            return segments[0].numTerms();
+        }
+        return docFreqs().size();
+    }
+    /**
+     * Returns the document frequency of every token, which is on pages that
+     * are not deleted. Walks the tokens of all segments, so it is meant for
+     * statistics and not for searching.
+     * @return the document frequencies by token, sorted lexicographically.
+     */
+    Map<String, Integer> docFreqs() {
+        Map<String, Integer> docFreqs = new TreeMap<>();
+        for (int s = 0; s < segments.length; s++) {
+            IndexSegment segment = segments[s];
+            for (int termId = 0; termId < segment.numTerms(); termId++) {
+                int docFreq = liveDocFreq(s, segment.postings(termId));
+                if (docFreq > 0) {
+                    docFreqs.merge(segment.term(termId), docFreq,
+                                   Integer::sum);
+                }
+            }
+        }
+        return docFreqs;
+    }
+}
@@ -0,0 +1,135 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.Arrays;
+
+/**
+ * Immutable sparse vector. Only the dimensions with a value other than 0
+ * are stored, as a sorted array of dimension ids and an array with the
+ * corresponding weights.
+ * e.g. the vector (0, 0.5, 0, 0, 0.25) is stored as
+ * ids: [1, 4] weights: [0.5, 0.25]
+ */
+public final class SparseVector {
+    /** A vector without any dimension set. */
+    static final SparseVector EMPTY = new SparseVector(new int[0],
+                                                       new float[0]);
+    /** The ids of the stored dimensions, sorted ascending. */
+    private final int[] ids;
+    /** The weights of the stored dimensions, same order as ids. */
+    private final float[] weights;
+
+    /**
+     * Creates a sparse vector. The arrays are not copied.
+     * @param ids the ids of the dimensions, have to be sorted ascending
+     * and unique
+     * @param weights the weights of the dimensions
+     */
+    SparseVector(final int[] ids, final float[] weights) {
+        if (ids.length != weights.length) {
+            throw new IllegalArgumentException(
+                "ids and weights need the same length.");
+        }
+        this.ids = ids;
+        this.weights = weights;
+    }
+
+    /**
+     * Returns the number of stored dimensions.
+     * @return the number of stored dimensions.
+     */
+    public int size() {
+        return ids.length;
+    }
+    /**
+     * Returns the id of the i-th stored dimension.
+     * @param i index of the stored dimension
+     * @return the id of the dimension.
+     */
+    public int idAt(final int i) {
+        return ids[i];
+    }
+    /**
+     * Returns the weight of the i-th stored dimension.
+     * @param i index of the stored dimension
+     * @return the weight of the dimension.
+     */
+    public float weightAt(final int i) {
+        return weights[i];
+    }
+    /**
+     * Returns the weight of the dimension with the id.
+     * @param id the id of the dimension
+     * @return the weight, 0 if the dimension is not stored.
+     */
+    public float get(final int id) {
+        int i = Arrays.binarySearch(ids, id);
+        return i < 0 ? 0 : weights[i];
+    }
+    /**
+     * Calculates the euclidian norm of the vector.
+     * @return the euclidian norm of the vector.
+     */
+    public double norm() {
+        double quadSum = 0;
+        for (float weight : weights) {
+            quadSum += (double) weight * weight;
+        }
+        return Math.sqrt(quadSum);
+    }
+    /**
+     * Returns a vector with the same direction and a euclidian norm of 1.
+     * A vector with the norm 0 is returned unchanged.
+     * @return the normalized vector.
+     */
+    public SparseVector normalize() {
+        double length = norm();
+        if (length == 0) {
+            return this;
+        }
+        float[] normalized = new float[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            normalized[i] = (float) (weights[i] / length);
+        }
+        return new SparseVector(ids, normalized);
+    }
+    /**
+     * Calculates the dot product of two sparse vectors. Only the dimensions
+     * stored in both vectors are visited. If one vector is much shorter, its
+     * dimensions are looked up in the other one by binary search, else both
+     * are merged.
+     * @param other the other vector
+     * @return the dot product of both vectors.
+     */
+    public double dot(final SparseVector other) {
+        SparseVector shorter = this;
+        SparseVector longer = other;
+        if (other.size() < size()) {
+            shorter = other;
+            longer = this;
+        }
+        double result = 0;
+        // a binary search costs about log2(n) steps
+        int searchSteps = 32 - Integer.numberOfLeadingZeros(longer.size());
+        if (shorter.size() * searchSteps < longer.size()) {
+            for (int i = 0; i < shorter.size(); i++) {
+                result += (double) shorter.weights[i]
+                          * longer.get(shorter.ids[i]);
+            }
+            return result;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < shorter.size() && j < longer.size()) {
+            if (shorter.ids[i] < longer.ids[j]) {
+                i++;
+            } else if (shorter.ids[i] > longer.ids[j]) {
+                j++;
+            } else {
+                result += (double) shorter.weights[i] * longer.weights[j];
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,168 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.random.RandomGenerator;
+
+/**
+ * Generates nets of synthetic pages for benchmarks, which need corpora of
+ * a given size without crawling the intranet.
+ * The words of a page are drawn from a vocabulary, which starts with words
+ * of the cheese intranet and is continued by made up words. The draws are
+ * skewed towards the first words, so a few words are frequent and most are
+ * rare like in real text. Every page links to AVG_OUT_DEGREE pages
+ * on average, the targets are skewed towards pages with small ids, so some
+ * pages have many inbound links.
+ * The same seed always generates the same net.
+ */
+final class SyntheticCorpus {
+    /** Seed of the nets, if none is given. */
+    static final long DEFAULT_SEED = 42;
+    /** Average number of links of a page. */
+    static final int AVG_OUT_DEGREE = 8;
+    /** Words of a title. */
+    private static final int TITLE_WORDS = 4;
+    /** Words of a header. */
+    private static final int HEADER_WORDS = 8;
+    /** Words of a sentence. */
+    private static final int SENTENCE_WORDS = 12;
+    /** Syllables of the made up words. */
+    private static final String[] SYLLABLES = {"ba", "ce", "di", "fo", "gu",
+        "la", "me", "ni", "po", "ru", "sa", "te", "vi", "zo", "ka", "le"};
+    /** Minimal length of the made up words. */
+    private static final int MIN_WORD_LENGTH = 4;
+    /** The vocabulary, the first words are the most frequent ones. */
+    private static final String[] WORDS = {"cheese", "the", "flavor",
+        "milk", "and", "aged", "gouda", "texture", "of", "creamy", "brie",
+        "cheddar", "is", "taste", "farm", "rich", "soft", "hard", "cows",
+        "goats", "sheep", "made", "ripened", "cellar", "months", "nutty",
+        "sharp", "mild", "blue", "mould", "rind", "selection", "artisanal",
+        "exquisite", "explore", "melting", "slices", "wheels", "tasting",
+        "pairs", "wine", "bread", "crackers", "alpine", "dairy", "village",
+        "traditional", "recipes", "enjoyed", "served", "grated", "smoked",
+        "feta", "camembert", "stilton", "parmesan", "mozzarella", "ricotta",
+        "emmental", "gruyere", "jarlsberg", "burrata", "liederkranz"};
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * Returns the URL of a synthetic page.
+     * @param id the id of the page
+     * @return the URL of the page.
+     */
+    static String urlOf(final int id) {
+        return "http://page" + id + ".synthetic";
+    }
+    /**
+     * Generates the text of a net of synthetic pages. The page with the
+     * index i has the URL urlOf(i).
+     * @param numPages number of pages
+     * @param contentWords number of words of the content of every page
+     * @param seed seed of the random generator
+     * @return the text of every page.
+     */
+    static List<PageText> generate(final int numPages,
+                                   final int contentWords, final long seed) {
+        Random random = new Random(seed);
+        List<PageText> pages = new ArrayList<>(numPages);
+        for (int i = 0; i < numPages; i++) {
+            Set<String> links = new HashSet<>();
+            int numLinks = random.nextInt(2 * AVG_OUT_DEGREE + 1);
+            for (int l = 0; l < numLinks; l++) {
+                // squaring a uniform number skews the targets to small ids
+                double r = random.nextDouble();
+                links.add(urlOf((int) (r * r * numPages)));
+            }
+            pages.add(new PageText(words(random, TITLE_WORDS, WORDS.length),
+                                   words(random, HEADER_WORDS, WORDS.length),
+                                   words(random, contentWords,
+                                         WORDS.length), links));
+        }
+        return pages;
+    }
+    /**
+     * Generates a net of synthetic pages, which are lemmatized by the
+     * Parser in its current analysis mode.
+     * @param numPages number of pages
+     * @param contentWords number of words of the content of every page
+     * @param seed seed of the random generator
+     * @return the lemmatized pages.
+     */
+    static List<Page> generatePages(final int numPages,
+                                    final int contentWords,
+                                    final long seed) {
+        List<PageText> texts = generate(numPages, contentWords, seed);
+        List<Page> pages = new ArrayList<>(numPages);
+        for (int i = 0; i < numPages; i++) {
+            pages.add(Parser.parse(urlOf(i), texts.get(i)));
+        }
+        return pages;
+    }
+    /**
+     * Returns a HTML page like the pages of the intranet with the text.
+     * @param text the text of the page
+     * @return the HTML of the page.
+     */
+    static String toHTML(final PageText text) {
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n")
+            .append("  <meta charset=\"UTF-8\">\n  <title>")
+            .append(text.title()).append("</title>\n</head>\n<body>\n")
+            .append("  <header>\n    <h1>").append(text.header())
+            .append("</h1>\n  </header>\n  <main>\n    <p>")
+            .append(text.content()).append("</p>\n    <ul>\n");
+        for (String link : text.links()) {
+            html.append("      <li><a href=\"").append(link).append("\">")
+                .append(link).append("</a></li>\n");
+        }
+        html.append("    </ul>\n  </main>\n</body>\n</html>\n");
+        return html.toString();
+    }
+    /**
+     * Returns a word of the vocabulary.
+     * @param rank the rank of the word, the first words are drawn most often
+     * @return the word, the same rank always returns the same word.
+     */
+    static String word(final int rank) {
+        if (rank < WORDS.length) {
+            return WORDS[rank];
+        }
+        // the syllables of the rank in base SYLLABLES.length
+        StringBuilder word = new StringBuilder();
+        int rest = rank - WORDS.length;
+        do {
+            word.append(SYLLABLES[rest % SYLLABLES.length]);
+            rest /= SYLLABLES.length;
+        } while (rest > 0);
+        // one syllable words would be too short
+        return word.length() < MIN_WORD_LENGTH ? word.append("rt").toString()
+                                               : word.toString();
+    }
+    /**
+     * Draws words of the vocabulary, a sentence ends after SENTENCE_WORDS
+     * words.
+     * @param random the random generator
+     * @param numWords number of words
+     * @param vocabularySize number of words of the vocabulary
+     * @return the words seperated by spaces.
+     */
+    static String words(final RandomGenerator random, final int numWords,
+                        final int vocabularySize) {
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < numWords; w++) {
+            if (w > 0) {
+                text.append(w % SENTENCE_WORDS == 0 ? ". " : " ");
+            }
+            double r = random.nextDouble();
+            text.append(word((int) (r * r * vocabularySize)));
+        }
+        if (numWords > 0) {
+            text.append('.');
+        }
+        return text.toString();
+    }
+}
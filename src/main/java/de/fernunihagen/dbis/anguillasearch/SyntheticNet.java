@@ -0,0 +1,221 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.IntFunction;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * A synthetic intranet of numPages pages for crawl benchmarks, which is
+ * described like the nets in the intranet folder.
+ * No page is stored, every page is generated on request from the seed and
+ * its id, so nets with a million pages need no memory and the same seed
+ * always generates the same net.
+ * Every page links to the next page, so all pages are reachable from the
+ * first seed, and to outDegree pages on average, which are skewed towards
+ * small ids like in SyntheticCorpus. The words are drawn from the first
+ * vocabularySize words of the SyntheticCorpus. Every QUERY_STRIDE-th page
+ * contains the query token, a word no other page contains.
+ * The net does not know its URLs, the server, which serves it, maps the id
+ * of a page to its URL.
+ */
+final class SyntheticNet {
+    /** Every QUERY_STRIDE-th page contains the query token. */
+    static final int QUERY_STRIDE = 16;
+    /** Number of Seed-URLs. */
+    static final int NUM_SEEDS = 3;
+    /** Mixes the seed of the net and the id of a page. */
+    private static final long SEED_MULTIPLIER = 1_000_003;
+    /** Words of a title. */
+    private static final int TITLE_WORDS = 4;
+    /** Words of a header. */
+    private static final int HEADER_WORDS = 8;
+    /** Number of pages. */
+    private final int numPages;
+    /** Average number of links of a page besides the link to the next. */
+    private final int outDegree;
+    /** Number of words the pages are made of. */
+    private final int vocabularySize;
+    /** Number of words of the content of a page. */
+    private final int contentWords;
+    /** Seed of the net. */
+    private final long seed;
+
+    /**
+     * Initializes a synthetic net.
+     * @param numPages number of pages
+     * @param outDegree average number of links of a page besides the link
+     * to the next page
+     * @param vocabularySize number of words the pages are made of
+     * @param contentWords number of words of the content of every page
+     * @param seed seed of the net
+     */
+    SyntheticNet(final int numPages, final int outDegree,
+                 final int vocabularySize, final int contentWords,
+                 final long seed) {
+        if (numPages < 1 || outDegree < 0 || vocabularySize < 1
+            || contentWords < 0) {
+            throw new IllegalArgumentException("numPages and vocabularySize "
+                + "have to be at least 1, outDegree and contentWords at "
+                + "least 0.");
+        }
+        this.numPages = numPages;
+        this.outDegree = outDegree;
+        this.vocabularySize = vocabularySize;
+        this.contentWords = contentWords;
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the number of pages.
+     * @return the number of pages.
+     */
+    int getNumPages() {
+        return numPages;
+    }
+    /**
+     * Returns the seed of the net.
+     * @return the seed.
+     */
+    long getSeed() {
+        return seed;
+    }
+    /**
+     * Returns the word only the query pages contain, it is the first word
+     * after the vocabulary.
+     * @return the query token.
+     */
+    String getQueryToken() {
+        return SyntheticCorpus.word(vocabularySize);
+    }
+    /**
+     * Returns if a page contains the query token.
+     * @param id the id of the page
+     * @return true if the page contains the query token.
+     */
+    boolean isQueryPage(final int id) {
+        return id % QUERY_STRIDE == 0;
+    }
+    /**
+     * Returns the ids of the seed pages, which are spread over the net.
+     * @return the ids of the seed pages.
+     */
+    int[] getSeeds() {
+        int[] seeds = new int[Math.min(NUM_SEEDS, numPages)];
+        for (int s = 0; s < seeds.length; s++) {
+            seeds[s] = (int) ((long) s * numPages / seeds.length);
+        }
+        return seeds;
+    }
+    /**
+     * Returns the random generator of a page, the same page always gets
+     * the same numbers.
+     * @param id the id of the page
+     * @return the random generator of the page.
+     */
+    private SplittableRandom randomOf(final int id) {
+        return new SplittableRandom(seed * SEED_MULTIPLIER + id);
+    }
+    /**
+     * Draws the links of a page, they have to be drawn before its words.
+     * @param random the random generator of the page
+     * @param id the id of the page
+     * @return the ids of the linked pages in the order of the page.
+     */
+    private Set<Integer> drawLinks(final SplittableRandom random,
+                                   final int id) {
+        Set<Integer> links = new LinkedHashSet<>();
+        links.add((id + 1) % numPages);
+        int numLinks = random.nextInt(2 * outDegree + 1);
+        for (int l = 0; l < numLinks; l++) {
+            // squaring a uniform number skews the targets to small ids
+            double r = random.nextDouble();
+            links.add((int) (r * r * numPages));
+        }
+        return links;
+    }
+    /**
+     * Returns the ids of the pages a page links to.
+     * @param id the id of the page
+     * @return the ids of the linked pages.
+     */
+    Set<Integer> linksOf(final int id) {
+        return drawLinks(randomOf(id), id);
+    }
+    /**
+     * Returns the text of a page.
+     * @param id the id of the page
+     * @param urls maps the id of a page to its URL
+     * @return the text of the page.
+     */
+    PageText textOf(final int id, final IntFunction<String> urls) {
+        SplittableRandom random = randomOf(id);
+        Set<String> links = new LinkedHashSet<>();
+        for (int target : drawLinks(random, id)) {
+            links.add(urls.apply(target));
+        }
+        String title = SyntheticCorpus.words(random, TITLE_WORDS,
+                                             vocabularySize);
+        String header = SyntheticCorpus.words(random, HEADER_WORDS,
+                                              vocabularySize);
+        String content = SyntheticCorpus.words(random, contentWords,
+                                               vocabularySize);
+        if (isQueryPage(id)) {
+            content = content + " " + getQueryToken() + ".";
+        }
+        return new PageText(title, header, content, links);
+    }
+    /**
+     * Returns the HTML of a page.
+     * @param id the id of the page
+     * @param urls maps the id of a page to its URL
+     * @return the HTML of the page.
+     */
+    String toHTML(final int id, final IntFunction<String> urls) {
+        return SyntheticCorpus.toHTML(textOf(id, urls));
+    }
+    /**
+     * Returns the number of links of all pages, like the crawler counts
+     * them. Draws the links of every page.
+     * @return the number of links.
+     */
+    long countLinks() {
+        long numLinks = 0;
+        for (int id = 0; id < numPages; id++) {
+            numLinks += linksOf(id).size();
+        }
+        return numLinks;
+    }
+    /**
+     * Describes the net like the JSON files in the intranet folder.
+     * @param name the name of the net
+     * @param urls maps the id of a page to its URL
+     * @return the description of the net.
+     */
+    JsonObject toJson(final String name, final IntFunction<String> urls) {
+        JsonObject json = new JsonObject();
+        json.addProperty("Net-Name", name);
+        json.addProperty("Subject", "cheese");
+        json.addProperty("TLD", "synthetic");
+        json.addProperty("Num-Websites", numPages);
+        json.addProperty("Num-Links", countLinks());
+        JsonArray queryToken = new JsonArray();
+        queryToken.add(getQueryToken());
+        json.add("Query-Token", queryToken);
+        JsonArray queryURLs = new JsonArray();
+        for (int id = 0; id < numPages; id += QUERY_STRIDE) {
+            queryURLs.add(urls.apply(id));
+        }
+        json.addProperty("Num-Websites-with-Query", queryURLs.size());
+        json.add("Query-URLs", queryURLs);
+        JsonArray seedURLs = new JsonArray();
+        for (int id : getSeeds()) {
+            seedURLs.add(urls.apply(id));
+        }
+        json.add("Seed-URLs", seedURLs);
+        return json;
+    }
+}
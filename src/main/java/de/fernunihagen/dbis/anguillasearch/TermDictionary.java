@@ -0,0 +1,414 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable term dictionary, which maps the tokens of an index to dense
+ * term ids and stores the IDF of every token. The tokens are sorted like
+ * String.compareTo, the position of a token is its term id.
+ * The tokens are front-coded in blocks of BLOCK_TERMS tokens: every token
+ * stores the number of leading chars it shares with the token before, the
+ * number of the other chars and those chars. The first token of a block
+ * shares no chars, so a block can be decoded without the blocks before.
+ * All numbers and chars are variable-byte numbers: 7 bits per byte, low
+ * bits first, the highest bit is set if another byte follows. ASCII chars
+ * need one byte.
+ * The dictionary is stored in one byte region, on the heap or in a mapped
+ * segment file, so there is no object per token:
+ * <pre>
+ * double   IDF of every token
+ * int      start of every block and the end of the last block
+ * byte     the blocks
+ * </pre>
+ * The region is padded with zeros to a multiple of 8 bytes, so a double
+ * array behind it stays aligned.
+ * A token is found by a binary search over the first tokens of the blocks
+ * and a scan of one block. Neither compares more than the chars of the
+ * token and allocates a String.
+ */
+final class TermDictionary {
+    /** Number of tokens in a block. */
+    static final int BLOCK_TERMS = 16;
+    /** Bits of a number stored in one byte. */
+    private static final int VBYTE_BITS = 7;
+    /** Mask of the bits of a number in a byte. */
+    private static final int VBYTE_MASK = 0x7F;
+    /** Bit which is set if another byte follows. */
+    private static final int VBYTE_MORE = 0x80;
+    /** The region is padded to a multiple of this size. */
+    private static final int ALIGNMENT = Double.BYTES;
+
+    /** The buffer containing the region of the dictionary. */
+    private final ByteBuffer buffer;
+    /** Number of tokens. */
+    private final int numTerms;
+    /** Number of blocks. */
+    private final int numBlocks;
+    /** Position of the IDF of every token. */
+    private final int idfsAt;
+    /** Position of the start of every block. */
+    private final int blockStartsAt;
+    /** Position of the blocks. */
+    private final int blocksAt;
+    /** Size of the region in bytes. */
+    private final int regionBytes;
+
+    /**
+     * Creates a dictionary of a region written by build or writeTo.
+     * @param buffer the buffer containing the region
+     * @param at position of the region
+     * @param numTerms number of tokens
+     * @param length size of the region in bytes
+     * @throws IllegalArgumentException if the region does not match the
+     * number of tokens.
+     */
+    TermDictionary(final ByteBuffer buffer, final int at, final int numTerms,
+                   final int length) {
+        this.buffer = buffer;
+        this.numTerms = numTerms;
+        this.numBlocks = (numTerms + BLOCK_TERMS - 1) / BLOCK_TERMS;
+        this.idfsAt = at;
+        this.blockStartsAt = idfsAt + numTerms * Double.BYTES;
+        this.blocksAt = blockStartsAt + (numBlocks + 1) * Integer.BYTES;
+        this.regionBytes = length;
+        if (numTerms < 0 || blocksAt > at + length
+            || blocksAt + blockStart(numBlocks) > at + length) {
+            throw new IllegalArgumentException(
+                "The term dictionary does not match its size.");
+        }
+    }
+    /**
+     * Builds a dictionary on the heap.
+     * @param tokens the tokens, sorted like String.compareTo without
+     * duplicates
+     * @param idfs the IDF of every token, same order as the tokens
+     * @return the dictionary.
+     */
+    static TermDictionary build(final List<String> tokens,
+                                final double[] idfs) {
+        if (tokens.size() != idfs.length) {
+            throw new IllegalArgumentException(
+                "Every token needs an IDF value.");
+        }
+        int numTerms = tokens.size();
+        int numBlocks = (numTerms + BLOCK_TERMS - 1) / BLOCK_TERMS;
+        int[] blockStarts = new int[numBlocks + 1];
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        String previous = "";
+        for (int termId = 0; termId < numTerms; termId++) {
+            String token = tokens.get(termId);
+            int shared = 0;
+            if (termId % BLOCK_TERMS == 0) {
+                blockStarts[termId / BLOCK_TERMS] = blocks.size();
+            } else {
+                if (previous.compareTo(token) >= 0) {
+                    throw new IllegalArgumentException(
+                        "The tokens have to be sorted without duplicates.");
+                }
+                int max = Math.min(previous.length(), token.length());
+                while (shared < max
+                       && previous.charAt(shared) == token.charAt(shared)) {
+                    shared++;
+                }
+            }
+            writeVByte(blocks, shared);
+            writeVByte(blocks, token.length() - shared);
+            for (int i = shared; i < token.length(); i++) {
+                writeVByte(blocks, token.charAt(i));
+            }
+            previous = token;
+        }
+        blockStarts[numBlocks] = blocks.size();
+
+        ByteArrayOutputStream region = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(region)) {
+            for (double idf : idfs) {
+                out.writeDouble(idf);
+            }
+            for (int blockStart : blockStarts) {
+                out.writeInt(blockStart);
+            }
+            blocks.writeTo(out);
+            while (out.size() % ALIGNMENT != 0) {
+                out.writeByte(0);
+            }
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+        byte[] bytes = region.toByteArray();
+        return new TermDictionary(ByteBuffer.wrap(bytes), 0, numTerms,
+                                  bytes.length);
+    }
+    /**
+     * Writes the region of the dictionary, so it can be read again with the
+     * constructor.
+     * @param out the stream the region is written to
+     * @throws IOException if the region can not be written.
+     */
+    void writeTo(final OutputStream out) throws IOException {
+        byte[] chunk = new byte[Math.min(regionBytes, 1 << 16)];
+        for (int done = 0; done < regionBytes; done += chunk.length) {
+            int n = Math.min(chunk.length, regionBytes - done);
+            buffer.get(idfsAt + done, chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+    /**
+     * Returns the size of the region in bytes.
+     * @return the size of the dictionary.
+     */
+    int sizeInBytes() {
+        return regionBytes;
+    }
+    /**
+     * Returns the number of tokens.
+     * @return the number of tokens.
+     */
+    int size() {
+        return numTerms;
+    }
+    /**
+     * Returns the IDF of the token.
+     * @param termId id of the token
+     * @return the IDF value of the token.
+     */
+    double idf(final int termId) {
+        return buffer.getDouble(idfsAt + termId * Double.BYTES);
+    }
+    /**
+     * Decodes the token with the term id.
+     * @param termId id of the token
+     * @return the token.
+     */
+    String term(final int termId) {
+        if (termId < 0 || termId >= numTerms) {
+            throw new IndexOutOfBoundsException(termId);
+        }
+        Cursor cursor = new Cursor(blocksAt
+                                   + blockStart(termId / BLOCK_TERMS));
+        char[] chars = new char[0];
+        int length = 0;
+        for (int i = termId - termId % BLOCK_TERMS; i <= termId; i++) {
+            int shared = cursor.next();
+            int suffix = cursor.next();
+            length = shared + suffix;
+            if (chars.length < length) {
+                chars = Arrays.copyOf(chars, 2 * length);
+            }
+            for (int j = shared; j < length; j++) {
+                chars[j] = (char) cursor.next();
+            }
+        }
+        return new String(chars, 0, length);
+    }
+    /**
+     * Returns the term id of the token.
+     * @param token the token
+     * @return the term id, -(insertion point) - 1 if the token is not in the
+     * dictionary, like Arrays.binarySearch.
+     */
+    int findTerm(final String token) {
+        // last block with a first token not greater than the token
+        int low = 0;
+        int high = numBlocks - 1;
+        int block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareFirst(mid, token);
+            if (cmp == 0) {
+                return mid * BLOCK_TERMS;
+            }
+            if (cmp < 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return -1;
+        }
+        return scanBlock(block, token);
+    }
+    /**
+     * Returns the id of the first token, which starts with the prefix. All
+     * tokens with the prefix have the ids from prefixStart to prefixEnd - 1.
+     * @param prefix the prefix
+     * @return the id of the first token with the prefix, or of the first
+     * token behind it.
+     */
+    int prefixStart(final String prefix) {
+        return insertionPoint(findTerm(prefix));
+    }
+    /**
+     * Returns the id after the last token, which starts with the prefix.
+     * @param prefix the prefix
+     * @return the id of the first token behind the tokens with the prefix.
+     */
+    int prefixEnd(final String prefix) {
+        // the smallest string greater than all strings with the prefix
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return numTerms;
+        }
+        String next = prefix.substring(0, end - 1)
+                      + (char) (prefix.charAt(end - 1) + 1);
+        return insertionPoint(findTerm(next));
+    }
+    /**
+     * Converts a result of findTerm to the id of the first token, which is
+     * not smaller than the searched token.
+     * @param found the result of findTerm
+     * @return the term id.
+     */
+    private static int insertionPoint(final int found) {
+        return found >= 0 ? found : -(found + 1);
+    }
+    /**
+     * Compares the first token of a block with the token, without decoding
+     * it to a String.
+     * @param block index of the block
+     * @param token the token
+     * @return a negative number, 0 or a positive number if the first token
+     * of the block is smaller, equal or greater than the token.
+     */
+    private int compareFirst(final int block, final String token) {
+        Cursor cursor = new Cursor(blocksAt + blockStart(block));
+        cursor.next(); // the first token of a block shares no chars
+        int length = cursor.next();
+        int max = Math.min(length, token.length());
+        for (int i = 0; i < max; i++) {
+            int diff = cursor.next() - token.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - token.length();
+    }
+    /**
+     * Searches the token in a block, which first token is smaller than the
+     * token. Every token is only compared from the first char, where the
+     * token before differs from the searched token.
+     * @param block index of the block
+     * @param token the token
+     * @return the term id, -(insertion point) - 1 if the token is not in the
+     * dictionary.
+     */
+    private int scanBlock(final int block, final String token) {
+        Cursor cursor = new Cursor(blocksAt + blockStart(block));
+        int first = block * BLOCK_TERMS;
+        int end = Math.min(first + BLOCK_TERMS, numTerms);
+        // number of leading chars the token before shares with the token
+        int matched = 0;
+        for (int termId = first; termId < end; termId++) {
+            int shared = cursor.next();
+            int suffix = cursor.next();
+            if (shared < matched) {
+                // differs from the token before where that one matched,
+                // so it is greater than the searched token
+                return -(termId + 1);
+            }
+            if (shared > matched) {
+                // differs from the searched token where the token before
+                // did, so it is smaller, too
+                cursor.skip(suffix);
+                continue;
+            }
+            int length = shared + suffix;
+            int max = Math.min(length, token.length());
+            int i = shared;
+            int read = shared;
+            int cmp = 0;
+            while (i < max) {
+                cmp = cursor.next() - token.charAt(i);
+                read++;
+                if (cmp != 0) {
+                    break;
+                }
+                i++;
+            }
+            if (cmp == 0) {
+                cmp = length - token.length();
+            }
+            if (cmp == 0) {
+                return termId;
+            }
+            if (cmp > 0) {
+                return -(termId + 1);
+            }
+            cursor.skip(length - read);
+            matched = i;
+        }
+        return -(end + 1);
+    }
+    /**
+     * Returns the start of a block relative to the first block.
+     * @param block index of the block, numBlocks for the end of the last
+     * @return the start of the block.
+     */
+    private int blockStart(final int block) {
+        return buffer.getInt(blockStartsAt + block * Integer.BYTES);
+    }
+    /**
+     * Writes a variable-byte number.
+     * @param out the stream the number is written to
+     * @param value the number, not negative
+     */
+    private static void writeVByte(final ByteArrayOutputStream out,
+                                   final int value) {
+        int rest = value;
+        while (rest >= VBYTE_MORE) {
+            out.write((rest & VBYTE_MASK) | VBYTE_MORE);
+            rest >>>= VBYTE_BITS;
+        }
+        out.write(rest);
+    }
+
+    /**
+     * Reads the variable-byte numbers of a block one after another.
+     */
+    private final class Cursor {
+        /** Position of the next number. */
+        private int pos;
+
+        Cursor(final int pos) {
+            this.pos = pos;
+        }
+        /**
+         * Reads the next number.
+         * @return the number.
+         */
+        int next() {
+            int b = buffer.get(pos++);
+            int value = b & VBYTE_MASK;
+            for (int shift = VBYTE_BITS; (b & VBYTE_MORE) != 0;
+                 shift += VBYTE_BITS) {
+                b = buffer.get(pos++);
+                value |= (b & VBYTE_MASK) << shift;
+            }
+            return value;
+        }
+        /**
+         * Skips numbers.
+         * @param count number of numbers to skip
+         */
+        void skip(final int count) {
+            for (int i = 0; i < count; i++) {
+                while ((buffer.get(pos++) & VBYTE_MORE) != 0) {
+                    // the last byte has the highest bit cleared
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Normalizes text before it is tokenized: decomposes accented chars, removes
+ * punctuation marks followed by an apostrophe, converts the text to lower
+ * case and removes the stop words.
+ * The result is the same as of the regular expressions the Parser used
+ * before, but the text is walked once and the stop words are looked up in a
+ * hash set, instead of replacing an alternation of all stop words.
+ * A stop word is removed, if it is a whole word, like with \b in a regular
+ * expression. "'s" is removed after a word.
+ * Every thread reuses its own buffer, so a call only allocates the result,
+ * if the text is ASCII. Other text is decomposed and converted to lower case
+ * by the JDK like before.
+ * All methods are thread-safe.
+ */
+final class TextNormalizer {
+    /**
+     * Stop words, the source is CoreNLP.
+     * https://github.com/stanfordnlp/CoreNLP/blob/main/src/edu/stanford/nlp/
+     * coref/data/WordLists.java
+     */
+    private static final String[] STOP_WORDS = ("a an the of at on upon in"
+        + " to from out as so such or and those this these that for is was"
+        + " am are 's been were").split(" ");
+    /** The possessive s, which is removed after a word. */
+    private static final String POSSESSIVE = "'s";
+    /** Open addressing hash table of the stop words, which are words. */
+    private static final String[] STOP_WORD_TABLE = new String[64];
+    /** Length of the longest stop word. */
+    private static final int MAX_STOP_WORD_LENGTH;
+    /** Punctuation marks, which are removed with a following apostrophe. */
+    private static final String APOSTROPHE_MARKS = "\\|.!,:-?&";
+    /** Buffers larger than this are not kept for the next call. */
+    private static final int MAX_KEPT_BUFFER = 1 << 20;
+    /** The buffer of every thread. */
+    private static final ThreadLocal<char[]> BUFFERS =
+                                ThreadLocal.withInitial(() -> new char[256]);
+
+    static {
+        int maxLength = 0;
+        for (String stopWord : STOP_WORDS) {
+            if (!stopWord.equals(POSSESSIVE)) {
+                int slot = slot(stopWord.hashCode());
+                while (STOP_WORD_TABLE[slot] != null) {
+                    slot = (slot + 1) % STOP_WORD_TABLE.length;
+                }
+                STOP_WORD_TABLE[slot] = stopWord;
+                maxLength = Math.max(maxLength, stopWord.length());
+            }
+        }
+        MAX_STOP_WORD_LENGTH = maxLength;
+    }
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * Removes \, |, and punctiation marks followed by an apostrophe, converts
+     * the string to lower case and removes the stop words.
+     * @param inputString the String which should be normalized
+     * @return the normalized String
+     */
+    static String normalize(final String inputString) {
+        if (isAscii(inputString) && asciiLowerCaseIsExact()) {
+            // NFD does not change ASCII, so everything is done in one pass
+            char[] buffer = buffer(2 * inputString.length());
+            return removeStopWords(buffer, removeApostropheMarks(inputString,
+                                                            buffer, true));
+        }
+        String decomposed = Normalizer.normalize(inputString,
+                                                 Normalizer.Form.NFD);
+        char[] buffer = buffer(decomposed.length());
+        int length = removeApostropheMarks(decomposed, buffer, false);
+        String lowerCase = new String(buffer, 0, length).toLowerCase();
+        return removeStopWords(lowerCase);
+    }
+    /**
+     * Removes the stop words of the string, without changing the case.
+     * @param inputString the string of which the stop words should be
+     * removed
+     * @return the string without stop words.
+     */
+    static String removeStopWords(final String inputString) {
+        char[] buffer = buffer(2 * inputString.length());
+        inputString.getChars(0, inputString.length(), buffer, 0);
+        return removeStopWords(buffer, inputString.length());
+    }
+    /**
+     * Returns whether a string is a stop word, which is removed as word.
+     * @param chars the chars of the string
+     * @param from start of the string
+     * @param to end of the string
+     * @return true if the string is a stop word.
+     */
+    private static boolean isStopWord(final char[] chars, final int from,
+                                      final int to) {
+        int length = to - from;
+        if (length > MAX_STOP_WORD_LENGTH) {
+            return false;
+        }
+        // the same hash as String.hashCode()
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = slot(hash);
+        while (STOP_WORD_TABLE[slot] != null) {
+            String stopWord = STOP_WORD_TABLE[slot];
+            if (stopWord.length() == length) {
+                int i = 0;
+                while (i < length && stopWord.charAt(i) == chars[from + i]) {
+                    i++;
+                }
+                if (i == length) {
+                    return true;
+                }
+            }
+            slot = (slot + 1) % STOP_WORD_TABLE.length;
+        }
+        return false;
+    }
+    /**
+     * Copies the string to the buffer without the punctuation marks, which
+     * are followed by an apostrophe, and the apostrophes.
+     * @param input the string
+     * @param buffer receives the chars, is at least as long as the string
+     * @param lowerCase true if ASCII letters are converted to lower case
+     * @return the number of chars in the buffer.
+     */
+    private static int removeApostropheMarks(final String input,
+                                             final char[] buffer,
+                                             final boolean lowerCase) {
+        int length = 0;
+        int i = 0;
+        while (i < input.length()) {
+            char c = input.charAt(i);
+            if (c == '\'' || APOSTROPHE_MARKS.indexOf(c) < 0
+                || i + 1 == input.length() || input.charAt(i + 1) != '\'') {
+                if (lowerCase && c >= 'A' && c <= 'Z') {
+                    c = (char) (c + ('a' - 'A'));
+                }
+                buffer[length++] = c;
+                i++;
+            } else {
+                i += 2;
+            }
+        }
+        return length;
+    }
+    /**
+     * Creates a string of the buffer without the stop words.
+     * @param chars the chars of the text, followed by room for as many
+     * chars, which receives the result
+     * @param length the number of chars
+     * @return the text without stop words.
+     */
+    private static String removeStopWords(final char[] chars,
+                                          final int length) {
+        // the text is kept, since the word boundaries look behind
+        int written = length;
+        int i = 0;
+        while (i < length) {
+            if (isWordAt(chars, i, length)
+                && (i == 0 || !isWordBefore(chars, i))) {
+                int end = i + Character.charCount(
+                                    Character.codePointAt(chars, i, length));
+                while (end < length && isWordAt(chars, end, length)) {
+                    end += Character.charCount(
+                                Character.codePointAt(chars, end, length));
+                }
+                if (!isStopWord(chars, i, end)) {
+                    System.arraycopy(chars, i, chars, written, end - i);
+                    written += end - i;
+                }
+                i = end;
+            } else if (chars[i] == '\'' && i + 1 < length
+                       && chars[i + 1] == 's' && i > 0
+                       && isWordBefore(chars, i)
+                       && (i + 2 == length
+                           || !isWordAt(chars, i + 2, length))) {
+                i += POSSESSIVE.length();
+            } else {
+                chars[written++] = chars[i++];
+            }
+        }
+        return new String(chars, length, written - length);
+    }
+    /**
+     * Returns whether the char at the position belongs to a word, like a
+     * word char of \b: a letter, digit or underscore, or a combining mark of
+     * a letter or digit.
+     * @param chars the chars of the text
+     * @param i the position
+     * @param length the number of chars
+     * @return true if the char belongs to a word.
+     */
+    private static boolean isWordAt(final char[] chars, final int i,
+                                    final int length) {
+        int c = Character.codePointAt(chars, i, length);
+        return isWordChar(c) || Character.getType(c)
+                                == Character.NON_SPACING_MARK
+                                && hasBaseChar(chars, i);
+    }
+    /**
+     * Returns whether the char before the position belongs to a word.
+     * @param chars the chars of the text
+     * @param i the position, greater than 0
+     * @return true if the char before belongs to a word.
+     */
+    private static boolean isWordBefore(final char[] chars, final int i) {
+        int c = Character.codePointBefore(chars, i);
+        return isWordChar(c) || Character.getType(c)
+                                == Character.NON_SPACING_MARK
+                                && hasBaseChar(chars, i - 1);
+    }
+    /**
+     * Returns whether the combining marks up to the position follow a
+     * letter or digit.
+     * @param chars the chars of the text
+     * @param i the position of the last mark
+     * @return true if the marks follow a letter or digit.
+     */
+    private static boolean hasBaseChar(final char[] chars, final int i) {
+        for (int j = i; j >= 0; j--) {
+            int c = Character.codePointAt(chars, j);
+            if (Character.isLetterOrDigit(c)) {
+                return true;
+            }
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                return false;
+            }
+        }
+        return false;
+    }
+    /**
+     * Returns whether the char is a letter, digit or underscore.
+     * @param c the code point
+     * @return true if the char is a word char.
+     */
+    private static boolean isWordChar(final int c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+    /**
+     * Returns whether the string only contains ASCII chars.
+     * @param s the string
+     * @return true if all chars are ASCII.
+     */
+    private static boolean isAscii(final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * Returns whether String.toLowerCase() converts ASCII letters like in
+     * English, which is not true in Turkish, Azeri and Lithuanian.
+     * @return true if ASCII letters can be converted directly.
+     */
+    private static boolean asciiLowerCaseIsExact() {
+        String language = Locale.getDefault().getLanguage();
+        return !language.equals("tr") && !language.equals("az")
+               && !language.equals("lt");
+    }
+    /**
+     * Returns the buffer of the current thread.
+     * @param length the minimum length of the buffer
+     * @return a buffer with at least the length.
+     */
+    private static char[] buffer(final int length) {
+        char[] buffer = BUFFERS.get();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, 2 * buffer.length)];
+            if (buffer.length <= MAX_KEPT_BUFFER) {
+                BUFFERS.set(buffer);
+            }
+        }
+        return buffer;
+    }
+    /**
+     * Returns the slot of a hash in the stop word table.
+     * @param hash the hash of the string
+     * @return the slot.
+     */
+    private static int slot(final int hash) {
+        return (hash ^ (hash >>> 16)) & (STOP_WORD_TABLE.length - 1);
+    }
+}
@@ -0,0 +1,64 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the k best search results in a bounded min-heap. The worst of the
+ * kept results is at the head of the heap, so a new result only has to be
+ * compared with it.
+ * Results are ordered by score descending, results with the same score by
+ * URL ascending, so the order does not depend on the order the results
+ * were offered in.
+ */
+final class TopKResults {
+    /** Order of the search results, the best result first. */
+    static final Comparator<SearchResult> ORDER =
+        Comparator.comparingDouble(SearchResult::score).reversed()
+                  .thenComparing(SearchResult::url);
+    /** Initial capacity of the heap if k is large. */
+    private static final int MAX_INITIAL_CAPACITY = 64;
+    /** Maximum number of results kept. */
+    private final int k;
+    /** The kept results, the worst at the head. */
+    private final PriorityQueue<SearchResult> heap;
+
+    /**
+     * Creates an empty collector.
+     * @param k maximum number of results kept, at least 1
+     */
+    TopKResults(final int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException(
+                "At least one search result has to be kept.");
+        }
+        this.k = k;
+        heap = new PriorityQueue<>(Math.min(k, MAX_INITIAL_CAPACITY),
+                                   ORDER.reversed());
+    }
+
+    /**
+     * Offers a search result. It is kept if less than k results are kept or
+     * it is better than the worst kept result, which is removed then.
+     * @param result the search result
+     */
+    void offer(final SearchResult result) {
+        if (heap.size() < k) {
+            heap.add(result);
+        } else if (ORDER.compare(result, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(result);
+        }
+    }
+    /**
+     * Returns the kept results.
+     * @return the kept results, sorted by ORDER.
+     */
+    List<SearchResult> toList() {
+        List<SearchResult> results = new ArrayList<>(heap);
+        results.sort(ORDER);
+        return results;
+    }
+}
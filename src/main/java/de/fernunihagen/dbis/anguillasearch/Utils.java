@@ -1,7 +1,10 @@
 package de.fernunihagen.dbis.anguillasearch;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -36,4 +39,23 @@ public class Utils {
         }
         return jsonObjects;
     }
+
+    // This method parses all JSON files of a folder, e.g.
+    // src/test/resources/tf-idf/pages, and returns them as pages
+    public static List<Page> loadTestPages(String dir) throws IOException {
+        List<Page> pages = new ArrayList<>();
+        for (JsonObject testPage : parseAllJSONFiles(Optional.of(dir))) {
+            Set<String> links = new HashSet<>();
+            for (JsonElement link
+                 : testPage.get("outgoingLinks").getAsJsonArray()) {
+                links.add(link.getAsString());
+            }
+            pages.add(new Page(testPage.get("url").getAsString(),
+                               testPage.get("title").getAsString(),
+                               testPage.get("headings").getAsString(),
+                               testPage.get("paragraphs").getAsString(),
+                               links));
+        }
+        return pages;
+    }
 }
\ No newline at end of file
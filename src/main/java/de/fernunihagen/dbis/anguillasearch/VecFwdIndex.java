@@ -1,43 +1,61 @@
 package de.fernunihagen.dbis.anguillasearch;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
-import de.fernunihagen.dbis.records.TokenIDF;
-
 
 public class VecFwdIndex extends FwdIndex {
-    /** A map which associates all pages with their TFIDF vector.  */
-    private Map<Page, double[]> tfidfMap = new TreeMap<>();
+    /** A map which associates all pages with their sparse TFIDF vector.
+     * The ids of the vector are the term ids of the tokens in the term
+     * dictionary. */
+    private Map<Page, SparseVector> tfidfMap = new TreeMap<>();
 
     /**
-     * 
+     * Calculates the normalized TFIDF vector of the page and stores it.
+     * Only the tokens, which are on the page, are stored in the vector, so
+     * the work and memory only depend on the length of the page and not on
+     * the size of the vocabulary.
      * @param page page which should be inserted
      * @param tokenList list of tokens which should be inserted
-     * @param tokenIDFVector vector of all tokens of the index with their
+     * @param terms dictionary of all tokens of the index with their
      * corresponding IDF-Value
      * @return the previous list of tokens associated with the page.
      */
     protected List<String> put(
             Page page, 
             List<String> tokenList,
-            TokenIDF[] tokenIDFVector) {
+            TermDictionary terms) {
         // We call the put of the super class and save the return value to
         // return it later.
         List <String> ret =  super.put(page, tokenList);
-        // create idfVector with the right size
-        double[] tfidfVector = new double[tokenIDFVector.length];
 
-        // calculate the TF-IDF values for the vector.
-        for (int i = 0; i < tokenIDFVector.length; i++) {
-            double tf = Indexer.calcTF(tokenIDFVector[i].token(), page);
-            tfidfVector[i] =tf * tokenIDFVector[i].idf();
+        // count every token in a single pass. The TreeMap is sorted
+        // lexicographically like the term dictionary, so the ids will be
+        // sorted too.
+        Map<String, Integer> tokenCounts = new TreeMap<>();
+        for (String token : tokenList) {
+            tokenCounts.merge(token, 1, Integer::sum);
+        }
+
+        int[] ids = new int[tokenCounts.size()];
+        float[] weights = new float[tokenCounts.size()];
+        int size = 0;
+        for (Map.Entry<String, Integer> tokenCount : tokenCounts.entrySet()) {
+            int id = terms.findTerm(tokenCount.getKey());
+            if (id >= 0) {
+                double tf = (double) tokenCount.getValue() / tokenList.size();
+                ids[size] = id;
+                weights[size] = (float) (tf * terms.idf(id));
+                size++;
+            }
         }
-        // normalize all tfidfVectors to length 1so we can skip a calculation
-        // step later
-        tfidfVector = Indexer.normalizeVector(tfidfVector);
-        tfidfMap.put(page, tfidfVector);
+        // normalize all tfidfVectors to length 1 so we can skip a
+        // calculation step later
+        SparseVector tfidfVector = new SparseVector(Arrays.copyOf(ids, size),
+                                        Arrays.copyOf(weights, size));
+        tfidfMap.put(page, tfidfVector.normalize());
         return ret;
     }
     /**
@@ -45,7 +63,7 @@ public class VecFwdIndex extends FwdIndex {
      * @param page the page object of which the TFIDF vector should be returned
      * @return the TFIDF vector of the page.
      */
-    protected double[] getTFIDFVector(Page page) {
+    protected SparseVector getTFIDFVector(Page page) {
         return tfidfMap.get(page);
     }
 }
@@ -0,0 +1,71 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the crawl pipeline on synthetic nets served by the
+ * IntranetServer.
+ */
+class CrawlPipelineTests {
+
+    static Duration timeout = Duration.ofSeconds(60);
+
+    @BeforeEach
+    void setUp() {
+        Parser.setAnalysisMode(Parser.AnalysisMode.FAST);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Parser.setAnalysisMode(Parser.AnalysisMode.CORENLP);
+    }
+
+    @Test
+    void everyPageIsIndexed() throws IOException {
+        SyntheticNet net = new SyntheticNet(200, 4, 500, 30, 42);
+        try (IntranetServer server = new IntranetServer(net, 2, 0, 0, 0)) {
+            Set<String> indexed = ConcurrentHashMap.newKeySet();
+            CrawlPipeline pipeline = new CrawlPipeline(
+                new Crawler(server.getSeedURLs(), Integer.MAX_VALUE, 4), 2, 2,
+                page -> indexed.add(page.getURL()));
+            assertEquals(200, assertTimeoutPreemptively(timeout,
+                                                        pipeline::run));
+            assertEquals(200, indexed.size());
+        }
+    }
+
+    @Test
+    void failingIndexStageStopsThePipeline() throws IOException {
+        SyntheticNet net = new SyntheticNet(200, 4, 500, 30, 42);
+        try (IntranetServer server = new IntranetServer(net, 2, 0, 0, 0)) {
+            IllegalStateException failure =
+                                    new IllegalStateException("index full");
+            AtomicInteger calls = new AtomicInteger();
+            // the small queues fill up, while the index stage is dead
+            CrawlPipeline pipeline = new CrawlPipeline(
+                new Crawler(server.getSeedURLs(), Integer.MAX_VALUE, 4), 2, 2,
+                page -> {
+                    if (calls.incrementAndGet() == 5) {
+                        throw failure;
+                    }
+                });
+            assertTimeoutPreemptively(timeout, () -> assertSame(failure,
+                assertThrows(IllegalStateException.class, pipeline::run)));
+            assertEquals(5, calls.get());
+            assertEquals(4, pipeline.getIndexCounter().getItems());
+        }
+    }
+}
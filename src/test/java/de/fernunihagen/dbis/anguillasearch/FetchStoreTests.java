@@ -0,0 +1,64 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the store of the fetch metadata.
+ */
+class FetchStoreTests {
+
+    @Test
+    void savedStoreCanBeLoadedAgain(@TempDir final Path dir)
+                                                    throws IOException {
+        FetchStore store = new FetchStore();
+        String hash = FetchStore.hash(
+                        "<html>cheese</html>".getBytes(StandardCharsets.UTF_8));
+        store.put("http://cheese.de", new FetchStore.FetchInfo(
+                        "\"abc\"", "Wed, 21 Oct 2015 07:28:00 GMT", hash, 19,
+                        Set.of("http://cheese.de/a", "http://cheese.de/b")));
+        // a page without headers and links
+        store.put("http://cheese.de/a", new FetchStore.FetchInfo(
+                        null, null, hash, 0, Set.of()));
+        Path file = FetchStore.pathFor(dir.resolve("index.seg"));
+        assertEquals(dir.resolve("index.seg.fetch"), file);
+        store.save(file);
+
+        FetchStore loaded = FetchStore.load(file);
+        assertEquals(2, loaded.size());
+        assertEquals(store.get("http://cheese.de"),
+                     loaded.get("http://cheese.de"));
+        assertEquals(store.get("http://cheese.de/a"),
+                     loaded.get("http://cheese.de/a"));
+        assertNull(loaded.get("http://cheese.de/b"));
+    }
+
+    @Test
+    void retainDropsPagesWhichDoNotMatch() {
+        FetchStore store = new FetchStore();
+        for (String url : new String[] {"http://a.de", "http://b.de"}) {
+            store.put(url, new FetchStore.FetchInfo(null, null, "", 0,
+                                                    Set.of()));
+        }
+        store.retain(url -> url.startsWith("http://a"));
+        assertEquals(1, store.size());
+        assertNull(store.get("http://b.de"));
+    }
+
+    @Test
+    void hashChangesWithTheBody() {
+        byte[] body = "cheese".getBytes(StandardCharsets.UTF_8);
+        assertEquals(FetchStore.hash(body), FetchStore.hash(body.clone()));
+        assertNotEquals(FetchStore.hash(body), FetchStore.hash(
+                        "cheesy".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,75 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the per host frontier of the crawler.
+ */
+class HostFrontierTests {
+
+    @Test
+    void hostsTakeTurns() {
+        HostFrontier frontier = new HostFrontier(10, 0);
+        for (int i = 0; i < 3; i++) {
+            frontier.add("http://big.cheesy1/" + i, 0);
+        }
+        frontier.add("http://small.cheesy1/", 0);
+        assertEquals("http://big.cheesy1/0", frontier.poll(0));
+        assertEquals("http://small.cheesy1/", frontier.poll(0));
+        assertEquals("http://big.cheesy1/1", frontier.poll(0));
+        assertEquals("http://big.cheesy1/2", frontier.poll(0));
+        assertNull(frontier.poll(0));
+        assertTrue(frontier.isEmpty());
+    }
+
+    @Test
+    void hostGetsAtMostMaxRequestsAtOnce() {
+        HostFrontier frontier = new HostFrontier(2, 0);
+        for (int i = 0; i < 3; i++) {
+            frontier.add("http://gouda.cheesy1/" + i, 0);
+        }
+        assertEquals("http://gouda.cheesy1/0", frontier.poll(0));
+        assertEquals("http://gouda.cheesy1/1", frontier.poll(0));
+        // the host has to wait for a fetch, not for a time
+        assertNull(frontier.poll(0));
+        assertEquals(Long.MAX_VALUE, frontier.nanosUntilReady(0));
+        frontier.done("http://gouda.cheesy1/0", 5);
+        assertEquals("http://gouda.cheesy1/2", frontier.poll(5));
+    }
+
+    @Test
+    void hostWaitsForTheDelay() {
+        HostFrontier frontier = new HostFrontier(2, 100);
+        frontier.add("http://brie.cheesy1/a", 0);
+        frontier.add("http://brie.cheesy1/b", 0);
+        assertEquals("http://brie.cheesy1/a", frontier.poll(0));
+        assertNull(frontier.poll(50));
+        assertEquals(50, frontier.nanosUntilReady(50));
+        assertEquals("http://brie.cheesy1/b", frontier.poll(100));
+    }
+
+    @Test
+    void retriedURLWaitsForTheBackoff() {
+        HostFrontier frontier = new HostFrontier(1, 0);
+        frontier.add("http://feta.cheesy1/a", 0);
+        frontier.add("http://feta.cheesy1/b", 0);
+        assertEquals("http://feta.cheesy1/a", frontier.poll(0));
+        frontier.retry("http://feta.cheesy1/a", 1000, 10);
+        assertEquals(2, frontier.size());
+        assertNull(frontier.poll(500));
+        assertEquals(510, frontier.nanosUntilReady(500));
+        // the retried URL is fetched first
+        assertEquals("http://feta.cheesy1/a", frontier.poll(1010));
+    }
+
+    @Test
+    void portIsPartOfTheHost() {
+        assertEquals("cheesy1:8080", HostFrontier.hostOf(
+                                                "http://cheesy1:8080/a"));
+        assertEquals("", HostFrontier.hostOf("no url"));
+    }
+}
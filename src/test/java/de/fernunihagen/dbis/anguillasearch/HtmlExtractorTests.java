@@ -0,0 +1,101 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the streaming HTML extractor, which has to extract the
+ * same text as the jsoup based Parser.extract().
+ */
+class HtmlExtractorTests {
+
+    /**
+     * Asserts that the extractor and jsoup extract the same text.
+     * @param html the page
+     */
+    private static void assertSameAsJsoup(final String html) {
+        PageText expected = Parser.extract(Jsoup.parse(html));
+        PageText actual = HtmlExtractor.extract(html);
+        assertEquals(expected.title(), actual.title());
+        assertEquals(expected.header(), actual.header());
+        assertEquals(expected.content(), actual.content());
+        assertEquals(expected.links(), actual.links());
+    }
+
+    @Test
+    void intranetPage() {
+        assertSameAsJsoup("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n"
+            + "  <meta charset=\"UTF-8\">\n  <title>Cheese  Shop</title>\n"
+            + "</head>\n<body>\n  <header>\n    <h1>Welcome to the shop"
+            + "</h1>\n  </header>\n  <main>\n    <p>We sell <b>gouda</b> "
+            + "and brie.</p><p>Visit\n<a href=\"http://brie.cheesy1\">"
+            + "brie</a> today.</p>\n    <ul><li>one</li><li>two</li></ul>"
+            + "\n  </main>\n</body>\n</html>\n");
+    }
+
+    @Test
+    void linksAreKeptRawAndAnchorTextIsSkipped() {
+        PageText text = HtmlExtractor.extract("<main>before<A HREF=page2>"
+            + "link <i>text</i></A>after<a>no target</a><a href='x&amp;y'"
+            + " href=\"second\">z</a></main>");
+        assertEquals(Set.of("page2", "", "x&y"), text.links());
+        assertEquals("beforeafter", text.content());
+        assertSameAsJsoup("<main>before<A HREF=page2>link <i>text</i></A>"
+            + "after<a>no target</a><a href='x&amp;y' href=\"second\">z</a>"
+            + "</main>");
+    }
+
+    @Test
+    void scriptsStylesAndCommentsAreSkipped() {
+        assertSameAsJsoup("<title>T</title><main>a<!-- <b>hidden</b> -->b"
+            + "<script>if (a < b) { x = '</main>'; }</script>c"
+            + "<style>p > b { color: red }</style>d</main>");
+    }
+
+    @Test
+    void characterReferencesAreDecoded() {
+        assertSameAsJsoup("<title>Fish &amp; Chips</title><main>&lt;tag&gt;"
+            + " caf&eacute; &#233;&#xE9; &unknown; a&b &nbsp;x &copy;"
+            + "</main>");
+    }
+
+    @Test
+    void blocksSeperateWords() {
+        assertSameAsJsoup("<main><div>one</div><div>two</div>three<br>four"
+            + "<span>five</span><p>six</p></main>");
+    }
+
+    @Test
+    void allHeadersAndMainsAreCollected() {
+        assertSameAsJsoup("<header>first</header><p>out</p>"
+            + "<header>second <a href=\"/h\">link</a></header><main>one"
+            + "</main><p>between</p><main>two</main>");
+    }
+
+    @Test
+    void lessThanWithoutTagIsText() {
+        assertSameAsJsoup("<main>1 < 2 and 3 <= 4</main>");
+    }
+
+    @Test
+    void charsetIsDetectedFromMetaElement() throws IOException {
+        String html = "<html><head><meta charset=\"iso-8859-1\"><title>"
+                      + "Käse</title></head></html>";
+        PageText text = HtmlExtractor.extract(new ByteArrayInputStream(
+                            html.getBytes(StandardCharsets.ISO_8859_1)),
+                            null);
+        assertEquals("Käse", text.title());
+        PageText utf8 = HtmlExtractor.extract(new ByteArrayInputStream(
+                            "<title>Käse</title>".getBytes(
+                                                StandardCharsets.UTF_8)),
+                            null);
+        assertEquals("Käse", utf8.title());
+    }
+}
@@ -0,0 +1,109 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for saving and loading the index.
+ */
+class IndexSegmentTests {
+
+    static Indexer index;
+    static String[] queries = {"house", "garden pool", "swim swim pool",
+                               "house garden pool swim", "cheese"};
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        List<Page> pageList = Utils.loadTestPages(
+                                    "src/test/resources/tf-idf/pages");
+        index = new Indexer(pageList);
+    }
+
+    @Test
+    void loadedIndexFindsTheSameResults(@TempDir final Path dir)
+                                                    throws IOException {
+        Path file = dir.resolve("index.seg");
+        index.save(file);
+        Indexer loaded = new Indexer(file);
+        assertEquals(index.getPagesIndexed(), loaded.getPagesIndexed());
+        for (String query : queries) {
+            for (int mode = 0; mode <= 3; mode++) {
+                List<SearchResult> expected = index.searchQuery(query, mode);
+                List<SearchResult> actual = loaded.searchQuery(query, mode);
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).url(), actual.get(i).url());
+                    assertEquals(expected.get(i).score(),
+                                 actual.get(i).score());
+                    assertEquals(expected.get(i).page().getContent(),
+                                 actual.get(i).page().getContent());
+                }
+            }
+        }
+        assertEquals(index.getReverseIndexValues("house").keySet(),
+                     loaded.getReverseIndexValues("house").keySet());
+        assertNull(loaded.getReverseIndexValues("cheese"));
+    }
+
+    @Test
+    void savedIndexIsTheSameEveryTime(@TempDir final Path dir)
+                                                    throws IOException {
+        Path first = dir.resolve("first.seg");
+        Path second = dir.resolve("second.seg");
+        index.save(first);
+        new Indexer(first).save(second);
+        assertEquals(-1, Files.mismatch(first, second));
+    }
+
+    @Test
+    void mappedIndexHasTheSameValues(@TempDir final Path dir)
+                                                    throws IOException {
+        Path file = dir.resolve("index.seg");
+        index.save(file);
+        Indexer mapped = new Indexer(file);
+        for (String token : new String[] {"house", "garden", "pool", "swim",
+                                          "cheese"}) {
+            assertEquals(index.calcIDF(token), mapped.calcIDF(token));
+            Map<String, Page> pages = index.getReverseIndexValues(token);
+            if (pages == null) {
+                continue;
+            }
+            for (Page page : pages.values()) {
+                assertEquals(index.calcTFIDF(token, page),
+                             mapped.calcTFIDF(token, page));
+            }
+        }
+    }
+
+    @Test
+    void invalidFilesAreRejected(@TempDir final Path dir)
+                                                    throws IOException {
+        Path noSegment = dir.resolve("page.json");
+        Files.writeString(noSegment, "{\"url\": \"http://house.test\"}");
+        assertThrows(IOException.class, () -> new Indexer(noSegment));
+
+        Path segment = dir.resolve("index.seg");
+        index.save(segment);
+        byte[] bytes = Files.readAllBytes(segment);
+        Path truncated = dir.resolve("truncated.seg");
+        Files.write(truncated, java.util.Arrays.copyOf(bytes,
+                                                       bytes.length / 2));
+        assertThrows(IOException.class, () -> new Indexer(truncated));
+
+        Path extended = dir.resolve("extended.seg");
+        Files.write(extended, java.util.Arrays.copyOf(bytes,
+                                                      bytes.length + 8));
+        assertThrows(IOException.class, () -> new Indexer(extended));
+    }
+}
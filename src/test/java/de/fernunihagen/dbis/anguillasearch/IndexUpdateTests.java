@@ -0,0 +1,295 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for adding, replacing and deleting pages of a built index.
+ */
+class IndexUpdateTests {
+
+    static List<Page> pageList;
+    static String[] queries = {"house", "garden pool", "swim swim pool",
+                               "house garden pool swim", "cheese", "brie",
+                               "brie feta"};
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        pageList = Utils.loadTestPages("src/test/resources/tf-idf/pages");
+    }
+
+    /**
+     * Returns the score of every page found by the queries.
+     * @param index the index
+     * @param mode the ranking method
+     * @return the scores by URL for every query.
+     */
+    static Map<String, Map<String, Double>> resultsOf(final Indexer index,
+                                                      final int mode) {
+        return resultsOf(index, mode, queries);
+    }
+
+    /**
+     * Returns the score of every page found by the queries.
+     * @param index the index
+     * @param mode the ranking method
+     * @param searched the queries
+     * @return the scores by URL for every query.
+     */
+    static Map<String, Map<String, Double>> resultsOf(final Indexer index,
+                                                      final int mode,
+                                                      final String[] searched) {
+        Map<String, Map<String, Double>> results = new TreeMap<>();
+        for (String query : searched) {
+            Map<String, Double> scores = new TreeMap<>();
+            for (SearchResult result : index.searchQuery(query, mode)) {
+                assertTrue(Double.isFinite(result.score()));
+                scores.put(result.url(), result.score());
+            }
+            results.put(query, scores);
+        }
+        return results;
+    }
+
+    /**
+     * Checks that the same pages are found with the same scores.
+     * The order of pages with almost the same score is not compared, since
+     * the weights may be rounded differently.
+     * @param expected the scores by URL for every query
+     * @param actual the scores by URL for every query
+     * @param mode the ranking method
+     */
+    static void assertSameScores(
+                        final Map<String, Map<String, Double>> expected,
+                        final Map<String, Map<String, Double>> actual,
+                        final int mode) {
+        for (String query : expected.keySet()) {
+            Map<String, Double> e = expected.get(query);
+            Map<String, Double> a = actual.get(query);
+            assertEquals(e.keySet(), a.keySet(), query);
+            for (String url : e.keySet()) {
+                assertEquals(e.get(url), a.get(url), 1e-6,
+                             "mode " + mode + ", " + query + ", " + url);
+            }
+        }
+    }
+
+    /**
+     * Checks that both indexes find the same pages with the same scores.
+     * @param expected the index built from all pages
+     * @param actual the updated index
+     * @param mode the ranking method
+     */
+    static void assertSameResults(final Indexer expected,
+                                  final Indexer actual, final int mode) {
+        assertEquals(expected.getPagesIndexed(), actual.getPagesIndexed());
+        assertSameScores(resultsOf(expected, mode), resultsOf(actual, mode),
+                         mode);
+    }
+
+    /**
+     * Checks that the updated index finds the same pages with the same
+     * scores as the rebuilt index, before and after merging its segments.
+     * The PageRank is calculated again by the merge, so before it the
+     * combination with PageRank only finds the same pages.
+     * @param rebuilt the index built from all pages
+     * @param updated the updated index, which is merged
+     */
+    static void assertSameResultsBeforeAndAfterMerge(final Indexer rebuilt,
+                                                     final Indexer updated) {
+        for (int mode : new int[] {0, 1, 3}) {
+            assertSameResults(rebuilt, updated, mode);
+        }
+        Map<String, Map<String, Double>> expected = resultsOf(rebuilt, 2);
+        Map<String, Map<String, Double>> combined = resultsOf(updated, 2);
+        for (String query : expected.keySet()) {
+            assertEquals(expected.get(query).keySet(),
+                         combined.get(query).keySet(), query);
+        }
+        updated.merge();
+        for (int mode = 0; mode <= 3; mode++) {
+            assertSameResults(rebuilt, updated, mode);
+        }
+    }
+
+    @Test
+    void addedPagesAreFoundLikeInARebuiltIndex() {
+        int split = pageList.size() / 2;
+        Indexer updated = new Indexer(new ArrayList<>(
+                                            pageList.subList(0, split)));
+        updated.addPages(pageList.subList(split, pageList.size()));
+        Indexer rebuilt = new Indexer(new ArrayList<>(pageList));
+        for (String token : List.of("house", "garden", "pool", "cheese")) {
+            assertEquals(rebuilt.calcIDF(token), updated.calcIDF(token),
+                         1e-12);
+        }
+        assertSameResultsBeforeAndAfterMerge(rebuilt, updated);
+    }
+
+    @Test
+    void tokenOnEveryPageOfASegmentIsWeightedAfterAdding() {
+        // brie has an IDF of 0 in the first segment, its stored weights
+        // are 0
+        List<Page> pages = List.of(
+            new Page("http://a.local", "Brie", "brie cheese", "creamy brie",
+                     Set.of()),
+            new Page("http://b.local", "Brie", "brie gouda", "aged brie",
+                     Set.of()),
+            new Page("http://c.local", "Feta", "feta", "salty feta",
+                     Set.of()));
+        Indexer updated = new Indexer(new ArrayList<>(pages.subList(0, 2)));
+        updated.addPages(pages.subList(2, 3));
+        Indexer rebuilt = new Indexer(new ArrayList<>(pages));
+        for (SearchResult result : updated.searchQuery("brie", 1)) {
+            assertTrue(result.score() > 0);
+        }
+        assertSameResultsBeforeAndAfterMerge(rebuilt, updated);
+    }
+
+    @Test
+    void pagesAddedOneByOneAreMerged() {
+        Indexer updated = new Indexer(new ArrayList<>(
+                                            pageList.subList(0, 1)));
+        for (Page page : pageList.subList(1, pageList.size())) {
+            updated.addPages(List.of(page));
+        }
+        assertSameResults(new Indexer(new ArrayList<>(pageList)), updated, 0);
+    }
+
+    @Test
+    void deletedPagesAreNotFound() {
+        Indexer updated = new Indexer(new ArrayList<>(pageList));
+        Page deleted = pageList.get(0);
+        updated.deletePages(List.of(deleted.getURL()));
+        Indexer rebuilt = new Indexer(new ArrayList<>(
+                                    pageList.subList(1, pageList.size())));
+        for (String query : queries) {
+            for (String url : updated.search(query, 1)) {
+                assertFalse(url.equals(deleted.getURL()));
+            }
+        }
+        assertSameResultsBeforeAndAfterMerge(rebuilt, updated);
+    }
+
+    @Test
+    void loadedIndexIsUpdatedLikeARebuiltIndex(@TempDir final Path dir)
+                                                    throws IOException {
+        int split = pageList.size() / 2;
+        Path file = dir.resolve("index.seg");
+        new Indexer(new ArrayList<>(pageList.subList(0, split))).save(file);
+        Indexer updated = new Indexer(file);
+        updated.addPages(pageList.subList(split, pageList.size()));
+        // a page of the loaded and one of the added segment
+        updated.deletePages(List.of(pageList.get(0).getURL(),
+                            pageList.get(pageList.size() - 1).getURL()));
+        Indexer rebuilt = new Indexer(new ArrayList<>(
+                                pageList.subList(1, pageList.size() - 1)));
+        assertSameResultsBeforeAndAfterMerge(rebuilt, updated);
+    }
+
+    @Test
+    void repeatedUpdatesAreWeightedLikeARebuiltIndex() {
+        Parser.setAnalysisMode(Parser.AnalysisMode.FAST);
+        try {
+            // cheese is on almost every page, the others on fewer
+            String[] searched = {"cheese", "brie", "aged gouda",
+                                 "farm cows milk", "nutty sharp blue",
+                                 "wine bread"};
+            Random random = new Random(11);
+            List<Page> pages = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                pages.add(new Page(SyntheticCorpus.urlOf(i), "", "",
+                                   SyntheticCorpus.words(random, 20, 60),
+                                   Set.of()));
+            }
+            Map<String, Page> indexed = new TreeMap<>();
+            for (Page page : pages.subList(0, 40)) {
+                indexed.put(page.getURL(), page);
+            }
+            Indexer updated = new Indexer(new ArrayList<>(indexed.values()));
+            // every step adds two pages and deletes one, so the document
+            // frequencies change again and again before the merge
+            for (int step = 0; step < 10; step++) {
+                List<Page> added = pages.subList(40 + 2 * step,
+                                                 42 + 2 * step);
+                updated.addPages(added);
+                for (Page page : added) {
+                    indexed.put(page.getURL(), page);
+                }
+                String deletedURL = SyntheticCorpus.urlOf(3 * step);
+                updated.deletePages(List.of(deletedURL));
+                indexed.remove(deletedURL);
+                Indexer rebuilt = new Indexer(new ArrayList<>(
+                                                    indexed.values()));
+                for (int mode : new int[] {0, 1, 3}) {
+                    assertSameScores(resultsOf(rebuilt, mode, searched),
+                                     resultsOf(updated, mode, searched),
+                                     mode);
+                }
+            }
+        } finally {
+            Parser.setAnalysisMode(Parser.AnalysisMode.CORENLP);
+        }
+    }
+
+    @Test
+    void updateReplacesChangedAndDeletesMissingPages() {
+        Indexer updated = new Indexer(new ArrayList<>(pageList));
+        List<Page> crawled = new ArrayList<>(
+                                    pageList.subList(1, pageList.size()));
+        Page changed = crawled.get(0);
+        crawled.set(0, new Page(changed.getURL(), changed.getTitle(),
+                                changed.getHeader(), "cheese",
+                                changed.getLinks()));
+        // one page is replaced and one deleted
+        assertEquals(2, updated.update(crawled));
+        assertEquals(crawled.size(), updated.getPagesIndexed());
+        assertEquals(List.of(changed.getURL()), updated.search("cheese", 0));
+        assertSameResults(new Indexer(crawled), updated, 0);
+        // nothing changed
+        assertEquals(0, updated.update(crawled));
+        // only the links changed, they are needed for the PageRank
+        Page relinked = crawled.get(1);
+        Set<String> links = new HashSet<>(relinked.getLinks());
+        if (!links.remove(changed.getURL())) {
+            links.add(changed.getURL());
+        }
+        crawled.set(1, new Page(relinked.getURL(), relinked.getTitle(),
+                                relinked.getHeader(), relinked.getContent(),
+                                links));
+        assertEquals(1, updated.update(crawled));
+        updated.merge();
+        assertSameResults(new Indexer(crawled), updated, 2);
+    }
+
+    @Test
+    void updatedIndexIsSavedMerged(@TempDir final Path dir)
+                                                    throws IOException {
+        int split = pageList.size() / 2;
+        Indexer updated = new Indexer(new ArrayList<>(
+                                            pageList.subList(0, split)));
+        updated.addPages(pageList.subList(split, pageList.size()));
+        updated.deletePages(List.of(pageList.get(0).getURL()));
+        Path file = dir.resolve("index.seg");
+        updated.save(file);
+        Indexer loaded = new Indexer(file);
+        for (int mode = 0; mode <= 3; mode++) {
+            assertSameResults(updated, loaded, mode);
+        }
+    }
+}
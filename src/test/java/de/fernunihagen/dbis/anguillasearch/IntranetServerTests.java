@@ -0,0 +1,78 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Crawls synthetic nets served by the IntranetServer, so the crawler is
+ * tested without the intranet.
+ */
+class IntranetServerTests {
+
+    @Test
+    void crawlerFetchesTheWholeNet(@TempDir final Path dir)
+            throws IOException {
+        SyntheticNet net = new SyntheticNet(300, 8, 500, 30, 42);
+        try (IntranetServer server = new IntranetServer(net, 3, 0, 0, 0)) {
+            Path file = dir.resolve("net.json");
+            server.writeJson(file);
+            JsonObject json = Utils.parseJSONFile(file.toString());
+            String[] seedURLs = new Gson().fromJson(json.get("Seed-URLs"),
+                                                    String[].class);
+            Map<String, PageText> fetched = new ConcurrentHashMap<>();
+            Crawler crawler = new Crawler(seedURLs, Integer.MAX_VALUE, 8);
+            assertEquals(300, crawler.fetchAll(fetched::put));
+            assertEquals(json.get("Num-Websites").getAsInt(), fetched.size());
+            assertEquals(json.get("Num-Links").getAsInt(),
+                         crawler.getNumLinks());
+            assertEquals(300, server.getNumRequests());
+            String html = net.toHTML(42, server::urlOf);
+            assertEquals(HtmlExtractor.extract(html),
+                         fetched.get(server.urlOf(42)));
+        }
+    }
+
+    @Test
+    void failedRequestsAreRetried() throws IOException {
+        SyntheticNet net = new SyntheticNet(40, 4, 100, 10, 42);
+        try (IntranetServer server = new IntranetServer(net, 2, 1, 1, 0.1)) {
+            Crawler crawler = new Crawler(server.getSeedURLs(),
+                                          Integer.MAX_VALUE, 4);
+            int fetched = crawler.fetchAll((url, text) -> { });
+            assertTrue(server.getNumFailures() > 0);
+            assertEquals(fetched + server.getNumFailures(),
+                         server.getNumRequests());
+            // a page is only given up after failing MAX_ATTEMPTS times
+            assertTrue(fetched >= 40 - server.getNumFailures()
+                                        / Crawler.MAX_ATTEMPTS);
+        }
+    }
+
+    @Test
+    void failuresAreReproducible() throws IOException {
+        SyntheticNet net = new SyntheticNet(20, 4, 100, 10, 42);
+        long[] failures = new long[2];
+        for (int run = 0; run < 2; run++) {
+            try (IntranetServer server = new IntranetServer(net, 1, 0, 0,
+                                                            0.2)) {
+                Crawler crawler = new Crawler(server.getSeedURLs(),
+                                              Integer.MAX_VALUE, 1);
+                crawler.fetchAll((url, text) -> { });
+                failures[run] = server.getNumFailures();
+            }
+        }
+        assertTrue(failures[0] > 0);
+        assertEquals(failures[0], failures[1]);
+    }
+}
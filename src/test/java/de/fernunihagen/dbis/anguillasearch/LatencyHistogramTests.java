@@ -0,0 +1,59 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the latency histogram.
+ */
+class LatencyHistogramTests {
+
+    @Test
+    void emptyHistogramHasNoLatency() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0.0, histogram.percentileMillis(99));
+        assertEquals(0.0, histogram.maxMillis());
+    }
+
+    @Test
+    void smallLatenciesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 10; micros++) {
+            histogram.record(micros * 1000L);
+        }
+        assertEquals(10, histogram.count());
+        assertEquals(0.005, histogram.percentileMillis(50), 1e-12);
+        assertEquals(0.010, histogram.percentileMillis(100), 1e-12);
+        assertEquals(0.010, histogram.maxMillis(), 1e-12);
+    }
+
+    @Test
+    void percentilesAreCloseToTheExactOnes() {
+        Random random = new Random(42);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] micros = new long[10_000];
+        for (int i = 0; i < micros.length; i++) {
+            // log-normal like latencies from microseconds to seconds
+            micros[i] = (long) Math.exp(random.nextGaussian() * 2 + 7);
+            histogram.record(micros[i] * 1000);
+        }
+        Arrays.sort(micros);
+        for (double percent : new double[] {50, 90, 99, 99.9}) {
+            double exact = micros[(int) Math.ceil(percent / 100
+                                                  * micros.length) - 1]
+                           / 1000.0;
+            double approx = histogram.percentileMillis(percent);
+            assertTrue(approx >= exact, percent + ": " + approx);
+            assertTrue(approx <= exact * (1 + 1.0 / 16), percent + ": "
+                                                          + approx);
+        }
+        assertEquals(micros[micros.length - 1] / 1000.0,
+                     histogram.maxMillis(), 1e-12);
+    }
+}
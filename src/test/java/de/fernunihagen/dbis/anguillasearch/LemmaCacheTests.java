@@ -0,0 +1,66 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the lemma cache and its use by the lemma table.
+ */
+class LemmaCacheTests {
+
+    @Test
+    void lemmaIsComputedOnce() {
+        LemmaCache cache = new LemmaCache();
+        AtomicInteger computed = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("cheese", cache.lemma("cheeses", word -> {
+                computed.incrementAndGet();
+                return "cheese";
+            }));
+        }
+        assertEquals(1, computed.get());
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void cacheIsBounded() {
+        LemmaCache cache = new LemmaCache(4);
+        for (int i = 0; i < 100; i++) {
+            cache.lemma("word" + i, word -> word);
+        }
+        assertTrue(cache.size() <= 8);
+        assertEquals(100, cache.misses());
+    }
+
+    @Test
+    void usedWordsSurviveRotation() {
+        LemmaCache cache = new LemmaCache(2);
+        cache.lemma("gouda", word -> word);
+        cache.lemma("brie", word -> word);
+        // the young generation is full and becomes the old one
+        cache.lemma("feta", word -> word);
+        // found in the old generation and moved to the young one
+        cache.lemma("gouda", word -> word);
+        cache.lemma("edam", word -> word);
+        cache.lemma("gouda", word -> word);
+        assertEquals(2, cache.hits());
+    }
+
+    @Test
+    void recordedWordIsLemmatizedAgain() {
+        LemmaTable table = new LemmaTable();
+        table.record("saw", "see");
+        assertEquals("see", table.lemma("saw"));
+        table.record("saw", "saw");
+        table.record("saw", "saw");
+        assertEquals("saw", table.lemma("saw"));
+        assertEquals(0, table.getCache().hits());
+        assertEquals("saw", table.lemma("saw"));
+        assertEquals(1, table.getCache().hits());
+    }
+}
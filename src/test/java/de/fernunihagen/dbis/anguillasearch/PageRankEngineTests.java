@@ -0,0 +1,147 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the PageRank engine with a straightforward implementation on
+ * random link graphs, which do not need the intranet.
+ */
+class PageRankEngineTests {
+
+    /**
+     * Creates pages with random links between them. The pages are not
+     * lemmatized.
+     */
+    static List<Page> randomPages(final int numPages, final long seed) {
+        Random random = new Random(seed);
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < numPages; i++) {
+            Set<String> links = new HashSet<>();
+            int numLinks = random.nextInt(6);
+            for (int j = 0; j < numLinks; j++) {
+                links.add("http://page" + random.nextInt(numPages) + ".test");
+            }
+            pages.add(new Page("http://page" + i + ".test", "", "", "", links,
+                               true));
+        }
+        return pages;
+    }
+
+    /**
+     * Calculates the pageranks with maps, like the formula is written.
+     */
+    static Map<String, Double> naivePageRank(final List<Page> pages) {
+        Map<String, Set<String>> inbound = new HashMap<>();
+        for (Page page : pages) {
+            inbound.put(page.getURL(), new HashSet<>());
+        }
+        Map<String, Integer> outbound = new HashMap<>();
+        for (Page page : pages) {
+            outbound.put(page.getURL(), page.getLinks().size());
+            for (String link : page.getLinks()) {
+                inbound.get(link).add(page.getURL());
+            }
+        }
+        double n = 1.0 / pages.size();
+        Map<String, Double> ranks = new HashMap<>();
+        for (Page page : pages) {
+            ranks.put(page.getURL(), n);
+        }
+        double delta;
+        int iteration = 0;
+        do {
+            Map<String, Double> newRanks = new HashMap<>();
+            delta = 0;
+            for (String url : ranks.keySet()) {
+                double rank = (1 - PageRank.DAMPING_FACTOR) * n;
+                for (String linking : inbound.get(url)) {
+                    rank += PageRank.DAMPING_FACTOR * ranks.get(linking)
+                            / outbound.get(linking);
+                }
+                delta += Math.abs(ranks.get(url) - rank);
+                newRanks.put(url, rank);
+            }
+            ranks = newRanks;
+            iteration++;
+        } while (delta > PageRank.EPSILON
+                 && iteration < PageRank.MAXPAGERANKIT);
+        return ranks;
+    }
+
+    @Test
+    void sameRanksAsNaiveImplementation() {
+        for (long seed = 1; seed <= 5; seed++) {
+            List<Page> pages = randomPages(300, seed);
+            Map<String, Double> expected = naivePageRank(pages);
+            Map<String, Double> actual = new PageRank(pages).getPageRankMap();
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Map.Entry<String, Double> entry : expected.entrySet()) {
+                assertTrue(Math.abs(entry.getValue()
+                                    - actual.get(entry.getKey()))
+                           < PageRank.EPSILON);
+            }
+        }
+    }
+
+    @Test
+    void parallelRanksEqualSequentialRanks() {
+        // enough pages for several chunks
+        List<Page> pages = randomPages(5 * PageRank.CHUNK_SIZE + 17, 11);
+        double[] expected = new PageRank(pages).getPageRanks();
+        for (int threads = 1; threads <= 4; threads++) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                assertArrayEquals(expected,
+                                  new PageRank(pages, pool).getPageRanks());
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void inboundLinksAreCounted() {
+        List<Page> pages = randomPages(100, 7);
+        int total = 0;
+        Map<String, Integer> inboundCount = new HashMap<>();
+        for (Page page : pages) {
+            for (String link : page.getLinks()) {
+                inboundCount.merge(link, 1, Integer::sum);
+                total++;
+            }
+        }
+        PageRank pageRank = new PageRank(pages);
+        assertEquals(total, pageRank.getTotalInBoundLinks());
+        for (Page page : pages) {
+            assertEquals(inboundCount.getOrDefault(page.getURL(), 0),
+                         pageRank.getNumInboundLinks(page.getURL()));
+        }
+        assertEquals(-1, pageRank.getNumInboundLinks("http://unknown.test"));
+    }
+
+    @Test
+    void pageRanksFollowURLOrder() {
+        List<Page> pages = randomPages(50, 3);
+        PageRank pageRank = new PageRank(pages);
+        double[] ranks = pageRank.getPageRanks();
+        int i = 0;
+        // the map is sorted by URL
+        for (double rank : pageRank.getPageRankMap().values()) {
+            assertEquals(rank, ranks[i]);
+            i++;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the parallel construction of the index.
+ */
+class ParallelIndexBuilderTests {
+
+    /**
+     * Saves the index and returns the bytes of the file.
+     * @param index the index
+     * @param file the file
+     * @return the bytes of the saved index.
+     */
+    static byte[] bytesOf(final Indexer index, final Path file)
+            throws IOException {
+        index.save(file);
+        return Files.readAllBytes(file);
+    }
+
+    /**
+     * Asserts that the index built with 1 to 8 threads is saved byte for
+     * byte like the index built in the calling thread.
+     * @param pageList the pages
+     * @param tmpDir directory of the saved indexes
+     */
+    static void assertSameAsSingleThreaded(final List<Page> pageList,
+                                           final Path tmpDir)
+            throws IOException {
+        byte[] expected = bytesOf(new Indexer(pageList, null),
+                                  tmpDir.resolve("single.idx"));
+        for (int threads : new int[] {1, 2, 3, 8}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                Indexer index = new Indexer(pageList, pool);
+                assertEquals(pageList.size(), index.getPagesIndexed());
+                assertArrayEquals(expected, bytesOf(index, tmpDir.resolve(
+                                                    threads + ".idx")),
+                                  threads + " threads");
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void testPagesAreIndexedLikeSingleThreaded(@TempDir final Path tmpDir)
+            throws IOException {
+        List<Page> pageList = Utils.loadTestPages(
+                                    "src/test/resources/tf-idf/pages");
+        assertSameAsSingleThreaded(pageList, tmpDir);
+    }
+
+    @Test
+    void slicesAreMergedLikeSingleThreaded(@TempDir final Path tmpDir)
+            throws IOException {
+        Parser.setAnalysisMode(Parser.AnalysisMode.FAST);
+        try {
+            // enough pages for several slices, with rare tokens, which are
+            // only in some slices, and pages without any token
+            Random random = new Random(7);
+            List<Page> pageList = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                String content = i % 97 == 0 ? ""
+                                 : SyntheticCorpus.words(random, 50, 5000);
+                pageList.add(new Page(SyntheticCorpus.urlOf(i), "", "",
+                                      content, Set.of(
+                                          SyntheticCorpus.urlOf(i / 2))));
+            }
+            assertSameAsSingleThreaded(pageList, tmpDir);
+        } finally {
+            Parser.setAnalysisMode(Parser.AnalysisMode.CORENLP);
+        }
+    }
+}
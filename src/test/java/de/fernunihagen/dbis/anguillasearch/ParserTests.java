@@ -0,0 +1,130 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Unit tests for the tokenizing and lemmatizing of the parser.
+ */
+class ParserTests {
+    static List<String> testStrings = new ArrayList<>();
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        List<JsonObject> testPages = Utils.parseAllJSONFiles(
+                java.util.Optional.of("src/test/resources/tf-idf/pages"));
+        for (JsonObject testPage : testPages) {
+            testStrings.add(testPage.get("title").getAsString());
+            testStrings.add(testPage.get("headings").getAsString());
+            testStrings.add(testPage.get("paragraphs").getAsString());
+        }
+        testStrings.add("Welcome to our exquisite selection of artisanal "
+            + "cheeses! Explore the rich flavors and unique textures");
+        testStrings.add("");
+        testStrings.add("The leaves of the cheese's rind were running out.");
+    }
+
+    @Test
+    void batchEqualsSingleCalls() {
+        List<List<String>> batchLemmas = Parser.tokLemBatch(testStrings);
+        assertEquals(testStrings.size(), batchLemmas.size());
+        for (int i = 0; i < testStrings.size(); i++) {
+            assertEquals(Parser.tokLem(testStrings.get(i)), batchLemmas.get(i));
+        }
+    }
+
+    @Test
+    void fastModeWithLearnedTableEqualsCoreNLP(@TempDir final Path tmpDir)
+                                                        throws IOException {
+        LemmaTable oldTable = Parser.getLemmaTable();
+        try {
+            // lemmatizing with CoreNLP while recording fills the table
+            Parser.setLemmaTable(new LemmaTable());
+            Parser.setRecordLemmas(true);
+            List<List<String>> expected = new ArrayList<>();
+            for (String testString : testStrings) {
+                expected.add(Parser.tokLem(testString));
+            }
+            Parser.setRecordLemmas(false);
+            Path tablePath = tmpDir.resolve("lemma-table.tsv");
+            Parser.getLemmaTable().save(tablePath);
+            assertTrue(Files.size(tablePath) > 0);
+
+            Parser.setLemmaTable(LemmaTable.load(tablePath));
+            Parser.setAnalysisMode(Parser.AnalysisMode.FAST);
+            for (int i = 0; i < testStrings.size(); i++) {
+                assertEquals(expected.get(i), Parser.tokLem(testStrings.get(i)));
+            }
+        } finally {
+            Parser.setRecordLemmas(false);
+            Parser.setAnalysisMode(Parser.AnalysisMode.CORENLP);
+            Parser.setLemmaTable(oldTable);
+        }
+    }
+
+    @Test
+    void lemmasAreNotRecordedByDefault() {
+        LemmaTable oldTable = Parser.getLemmaTable();
+        try {
+            Parser.setLemmaTable(new LemmaTable());
+            assertFalse(Parser.isRecordingLemmas());
+            Parser.tokLem(testStrings.get(0));
+            assertEquals(0, Parser.getLemmaTable().size());
+        } finally {
+            Parser.setLemmaTable(oldTable);
+        }
+    }
+
+    @Test
+    void ruleLemmaWithoutTable() {
+        assertEquals("cheese", LemmaTable.ruleLemma("cheeses"));
+        assertEquals("run", LemmaTable.ruleLemma("running"));
+        assertEquals("grass", LemmaTable.ruleLemma("grass"));
+    }
+
+    @Test
+    void concurrentCallsEqualSequentialCalls()
+                            throws InterruptedException, ExecutionException {
+        List<List<String>> expected = new ArrayList<>();
+        for (String testString : testStrings) {
+            expected.add(Parser.tokLem(testString));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            // every thread lemmatizes all strings several times
+            List<Future<List<List<String>>>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(pool.submit(() -> {
+                    List<List<String>> result = new ArrayList<>();
+                    for (String testString : testStrings) {
+                        result.add(Parser.tokLem(testString));
+                    }
+                    return result;
+                }));
+            }
+            for (Future<List<List<String>>> future : futures) {
+                assertEquals(expected, future.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the compressed postings.
+ */
+class PostingsCodecTests {
+
+    /**
+     * Creates postings with random gaps, some of them larger than one byte.
+     * @param size number of postings
+     * @return the postings.
+     */
+    static PostingsList randomPostings(final int size) {
+        Random random = new Random(size);
+        PostingsList postings = new PostingsList();
+        int docId = random.nextInt(3);
+        for (int i = 0; i < size; i++) {
+            int tf = 1 + random.nextInt(i % 7 == 0 ? 1000 : 5);
+            postings.add(docId, tf, 1000, 0.5f);
+            docId += 1 + random.nextInt(i % 5 == 0 ? 100_000 : 10);
+        }
+        postings.trim();
+        return postings;
+    }
+
+    @Test
+    void blocksAreDecodedLikeTheyWereEncoded() {
+        for (int size : new int[] {0, 1, 3, Postings.BLOCK_SIZE,
+                                   Postings.BLOCK_SIZE + 1, 1000}) {
+            PostingsList postings = randomPostings(size);
+            // the postings do not start at the beginning of the buffer
+            byte[] encoded = PostingsCodec.encode(postings);
+            ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 3);
+            buffer.put(3, encoded, 0, encoded.length);
+
+            int[] expectedDocIds = new int[Postings.BLOCK_SIZE];
+            int[] expectedTfs = new int[Postings.BLOCK_SIZE];
+            int[] docIds = new int[Postings.BLOCK_SIZE];
+            int[] tfs = new int[Postings.BLOCK_SIZE];
+            for (int b = 0; b < postings.numBlocks(); b++) {
+                int expected = postings.readBlock(b, expectedDocIds,
+                                                  expectedTfs);
+                assertEquals(expected, PostingsCodec.readBlock(buffer, 3,
+                                                size, b, docIds, tfs));
+                assertTrue(Arrays.equals(expectedDocIds, 0, expected,
+                                         docIds, 0, expected));
+                assertTrue(Arrays.equals(expectedTfs, 0, expected,
+                                         tfs, 0, expected));
+            }
+            for (int i = 0; i < size; i++) {
+                assertEquals(postings.docId(i),
+                             PostingsCodec.docId(buffer, 3, size, i));
+                assertEquals(postings.tf(i),
+                             PostingsCodec.tf(buffer, 3, size, i));
+            }
+        }
+    }
+
+    @Test
+    void findMatchesBinarySearch() {
+        int size = 3 * Postings.BLOCK_SIZE + 17;
+        PostingsList postings = randomPostings(size);
+        ByteBuffer buffer = ByteBuffer.wrap(PostingsCodec.encode(postings));
+        for (int i = 0; i < size; i++) {
+            // the doc id and the gaps next to it
+            for (int docId = postings.docId(i) - 1;
+                 docId <= postings.docId(i) + 1; docId++) {
+                assertEquals(postings.find(docId),
+                             PostingsCodec.find(buffer, 0, size, docId));
+            }
+        }
+    }
+
+    @Test
+    void compressedPostingsAreSmaller() {
+        PostingsList postings = randomPostings(1000);
+        // less than half of a doc id and a term frequency as int
+        assertTrue(PostingsCodec.encode(postings).length
+                   < postings.size() * Integer.BYTES);
+    }
+}
@@ -0,0 +1,183 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the cache of search results.
+ */
+class ResultCacheTests {
+
+    /**
+     * Returns the key of a search in mode 1 for 10 results.
+     * @param lemmas the lemmas of the query
+     * @return the key.
+     */
+    static ResultCache.Key key(final String... lemmas) {
+        return ResultCache.Key.of(List.of(lemmas), 1, 10);
+    }
+
+    /**
+     * Returns results with the URLs.
+     * @param urls the URLs
+     * @return the results.
+     */
+    static List<SearchResult> results(final String... urls) {
+        List<SearchResult> results = new ArrayList<>();
+        for (String url : urls) {
+            results.add(new SearchResult(url, null, 1.0));
+        }
+        return results;
+    }
+
+    @Test
+    void keyIgnoresTheOrderButNotDuplicates() {
+        assertEquals(key("gouda", "aged"), key("aged", "gouda"));
+        assertNotEquals(key("gouda", "gouda"), key("gouda"));
+        assertNotEquals(ResultCache.Key.of(List.of("gouda"), 0, 10),
+                        ResultCache.Key.of(List.of("gouda"), 1, 10));
+        assertNotEquals(ResultCache.Key.of(List.of("gouda"), 1, 5),
+                        ResultCache.Key.of(List.of("gouda"), 1, 10));
+    }
+
+    @Test
+    void cachedResultsAreFoundForTheSameVersion() {
+        ResultCache cache = new ResultCache(4);
+        assertNull(cache.get(key("brie"), 1));
+        List<SearchResult> cached = cache.put(key("brie"), 1,
+                                              results("http://a", "http://b"));
+        assertSame(cached, cache.get(key("brie"), 1));
+        assertThrows(UnsupportedOperationException.class,
+                     () -> cached.add(null));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0.5, cache.hitRatio());
+        assertTrue(cache.estimatedBytes() > 0);
+    }
+
+    @Test
+    void newerIndexVersionDropsTheResults() {
+        ResultCache cache = new ResultCache(4);
+        cache.put(key("brie"), 1, results("http://a"));
+        cache.put(key("feta"), 1, results("http://b"));
+        assertNull(cache.get(key("brie"), 2));
+        cache.put(key("brie"), 2, results("http://c"));
+        assertEquals(2, cache.invalidations());
+        assertEquals(1, cache.size());
+        assertNull(cache.get(key("feta"), 2));
+        // results ranked on the old version are not cached anymore
+        cache.put(key("feta"), 1, results("http://b"));
+        assertNull(cache.get(key("feta"), 2));
+        assertNull(cache.get(key("brie"), 1));
+        assertEquals("http://c", cache.get(key("brie"), 2).get(0).url());
+    }
+
+    @Test
+    void rareQueriesDoNotEvictFrequentOnes() {
+        ResultCache cache = new ResultCache(2);
+        for (int i = 0; i < 3; i++) {
+            cache.get(key("brie"), 1);
+            cache.get(key("feta"), 1);
+        }
+        cache.put(key("brie"), 1, results("http://a"));
+        cache.put(key("feta"), 1, results("http://b"));
+        // gouda was asked for once, brie is used least recently but more
+        // often
+        assertNull(cache.get(key("gouda"), 1));
+        cache.put(key("gouda"), 1, results("http://c"));
+        assertEquals(1, cache.rejections());
+        assertEquals(0, cache.evictions());
+        assertNotNull(cache.get(key("brie"), 1));
+        // gouda becomes more popular than feta, which is used least recently
+        for (int i = 0; i < 5; i++) {
+            cache.get(key("gouda"), 1);
+        }
+        cache.put(key("gouda"), 1, results("http://c"));
+        assertEquals(1, cache.evictions());
+        assertNull(cache.get(key("feta"), 1));
+        assertNotNull(cache.get(key("brie"), 1));
+        assertNotNull(cache.get(key("gouda"), 1));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void hugeResultsAreNotCached() {
+        ResultCache cache = new ResultCache(1024, 64 * 1024);
+        // all pages of a large index for an unlimited k
+        String[] urls = new String[100_000];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = "http://" + i;
+        }
+        ResultCache.Key all = ResultCache.Key.of(List.of("brie"), 1,
+                                                 Integer.MAX_VALUE);
+        for (int i = 0; i < 5; i++) {
+            cache.get(all, 1);
+        }
+        assertEquals(urls.length, cache.put(all, 1, results(urls)).size());
+        assertNull(cache.get(all, 1));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.estimatedBytes());
+        assertEquals(1, cache.rejections());
+    }
+
+    @Test
+    void cachedResultsStayWithinTheMaximumBytes() {
+        long maxBytes = 64 * 1024;
+        ResultCache cache = new ResultCache(1024, maxBytes);
+        String[] urls = new String[90];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = "http://" + i;
+        }
+        // every search is asked for more often than the ones before, so
+        // the older ones are evicted
+        for (int i = 0; i < 20; i++) {
+            ResultCache.Key key = key("brie" + i);
+            for (int j = 0; j <= i && j < 15; j++) {
+                cache.get(key, 1);
+            }
+            cache.put(key, 1, results(urls));
+            assertTrue(cache.estimatedBytes() <= maxBytes);
+        }
+        assertTrue(cache.size() < 20);
+        assertTrue(cache.evictions() > 0);
+        assertNotNull(cache.get(key("brie19"), 1));
+    }
+
+    @Test
+    void indexerCachesUntilItIsUpdated() throws IOException {
+        List<Page> pageList = Utils.loadTestPages(
+                                    "src/test/resources/tf-idf/pages");
+        Indexer index = new Indexer(pageList);
+        ResultCache cache = index.getResultCache();
+        List<SearchResult> first = index.searchQuery("pool swim", 1, 10);
+        assertSame(first, index.searchQuery("swim pool", 1, 10));
+        assertEquals(1, cache.hits());
+
+        Page added = new Page("https://www.p9.local", "Pool", "Pool",
+                              "Pool Pool Pool", new HashSet<>());
+        index.addPages(List.of(added));
+        List<SearchResult> updated = index.searchQuery("pool swim", 1, 10);
+        assertEquals(1, cache.hits());
+        assertTrue(updated.stream()
+                          .anyMatch(r -> r.url().equals(added.getURL())));
+        assertTrue(first.stream()
+                        .noneMatch(r -> r.url().equals(added.getURL())));
+
+        index.setResultCacheCapacity(0);
+        assertNull(index.getResultCache());
+        assertEquals(updated, index.searchQuery("pool swim", 1, 10));
+    }
+}
@@ -0,0 +1,185 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Unit tests for the HTTP search server.
+ */
+class SearchServerTests {
+
+    static Indexer index;
+    static SearchServer server;
+    static HttpClient client = HttpClient.newHttpClient();
+    static String[] queries = {"house", "garden pool", "swim swim pool",
+                               "house garden pool swim", "cheese"};
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        List<Page> pageList = Utils.loadTestPages(
+                                    "src/test/resources/tf-idf/pages");
+        index = new Indexer(pageList);
+        server = new SearchServer(index, 0, 4, 2, 3);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    /**
+     * Sends a request to the server.
+     * @param pathAndQuery the path and the query of the request
+     * @return the response.
+     */
+    static HttpResponse<String> get(final String pathAndQuery)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(
+                "http://localhost:" + server.getPort() + pathAndQuery))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Searches a query over HTTP.
+     * @param query the query
+     * @param mode the rank mode
+     * @param k number of results
+     * @return the answer of the server.
+     */
+    static JsonObject search(final String query, final int mode,
+                             final int k)
+            throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/search?q="
+            + URLEncoder.encode(query, StandardCharsets.UTF_8)
+            + "&mode=" + mode + "&k=" + k);
+        assertEquals(200, response.statusCode());
+        return new Gson().fromJson(response.body(), JsonObject.class);
+    }
+
+    @Test
+    void sameResultsAsTheIndex() throws Exception {
+        for (int mode = 0; mode <= 3; mode++) {
+            for (String query : queries) {
+                List<SearchResult> expected = index.searchQuery(query, mode,
+                                                                 3);
+                JsonArray results = search(query, mode, 3)
+                                        .getAsJsonArray("results");
+                assertEquals(expected.size(), results.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    JsonObject result = results.get(i).getAsJsonObject();
+                    assertEquals(expected.get(i).url(),
+                                 result.get("url").getAsString());
+                    assertEquals(expected.get(i).score(),
+                                 result.get("score").getAsDouble(), 1e-12);
+                }
+            }
+        }
+    }
+
+    @Test
+    void defaultsAreUsedWithoutModeAndK() throws Exception {
+        HttpResponse<String> response = get("/search?q=pool");
+        assertEquals(200, response.statusCode());
+        JsonObject answer = new Gson().fromJson(response.body(),
+                                                JsonObject.class);
+        assertEquals(2, answer.get("mode").getAsInt());
+        assertEquals(3, answer.get("k").getAsInt());
+        assertEquals("pool", answer.get("query").getAsString());
+    }
+
+    @Test
+    void invalidRequestsAreRejected() throws Exception {
+        long before = server.getLatencies().count();
+        assertEquals(400, get("/search").statusCode());
+        assertEquals(400, get("/search?q=pool&mode=4").statusCode());
+        assertEquals(400, get("/search?q=pool&k=0").statusCode());
+        assertEquals(400, get("/search?q=pool&k=many").statusCode());
+        assertEquals(404, get("/other").statusCode());
+        // rejected requests are not searches
+        assertEquals(before, server.getLatencies().count());
+    }
+
+    @Test
+    void failedSearchIsAnsweredWithAnError() throws Exception {
+        Indexer failing = new Indexer(Utils.loadTestPages(
+                                    "src/test/resources/tf-idf/pages")) {
+            @Override
+            public List<SearchResult> searchQuery(final String searchString,
+                                                  final int explRankMode,
+                                                  final int k) {
+                throw new IllegalStateException("broken index");
+            }
+        };
+        try (SearchServer failingServer = new SearchServer(failing, 0, 1, 2,
+                                                           3)) {
+            HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(URI.create("http://localhost:"
+                    + failingServer.getPort() + "/search?q=pool")).build(),
+                HttpResponse.BodyHandlers.ofString());
+            assertEquals(500, response.statusCode());
+            assertTrue(new Gson().fromJson(response.body(), JsonObject.class)
+                                 .has("error"));
+            assertEquals(0, failingServer.getLatencies().count());
+        }
+    }
+
+    @Test
+    void concurrentSearchesAreCountedInTheStats() throws Exception {
+        long before = server.getLatencies().count();
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<JsonObject>> answers = new ArrayList<>();
+            for (int i = 0; i < 80; i++) {
+                String query = queries[i % queries.length];
+                int mode = i % 4;
+                answers.add(clients.submit(() -> search(query, mode, 3)));
+            }
+            for (Future<JsonObject> answer : answers) {
+                assertTrue(answer.get().has("results"));
+            }
+        } finally {
+            clients.shutdown();
+        }
+        HttpResponse<String> response = get("/stats");
+        assertEquals(200, response.statusCode());
+        JsonObject stats = new Gson().fromJson(response.body(),
+                                               JsonObject.class);
+        assertTrue(stats.get("searches").getAsLong() >= before + 80);
+        double p50 = stats.get("p50Millis").getAsDouble();
+        double p99 = stats.get("p99Millis").getAsDouble();
+        assertTrue(p50 > 0 && p50 <= p99);
+        assertTrue(p99 <= stats.get("maxMillis").getAsDouble());
+    }
+
+    @Test
+    void queryParametersAreDecoded() {
+        assertEquals("garden pool",
+                     SearchServer.parseQuery("q=garden+pool&mode=1")
+                                 .get("q"));
+        assertEquals("a&b=c", SearchServer.parseQuery("q=a%26b%3Dc&q=d")
+                                          .get("q"));
+        assertTrue(SearchServer.parseQuery(null).isEmpty());
+    }
+}
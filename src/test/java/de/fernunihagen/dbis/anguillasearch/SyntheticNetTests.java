@@ -0,0 +1,89 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Unit tests for the synthetic intranet.
+ */
+class SyntheticNetTests {
+    /** URLs of the pages in the tests. */
+    private static final IntFunction<String> URLS =
+        id -> "http://page" + id + ".synthetic";
+
+    @Test
+    void sameSeedGeneratesSameNet() {
+        SyntheticNet net = new SyntheticNet(500, 8, 1000, 50, 7);
+        SyntheticNet same = new SyntheticNet(500, 8, 1000, 50, 7);
+        SyntheticNet other = new SyntheticNet(500, 8, 1000, 50, 8);
+        for (int id = 0; id < 500; id += 37) {
+            assertEquals(net.textOf(id, URLS), same.textOf(id, URLS));
+        }
+        assertNotEquals(net.textOf(3, URLS), other.textOf(3, URLS));
+    }
+
+    @Test
+    void everyPageIsReachableFromTheFirstSeed() {
+        SyntheticNet net = new SyntheticNet(1000, 2, 100, 10, 42);
+        Set<Integer> reached = new HashSet<>();
+        int id = net.getSeeds()[0];
+        while (reached.add(id)) {
+            Set<Integer> links = net.linksOf(id);
+            for (int target : links) {
+                assertTrue(target >= 0 && target < 1000);
+            }
+            id = (id + 1) % 1000;
+            assertTrue(links.contains(id));
+        }
+        assertEquals(1000, reached.size());
+    }
+
+    @Test
+    void onlyQueryPagesContainTheQueryToken() {
+        SyntheticNet net = new SyntheticNet(100, 8, 30, 200, 42);
+        String token = net.getQueryToken();
+        for (int id = 0; id < 100; id++) {
+            String content = net.textOf(id, URLS).content();
+            assertEquals(net.isQueryPage(id), content.contains(token));
+        }
+    }
+
+    @Test
+    void vocabularyGrowsBeyondTheCheeseWords() {
+        Set<String> words = new HashSet<>();
+        for (int rank = 0; rank < 10_000; rank++) {
+            String word = SyntheticCorpus.word(rank);
+            assertTrue(word.length() >= 2);
+            assertTrue(words.add(word), word);
+        }
+        assertEquals("cheese", SyntheticCorpus.word(0));
+    }
+
+    @Test
+    void jsonDescribesTheNetLikeTheIntranet() {
+        SyntheticNet net = new SyntheticNet(100, 8, 1000, 20, 42);
+        JsonObject json = net.toJson("test", URLS);
+        for (String key : new String[] {"Net-Name", "Subject", "TLD",
+                 "Num-Websites", "Num-Links", "Query-Token",
+                 "Num-Websites-with-Query", "Query-URLs", "Seed-URLs"}) {
+            assertTrue(json.has(key), key);
+        }
+        assertEquals(100, json.get("Num-Websites").getAsInt());
+        assertEquals(net.countLinks(), json.get("Num-Links").getAsLong());
+        assertEquals(7, json.get("Num-Websites-with-Query").getAsInt());
+        assertEquals(7, json.getAsJsonArray("Query-URLs").size());
+        assertEquals(SyntheticNet.NUM_SEEDS,
+                     json.getAsJsonArray("Seed-URLs").size());
+        assertFalse(json.getAsJsonArray("Query-Token").isEmpty());
+    }
+}
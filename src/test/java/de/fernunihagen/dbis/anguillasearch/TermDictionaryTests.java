@@ -0,0 +1,133 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the front-coded term dictionary.
+ */
+class TermDictionaryTests {
+
+    /**
+     * Creates random sorted tokens, many of them with a common prefix and
+     * some with chars outside of ASCII.
+     * @param size number of tokens
+     * @return the tokens.
+     */
+    static List<String> randomTokens(final int size) {
+        Random random = new Random(size);
+        String alphabet = "abcdeäöü€";
+        TreeSet<String> tokens = new TreeSet<>();
+        while (tokens.size() < size) {
+            StringBuilder token = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int i = 0; i < length; i++) {
+                token.append(alphabet.charAt(random.nextInt(
+                                                alphabet.length())));
+            }
+            tokens.add(token.toString());
+        }
+        return new ArrayList<>(tokens);
+    }
+    /**
+     * Creates a dictionary of the tokens, the IDF of a token is its
+     * position.
+     * @param tokens the sorted tokens
+     * @return the dictionary.
+     */
+    static TermDictionary dictionary(final List<String> tokens) {
+        double[] idfs = new double[tokens.size()];
+        for (int i = 0; i < idfs.length; i++) {
+            idfs[i] = i;
+        }
+        return TermDictionary.build(tokens, idfs);
+    }
+
+    @Test
+    void tokensAreFoundLikeWithBinarySearch() {
+        for (int size : new int[] {0, 1, TermDictionary.BLOCK_TERMS,
+                                   TermDictionary.BLOCK_TERMS + 1, 1000}) {
+            List<String> tokens = randomTokens(size);
+            TermDictionary dictionary = dictionary(tokens);
+            assertEquals(size, dictionary.size());
+            for (int i = 0; i < size; i++) {
+                assertEquals(tokens.get(i), dictionary.term(i));
+                assertEquals(i, dictionary.idf(i));
+                assertEquals(i, dictionary.findTerm(tokens.get(i)));
+            }
+            // tokens which are not in the dictionary
+            for (String token : randomTokens(size + 50)) {
+                assertEquals(Collections.binarySearch(tokens, token),
+                             dictionary.findTerm(token));
+                assertEquals(Collections.binarySearch(tokens, token + "a"),
+                             dictionary.findTerm(token + "a"));
+            }
+            assertEquals(Collections.binarySearch(tokens, ""),
+                         dictionary.findTerm(""));
+        }
+    }
+
+    @Test
+    void prefixEnumeratesAllTokensWithThePrefix() {
+        List<String> tokens = randomTokens(1000);
+        TermDictionary dictionary = dictionary(tokens);
+        for (String prefix : new String[] {"", "a", "ab", "ä", "€€", "e"}) {
+            List<String> expected = new ArrayList<>();
+            for (String token : tokens) {
+                if (token.startsWith(prefix)) {
+                    expected.add(token);
+                }
+            }
+            List<String> found = new ArrayList<>();
+            for (int termId = dictionary.prefixStart(prefix);
+                 termId < dictionary.prefixEnd(prefix); termId++) {
+                found.add(dictionary.term(termId));
+            }
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    void writtenDictionaryCanBeReadAgain() throws IOException {
+        List<String> tokens = randomTokens(100);
+        TermDictionary dictionary = dictionary(tokens);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[8]);
+        dictionary.writeTo(out);
+        assertEquals(8 + dictionary.sizeInBytes(), out.size());
+        assertEquals(0, dictionary.sizeInBytes() % Double.BYTES);
+
+        // the dictionary does not start at the beginning of the buffer
+        TermDictionary read = new TermDictionary(
+                            ByteBuffer.wrap(out.toByteArray()), 8,
+                            tokens.size(), dictionary.sizeInBytes());
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals(tokens.get(i), read.term(i));
+            assertEquals(i, read.findTerm(tokens.get(i)));
+            assertEquals(i, read.idf(i));
+        }
+    }
+
+    @Test
+    void frontCodedTokensAreSmallerThanStrings() {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tokens.add(String.format("cheese%04d", i));
+        }
+        TermDictionary dictionary = dictionary(tokens);
+        // 8 bytes IDF per token, the tokens need about 3 bytes each
+        assertTrue(dictionary.sizeInBytes()
+                   < tokens.size() * (Double.BYTES + "cheese0000".length()));
+    }
+}
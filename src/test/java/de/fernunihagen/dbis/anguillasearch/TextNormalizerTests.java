@@ -0,0 +1,78 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.text.Normalizer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the TextNormalizer, which has to return the same text as
+ * the regular expressions the Parser used before.
+ */
+class TextNormalizerTests {
+    /** The stop word expression the Parser used before. */
+    private static final String STOP_WORD_REGEX = "\\b(a|an|the|of|at|on|"
+        + "upon|in|to|from|out|as|so|such|or|and|those|this|these|that|for|"
+        + "is|was|am|are|'s|been|were)\\b";
+    /** Chars of the random texts. */
+    private static final String ALPHABET = "aAnNtThHeEsSiIoO _0'.!,:-?&|\\"
+                                           + "\t\n\"";
+
+    /**
+     * Normalizes like the Parser did before.
+     * @param input the text
+     * @return the normalized text.
+     */
+    private static String normalizeWithRegex(final String input) {
+        String workString = Normalizer.normalize(input, Normalizer.Form.NFD);
+        workString = workString.replaceAll("[\\\\|.!,:\\-?\\&]\'", "");
+        workString = workString.toLowerCase();
+        return workString.replaceAll(STOP_WORD_REGEX, "");
+    }
+
+    @Test
+    void stopWordsAreRemovedAsWholeWords() {
+        assertEquals(" cheese   cheddar,  brie", TextNormalizer.normalize(
+                                "The cheese of the cheddar's, and brie"));
+        assertEquals("theory isle another",
+                     TextNormalizer.normalize("theory isle another"));
+        assertEquals("x__the 2a a2", TextNormalizer.normalize(
+                                                    "x__the 2a a2"));
+    }
+
+    @Test
+    void punctuationBeforeApostropheIsRemoved() {
+        assertEquals("rock roll", TextNormalizer.normalize("rock.' roll"));
+        assertEquals("'quoted'", TextNormalizer.normalize("'quoted'"));
+    }
+
+    @Test
+    void accentsAreDecomposed() {
+        String text = "Café Crème Brûlée the Käse";
+        assertEquals(normalizeWithRegex(text),
+                     TextNormalizer.normalize(text));
+    }
+
+    @Test
+    void randomTextIsNormalizedLikeWithRegex() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                text.append(ALPHABET.charAt(random.nextInt(
+                                                    ALPHABET.length())));
+            }
+            assertEquals(normalizeWithRegex(text.toString()),
+                         TextNormalizer.normalize(text.toString()),
+                         text.toString());
+        }
+    }
+
+    @Test
+    void stopWordsAreRemovedWithoutChangingTheCase() {
+        assertEquals("The  Cheese", Parser.rmStopWords("The a Cheese"));
+    }
+}
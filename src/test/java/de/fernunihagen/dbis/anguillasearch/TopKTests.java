@@ -0,0 +1,64 @@
+package de.fernunihagen.dbis.anguillasearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the top-k search.
+ */
+class TopKTests {
+
+    static Indexer index;
+    static String[] queries = {"house", "garden pool", "swim swim pool",
+                               "house garden pool swim", "cheese"};
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        List<Page> pageList = Utils.loadTestPages(
+                                    "src/test/resources/tf-idf/pages");
+        index = new Indexer(pageList);
+    }
+
+    @Test
+    void topKIsPrefixOfAllResults() {
+        for (String query : queries) {
+            for (int mode = 0; mode <= 3; mode++) {
+                List<SearchResult> all = index.searchQuery(query, mode);
+                for (int k = 1; k <= all.size() + 1; k++) {
+                    List<SearchResult> topK = index.searchQuery(query, mode,
+                                                                k);
+                    assertEquals(all.subList(0, Math.min(k, all.size())),
+                                 topK, query + " mode " + mode + " k " + k);
+                }
+            }
+        }
+    }
+
+    @Test
+    void resultsAreOrderedByScoreThenURL() {
+        for (String query : queries) {
+            for (int mode = 0; mode <= 3; mode++) {
+                List<SearchResult> all = index.searchQuery(query, mode);
+                for (int i = 1; i < all.size(); i++) {
+                    assertTrue(TopKResults.ORDER.compare(all.get(i - 1),
+                                                         all.get(i)) < 0);
+                }
+            }
+        }
+        assertFalse(index.searchQuery("house", 1).isEmpty());
+    }
+
+    @Test
+    void kHasToBePositive() {
+        assertThrows(IllegalArgumentException.class,
+                     () -> index.searchQuery("house", 0, 0));
+    }
+}